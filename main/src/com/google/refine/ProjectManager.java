@@ -43,6 +43,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -102,12 +106,33 @@ public abstract class ProjectManager {
      */
     transient protected Map<Long, Project> _projects;
 
+    /**
+     * The projects being loaded, so that concurrent requests for the same project wait for a single load while
+     * requests for other projects are not held up by it.
+     */
+    transient protected final Map<Long, CompletableFuture<Project>> _loadingProjects = new ConcurrentHashMap<>();
+
+    /**
+     * Estimates the memory taken by loaded projects, to evict some of them once the memory budget is exceeded.
+     */
+    transient protected final ProjectMemoryAccountant _memoryAccountant = new ProjectMemoryAccountant();
+
+    /**
+     * The number of saves in progress for each project, which is not evicted from memory until they are over.
+     */
+    transient protected final Map<Long, Integer> _savingProjects = new HashMap<>();
+
+    /**
+     * Set while projects are being evicted, so that a single thread does so at a time.
+     */
+    transient protected final AtomicBoolean _enforcingMemoryBudget = new AtomicBoolean();
+
     static public ProjectManager singleton;
 
     protected ProjectManager() {
-        _projectsMetadata = new HashMap<Long, ProjectMetadata>();
+        _projectsMetadata = new ConcurrentHashMap<Long, ProjectMetadata>();
         _preferenceStore = new PreferenceStore();
-        _projects = new HashMap<Long, Project>();
+        _projects = new ConcurrentHashMap<Long, Project>();
         _projectsTags = new HashMap<>();
 
         preparePreferenceStore(_preferenceStore);
@@ -138,6 +163,7 @@ public abstract class ProjectManager {
             projectMetadata.setRowCount(project.rows.size());
             _projects.put(project.id, project);
             _projectsMetadata.put(project.id, projectMetadata);
+            _memoryAccountant.recordAccess(project.id);
             addProjectTags(projectMetadata.getTags());
         }
     }
@@ -183,27 +209,24 @@ public abstract class ProjectManager {
      * @param id
      */
     public void ensureProjectSaved(long id) {
-        synchronized (this) {
-            ProjectMetadata metadata = this.getProjectMetadata(id);
-            if (metadata != null) {
-                try {
-                    saveMetadata(metadata, id);
-                } catch (Exception e) {
-                    logger.error("Error saving project metadata", e);
-                }
-            } // FIXME what should be the behaviour if metadata is null? i.e. not found
-
-            Project project = getProject(id);
-            if (project != null && metadata != null && metadata.getModified().isAfter(project.getLastSave())) {
-                try {
-                    saveProject(project);
-                } catch (Exception e) {
-                    logger.error("Error saving project ", e);
-                }
-            } // FIXME what should be the behaviour if project is null? i.e. not found or loaded.
-              // FIXME what should happen if the metadata is found, but not the project? or vice versa?
-        }
-
+        ProjectMetadata metadata = this.getProjectMetadata(id);
+        if (metadata != null) {
+            try {
+                saveMetadata(metadata, id);
+            } catch (Exception e) {
+                logger.error("Error saving project metadata", e);
+            }
+        } // FIXME what should be the behaviour if metadata is null? i.e. not found
+
+        Project project = getProject(id);
+        if (project != null && metadata != null && metadata.getModified().isAfter(project.getLastSave())) {
+            try {
+                saveLoadedProject(project);
+            } catch (Exception e) {
+                logger.error("Error saving project ", e);
+            }
+        } // FIXME what should be the behaviour if project is null? i.e. not found or loaded.
+          // FIXME what should happen if the metadata is found, but not the project? or vice versa?
     }
 
     /**
@@ -223,6 +246,30 @@ public abstract class ProjectManager {
      */
     protected abstract void saveProject(Project project) throws IOException;
 
+    /**
+     * Saves a loaded project, making sure it is not evicted from memory in the meantime. Projects which are no longer
+     * loaded are skipped: they had no unsaved changes when they were disposed of.
+     * 
+     * @param project
+     * @throws IOException
+     */
+    protected void saveLoadedProject(Project project) throws IOException {
+        synchronized (_savingProjects) {
+            if (_projects.get(project.id) != project) {
+                logger.warn("Not saving project {} as it is no longer loaded, any change made to it since is lost", project.id);
+                return;
+            }
+            _savingProjects.merge(project.id, 1, Integer::sum);
+        }
+        try {
+            saveProject(project);
+        } finally {
+            synchronized (_savingProjects) {
+                _savingProjects.computeIfPresent(project.id, (id, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
     /**
      * Save workspace and all projects to data store
      * 
@@ -274,10 +321,7 @@ public abstract class ProjectManager {
                     // We use after or equals to avoid the case where a newly created project
                     // has the same modified and last save times, resulting in the project not getting
                     // saved at all.
-                    boolean hasUnsavedChanges = metadata.getModified().isAfter(project.getLastSave())
-                            || metadata.getModified().equals(project.getLastSave());
-
-                    if (hasUnsavedChanges) {
+                    if (hasUnsavedChanges(project, metadata)) {
                         long msecsOverdue = Duration.between(startTimeOfSave, project.getLastSave()).toMillis();
                         records.add(new SaveRecord(project, msecsOverdue));
 
@@ -288,7 +332,10 @@ public abstract class ProjectManager {
                          * It's been a while since the project was last saved, and it hasn't been modified. We can
                          * safely remove it from the cache to save some memory.
                          */
-                        _projects.remove(id).dispose();
+                        if (_projects.remove(id, project)) {
+                            project.dispose();
+                            _memoryAccountant.forget(id);
+                        }
                     }
                 }
             }
@@ -306,7 +353,7 @@ public abstract class ProjectManager {
                     break;
                 }
                 try {
-                    saveProject(record.project);
+                    saveLoadedProject(record.project);
                 } catch (Exception e) {
                     logger.error("Error when saving projects. Attempting to free memory", e);
                     // In case we're running low on memory, free as much as we can
@@ -314,6 +361,146 @@ public abstract class ProjectManager {
                 }
             }
         }
+
+        enforceMemoryBudget(true);
+    }
+
+    static protected boolean hasUnsavedChanges(Project project, ProjectMetadata metadata) {
+        // We use after or equals to avoid the case where a newly created project
+        // has the same modified and last save times, resulting in the project not getting
+        // saved at all.
+        return metadata.getModified().isAfter(project.getLastSave())
+                || metadata.getModified().equals(project.getLastSave());
+    }
+
+    /**
+     * Evicts the least recently used idle projects from memory until the estimated footprint of the loaded projects
+     * fits in the memory budget. This is only checked once the heap is fuller than the budget, as it holds the projects.
+     * If another thread is already evicting projects, this returns right away: waiting for it could deadlock, as it may
+     * be waiting for the lock on a project held by the caller.
+     * 
+     * @param saveModified
+     *            whether projects with unsaved changes can be saved in order to be evicted
+     */
+    protected void enforceMemoryBudget(boolean saveModified) {
+        long budget = _memoryAccountant.getBudget();
+        if (_memoryAccountant.getUsedHeap() <= budget) {
+            return;
+        }
+
+        if (!_enforcingMemoryBudget.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<ProjectMemoryAccountant.Estimate> estimates = new ArrayList<>();
+            long total = 0;
+            for (Project project : _projects.values()) {
+                ProjectMemoryAccountant.Estimate estimate = estimate(project);
+                if (estimate != null) {
+                    estimates.add(estimate);
+                    total += estimate.getTotalBytes();
+                }
+            }
+            estimates.sort((e1, e2) -> e1.lastAccess.compareTo(e2.lastAccess));
+
+            for (ProjectMemoryAccountant.Estimate estimate : estimates) {
+                if (total <= budget) {
+                    break;
+                }
+                long id = estimate.projectID;
+                Project project = _projects.get(id);
+                ProjectMetadata metadata = getProjectMetadata(id);
+                if (project == null || metadata == null || !isEvictable(project)) {
+                    continue;
+                }
+                boolean saved = false;
+                if (hasUnsavedChanges(project, metadata)) {
+                    if (!saveModified) {
+                        continue;
+                    }
+                    try {
+                        saveLoadedProject(project);
+                    } catch (Exception e) {
+                        logger.warn("Failed to save project {} before evicting it", id, e);
+                        continue;
+                    }
+                    if (hasUnsavedChanges(project, metadata)) {
+                        continue;
+                    }
+                    saved = true;
+                }
+                // let changes in progress complete, and check again as a save, a process or a change may have
+                // started in the meantime
+                synchronized (project) {
+                    synchronized (project.history) {
+                        synchronized (_savingProjects) {
+                            if (!isEvictable(project) || hasUnsavedChanges(project, metadata)
+                                    || !_projects.remove(id, project)) {
+                                continue;
+                            }
+                        }
+                        project.dispose();
+                    }
+                }
+                _memoryAccountant.forget(id);
+                _memoryAccountant.recordEviction(estimate, saved);
+                total -= estimate.getTotalBytes();
+                logger.info("Evicted project {} from memory, estimated to take {} bytes", id, estimate.getTotalBytes());
+            }
+        } finally {
+            _enforcingMemoryBudget.set(false);
+        }
+    }
+
+    /**
+     * Estimates the memory footprint of a loaded project. Its rows are read without holding its lock, so this can fail
+     * if a change adds or removes rows or cells at the same time.
+     * 
+     * @return the estimate, or null if it could not be computed
+     */
+    protected ProjectMemoryAccountant.Estimate estimate(Project project) {
+        try {
+            return _memoryAccountant.estimate(project, _lookupCacheManager);
+        } catch (RuntimeException e) {
+            logger.debug("Could not estimate the memory footprint of project {}", project.id, e);
+            return null;
+        }
+    }
+
+    /**
+     * Records that a loaded project is in use, so that it is not evicted from memory for a while.
+     */
+    public void recordProjectAccess(long id) {
+        _memoryAccountant.recordAccess(id);
+    }
+
+    /**
+     * @return whether a loaded project can be evicted from memory: it must have been idle for a while, with no pending
+     *         processes and no save in progress
+     */
+    protected boolean isEvictable(Project project) {
+        synchronized (_savingProjects) {
+            if (_savingProjects.containsKey(project.id)) {
+                return false;
+            }
+        }
+        return !project.getProcessManager().hasPending() && _memoryAccountant.isIdle(project.id);
+    }
+
+    /**
+     * @return the estimated memory footprint of the loaded projects and the latest evictions
+     */
+    @JsonIgnore
+    public ProjectMemoryAccountant.Report getMemoryReport() {
+        List<ProjectMemoryAccountant.Estimate> estimates = new ArrayList<>();
+        for (Project project : _projects.values()) {
+            ProjectMemoryAccountant.Estimate estimate = estimate(project);
+            if (estimate != null) {
+                estimates.add(estimate);
+            }
+        }
+        return new ProjectMemoryAccountant.Report(_memoryAccountant.getBudget(), _memoryAccountant.getUsedHeap(), estimates,
+                _memoryAccountant.getEvictions());
     }
 
     /**
@@ -326,7 +513,10 @@ public abstract class ProjectManager {
                 Project project = _projects.get(id);
                 if (project != null && !project.getProcessManager().hasPending()
                         && project.getLastSave().isAfter(metadata.getModified())) {
-                    _projects.remove(id).dispose();
+                    if (_projects.remove(id, project)) {
+                        project.dispose();
+                        _memoryAccountant.forget(id);
+                    }
                 }
             }
         }
@@ -541,24 +731,58 @@ public abstract class ProjectManager {
 
     /**
      * Gets the required project from the data store If project does not already exist in memory, it is loaded from the
-     * data store
+     * data store. Concurrent calls for a project being loaded wait for that load to complete, without holding up calls
+     * for other projects.
      * 
      * @param id
      *            the id of the project
      * @return the project with the matching id, or null if it can't be found
      */
     public Project getProject(long id) {
-        synchronized (this) {
-            if (_projects.containsKey(id)) {
-                return _projects.get(id);
-            } else {
-                Project project = loadProject(id);
+        Project project = _projects.get(id);
+        if (project != null) {
+            _memoryAccountant.recordAccess(id);
+            return project;
+        }
+
+        CompletableFuture<Project> loading = new CompletableFuture<>();
+        CompletableFuture<Project> otherLoading = _loadingProjects.putIfAbsent(id, loading);
+        if (otherLoading != null) {
+            try {
+                return otherLoading.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        boolean loaded = false;
+        try {
+            // the project may have been loaded since we last checked
+            project = _projects.get(id);
+            if (project == null) {
+                project = loadProject(id);
                 if (project != null) {
                     _projects.put(id, project);
+                    _memoryAccountant.recordAccess(id);
+                    loaded = true;
                 }
-                return project;
             }
+            loading.complete(project);
+        } catch (RuntimeException | Error e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            _loadingProjects.remove(id, loading);
+        }
+
+        // only once the load is complete, so that it cannot fail because of other projects
+        if (loaded) {
+            enforceMemoryBudget(false);
         }
+        return project;
     }
 
     /**
@@ -611,9 +835,11 @@ public abstract class ProjectManager {
      * @param projectID
      */
     protected void removeProject(long projectID) {
-        if (_projects.containsKey(projectID)) {
-            _projects.remove(projectID).dispose();
+        Project project = _projects.remove(projectID);
+        if (project != null) {
+            project.dispose();
         }
+        _memoryAccountant.forget(projectID);
         _projectsMetadata.remove(projectID);
     }
 
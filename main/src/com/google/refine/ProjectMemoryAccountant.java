@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import com.google.refine.LookupCacheManager.ProjectLookup;
+import com.google.refine.browsing.util.CachedFacetResults;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.sorting.CachedSortOrder;
+
+/**
+ * Estimates the memory footprint of the projects loaded by the {@link ProjectManager}, and keeps track of the projects
+ * it evicted to stay under the memory budget.
+ * <p>
+ * The footprint of the rows is extrapolated from a sample of them, with rough sizes for the objects holding cells,
+ * which is enough to decide which projects to evict but should not be taken as an exact measurement.
+ * <p>
+ * Besides the rows, recons and precomputed values of the columns (which include the cached facet selections), the
+ * estimate covers the lookups, sort orders and facet results cached for the project and its string dictionary. The
+ * {@link com.google.refine.model.recon.ReconCache} is left out: it is shared by all projects of the workspace and
+ * evicting a project does not shrink it. Neither are the {@link com.google.refine.browsing.util.FacetFilterMask}s
+ * counted, as they are only held while facets are computed.
+ */
+public class ProjectMemoryAccountant {
+
+    /**
+     * Memory budget for loaded projects, in megabytes. When 0, half of the maximum heap size is used.
+     */
+    static protected long s_budgetMB = Long.getLong("refine.projects.memory_budget_mb", 0);
+    /**
+     * How long a project must not have been accessed before it can be evicted, in seconds. Projects with pending
+     * processes or being saved are never evicted, however long they have been idle.
+     */
+    static protected int s_minIdleSeconds = Integer.getInteger("refine.projects.min_idle_seconds", 60);
+    static protected int s_sampleRows = Integer.getInteger("refine.projects.memory_sample_rows", 1000);
+    static protected int s_maxEvictions = 100;
+
+    // rough sizes of objects on a 64-bit JVM with compressed references
+    static final protected int ROW_BYTES = 56; // row, list of cells and its array header
+    static final protected int CELL_SLOT_BYTES = 4;
+    static final protected int CELL_BYTES = 24;
+    static final protected int STRING_BYTES = 40;
+    static final protected int NUMBER_BYTES = 16;
+    static final protected int OTHER_VALUE_BYTES = 48;
+    static final protected int RECON_BYTES = 200;
+    static final protected int CANDIDATE_BYTES = 120;
+    static final protected int PRECOMPUTE_BYTES_PER_ROW = 16;
+    static final protected int LOOKUP_VALUE_BYTES = 96;
+    static final protected int LOOKUP_INDEX_BYTES = 20;
+
+    /**
+     * The estimated footprint of a loaded project.
+     */
+    static public class Estimate {
+
+        @JsonProperty("id")
+        final public long projectID;
+        @JsonProperty("rowCount")
+        final public int rowCount;
+        @JsonProperty("cellCount")
+        final public long cellCount;
+        @JsonProperty("reconCount")
+        final public long reconCount;
+        @JsonProperty("rowBytes")
+        final public long rowBytes;
+        @JsonProperty("reconBytes")
+        final public long reconBytes;
+        @JsonProperty("precomputeBytes")
+        final public long precomputeBytes;
+        @JsonProperty("lookupBytes")
+        final public long lookupBytes;
+        /**
+         * Sort orders and facet results cached for the project, and its string dictionary.
+         */
+        @JsonProperty("cacheBytes")
+        final public long cacheBytes;
+        @JsonProperty("lastAccess")
+        final public Instant lastAccess;
+        // the history entry the rows were sampled at
+        final long historyEntryID;
+
+        protected Estimate(long projectID, int rowCount, long cellCount, long reconCount, long rowBytes, long reconBytes,
+                long precomputeBytes, long lookupBytes, long cacheBytes, Instant lastAccess, long historyEntryID) {
+            this.projectID = projectID;
+            this.rowCount = rowCount;
+            this.cellCount = cellCount;
+            this.reconCount = reconCount;
+            this.rowBytes = rowBytes;
+            this.reconBytes = reconBytes;
+            this.precomputeBytes = precomputeBytes;
+            this.lookupBytes = lookupBytes;
+            this.cacheBytes = cacheBytes;
+            this.lastAccess = lastAccess;
+            this.historyEntryID = historyEntryID;
+        }
+
+        @JsonProperty("totalBytes")
+        public long getTotalBytes() {
+            return rowBytes + reconBytes + precomputeBytes + lookupBytes + cacheBytes;
+        }
+    }
+
+    /**
+     * A project evicted from memory to stay under the budget.
+     */
+    static public class Eviction {
+
+        @JsonProperty("time")
+        final public Instant time;
+        @JsonProperty("id")
+        final public long projectID;
+        @JsonProperty("estimatedBytes")
+        final public long estimatedBytes;
+        @JsonProperty("saved")
+        final public boolean saved;
+
+        protected Eviction(Instant time, long projectID, long estimatedBytes, boolean saved) {
+            this.time = time;
+            this.projectID = projectID;
+            this.estimatedBytes = estimatedBytes;
+            this.saved = saved;
+        }
+    }
+
+    /**
+     * The estimates of all loaded projects and the latest evictions.
+     */
+    static public class Report {
+
+        @JsonProperty("budgetBytes")
+        final public long budgetBytes;
+        @JsonProperty("usedHeapBytes")
+        final public long usedHeapBytes;
+        @JsonProperty("projects")
+        final public List<Estimate> projects;
+        @JsonProperty("evictions")
+        final public List<Eviction> evictions;
+
+        protected Report(long budgetBytes, long usedHeapBytes, List<Estimate> projects, List<Eviction> evictions) {
+            this.budgetBytes = budgetBytes;
+            this.usedHeapBytes = usedHeapBytes;
+            this.projects = projects;
+            this.evictions = evictions;
+        }
+
+        @JsonProperty("totalBytes")
+        public long getTotalBytes() {
+            long total = 0;
+            for (Estimate estimate : projects) {
+                total += estimate.getTotalBytes();
+            }
+            return total;
+        }
+    }
+
+    protected final Map<Long, Long> _lastAccess = new ConcurrentHashMap<>();
+    protected final Map<Long, Estimate> _estimates = new ConcurrentHashMap<>();
+    protected final Deque<Eviction> _evictions = new ArrayDeque<>();
+
+    /**
+     * @return the memory budget for loaded projects, in bytes
+     */
+    public long getBudget() {
+        return s_budgetMB > 0 ? s_budgetMB * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * @return the number of bytes currently used in the heap, garbage included
+     */
+    public long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void recordAccess(long projectID) {
+        _lastAccess.put(projectID, System.currentTimeMillis());
+    }
+
+    public Instant getLastAccess(long projectID) {
+        Long lastAccess = _lastAccess.get(projectID);
+        return lastAccess == null ? Instant.EPOCH : Instant.ofEpochMilli(lastAccess);
+    }
+
+    /**
+     * @return whether the project was not accessed recently enough to be evicted
+     */
+    public boolean isIdle(long projectID) {
+        return getLastAccess(projectID).plusSeconds(s_minIdleSeconds).isBefore(Instant.now());
+    }
+
+    /**
+     * Forgets about a project which is no longer loaded.
+     */
+    public void forget(long projectID) {
+        _lastAccess.remove(projectID);
+        _estimates.remove(projectID);
+    }
+
+    public void recordEviction(Estimate estimate, boolean saved) {
+        synchronized (_evictions) {
+            _evictions.addLast(new Eviction(Instant.now(), estimate.projectID, estimate.getTotalBytes(), saved));
+            while (_evictions.size() > s_maxEvictions) {
+                _evictions.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @return the latest evictions, most recent first
+     */
+    public List<Eviction> getEvictions() {
+        List<Eviction> evictions;
+        synchronized (_evictions) {
+            evictions = new ArrayList<>(_evictions);
+        }
+        Collections.reverse(evictions);
+        return evictions;
+    }
+
+    /**
+     * Estimates the footprint of a loaded project. The rows are only sampled again once the project was modified.
+     * They are read without holding the lock on the project, so this may fail with a runtime exception if a change adds
+     * or removes rows or cells at the same time.
+     */
+    public Estimate estimate(Project project, LookupCacheManager lookupCacheManager) {
+        long historyEntryID = project.history.getCurrentEntryID();
+        int rowCount = project.rows.size();
+        Estimate previous = _estimates.get(project.id);
+
+        long cellCount;
+        long reconCount;
+        long rowBytes;
+        long reconBytes;
+        if (previous != null && previous.historyEntryID == historyEntryID && previous.rowCount == rowCount) {
+            cellCount = previous.cellCount;
+            reconCount = previous.reconCount;
+            rowBytes = previous.rowBytes;
+            reconBytes = previous.reconBytes;
+        } else {
+            int sampleSize = Math.min(rowCount, s_sampleRows);
+            long sampledCells = 0;
+            long sampledRowBytes = 0;
+            long sampledReconBytes = 0;
+            Set<Recon> sampledRecons = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < sampleSize; i++) {
+                Row row = project.rows.get((int) ((long) i * rowCount / sampleSize));
+                sampledRowBytes += ROW_BYTES + (long) CELL_SLOT_BYTES * row.cells.size();
+                for (Cell cell : row.cells) {
+                    if (cell == null) {
+                        continue;
+                    }
+                    sampledCells++;
+                    sampledRowBytes += CELL_BYTES + getValueBytes(cell.value);
+                    if (cell.recon != null && sampledRecons.add(cell.recon)) {
+                        sampledReconBytes += RECON_BYTES
+                                + (cell.recon.candidates == null ? 0 : (long) CANDIDATE_BYTES * cell.recon.candidates.size());
+                    }
+                }
+            }
+            double scale = sampleSize == 0 ? 0 : (double) rowCount / sampleSize;
+            cellCount = Math.round(sampledCells * scale);
+            reconCount = Math.round(sampledRecons.size() * scale);
+            rowBytes = Math.round(sampledRowBytes * scale);
+            reconBytes = Math.round(sampledReconBytes * scale);
+        }
+
+        long precomputeBytes = 0;
+        for (Column column : project.columnModel.columns) {
+            precomputeBytes += (long) column.getPrecomputeCount() * rowCount * PRECOMPUTE_BYTES_PER_ROW;
+        }
+        long lookupBytes = 0;
+        for (ProjectLookup lookup : lookupCacheManager.getLookupsInvolvingProject(project.id)) {
+            lookupBytes += (long) lookup.valueToRowIndices.size() * LOOKUP_VALUE_BYTES
+                    + (long) rowCount * LOOKUP_INDEX_BYTES;
+        }
+        long cacheBytes = CachedSortOrder.getCachedBytes(project) + CachedFacetResults.getCachedBytes(project)
+                + project.getStringDictionary().getBytes();
+
+        Estimate estimate = new Estimate(project.id, rowCount, cellCount, reconCount, rowBytes, reconBytes, precomputeBytes,
+                lookupBytes, cacheBytes, getLastAccess(project.id), historyEntryID);
+        _estimates.put(project.id, estimate);
+        return estimate;
+    }
+
+    static protected long getValueBytes(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0;
+        } else if (value instanceof String) {
+            // strings are often shared between cells, so this is an upper bound
+            return STRING_BYTES + ((String) value).length();
+        } else if (value instanceof Number) {
+            return NUMBER_BYTES;
+        } else {
+            return OTHER_VALUE_BYTES;
+        }
+    }
+}
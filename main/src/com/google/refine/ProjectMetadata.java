@@ -97,6 +97,9 @@ public class ProjectMetadata {
     private String _description = ""; // free form of comment
     @JsonProperty("rowCount")
     private int _rowCount; // at the creation. Essential for cleaning old projects too heavy
+    @JsonProperty("internedBytesSaved")
+    @JsonInclude(Include.NON_DEFAULT)
+    private long _internedBytesSaved; // estimated memory saved by sharing cell strings, see StringDictionary
 
     @JsonProperty("title")
     private String _title = "";
@@ -342,6 +345,19 @@ public class ProjectMetadata {
         this._rowCount = rowCount;
     }
 
+    @JsonIgnore
+    public long getInternedBytesSaved() {
+        return _internedBytesSaved;
+    }
+
+    /**
+     * Set the memory saved by sharing cell strings without updating the last modified time. Internal use only!
+     */
+    @JsonIgnore
+    public void setInternedBytesSavedInternal(long internedBytesSaved) {
+        this._internedBytesSaved = internedBytesSaved;
+    }
+
     @JsonIgnore
     public ArrayNode getUserMetadata() {
         return _userMetadata;
@@ -33,6 +33,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,11 +41,15 @@ import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.roaringbitmap.RoaringBitmap;
 
 import com.google.refine.browsing.facets.Facet;
-import com.google.refine.browsing.util.ConjunctiveFilteredRecords;
-import com.google.refine.browsing.util.ConjunctiveFilteredRows;
+import com.google.refine.browsing.facets.FacetConfig;
+import com.google.refine.browsing.util.CachedFacetResults;
+import com.google.refine.browsing.util.CachedFacetSelection;
+import com.google.refine.browsing.util.FacetFilterMask;
 import com.google.refine.browsing.util.FilteredRecordsAsFilteredRows;
+import com.google.refine.browsing.util.ParallelScan;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
 
@@ -102,13 +107,15 @@ public class Engine {
                 try {
                     visitor.start(project);
 
-                    int c = project.rows.size();
-                    for (int rowIndex = 0; rowIndex < c; rowIndex++) {
-                        Row row = project.rows.get(rowIndex);
-                        if (visitor.visit(project, rowIndex, row)) {
-                            break;
+                    ParallelScan.visitRows(project.rows.size(), visitor, (v, from, to) -> {
+                        for (int rowIndex = from; rowIndex < to; rowIndex++) {
+                            Row row = project.rows.get(rowIndex);
+                            if (v.visit(project, rowIndex, row)) {
+                                return true;
+                            }
                         }
-                    }
+                        return false;
+                    });
                 } finally {
                     visitor.end(project);
                 }
@@ -125,16 +132,14 @@ public class Engine {
         if (_config.getMode().equals(Mode.RecordBased)) {
             return new FilteredRecordsAsFilteredRows(getFilteredRecords(except));
         } else if (_config.getMode().equals(Mode.RowBased)) {
-            ConjunctiveFilteredRows cfr = new ConjunctiveFilteredRows();
-            for (Facet facet : _facets) {
-                if (facet != except) {
-                    RowFilter rowFilter = facet.getRowFilter(_project);
-                    if (rowFilter != null) {
-                        cfr.add(rowFilter);
-                    }
+            int exceptIndex = _facets.indexOf(except);
+            return new FilteredRows() {
+
+                @Override
+                public void accept(Project project, RowVisitor visitor) {
+                    computeFilterMask().getFilteredRows(exceptIndex).accept(project, visitor);
                 }
-            }
-            return cfr;
+            };
         }
         throw new InternalError("Unknown mode.");
     }
@@ -148,10 +153,12 @@ public class Engine {
                 try {
                     visitor.start(project);
 
-                    int c = project.recordModel.getRecordCount();
-                    for (int r = 0; r < c; r++) {
-                        visitor.visit(project, project.recordModel.getRecord(r));
-                    }
+                    ParallelScan.visitRecords(project.recordModel.getRecordCount(), visitor, (v, from, to) -> {
+                        for (int r = from; r < to; r++) {
+                            v.visit(project, project.recordModel.getRecord(r));
+                        }
+                        return false;
+                    });
                 } finally {
                     visitor.end(project);
                 }
@@ -166,16 +173,14 @@ public class Engine {
 
     public FilteredRecords getFilteredRecords(Facet except) {
         if (_config.getMode().equals(Mode.RecordBased)) {
-            ConjunctiveFilteredRecords cfr = new ConjunctiveFilteredRecords();
-            for (Facet facet : _facets) {
-                if (facet != except) {
-                    RecordFilter recordFilter = facet.getRecordFilter(_project);
-                    if (recordFilter != null) {
-                        cfr.add(recordFilter);
-                    }
+            int exceptIndex = _facets.indexOf(except);
+            return new FilteredRecords() {
+
+                @Override
+                public void accept(Project project, RecordVisitor visitor) {
+                    computeFilterMask().getFilteredRecords(exceptIndex).accept(project, visitor);
                 }
-            }
-            return cfr;
+            };
         }
         throw new InternalError("This method should not be called when the engine is not in record mode.");
     }
@@ -187,21 +192,80 @@ public class Engine {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Computes the choices of all facets. The filters of all facets are evaluated together in a single pass over the
+     * project, after which each facet is fed the rows (or records) matched by all other facets.
+     */
     public void computeFacets() {
-        if (_config.getMode().equals(Mode.RowBased)) {
-            for (Facet facet : _facets) {
-                FilteredRows filteredRows = getFilteredRows(facet);
-
+        if (!_config.getMode().equals(Mode.RowBased) && !_config.getMode().equals(Mode.RecordBased)) {
+            throw new InternalError("Unknown mode.");
+        }
+        long historyEntryID = _project.history.getCurrentEntryID();
+        FacetFilterMask mask = computeFilterMask();
+        List<FacetConfig> facetConfigs = _config.getFacetConfigs();
+        boolean incremental = _config.getMode().equals(Mode.RowBased) && facetConfigs.size() == _facets.size();
+
+        for (int f = 0; f < _facets.size(); f++) {
+            Facet facet = _facets.get(f);
+            if (_config.getMode().equals(Mode.RowBased)) {
+                FilteredRows filteredRows = mask.getFilteredRows(f);
+                if (incremental && facetConfigs.get(f).isRowLocal()) {
+                    filteredRows = CachedFacetResults.wrapChoices(_project, facetConfigs.get(f), filteredRows, mask.getMatching(f),
+                            historyEntryID);
+                }
                 facet.computeChoices(_project, filteredRows);
+            } else {
+                facet.computeChoices(_project, mask.getFilteredRecords(f));
+            }
+        }
+    }
+
+    /**
+     * Evaluates the filters of all facets, reusing the selections cached for facets whose configuration has not
+     * changed since the last computation, and caching the others.
+     */
+    protected FacetFilterMask computeFilterMask() {
+        boolean recordBased = _config.getMode().equals(Mode.RecordBased);
+        List<FacetConfig> facetConfigs = _config.getFacetConfigs();
+        boolean cacheable = facetConfigs.size() == _facets.size();
+        long historyEntryID = _project.history.getCurrentEntryID();
+
+        RoaringBitmap[] known = new RoaringBitmap[_facets.size()];
+        boolean[] cached = new boolean[_facets.size()];
+        List<RowFilter> rowFilters = new ArrayList<>(_facets.size());
+        List<RecordFilter> recordFilters = new ArrayList<>(_facets.size());
+        for (int f = 0; f < _facets.size(); f++) {
+            Facet facet = _facets.get(f);
+            if (recordBased) {
+                recordFilters.add(facet.getRecordFilter(_project));
+            } else {
+                rowFilters.add(facet.getRowFilter(_project));
+            }
+            if (cacheable) {
+                known[f] = CachedFacetSelection.get(_project, facetConfigs.get(f), recordBased, historyEntryID);
+                cached[f] = known[f] != null;
+                if (known[f] == null && !recordBased && rowFilters.get(f) != null && facetConfigs.get(f).isRowLocal()) {
+                    known[f] = CachedFacetResults.getSelection(_project, facetConfigs.get(f), rowFilters.get(f), historyEntryID);
+                }
             }
-        } else if (_config.getMode().equals(Mode.RecordBased)) {
-            for (Facet facet : _facets) {
-                FilteredRecords filteredRecords = getFilteredRecords(facet);
+        }
+
+        FacetFilterMask mask = recordBased
+                ? FacetFilterMask.computeForRecords(_project, recordFilters, known)
+                : FacetFilterMask.computeForRows(_project, rowFilters, known);
 
-                facet.computeChoices(_project, filteredRecords);
+        // do not cache anything if a change was applied while we were evaluating the filters
+        if (cacheable && historyEntryID == _project.history.getCurrentEntryID()) {
+            for (int f = 0; f < _facets.size(); f++) {
+                RoaringBitmap selection = mask.getSelection(f);
+                if (!cached[f] && selection != null) {
+                    CachedFacetSelection.put(_project, facetConfigs.get(f), recordBased, historyEntryID, selection);
+                }
+                if (!recordBased && selection != null && facetConfigs.get(f).isRowLocal()) {
+                    CachedFacetResults.putSelection(_project, facetConfigs.get(f), historyEntryID, selection);
+                }
             }
-        } else {
-            throw new InternalError("Unknown mode.");
         }
+        return mask;
     }
 }
@@ -29,9 +29,12 @@ package com.google.refine.browsing;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import com.google.refine.browsing.Engine.Mode;
@@ -61,6 +64,28 @@ public class EngineConfig {
         return _facets;
     }
 
+    /**
+     * The names of the columns the selection of rows depends on.
+     *
+     * @return the column names, or null if unknown, which is the case in records mode as records depend on the key
+     *         column, which operations adding columns can change
+     */
+    @JsonIgnore
+    public Set<String> getColumnDependencies() {
+        if (_mode != Mode.RowBased) {
+            return null;
+        }
+        Set<String> columnNames = new HashSet<>();
+        for (FacetConfig facet : _facets) {
+            Set<String> facetColumns = facet.getColumnDependencies();
+            if (facetColumns == null) {
+                return null;
+            }
+            columnNames.addAll(facetColumns);
+        }
+        return columnNames;
+    }
+
     public static EngineConfig reconstruct(String json) {
         if (json == null) {
             return new EngineConfig(Collections.emptyList(), Mode.RowBased);
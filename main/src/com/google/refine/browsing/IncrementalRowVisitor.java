@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing;
+
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * A row visitor whose results can be updated after some rows changed, by removing what it collected from their
+ * previous contents and visiting them again, instead of visiting all rows from scratch.
+ * <p>
+ * The rows may then be visited in any order, and {@link #start} and {@link #end} are called around the updates.
+ */
+public interface IncrementalRowVisitor extends RowVisitor {
+
+    /**
+     * Removes what {@link #visit} collected from a row.
+     * 
+     * @param row
+     *            the row as it was when it was visited
+     */
+    public void unvisit(Project project, int rowIndex, Row row);
+
+    /**
+     * @return a new visitor with the same configuration and a copy of the results collected by this one, or null if
+     *         these results should not be kept
+     */
+    public IncrementalRowVisitor copy();
+
+    /**
+     * Replaces the results of this visitor by a copy of those of another visitor.
+     * 
+     * @return false if the other visitor does not have the same configuration, in which case nothing is copied
+     */
+    public boolean copyFrom(IncrementalRowVisitor other);
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing;
+
+/**
+ * A row visitor which can be split, so that disjoint ranges of rows are visited concurrently by copies of it, whose
+ * results are then merged back into the original visitor.
+ * <p>
+ * The copies are obtained with {@link #fork()} after {@link #start} has been called on the original visitor, and are
+ * merged with {@link #combine} in the order of the row ranges they visited, before {@link #end} is called on the
+ * original visitor. {@link #start} and {@link #end} are not called on the copies. Returning true from
+ * {@link #visit} only stops the visit of the range of the copy which returned it.
+ */
+public interface ParallelRowVisitor extends RowVisitor {
+
+    /**
+     * @return a new visitor with the same configuration as this one, with empty results, or null if this visitor
+     *         cannot be split.
+     */
+    public ParallelRowVisitor fork();
+
+    /**
+     * Merges the results of a copy obtained by {@link #fork()} into this visitor. The copies are combined in the order
+     * of the rows they visited.
+     */
+    public void combine(ParallelRowVisitor other);
+}
@@ -43,4 +43,12 @@ import com.google.refine.model.Record;
 public interface RecordFilter {
 
     public boolean filterRecord(Project project, Record record);
+
+    /**
+     * @return whether records can be filtered by several threads at once
+     * @see com.google.refine.expr.Evaluable#isThreadSafe()
+     */
+    default public boolean isThreadSafe() {
+        return false;
+    }
 }
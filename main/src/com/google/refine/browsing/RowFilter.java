@@ -43,4 +43,12 @@ import com.google.refine.model.Row;
 public interface RowFilter {
 
     public boolean filterRow(Project project, int rowIndex, Row row);
+
+    /**
+     * @return whether rows can be filtered by several threads at once
+     * @see com.google.refine.expr.Evaluable#isThreadSafe()
+     */
+    default public boolean isThreadSafe() {
+        return false;
+    }
 }
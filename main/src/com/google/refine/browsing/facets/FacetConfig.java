@@ -27,6 +27,8 @@
 
 package com.google.refine.browsing.facets;
 
+import java.util.Set;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
@@ -63,4 +65,25 @@ public interface FacetConfig {
      */
     @JsonIgnore // already included by @JsonTypeInfo
     public String getJsonType();
+
+    /**
+     * The names of the columns this facet is based on. The rows selected by the facet are cached alongside the
+     * precomputed values of these columns, keyed by the JSON serialization of this configuration, so implementations
+     * should only return a non-null value if that serialization fully determines the selection.
+     * 
+     * @return the set of column names, or null if the selection of this facet should not be cached.
+     */
+    @JsonIgnore
+    public default Set<String> getColumnDependencies() {
+        return null;
+    }
+
+    /**
+     * Whether the selection and choices of this facet on each row only depend on the contents of that row, in which
+     * case they can be updated from the rows modified by a change instead of being computed again on all rows.
+     */
+    @JsonIgnore
+    public default boolean isRowLocal() {
+        return false;
+    }
 }
@@ -33,8 +33,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.facets;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -126,6 +128,18 @@ public class ListFacet implements Facet {
             return facet;
         }
 
+        @Override
+        @JsonIgnore
+        public Set<String> getColumnDependencies() {
+            return Collections.singleton(columnName);
+        }
+
+        @Override
+        @JsonIgnore
+        public boolean isRowLocal() {
+            return MetaParser.isRowLocal(expression);
+        }
+
         @Override
         public String getJsonType() {
             return "list";
@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.facets;
 
+import java.util.Collections;
+import java.util.Set;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -121,6 +124,18 @@ public class RangeFacet implements Facet {
             return facet;
         }
 
+        @Override
+        @JsonIgnore
+        public Set<String> getColumnDependencies() {
+            return Collections.singleton(_columnName);
+        }
+
+        @Override
+        @JsonIgnore
+        public boolean isRowLocal() {
+            return MetaParser.isRowLocal(_expression);
+        }
+
         @Override
         public String getJsonType() {
             return "range";
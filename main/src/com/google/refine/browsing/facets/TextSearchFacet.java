@@ -33,17 +33,22 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.facets;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.regex.Pattern;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.roaringbitmap.RoaringBitmap;
 
 import com.google.refine.browsing.FilteredRecords;
 import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.IndexedRowFilter;
 import com.google.refine.browsing.RecordFilter;
 import com.google.refine.browsing.RowFilter;
 import com.google.refine.browsing.filters.AnyRowRecordFilter;
 import com.google.refine.browsing.filters.ExpressionStringComparisonRowFilter;
-import com.google.refine.expr.Evaluable;
+import com.google.refine.browsing.util.TrigramIndex;
 import com.google.refine.grel.ast.VariableExpr;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
@@ -76,6 +81,18 @@ public class TextSearchFacet implements Facet {
             return facet;
         }
 
+        @Override
+        @JsonIgnore
+        public Set<String> getColumnDependencies() {
+            return Collections.singleton(_columnName);
+        }
+
+        @Override
+        @JsonIgnore
+        public boolean isRowLocal() {
+            return true;
+        }
+
         @Override
         public String getJsonType() {
             return "text";
@@ -156,25 +173,79 @@ public class TextSearchFacet implements Facet {
             return null;
         }
 
-        Evaluable eval = new VariableExpr("value");
+        return new TextSearchRowFilter();
+    }
+
+    /**
+     * Checks whether the cells of the column contain the query, only evaluating the rows which contain all trigrams of
+     * the searched text when the column is large enough to be indexed.
+     */
+    protected class TextSearchRowFilter extends ExpressionStringComparisonRowFilter implements IndexedRowFilter {
+
+        protected TextSearchRowFilter() {
+            super(new VariableExpr("value"), _config._invert, _config._columnName, TextSearchFacet.this._cellIndex);
+        }
+
+        @Override
+        protected boolean checkValue(String s) {
+            if ("regex".equals(_config._mode)) {
+                return _pattern.matcher(s).find();
+            } else {
+                return (_config._caseSensitive ? s : s.toLowerCase()).contains(_query);
+            }
+        }
+
+        @Override
+        public RoaringBitmap getCandidateRows(Project project) {
+            String text = "regex".equals(_config._mode) ? getLiteralPrefix(_config._query) : _query;
+            if (text == null || text.length() < 3) {
+                return null;
+            } else if ((_config._caseSensitive || "regex".equals(_config._mode)) && !isAscii(text)) {
+                // lowercasing the whole cell could turn a case-sensitive match into a different string
+                return null;
+            }
+
+            Column column = project.columnModel.getColumnByCellIndex(_cellIndex);
+            TrigramIndex index = column == null ? null : TrigramIndex.get(project, column);
+            return index == null ? null : index.getCandidateRows(text.toLowerCase());
+        }
 
-        if ("regex".equals(_config._mode)) {
-            return new ExpressionStringComparisonRowFilter(eval, _config._invert, _config._columnName, _cellIndex) {
+        @Override
+        public boolean isInverted() {
+            return _invert;
+        }
+    }
 
-                @Override
-                protected boolean checkValue(String s) {
-                    return _pattern.matcher(s).find();
-                };
-            };
-        } else {
-            return new ExpressionStringComparisonRowFilter(eval, _config._invert, _config._columnName, _cellIndex) {
+    /**
+     * @return the literal text any match of the regular expression starts with, or null if the expression has
+     *         alternatives
+     */
+    static protected String getLiteralPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = regex.startsWith("^") ? 1 : 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                if ((c == '?' || c == '*' || c == '{') && sb.length() > 0) {
+                    // the previous character is optional or repeated
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
 
-                @Override
-                protected boolean checkValue(String s) {
-                    return (_config._caseSensitive ? s : s.toLowerCase()).contains(_query);
-                };
-            };
+    static protected boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 128) {
+                return false;
+            }
         }
+        return true;
     }
 
     @Override
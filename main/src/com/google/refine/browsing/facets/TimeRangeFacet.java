@@ -33,6 +33,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.facets;
 
+import java.util.Collections;
+import java.util.Set;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -98,6 +101,12 @@ public class TimeRangeFacet implements Facet {
             return facet;
         }
 
+        @Override
+        @JsonIgnore
+        public Set<String> getColumnDependencies() {
+            return Collections.singleton(_columnName);
+        }
+
         @Override
         public String getJsonType() {
             return "timerange";
@@ -55,4 +55,9 @@ public class AnyRowRecordFilter implements RecordFilter {
         }
         return false;
     }
+
+    @Override
+    public boolean isThreadSafe() {
+        return _rowFilter.isThreadSafe();
+    }
 }
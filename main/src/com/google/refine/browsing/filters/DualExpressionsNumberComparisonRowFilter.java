@@ -94,6 +94,11 @@ abstract public class DualExpressionsNumberComparisonRowFilter implements RowFil
         return checkValue(x_value, y_value);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return _x_evaluable.isThreadSafe() && _y_evaluable.isThreadSafe();
+    }
+
     protected boolean checkValue(Object vx, Object vy) {
         if (ExpressionUtils.isError(vx) || ExpressionUtils.isError(vy)) {
             return false;
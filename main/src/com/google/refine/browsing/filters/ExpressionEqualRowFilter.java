@@ -87,6 +87,11 @@ public class ExpressionEqualRowFilter implements RowFilter {
         return _invert ? internalInvertedFilterRow(project, rowIndex, row) : internalFilterRow(project, rowIndex, row);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return _evaluable.isThreadSafe();
+    }
+
     public boolean internalFilterRow(Project project, int rowIndex, Row row) {
         Cell cell = _cellIndex < 0 ? null : row.getCell(_cellIndex);
 
@@ -108,6 +108,11 @@ abstract public class ExpressionNumberComparisonRowFilter implements RowFilter {
         return checkValue(value);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return _rowEvaluable.isThreadSafe();
+    }
+
     protected boolean checkValue(Object v) {
         if (ExpressionUtils.isError(v)) {
             return _selectError;
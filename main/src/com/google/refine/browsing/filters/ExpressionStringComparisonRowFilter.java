@@ -106,5 +106,10 @@ abstract public class ExpressionStringComparisonRowFilter implements RowFilter {
         return invert;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return _evaluable.isThreadSafe();
+    }
+
     abstract protected boolean checkValue(String s);
 }
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.IncrementalRowVisitor;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.facets.FacetConfig;
+import com.google.refine.history.RowDelta;
+import com.google.refine.model.Project;
+import com.google.refine.util.ParsingUtilities;
+
+/**
+ * The last selection and choices computed for row-local facets in row mode, kept so that they can be updated from the
+ * rows modified by the next change instead of being computed again on all rows. Unlike {@link CachedFacetSelection},
+ * these results survive changes to the columns the facets depend on: they are updated if the change which moved the
+ * project away from the history entry they were computed at only modified known rows, as recorded in its
+ * {@link RowDelta}.
+ */
+public class CachedFacetResults {
+
+    static protected int s_maxEntriesPerProject = Integer.getInteger("refine.facets.max_cached_results", 32);
+
+    static final protected Map<Project, Map<String, CachedFacetResults>> s_cache = new WeakHashMap<>();
+
+    final protected long _historyEntryID;
+    final protected int _rowCount;
+    /**
+     * The rows selected by the facet, or visited to compute its choices. Null stands for all rows.
+     */
+    final protected RoaringBitmap _rows;
+    final protected IncrementalRowVisitor _visitor;
+
+    protected CachedFacetResults(long historyEntryID, int rowCount, RoaringBitmap rows, IncrementalRowVisitor visitor) {
+        _historyEntryID = historyEntryID;
+        _rowCount = rowCount;
+        _rows = rows;
+        _visitor = visitor;
+    }
+
+    /**
+     * Retrieves the selection of a facet, updated from the rows modified since it was cached.
+     * 
+     * @param project
+     *            the project the facet is applied to
+     * @param config
+     *            the configuration of the facet
+     * @param rowFilter
+     *            the row filter of the facet
+     * @param historyEntryID
+     *            the id of the last done history entry of the project
+     * @return the rows selected by the facet, or null if they are not known
+     */
+    static public RoaringBitmap getSelection(Project project, FacetConfig config, RowFilter rowFilter, long historyEntryID) {
+        CachedFacetResults cached = get(project, getKey("selection", config));
+        RowDelta delta = project.history.getLastRowDelta();
+        if (cached == null || cached._rows == null) {
+            return null;
+        } else if (cached._historyEntryID == historyEntryID) {
+            return cached._rows;
+        } else if (!cached.canBeUpdatedWith(project, delta, historyEntryID)) {
+            return null;
+        }
+
+        RoaringBitmap selection = cached._rows.clone();
+        for (int rowIndex : delta.rowIndices) {
+            if (rowFilter.filterRow(project, rowIndex, project.rows.get(rowIndex))) {
+                selection.add(rowIndex);
+            } else {
+                selection.remove(rowIndex);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Keeps the selection of a facet, to be updated after the next change.
+     */
+    static public void putSelection(Project project, FacetConfig config, long historyEntryID, RoaringBitmap selection) {
+        put(project, getKey("selection", config), new CachedFacetResults(historyEntryID, project.rows.size(), selection, null));
+    }
+
+    /**
+     * Wraps the rows visible to a facet, so that its choices are updated from the results cached for it when possible,
+     * and cached again once computed. This only applies to visitors implementing {@link IncrementalRowVisitor}: other
+     * visitors simply visit all the rows.
+     * 
+     * @param project
+     *            the project the facet is applied to
+     * @param config
+     *            the configuration of the facet
+     * @param filteredRows
+     *            the rows visible to the facet
+     * @param matching
+     *            the indices of these rows, or null for all rows
+     * @param historyEntryID
+     *            the id of the last done history entry of the project
+     */
+    static public FilteredRows wrapChoices(Project project, FacetConfig config, FilteredRows filteredRows, RoaringBitmap matching,
+            long historyEntryID) {
+        String key = getKey("choices", config);
+        return new FilteredRows() {
+
+            @Override
+            public void accept(Project project, RowVisitor visitor) {
+                if (key == null || !(visitor instanceof IncrementalRowVisitor)) {
+                    filteredRows.accept(project, visitor);
+                    return;
+                }
+                IncrementalRowVisitor incrementalVisitor = (IncrementalRowVisitor) visitor;
+
+                CachedFacetResults cached = get(project, key);
+                RowDelta delta = project.history.getLastRowDelta();
+                if (cached != null && cached._visitor != null && cached.canBeUpdatedWith(project, delta, historyEntryID)
+                        && differOnlyOn(cached._rows, matching, cached._rowCount, delta) && incrementalVisitor.copyFrom(cached._visitor)) {
+                    try {
+                        visitor.start(project);
+                        for (int i = 0; i < delta.rowIndices.length; i++) {
+                            int rowIndex = delta.rowIndices[i];
+                            if (cached._rows == null || cached._rows.contains(rowIndex)) {
+                                incrementalVisitor.unvisit(project, rowIndex, delta.oldRows[i]);
+                            }
+                            if (matching == null || matching.contains(rowIndex)) {
+                                visitor.visit(project, rowIndex, project.rows.get(rowIndex));
+                            }
+                        }
+                    } finally {
+                        visitor.end(project);
+                    }
+                } else if (cached != null && cached._historyEntryID == historyEntryID && cached._visitor != null
+                        && differOnlyOn(cached._rows, matching, cached._rowCount, null) && incrementalVisitor.copyFrom(cached._visitor)) {
+                    // nothing changed
+                } else {
+                    filteredRows.accept(project, visitor);
+                }
+
+                // do not cache anything if a change was applied while we were visiting the rows
+                if (historyEntryID == project.history.getCurrentEntryID()) {
+                    IncrementalRowVisitor copy = incrementalVisitor.copy();
+                    if (copy != null) {
+                        put(project, key, new CachedFacetResults(historyEntryID, project.rows.size(), matching, copy));
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return an estimate of the memory taken by the rows cached for the facets of a project, in bytes. The choices
+     *         kept along with them are not counted, as they are usually much smaller.
+     */
+    static public long getCachedBytes(Project project) {
+        long bytes = 0;
+        synchronized (s_cache) {
+            Map<String, CachedFacetResults> results = s_cache.get(project);
+            if (results != null) {
+                for (CachedFacetResults cached : results.values()) {
+                    bytes += cached._rows == null ? 0 : cached._rows.getLongSizeInBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether these results were computed at the history entry the given delta starts from, and the delta leads to
+     * the current entry.
+     */
+    protected boolean canBeUpdatedWith(Project project, RowDelta delta, long historyEntryID) {
+        return delta != null && delta.fromEntryID == _historyEntryID && delta.toEntryID == historyEntryID
+                && delta.rowCount == _rowCount && project.rows.size() == _rowCount;
+    }
+
+    /**
+     * Whether two sets of rows, where null stands for all rows, only differ on the rows of a delta.
+     */
+    static protected boolean differOnlyOn(RoaringBitmap a, RoaringBitmap b, int rowCount, RowDelta delta) {
+        if (a == null && b == null) {
+            return true;
+        }
+        RoaringBitmap all = a == null || b == null ? RoaringBitmap.bitmapOfRange(0, rowCount) : null;
+        RoaringBitmap difference = RoaringBitmap.xor(a == null ? all : a, b == null ? all : b);
+        if (delta != null) {
+            difference.andNot(RoaringBitmap.bitmapOf(delta.rowIndices));
+        }
+        return difference.isEmpty();
+    }
+
+    static protected CachedFacetResults get(Project project, String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (s_cache) {
+            Map<String, CachedFacetResults> results = s_cache.get(project);
+            return results == null ? null : results.get(key);
+        }
+    }
+
+    static protected void put(Project project, String key, CachedFacetResults results) {
+        if (key == null) {
+            return;
+        }
+        synchronized (s_cache) {
+            s_cache.computeIfAbsent(project, p -> new LinkedHashMap<String, CachedFacetResults>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedFacetResults> eldest) {
+                    return size() > s_maxEntriesPerProject;
+                }
+            }).put(key, results);
+        }
+    }
+
+    static protected String getKey(String kind, FacetConfig config) {
+        try {
+            return kind + ":" + ParsingUtilities.mapper.writeValueAsString(config);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
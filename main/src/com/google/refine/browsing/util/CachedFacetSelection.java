@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.google.refine.browsing.facets.FacetConfig;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.util.ParsingUtilities;
+
+/**
+ * The rows (or records) selected by a facet, as cached in the precomputed values of the columns the facet depends on.
+ * Those are cleared whenever a change touches the columns, and the cached selection is additionally tied to the
+ * history entry it was computed at, so that it is never reused after any other change to the project. Each column only
+ * keeps the selections of the most recently used facets at the current history entry.
+ */
+public class CachedFacetSelection {
+
+    static final protected String PRECOMPUTE_KEY = "facet-selections";
+
+    static protected int s_maxSelectionsPerColumn = Integer.getInteger("refine.facets.max_cached_selections", 16);
+
+    final public long historyEntryID;
+    final public RoaringBitmap selection;
+
+    protected CachedFacetSelection(long historyEntryID, RoaringBitmap selection) {
+        this.historyEntryID = historyEntryID;
+        this.selection = selection;
+    }
+
+    /**
+     * Retrieves the cached selection of a facet.
+     * 
+     * @param project
+     *            the project the facet is applied to
+     * @param config
+     *            the configuration of the facet
+     * @param recordBased
+     *            whether the selection should be expressed in records rather than rows
+     * @param historyEntryID
+     *            the id of the last done history entry of the project
+     * @return the rows or records selected by the facet, or null if not cached
+     */
+    static public RoaringBitmap get(Project project, FacetConfig config, boolean recordBased, long historyEntryID) {
+        String key = getKey(config, recordBased);
+        Set<String> columnNames = config.getColumnDependencies();
+        if (key == null || columnNames == null || columnNames.isEmpty()) {
+            return null;
+        }
+
+        CachedFacetSelection cached = null;
+        for (String columnName : columnNames) {
+            Column column = project.columnModel.getColumnByName(columnName);
+            if (column == null) {
+                return null;
+            }
+            Map<String, CachedFacetSelection> selections = getSelections(column);
+            CachedFacetSelection value;
+            synchronized (selections) {
+                value = selections.get(key);
+            }
+            if (value == null || (cached != null && cached != value)) {
+                return null;
+            }
+            cached = value;
+        }
+        return cached.historyEntryID == historyEntryID ? cached.selection : null;
+    }
+
+    /**
+     * Stores the selection of a facet in the cache. This does nothing if the facet does not declare which columns it
+     * depends on.
+     */
+    static public void put(Project project, FacetConfig config, boolean recordBased, long historyEntryID, RoaringBitmap selection) {
+        String key = getKey(config, recordBased);
+        Set<String> columnNames = config.getColumnDependencies();
+        if (key == null || columnNames == null || columnNames.isEmpty()) {
+            return;
+        }
+
+        CachedFacetSelection cached = new CachedFacetSelection(historyEntryID, selection);
+        for (String columnName : columnNames) {
+            Column column = project.columnModel.getColumnByName(columnName);
+            if (column != null) {
+                Map<String, CachedFacetSelection> selections = getSelections(column);
+                synchronized (selections) {
+                    // selections computed at other history entries can no longer be used
+                    selections.values().removeIf(s -> s.historyEntryID != historyEntryID);
+                    selections.put(key, cached);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static protected Map<String, CachedFacetSelection> getSelections(Column column) {
+        synchronized (column) {
+            Object selections = column.getPrecompute(PRECOMPUTE_KEY);
+            if (selections == null) {
+                selections = new LinkedHashMap<String, CachedFacetSelection>(16, 0.75f, true) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedFacetSelection> eldest) {
+                        return size() > s_maxSelectionsPerColumn;
+                    }
+                };
+                column.setPrecompute(PRECOMPUTE_KEY, selections);
+            }
+            return (Map<String, CachedFacetSelection>) selections;
+        }
+    }
+
+    static protected String getKey(FacetConfig config, boolean recordBased) {
+        try {
+            return (recordBased ? "record-based:" : "row-based:") + ParsingUtilities.mapper.writeValueAsString(config);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
@@ -58,20 +58,31 @@ public class ConjunctiveFilteredRecords implements FilteredRecords {
         try {
             visitor.start(project);
 
-            int c = project.recordModel.getRecordCount();
-            for (int r = 0; r < c; r++) {
-                Record record = project.recordModel.getRecord(r);
-                if (matchRecord(project, record)) {
-                    if (visitor.visit(project, record)) {
-                        return;
+            ParallelScan.visitRecords(project.recordModel.getRecordCount(), visitor, isThreadSafe(), (v, from, to) -> {
+                for (int r = from; r < to; r++) {
+                    Record record = project.recordModel.getRecord(r);
+                    if (matchRecord(project, record)) {
+                        if (v.visit(project, record)) {
+                            return true;
+                        }
                     }
                 }
-            }
+                return false;
+            });
         } finally {
             visitor.end(project);
         }
     }
 
+    protected boolean isThreadSafe() {
+        for (RecordFilter recordFilter : _recordFilters) {
+            if (!recordFilter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected boolean matchRecord(Project project, Record record) {
         for (RecordFilter recordFilter : _recordFilters) {
             if (!recordFilter.filterRecord(project, record)) {
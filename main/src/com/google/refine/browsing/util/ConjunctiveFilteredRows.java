@@ -59,15 +59,17 @@ public class ConjunctiveFilteredRows implements FilteredRows {
         try {
             visitor.start(project);
 
-            int c = project.rows.size();
-            for (int rowIndex = 0; rowIndex < c; rowIndex++) {
-                Row row = project.rows.get(rowIndex);
-                if (matchRow(project, rowIndex, row)) {
-                    if (visitRow(project, visitor, rowIndex, row)) {
-                        break;
+            ParallelScan.visitRows(project.rows.size(), visitor, isThreadSafe(), (v, from, to) -> {
+                for (int rowIndex = from; rowIndex < to; rowIndex++) {
+                    Row row = project.rows.get(rowIndex);
+                    if (matchRow(project, rowIndex, row)) {
+                        if (visitRow(project, v, rowIndex, row)) {
+                            return true;
+                        }
                     }
                 }
-            }
+                return false;
+            });
         } finally {
             visitor.end(project);
         }
@@ -77,6 +79,15 @@ public class ConjunctiveFilteredRows implements FilteredRows {
         return visitor.visit(project, rowIndex, row);
     }
 
+    protected boolean isThreadSafe() {
+        for (RowFilter rowFilter : _rowFilters) {
+            if (!rowFilter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected boolean matchRow(Project project, int rowIndex, Row row) {
         for (RowFilter rowFilter : _rowFilters) {
             if (!rowFilter.filterRow(project, rowIndex, row)) {
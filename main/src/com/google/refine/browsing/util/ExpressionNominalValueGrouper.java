@@ -38,11 +38,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 
 import com.google.refine.browsing.DecoratedValue;
-import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.IncrementalRowVisitor;
+import com.google.refine.browsing.ParallelRecordVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.browsing.facets.NominalFacetChoice;
 import com.google.refine.expr.Evaluable;
 import com.google.refine.expr.ExpressionUtils;
@@ -55,7 +57,10 @@ import com.google.refine.util.StringUtils;
 /**
  * Visit matched rows or records and group them into facet choices based on the values computed from a given expression.
  */
-public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor {
+public class ExpressionNominalValueGrouper implements ParallelRowVisitor, ParallelRecordVisitor, IncrementalRowVisitor {
+
+    // groupers with more choices than this are not worth keeping for incremental updates
+    static protected int s_maxCopiedChoices = Integer.getInteger("refine.facets.max_cached_choices", 10000);
 
     static public class IndexedNominalFacetChoice extends NominalFacetChoice {
 
@@ -65,6 +70,13 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
             super(decoratedValue);
             _latestIndex = latestIndex;
         }
+
+        protected IndexedNominalFacetChoice copy() {
+            IndexedNominalFacetChoice choice = new IndexedNominalFacetChoice(decoratedValue, _latestIndex);
+            choice.count = count;
+            choice.selected = selected;
+            return choice;
+        }
     }
 
     /*
@@ -103,6 +115,39 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         // nothing to do
     }
 
+    @Override
+    public ExpressionNominalValueGrouper fork() {
+        if (getClass() != ExpressionNominalValueGrouper.class || !_evaluable.isThreadSafe()) {
+            return null;
+        }
+        return new ExpressionNominalValueGrouper(_evaluable, _columnName, _cellIndex);
+    }
+
+    @Override
+    public void combine(ParallelRowVisitor other) {
+        combine((ExpressionNominalValueGrouper) other);
+    }
+
+    @Override
+    public void combine(ParallelRecordVisitor other) {
+        combine((ExpressionNominalValueGrouper) other);
+    }
+
+    protected void combine(ExpressionNominalValueGrouper other) {
+        for (Map.Entry<Object, IndexedNominalFacetChoice> entry : other.choices.entrySet()) {
+            IndexedNominalFacetChoice otherChoice = entry.getValue();
+            IndexedNominalFacetChoice choice = choices.get(entry.getKey());
+            if (choice != null) {
+                choice.count += otherChoice.count;
+                choice._latestIndex = Math.max(choice._latestIndex, otherChoice._latestIndex);
+            } else {
+                choices.put(entry.getKey(), otherChoice);
+            }
+        }
+        blankCount += other.blankCount;
+        errorCount += other.errorCount;
+    }
+
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
         hasError = false;
@@ -122,6 +167,54 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
         return false;
     }
 
+    @Override
+    public void unvisit(Project project, int rowIndex, Row row) {
+        ExpressionNominalValueGrouper contribution = new ExpressionNominalValueGrouper(_evaluable, _columnName, _cellIndex);
+        contribution.visit(project, rowIndex, row);
+
+        for (Object key : contribution.choices.keySet()) {
+            IndexedNominalFacetChoice choice = choices.get(key);
+            if (choice != null) {
+                choice.count--;
+                // the row can be visited again
+                choice._latestIndex = -1;
+                if (choice.count <= 0) {
+                    choices.remove(key);
+                }
+            }
+        }
+        blankCount -= contribution.blankCount;
+        errorCount -= contribution.errorCount;
+    }
+
+    @Override
+    public ExpressionNominalValueGrouper copy() {
+        if (getClass() != ExpressionNominalValueGrouper.class || choices.size() > s_maxCopiedChoices) {
+            return null;
+        }
+        ExpressionNominalValueGrouper copy = new ExpressionNominalValueGrouper(_evaluable, _columnName, _cellIndex);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public boolean copyFrom(IncrementalRowVisitor other) {
+        if (other.getClass() != getClass()) {
+            return false;
+        }
+        ExpressionNominalValueGrouper grouper = (ExpressionNominalValueGrouper) other;
+        if (grouper._cellIndex != _cellIndex || !Objects.equals(grouper._columnName, _columnName)) {
+            return false;
+        }
+        choices.clear();
+        for (Map.Entry<Object, IndexedNominalFacetChoice> entry : grouper.choices.entrySet()) {
+            choices.put(entry.getKey(), entry.getValue().copy());
+        }
+        blankCount = grouper.blankCount;
+        errorCount = grouper.errorCount;
+        return true;
+    }
+
     @Override
     public boolean visit(Project project, Record record) {
         Properties bindings = ExpressionUtils.createBindings(project);
@@ -180,7 +273,8 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
             IndexedNominalFacetChoice facetChoice = choices.get(valueString);
 
             if (facetChoice != null) {
-                if (facetChoice._latestIndex < index) {
+                // rows (or records) are visited in increasing order, except when updating results incrementally
+                if (facetChoice._latestIndex != index) {
                     facetChoice._latestIndex = index;
                     facetChoice.count++;
                 }
@@ -206,6 +300,10 @@ public class ExpressionNominalValueGrouper implements RowVisitor, RecordVisitor
                 return getChoiceValueCountMultiple(value);
             }
 
+            @Override
+            public boolean isThreadSafe() {
+                return _evaluable.isThreadSafe();
+            }
         };
     }
 
@@ -36,8 +36,9 @@ package com.google.refine.browsing.util;
 import java.util.Collection;
 import java.util.Properties;
 
-import com.google.refine.browsing.RecordVisitor;
-import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.IncrementalRowVisitor;
+import com.google.refine.browsing.ParallelRecordVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
@@ -46,7 +47,7 @@ import com.google.refine.model.Row;
 /**
  * Visit matched rows or records and slot them into bins based on the numbers computed from a given expression.
  */
-public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
+public class ExpressionNumericValueBinner implements ParallelRowVisitor, ParallelRecordVisitor, IncrementalRowVisitor {
 
     /*
      * Configuration
@@ -87,6 +88,74 @@ public class ExpressionNumericValueBinner implements RowVisitor, RecordVisitor {
         // nothing to do
     }
 
+    @Override
+    public ExpressionNumericValueBinner fork() {
+        if (getClass() != ExpressionNumericValueBinner.class || !_rowEvaluable.isThreadSafe()) {
+            return null;
+        }
+        return new ExpressionNumericValueBinner(_rowEvaluable, _index);
+    }
+
+    @Override
+    public void combine(ParallelRowVisitor other) {
+        combine((ExpressionNumericValueBinner) other);
+    }
+
+    @Override
+    public void combine(ParallelRecordVisitor other) {
+        combine((ExpressionNumericValueBinner) other);
+    }
+
+    protected void combine(ExpressionNumericValueBinner other) {
+        combine(other, 1);
+    }
+
+    protected void combine(ExpressionNumericValueBinner other, int sign) {
+        for (int b = 0; b < bins.length; b++) {
+            bins[b] += sign * other.bins[b];
+        }
+        numericCount += sign * other.numericCount;
+        nonNumericCount += sign * other.nonNumericCount;
+        blankCount += sign * other.blankCount;
+        errorCount += sign * other.errorCount;
+    }
+
+    @Override
+    public void unvisit(Project project, int rowIndex, Row row) {
+        ExpressionNumericValueBinner contribution = new ExpressionNumericValueBinner(_rowEvaluable, _index);
+        contribution.visit(project, rowIndex, row);
+        combine(contribution, -1);
+    }
+
+    @Override
+    public ExpressionNumericValueBinner copy() {
+        if (getClass() != ExpressionNumericValueBinner.class) {
+            return null;
+        }
+        ExpressionNumericValueBinner copy = new ExpressionNumericValueBinner(_rowEvaluable, _index);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    @Override
+    public boolean copyFrom(IncrementalRowVisitor other) {
+        if (other.getClass() != getClass()) {
+            return false;
+        }
+        ExpressionNumericValueBinner binner = (ExpressionNumericValueBinner) other;
+        // the bins must be the same, which they are not anymore if the base index was computed again differently
+        if (binner.bins.length != bins.length || binner._index.getMin() != _index.getMin()
+                || binner._index.getStep() != _index.getStep()) {
+            return false;
+        }
+        System.arraycopy(binner.bins, 0, bins, 0, bins.length);
+        numericCount = binner.numericCount;
+        nonNumericCount = binner.nonNumericCount;
+        blankCount = binner.blankCount;
+        errorCount = binner.errorCount;
+        return true;
+    }
+
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
         resetFlags();
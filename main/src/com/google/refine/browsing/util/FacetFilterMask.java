@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+
+import com.google.refine.browsing.FilteredRecords;
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.IndexedRowFilter;
+import com.google.refine.browsing.RecordFilter;
+import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+
+/**
+ * Evaluates the filters of several facets in a single pass over the project, so that the rows (or records) seen by
+ * each facet can then be enumerated without evaluating any filter again.
+ * <p>
+ * The rows (or records) matched by each filter are stored in a compressed bitmap. Bitmaps which are already known,
+ * for instance because they were cached from a previous computation, can be supplied to skip the evaluation of the
+ * corresponding filters. The rows visible to a facet, which must ignore its own filter, are then obtained by
+ * intersecting the bitmaps of all other facets.
+ */
+public class FacetFilterMask {
+
+    /**
+     * The rows or records matched by each filter, or null for filters which do not constrain anything.
+     */
+    final protected RoaringBitmap[] _selections;
+    /**
+     * _prefixes[i] is the intersection of the first i selections, _suffixes[i] the intersection of the selections
+     * from i onwards. Null stands for all rows or records.
+     */
+    final protected RoaringBitmap[] _prefixes;
+    final protected RoaringBitmap[] _suffixes;
+    final protected int _size;
+    final protected boolean _recordBased;
+
+    protected FacetFilterMask(RoaringBitmap[] selections, int size, boolean recordBased) {
+        _selections = selections;
+        _size = size;
+        _recordBased = recordBased;
+
+        int n = selections.length;
+        _prefixes = new RoaringBitmap[n + 1];
+        _suffixes = new RoaringBitmap[n + 1];
+        for (int f = 0; f < n; f++) {
+            _prefixes[f + 1] = intersect(_prefixes[f], selections[f]);
+        }
+        for (int f = n - 1; f >= 0; f--) {
+            _suffixes[f] = intersect(selections[f], _suffixes[f + 1]);
+        }
+    }
+
+    static protected RoaringBitmap intersect(RoaringBitmap a, RoaringBitmap b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else {
+            return RoaringBitmap.and(a, b);
+        }
+    }
+
+    static protected List<RoaringBitmapWriter<RoaringBitmap>> createWriters(int n, boolean[] evaluate) {
+        List<RoaringBitmapWriter<RoaringBitmap>> writers = new ArrayList<>(n);
+        for (int f = 0; f < n; f++) {
+            writers.add(evaluate[f] ? RoaringBitmapWriter.writer().runCompress(true).get() : null);
+        }
+        return writers;
+    }
+
+    static protected RoaringBitmap[] collect(List<RoaringBitmapWriter<RoaringBitmap>> writers, RoaringBitmap[] known) {
+        RoaringBitmap[] selections = new RoaringBitmap[writers.size()];
+        for (int f = 0; f < selections.length; f++) {
+            if (writers.get(f) != null) {
+                selections[f] = writers.get(f).get();
+                selections[f].runOptimize();
+            } else if (known != null) {
+                selections[f] = known[f];
+            }
+        }
+        return selections;
+    }
+
+    /**
+     * Evaluates the given row filters on all rows of the project.
+     * 
+     * @param project
+     *            the project to scan
+     * @param rowFilters
+     *            one filter per facet, in facet order. Null entries are allowed for facets which do not constrain any
+     *            row.
+     */
+    static public FacetFilterMask computeForRows(Project project, List<RowFilter> rowFilters) {
+        return computeForRows(project, rowFilters, null);
+    }
+
+    /**
+     * Evaluates the given row filters on all rows of the project, except for those whose selection is already known.
+     * 
+     * @param project
+     *            the project to scan
+     * @param rowFilters
+     *            one filter per facet, in facet order. Null entries are allowed for facets which do not constrain any
+     *            row.
+     * @param known
+     *            the rows already known to be matched by each filter, with null entries for filters which need to be
+     *            evaluated. Can be null.
+     */
+    static public FacetFilterMask computeForRows(Project project, List<RowFilter> rowFilters, RoaringBitmap[] known) {
+        RowFilter[] filters = rowFilters.toArray(new RowFilter[0]);
+        int n = filters.length;
+        boolean[] evaluate = new boolean[n];
+        boolean scan = false;
+        for (int f = 0; f < n; f++) {
+            evaluate[f] = filters[f] != null && (known == null || known[f] == null);
+            scan |= evaluate[f];
+        }
+        List<RoaringBitmapWriter<RoaringBitmap>> writers = createWriters(n, evaluate);
+
+        // filters backed by an index only need to be evaluated on their candidate rows
+        RoaringBitmap[] candidates = new RoaringBitmap[n];
+        boolean[] inverted = new boolean[n];
+        for (int f = 0; f < n; f++) {
+            if (evaluate[f] && filters[f] instanceof IndexedRowFilter) {
+                IndexedRowFilter filter = (IndexedRowFilter) filters[f];
+                candidates[f] = filter.getCandidateRows(project);
+                inverted[f] = filter.isInverted();
+            }
+        }
+
+        int c = project.rows.size();
+        if (scan) {
+            for (int rowIndex = 0; rowIndex < c; rowIndex++) {
+                Row row = project.rows.get(rowIndex);
+                for (int f = 0; f < n; f++) {
+                    if (!evaluate[f]) {
+                        continue;
+                    }
+                    boolean matched = candidates[f] != null && !candidates[f].contains(rowIndex)
+                            ? inverted[f]
+                            : filters[f].filterRow(project, rowIndex, row);
+                    if (matched) {
+                        writers.get(f).add(rowIndex);
+                    }
+                }
+            }
+        }
+        return new FacetFilterMask(collect(writers, known), c, false);
+    }
+
+    /**
+     * Evaluates the given record filters on all records of the project.
+     * 
+     * @param project
+     *            the project to scan
+     * @param recordFilters
+     *            one filter per facet, in facet order. Null entries are allowed for facets which do not constrain any
+     *            record.
+     */
+    static public FacetFilterMask computeForRecords(Project project, List<RecordFilter> recordFilters) {
+        return computeForRecords(project, recordFilters, null);
+    }
+
+    /**
+     * Evaluates the given record filters on all records of the project, except for those whose selection is already
+     * known.
+     * 
+     * @param project
+     *            the project to scan
+     * @param recordFilters
+     *            one filter per facet, in facet order. Null entries are allowed for facets which do not constrain any
+     *            record.
+     * @param known
+     *            the records already known to be matched by each filter, with null entries for filters which need to
+     *            be evaluated. Can be null.
+     */
+    static public FacetFilterMask computeForRecords(Project project, List<RecordFilter> recordFilters, RoaringBitmap[] known) {
+        RecordFilter[] filters = recordFilters.toArray(new RecordFilter[0]);
+        int n = filters.length;
+        boolean[] evaluate = new boolean[n];
+        boolean scan = false;
+        for (int f = 0; f < n; f++) {
+            evaluate[f] = filters[f] != null && (known == null || known[f] == null);
+            scan |= evaluate[f];
+        }
+        List<RoaringBitmapWriter<RoaringBitmap>> writers = createWriters(n, evaluate);
+
+        int c = project.recordModel.getRecordCount();
+        if (scan) {
+            for (int r = 0; r < c; r++) {
+                Record record = project.recordModel.getRecord(r);
+                for (int f = 0; f < n; f++) {
+                    if (evaluate[f] && filters[f].filterRecord(project, record)) {
+                        writers.get(f).add(r);
+                    }
+                }
+            }
+        }
+        return new FacetFilterMask(collect(writers, known), c, true);
+    }
+
+    /**
+     * @return the rows (or records) matched by the filter at the given position, or null if that filter does not
+     *         constrain anything
+     */
+    public RoaringBitmap getSelection(int f) {
+        return _selections[f];
+    }
+
+    /**
+     * @param except
+     *            the position of the filter to ignore, or -1 to require all filters to match
+     * @return the rows (or records) matched by all filters but the excepted one, or null if all of them match
+     */
+    public RoaringBitmap getMatching(int except) {
+        if (except < 0) {
+            return _prefixes[_selections.length];
+        }
+        return intersect(_prefixes[except], _suffixes[except + 1]);
+    }
+
+    /**
+     * @return the rows matching all filters except the one at the given position. In record mode, the rows of the
+     *         matching records are returned.
+     */
+    public FilteredRows getFilteredRows(int except) {
+        if (_recordBased) {
+            return new FilteredRecordsAsFilteredRows(getFilteredRecords(except));
+        }
+        RoaringBitmap matching = getMatching(except);
+        return new FilteredRows() {
+
+            @Override
+            public void accept(Project project, RowVisitor visitor) {
+                try {
+                    visitor.start(project);
+
+                    int c = Math.min(_size, project.rows.size());
+                    ParallelScan.visitRows(c, visitor, (v, from, to) -> {
+                        IntIterator it = iterate(matching, from, to);
+                        while (it.hasNext()) {
+                            int rowIndex = it.next();
+                            if (v.visit(project, rowIndex, project.rows.get(rowIndex))) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    });
+                } finally {
+                    visitor.end(project);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the records matching all filters except the one at the given position
+     */
+    public FilteredRecords getFilteredRecords(int except) {
+        if (!_recordBased) {
+            throw new InternalError("This method should not be called on a row-based mask.");
+        }
+        RoaringBitmap matching = getMatching(except);
+        return new FilteredRecords() {
+
+            @Override
+            public void accept(Project project, RecordVisitor visitor) {
+                try {
+                    visitor.start(project);
+
+                    int c = Math.min(_size, project.recordModel.getRecordCount());
+                    ParallelScan.visitRecords(c, visitor, (v, from, to) -> {
+                        IntIterator it = iterate(matching, from, to);
+                        while (it.hasNext()) {
+                            if (v.visit(project, project.recordModel.getRecord(it.next()))) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    });
+                } finally {
+                    visitor.end(project);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the indices in [from, to) which belong to the selection, null standing for all indices
+     */
+    static protected IntIterator iterate(RoaringBitmap selection, int from, int to) {
+        PeekableIntIterator it = selection == null ? null : selection.getIntIterator();
+        if (it != null) {
+            it.advanceIfNeeded(from);
+        }
+        return new RangeIterator(it, from, to);
+    }
+
+    /**
+     * Iterates over the indices of a selection below a bound, or over all indices of a range if there is no selection.
+     */
+    static protected class RangeIterator implements IntIterator {
+
+        final PeekableIntIterator _it;
+        final int _to;
+        int _next;
+
+        RangeIterator(PeekableIntIterator it, int from, int to) {
+            _it = it;
+            _next = from;
+            _to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (_it != null) {
+                return _it.hasNext() && _it.peekNext() < _to;
+            }
+            return _next < _to;
+        }
+
+        @Override
+        public int next() {
+            return _it != null ? _it.next() : _next++;
+        }
+
+        @Override
+        public IntIterator clone() {
+            return new RangeIterator(_it == null ? null : _it.clone(), _next, _to);
+        }
+    }
+}
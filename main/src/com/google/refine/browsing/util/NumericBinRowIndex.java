@@ -34,11 +34,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.browsing.util;
 
 import java.util.List;
-import java.util.Properties;
 
-import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
-import com.google.refine.model.Row;
 
 public class NumericBinRowIndex extends NumericBinIndex {
 
@@ -51,16 +48,14 @@ public class NumericBinRowIndex extends NumericBinIndex {
     protected void iterate(
             Project project, RowEvaluable rowEvaluable, List<Double> allValues) {
 
-        Properties bindings = ExpressionUtils.createBindings(project);
+        List<Partition> partitions = ParallelScan.map(project.rows.size(), rowEvaluable.isThreadSafe(), (from, to) -> {
+            Partition partition = new Partition(from, to, false);
+            partition.iterate(project, rowEvaluable, partition.values);
+            return partition;
+        });
 
-        for (int i = 0; i < project.rows.size(); i++) {
-            Row row = project.rows.get(i);
-
-            preprocessing();
-
-            processRow(project, rowEvaluable, allValues, i, row, bindings);
-
-            postprocessing();
+        for (Partition partition : partitions) {
+            combine(partition, allValues);
         }
     }
 
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.google.refine.browsing.ParallelRecordVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
+import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.browsing.RowVisitor;
+
+/**
+ * Splits scans over the rows or records of a project into contiguous ranges which are processed concurrently on a
+ * shared fork-join pool. Results are always returned in the order of the ranges, so that they can be merged
+ * deterministically.
+ * <p>
+ * The number of threads is set by the <code>refine.scan.parallelism</code> system property (by default, the number of
+ * available processors, 1 disabling parallel scans) and the minimum number of rows or records per range by
+ * <code>refine.scan.partition_size</code>.
+ * <p>
+ * Scans which evaluate expressions that are not {@link com.google.refine.expr.Evaluable#isThreadSafe() thread-safe}
+ * are run on the calling thread only.
+ */
+public class ParallelScan {
+
+    static protected int s_parallelism = Integer.getInteger("refine.scan.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    static protected int s_minPartitionSize = Integer.getInteger("refine.scan.partition_size", 50000);
+    static private ForkJoinPool s_pool;
+
+    /**
+     * Processes a range of rows or records.
+     */
+    @FunctionalInterface
+    public interface RangeTask<T> {
+
+        /**
+         * @param from
+         *            the first index of the range, inclusive
+         * @param to
+         *            the last index of the range, exclusive
+         */
+        public T run(int from, int to);
+    }
+
+    /**
+     * Visits a range of rows or records with a given visitor.
+     */
+    @FunctionalInterface
+    public interface RangeVisit<V> {
+
+        /**
+         * @return true if the visitor asked to stop
+         */
+        public boolean visit(V visitor, int from, int to);
+    }
+
+    static synchronized protected ForkJoinPool getPool() {
+        if (s_pool == null) {
+            s_pool = new ForkJoinPool(s_parallelism);
+        }
+        return s_pool;
+    }
+
+    static public int getParallelism() {
+        return s_parallelism;
+    }
+
+    static public int getMinPartitionSize() {
+        return s_minPartitionSize;
+    }
+
+    /**
+     * Changes the number of threads and the minimum partition size used by subsequent scans.
+     */
+    static synchronized public void configure(int parallelism, int minPartitionSize) {
+        if (s_pool != null && parallelism != s_parallelism) {
+            s_pool.shutdown();
+            s_pool = null;
+        }
+        s_parallelism = Math.max(1, parallelism);
+        s_minPartitionSize = Math.max(1, minPartitionSize);
+    }
+
+    /**
+     * @return the number of ranges a scan over the given number of rows or records is split into
+     */
+    static public int getPartitionCount(int count) {
+        return Math.max(1, Math.min(s_parallelism, count / s_minPartitionSize));
+    }
+
+    /**
+     * Splits [0, count) into contiguous ranges and runs the task on each of them, concurrently if there is more than one
+     * range.
+     * 
+     * @return the results of the task, in the order of the ranges
+     */
+    static public <T> List<T> map(int count, RangeTask<T> task) {
+        return map(count, true, task);
+    }
+
+    /**
+     * Splits [0, count) into contiguous ranges and runs the task on each of them, concurrently if there is more than one
+     * range and the task is thread-safe. Otherwise, the task is run once on the whole range.
+     * 
+     * @return the results of the task, in the order of the ranges
+     */
+    static public <T> List<T> map(int count, boolean threadSafe, RangeTask<T> task) {
+        int partitions = threadSafe ? getPartitionCount(count) : 1;
+        if (partitions <= 1) {
+            return Collections.singletonList(task.run(0, count));
+        }
+        return map(count, partitions, (p, from, to) -> task.run(from, to));
+    }
+
+    @FunctionalInterface
+    protected interface PartitionTask<T> {
+
+        public T run(int partition, int from, int to);
+    }
+
+    static protected <T> List<T> map(int count, int partitions, PartitionTask<T> task) {
+        ForkJoinPool pool = getPool();
+        List<ForkJoinTask<T>> futures = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            int from = (int) ((long) count * p / partitions);
+            int to = (int) ((long) count * (p + 1) / partitions);
+            futures.add(pool.submit(() -> task.run(partition, from, to)));
+        }
+
+        List<T> results = new ArrayList<>(partitions);
+        for (ForkJoinTask<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Visits the rows with indices in [0, count), splitting the visit across copies of the visitor if it is a
+     * {@link ParallelRowVisitor}. The caller is responsible for calling start() and end() on the visitor.
+     * 
+     * @param visit
+     *            visits a range of rows with a given visitor, returning true to stop
+     */
+    static public void visitRows(int count, RowVisitor visitor, RangeVisit<RowVisitor> visit) {
+        visitRows(count, visitor, true, visit);
+    }
+
+    /**
+     * Visits the rows with indices in [0, count), as {@link #visitRows(int, RowVisitor, RangeVisit)} does, but only
+     * splits the visit if the range visit itself is thread-safe, for instance if the filters it applies are.
+     */
+    static public void visitRows(int count, RowVisitor visitor, boolean threadSafe, RangeVisit<RowVisitor> visit) {
+        int partitions = threadSafe ? getPartitionCount(count) : 1;
+        if (partitions > 1 && visitor instanceof ParallelRowVisitor) {
+            ParallelRowVisitor parallelVisitor = (ParallelRowVisitor) visitor;
+            List<ParallelRowVisitor> forks = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                ParallelRowVisitor fork = parallelVisitor.fork();
+                if (fork == null) {
+                    forks = null;
+                    break;
+                }
+                forks.add(fork);
+            }
+            if (forks != null) {
+                List<ParallelRowVisitor> visitors = forks;
+                List<ParallelRowVisitor> results = map(count, partitions, (p, from, to) -> {
+                    ParallelRowVisitor fork = visitors.get(p);
+                    visit.visit(fork, from, to);
+                    return fork;
+                });
+                for (ParallelRowVisitor result : results) {
+                    parallelVisitor.combine(result);
+                }
+                return;
+            }
+        }
+        visit.visit(visitor, 0, count);
+    }
+
+    /**
+     * Visits the records with indices in [0, count), splitting the visit across copies of the visitor if it is a
+     * {@link ParallelRecordVisitor}. The caller is responsible for calling start() and end() on the visitor.
+     * 
+     * @param visit
+     *            visits a range of records with a given visitor, returning true to stop
+     */
+    static public void visitRecords(int count, RecordVisitor visitor, RangeVisit<RecordVisitor> visit) {
+        visitRecords(count, visitor, true, visit);
+    }
+
+    /**
+     * Visits the records with indices in [0, count), as {@link #visitRecords(int, RecordVisitor, RangeVisit)} does, but
+     * only splits the visit if the range visit itself is thread-safe, for instance if the filters it applies are.
+     */
+    static public void visitRecords(int count, RecordVisitor visitor, boolean threadSafe, RangeVisit<RecordVisitor> visit) {
+        int partitions = threadSafe ? getPartitionCount(count) : 1;
+        if (partitions > 1 && visitor instanceof ParallelRecordVisitor) {
+            ParallelRecordVisitor parallelVisitor = (ParallelRecordVisitor) visitor;
+            List<ParallelRecordVisitor> forks = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                ParallelRecordVisitor fork = parallelVisitor.fork();
+                if (fork == null) {
+                    forks = null;
+                    break;
+                }
+                forks.add(fork);
+            }
+            if (forks != null) {
+                List<ParallelRecordVisitor> visitors = forks;
+                List<ParallelRecordVisitor> results = map(count, partitions, (p, from, to) -> {
+                    ParallelRecordVisitor fork = visitors.get(p);
+                    visit.visit(fork, from, to);
+                    return fork;
+                });
+                for (ParallelRecordVisitor result : results) {
+                    parallelVisitor.combine(result);
+                }
+                return;
+            }
+        }
+        visit.visit(visitor, 0, count);
+    }
+}
@@ -41,4 +41,12 @@ import com.google.refine.model.Row;
 public interface RowEvaluable {
 
     public Object eval(Project project, int rowIndex, Row row, Properties bindings);
+
+    /**
+     * @return whether rows can be evaluated by several threads at once
+     * @see com.google.refine.expr.Evaluable#isThreadSafe()
+     */
+    default public boolean isThreadSafe() {
+        return false;
+    }
 }
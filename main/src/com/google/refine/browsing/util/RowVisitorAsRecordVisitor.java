@@ -33,12 +33,17 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.browsing.util;
 
-import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.browsing.ParallelRecordVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
 
-public class RowVisitorAsRecordVisitor implements RecordVisitor {
+/**
+ * Visits the rows of each record. The visit can be split across records when the underlying row visitor is a
+ * {@link ParallelRowVisitor}.
+ */
+public class RowVisitorAsRecordVisitor implements ParallelRecordVisitor {
 
     final protected RowVisitor _rowVisitor;
 
@@ -65,4 +70,18 @@ public class RowVisitorAsRecordVisitor implements RecordVisitor {
         }
         return false;
     }
+
+    @Override
+    public ParallelRecordVisitor fork() {
+        if (_rowVisitor instanceof ParallelRowVisitor) {
+            ParallelRowVisitor fork = ((ParallelRowVisitor) _rowVisitor).fork();
+            return fork == null ? null : new RowVisitorAsRecordVisitor(fork);
+        }
+        return null;
+    }
+
+    @Override
+    public void combine(ParallelRecordVisitor other) {
+        ((ParallelRowVisitor) _rowVisitor).combine((ParallelRowVisitor) ((RowVisitorAsRecordVisitor) other)._rowVisitor);
+    }
 }
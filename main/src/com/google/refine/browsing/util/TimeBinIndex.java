@@ -41,6 +41,7 @@ import java.util.Properties;
 
 import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
+import com.google.refine.model.Record;
 import com.google.refine.model.Row;
 
 /**
@@ -86,6 +87,60 @@ abstract public class TimeBinIndex {
 
     abstract protected void iterate(Project project, RowEvaluable rowEvaluable, List<Long> allValues);
 
+    /**
+     * Accumulates the values and counts of a range of rows or records, so that ranges can be processed concurrently
+     * and then combined in order.
+     */
+    static protected class Partition extends TimeBinIndex {
+
+        final protected List<Long> values = new ArrayList<Long>();
+        final protected int _from;
+        final protected int _to;
+        final protected boolean _recordBased;
+
+        /**
+         * @param from
+         *            the first row or record of the range, inclusive
+         * @param to
+         *            the last row or record of the range, exclusive
+         * @param recordBased
+         *            whether the range is one of records rather than rows
+         */
+        protected Partition(int from, int to, boolean recordBased) {
+            _min = Long.MAX_VALUE;
+            _max = Long.MIN_VALUE;
+            _from = from;
+            _to = to;
+            _recordBased = recordBased;
+        }
+
+        @Override
+        protected void iterate(Project project, RowEvaluable rowEvaluable, List<Long> allValues) {
+            Properties bindings = ExpressionUtils.createBindings(project);
+
+            for (int r = _from; r < _to; r++) {
+                int fromRowIndex = r;
+                int toRowIndex = r + 1;
+                if (_recordBased) {
+                    Record record = project.recordModel.getRecord(r);
+                    fromRowIndex = record.fromRowIndex;
+                    toRowIndex = record.toRowIndex;
+                }
+
+                preprocessing();
+
+                for (int i = fromRowIndex; i < toRowIndex; i++) {
+                    processRow(project, rowEvaluable, allValues, i, project.rows.get(i), bindings);
+                }
+
+                postprocessing();
+            }
+        }
+    }
+
+    protected TimeBinIndex() {
+    }
+
     public TimeBinIndex(Project project, RowEvaluable rowEvaluable) {
         _min = Long.MAX_VALUE;
         _max = Long.MIN_VALUE;
@@ -247,4 +302,14 @@ abstract public class TimeBinIndex {
         allValues.add(v);
     }
 
+    protected void combine(Partition partition, List<Long> allValues) {
+        _totalValueCount += partition._totalValueCount;
+        _timeRowCount += partition._timeRowCount;
+        _nonTimeRowCount += partition._nonTimeRowCount;
+        _blankRowCount += partition._blankRowCount;
+        _errorRowCount += partition._errorRowCount;
+        _min = Math.min(_min, partition._min);
+        _max = Math.max(_max, partition._max);
+        allValues.addAll(partition.values);
+    }
 }
@@ -34,12 +34,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.browsing.util;
 
 import java.util.List;
-import java.util.Properties;
 
-import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.model.Project;
-import com.google.refine.model.Record;
-import com.google.refine.model.Row;
 
 public class TimeBinRecordIndex extends TimeBinIndex {
 
@@ -50,21 +46,14 @@ public class TimeBinRecordIndex extends TimeBinIndex {
     @Override
     protected void iterate(Project project, RowEvaluable rowEvaluable, List<Long> allValues) {
 
-        Properties bindings = ExpressionUtils.createBindings(project);
-        int count = project.recordModel.getRecordCount();
+        List<Partition> partitions = ParallelScan.map(project.recordModel.getRecordCount(), rowEvaluable.isThreadSafe(), (from, to) -> {
+            Partition partition = new Partition(from, to, true);
+            partition.iterate(project, rowEvaluable, partition.values);
+            return partition;
+        });
 
-        for (int r = 0; r < count; r++) {
-            Record record = project.recordModel.getRecord(r);
-
-            preprocessing();
-
-            for (int i = record.fromRowIndex; i < record.toRowIndex; i++) {
-                Row row = project.rows.get(i);
-
-                processRow(project, rowEvaluable, allValues, i, row, bindings);
-            }
-
-            postprocessing();
+        for (Partition partition : partitions) {
+            combine(partition, allValues);
         }
     }
 
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * An inverted index from the trigrams of the lowercased values of a column to the rows containing them. A row can only
+ * contain a string if it contains all of its trigrams, so text searches use this index to only check the few rows
+ * which can match, instead of all rows of the project.
+ * <p>
+ * The index is built on the first search in a column with enough rows, and cached in the precomputed values of the
+ * column, which are cleared whenever its cells change or rows are added, removed or reordered.
+ */
+public class TrigramIndex {
+
+    static final public String PRECOMPUTE_KEY = "text-search:trigrams";
+
+    /**
+     * Columns with fewer rows are searched by scanning all of them, which is fast enough.
+     */
+    static protected int s_minRowCount = Integer.getInteger("refine.text_index.min_rows", 10000);
+
+    final protected int _rowCount;
+    final protected long[] _trigrams; // sorted
+    final protected RoaringBitmap[] _rows; // rows containing each trigram
+
+    protected TrigramIndex(int rowCount, long[] trigrams, RoaringBitmap[] rows) {
+        _rowCount = rowCount;
+        _trigrams = trigrams;
+        _rows = rows;
+    }
+
+    /**
+     * Retrieves the trigram index of a column, building it if needed.
+     * 
+     * @return the index, or null if the project has too few rows to need one
+     */
+    static public TrigramIndex get(Project project, Column column) {
+        int rowCount = project.rows.size();
+        if (rowCount < s_minRowCount) {
+            return null;
+        }
+        synchronized (column) {
+            TrigramIndex index = (TrigramIndex) column.getPrecompute(PRECOMPUTE_KEY);
+            if (index == null || index._rowCount != rowCount) {
+                index = build(project, column.getCellIndex());
+                column.setPrecompute(PRECOMPUTE_KEY, index);
+            }
+            return index;
+        }
+    }
+
+    static protected TrigramIndex build(Project project, int cellIndex) {
+        int rowCount = project.rows.size();
+        List<Map<Long, RoaringBitmap>> partitions = ParallelScan.map(rowCount, (from, to) -> {
+            Map<Long, RoaringBitmap> rows = new HashMap<>();
+            for (int rowIndex = from; rowIndex < to; rowIndex++) {
+                Row row = project.rows.get(rowIndex);
+                Object value = row.getCellValue(cellIndex);
+                if (value == null) {
+                    continue;
+                }
+                String s = (value instanceof String ? (String) value : value.toString()).toLowerCase();
+                for (int i = 0; i + 3 <= s.length(); i++) {
+                    rows.computeIfAbsent(pack(s, i), k -> new RoaringBitmap()).add(rowIndex);
+                }
+            }
+            return rows;
+        });
+
+        Map<Long, RoaringBitmap> merged = partitions.get(0);
+        for (Map<Long, RoaringBitmap> partition : partitions.subList(1, partitions.size())) {
+            for (Map.Entry<Long, RoaringBitmap> entry : partition.entrySet()) {
+                RoaringBitmap rows = merged.putIfAbsent(entry.getKey(), entry.getValue());
+                if (rows != null) {
+                    rows.or(entry.getValue());
+                }
+            }
+        }
+
+        List<Long> keys = new ArrayList<>(merged.keySet());
+        long[] trigrams = new long[keys.size()];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = keys.get(i);
+        }
+        Arrays.sort(trigrams);
+
+        RoaringBitmap[] rows = new RoaringBitmap[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            rows[i] = merged.get(trigrams[i]);
+            rows[i].runOptimize();
+        }
+        return new TrigramIndex(rowCount, trigrams, rows);
+    }
+
+    static protected long pack(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * @param text
+     *            a lowercased string searched for
+     * @return the rows whose lowercased value may contain that string, or null if the string is too short to rule out
+     *         any row
+     */
+    public RoaringBitmap getCandidateRows(String text) {
+        if (text.length() < 3) {
+            return null;
+        }
+        List<RoaringBitmap> bitmaps = new ArrayList<>(text.length() - 2);
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int position = Arrays.binarySearch(_trigrams, pack(text, i));
+            if (position < 0) {
+                return new RoaringBitmap();
+            }
+            bitmaps.add(_rows[position]);
+        }
+        return FastAggregation.and(bitmaps.iterator());
+    }
+}
@@ -54,7 +54,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.FilteredRows;
-import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.ParallelRowVisitor;
 import com.google.refine.clustering.ClusteredEntry;
 import com.google.refine.clustering.Clusterer;
 import com.google.refine.clustering.ClustererConfig;
@@ -128,7 +128,7 @@ public class BinningClusterer extends Clusterer {
 
     List<Map<String, Integer>> _clusters;
 
-    class BinningRowVisitor implements RowVisitor {
+    class BinningRowVisitor implements ParallelRowVisitor {
 
         Keyer _keyer;
         Object[] _params;
@@ -180,6 +180,28 @@ public class BinningClusterer extends Clusterer {
             return false;
         }
 
+        @Override
+        public ParallelRowVisitor fork() {
+            if (!_keyer.isThreadSafe()) {
+                return null;
+            }
+            return new BinningRowVisitor(_keyer, _parameters);
+        }
+
+        @Override
+        public void combine(ParallelRowVisitor other) {
+            for (Entry<String, Map<String, Integer>> entry : ((BinningRowVisitor) other)._map.entrySet()) {
+                Map<String, Integer> m = _map.get(entry.getKey());
+                if (m == null) {
+                    _map.put(entry.getKey(), entry.getValue());
+                } else {
+                    for (Entry<String, Integer> count : entry.getValue().entrySet()) {
+                        m.merge(count.getKey(), count.getValue(), Integer::sum);
+                    }
+                }
+            }
+        }
+
         public Map<String, Map<String, Integer>> getMap() {
             return _map;
         }
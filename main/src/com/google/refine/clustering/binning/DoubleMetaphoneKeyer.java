@@ -49,4 +49,9 @@ public class DoubleMetaphoneKeyer extends Keyer {
         return _metaphone2.doubleMetaphone(s);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
 }
@@ -41,4 +41,12 @@ public abstract class Keyer {
 
     public abstract String key(String string, Object... params);
 
+    /**
+     * Whether this keyer can compute keys from several threads at once. Keyers which keep state in their instance
+     * should return false, which is the default: clustering with them then runs on a single thread.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
 }
@@ -49,4 +49,9 @@ public class MetaphoneKeyer extends Keyer {
         return _metaphone.metaphone(s);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
 }
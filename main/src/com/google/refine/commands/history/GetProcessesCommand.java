@@ -39,18 +39,37 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
 import com.google.refine.commands.Command;
 import com.google.refine.model.Project;
+import com.google.refine.process.ProcessManager;
 
 public class GetProcessesCommand extends Command {
 
+    protected static class ProcessesResponse {
+
+        @JsonUnwrapped
+        protected final ProcessManager processManager;
+
+        protected ProcessesResponse(ProcessManager processManager) {
+            this.processManager = processManager;
+        }
+
+        @JsonProperty("metrics")
+        public ProcessManager.Metrics getMetrics() {
+            return processManager.getMetrics();
+        }
+    }
+
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
         Project project = getProject(request);
 
-        respondJSON(response, project.processManager);
+        respondJSON(response, new ProcessesResponse(project.processManager));
     }
 
     @Override
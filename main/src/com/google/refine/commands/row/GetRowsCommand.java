@@ -49,8 +49,6 @@ import com.fasterxml.jackson.annotation.JsonUnwrapped;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.Engine.Mode;
-import com.google.refine.browsing.FilteredRecords;
-import com.google.refine.browsing.FilteredRows;
 import com.google.refine.browsing.RecordVisitor;
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.commands.Command;
@@ -60,6 +58,7 @@ import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
 import com.google.refine.model.Row;
+import com.google.refine.sorting.CachedSortOrder;
 import com.google.refine.sorting.SortingConfig;
 import com.google.refine.sorting.SortingRecordVisitor;
 import com.google.refine.sorting.SortingRowVisitor;
@@ -180,32 +179,14 @@ public class GetRowsCommand extends Command {
             } catch (IOException e) {
             }
 
-            if (engine.getMode() == Mode.RowBased) {
-                FilteredRows filteredRows = engine.getAllFilteredRows();
-                RowVisitor visitor = rwv;
-
-                if (sortingConfig != null) {
-                    SortingRowVisitor srv = new SortingRowVisitor(visitor);
-
-                    srv.initializeFromConfig(project, sortingConfig);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
-                    }
-                }
-                filteredRows.accept(project, visitor);
+            if (sortingConfig != null && sortingConfig.getCriteria().length > 0) {
+                String key = ParsingUtilities.mapper.writeValueAsString(getEngineConfig(request))
+                        + ParsingUtilities.mapper.writeValueAsString(sortingConfig);
+                visitSorted(project, engine, sortingConfig, key, rwv);
+            } else if (engine.getMode() == Mode.RowBased) {
+                engine.getAllFilteredRows().accept(project, rwv);
             } else {
-                FilteredRecords filteredRecords = engine.getFilteredRecords();
-                RecordVisitor visitor = rwv;
-
-                if (sortingConfig != null) {
-                    SortingRecordVisitor srv = new SortingRecordVisitor(visitor);
-
-                    srv.initializeFromConfig(project, sortingConfig);
-                    if (srv.hasCriteria()) {
-                        visitor = srv;
-                    }
-                }
-                filteredRecords.accept(project, visitor);
+                engine.getFilteredRecords().accept(project, rwv);
             }
 
             // Pool all the recons occurring in the rows seen
@@ -231,6 +212,49 @@ public class GetRowsCommand extends Command {
         }
     }
 
+    /**
+     * Visits the requested page of filtered rows or records, in sort order. The full sort order is cached, so that
+     * further pages of the same view are read from it directly. The first page is served without sorting everything,
+     * by only keeping track of the first rows or records in sort order.
+     */
+    protected void visitSorted(Project project, Engine engine, SortingConfig sortingConfig, String key, RowWritingVisitor rwv) {
+        boolean rowBased = engine.getMode() == Mode.RowBased;
+        long historyEntryID = project.history.getCurrentEntryID();
+        int[] order = CachedSortOrder.get(project, key, historyEntryID);
+
+        if (order == null && rwv.start == 0) {
+            if (rowBased) {
+                SortingRowVisitor srv = new SortingRowVisitor(rwv, rwv.limit);
+                srv.initializeFromConfig(project, sortingConfig);
+                engine.getAllFilteredRows().accept(project, srv);
+                rwv.total = srv.getCount();
+            } else {
+                SortingRecordVisitor srv = new SortingRecordVisitor(rwv, rwv.limit);
+                srv.initializeFromConfig(project, sortingConfig);
+                engine.getFilteredRecords().accept(project, srv);
+                rwv.total = srv.getCount();
+            }
+            return;
+        }
+
+        if (order == null) {
+            order = rowBased
+                    ? CachedSortOrder.sortRows(project, engine.getAllFilteredRows(), sortingConfig)
+                    : CachedSortOrder.sortRecords(project, engine.getFilteredRecords(), sortingConfig);
+            CachedSortOrder.put(project, key, historyEntryID, order);
+        }
+
+        int end = Math.min(order.length, rwv.start + rwv.limit);
+        for (int i = rwv.start; i < end; i++) {
+            if (rowBased) {
+                rwv.internalVisit(project, order[i], project.rows.get(order[i]));
+            } else {
+                rwv.internalVisit(project, project.recordModel.getRecord(order[i]));
+            }
+        }
+        rwv.total = order.length;
+    }
+
     static protected class RowWritingVisitor implements RowVisitor, RecordVisitor {
 
         final int start;
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.expr;
+
+import java.util.Properties;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * Bindings for evaluating expressions row by row. The variables set for each row by
+ * {@link ExpressionUtils#bind(Properties, Row, int, String, Cell)} are stored in fixed slots rather than in the
+ * underlying hash table, so that binding a row takes no lock, and the row and cell wrappers are only created when an
+ * expression reads them. Expressions can resolve variable names to slots once with {@link #getSlot(String)}.
+ * <p>
+ * All other variables (set by {@link Binder}s or by controls such as forEach) are stored as regular properties. Slot
+ * variables are read and written through {@link #get(Object)}, {@link #put(Object, Object)}, {@link #remove(Object)} and
+ * {@link #containsKey(Object)}, but are not listed when enumerating the properties.
+ */
+public class Bindings extends Properties {
+
+    private static final long serialVersionUID = -2735416217546326105L;
+
+    static public final int PROJECT = 0;
+    static public final int ROW_INDEX = 1;
+    static public final int ROW = 2;
+    static public final int CELLS = 3;
+    static public final int COLUMN_NAME = 4;
+    static public final int CELL = 5;
+    static public final int VALUE = 6;
+
+    static final private int SLOT_COUNT = 7;
+
+    /**
+     * Marks a slot whose value is computed from the bound row when first read.
+     */
+    static final private Object LAZY = new Object();
+
+    transient final protected Object[] _slots = new Object[SLOT_COUNT];
+
+    transient protected Row _row;
+    transient protected int _rowIndex;
+    transient protected String _cellColumnName;
+    transient protected Cell _cell;
+
+    transient protected Object[] _subexpressionValues;
+
+    public Bindings(Project project) {
+        _slots[PROJECT] = project;
+    }
+
+    /**
+     * @return the slot of the variable with the given name, or -1 if it is stored as a regular property
+     */
+    static public int getSlot(String name) {
+        switch (name) {
+            case "project":
+                return PROJECT;
+            case "rowIndex":
+                return ROW_INDEX;
+            case "row":
+                return ROW;
+            case "cells":
+                return CELLS;
+            case "columnName":
+                return COLUMN_NAME;
+            case "cell":
+                return CELL;
+            case "value":
+                return VALUE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Sets the variables describing a row and one of its cells.
+     */
+    public void bind(Row row, int rowIndex, String columnName, Cell cell) {
+        _row = row;
+        _rowIndex = rowIndex;
+        _cellColumnName = columnName;
+        _cell = cell;
+
+        _slots[ROW_INDEX] = LAZY;
+        _slots[ROW] = LAZY;
+        _slots[CELLS] = LAZY;
+        if (columnName != null) {
+            _slots[COLUMN_NAME] = columnName;
+        }
+        _slots[CELL] = cell == null ? null : LAZY;
+        _slots[VALUE] = cell == null ? null : cell.value;
+    }
+
+    /**
+     * @return the value of the variable in the given slot, or null if it is not set
+     */
+    public Object get(int slot) {
+        Object value = _slots[slot];
+        if (value == LAZY) {
+            value = wrap(slot);
+            _slots[slot] = value;
+        }
+        return value;
+    }
+
+    protected Object wrap(int slot) {
+        Project project = (Project) _slots[PROJECT];
+        switch (slot) {
+            case ROW_INDEX:
+                return _rowIndex;
+            case ROW:
+                return new WrappedRow(project, _rowIndex, _row);
+            case CELLS:
+                return new CellTuple(project, _row);
+            case CELL:
+                return new WrappedCell(project, _cellColumnName, _cell);
+            default:
+                throw new IllegalStateException("Slot " + slot + " cannot be computed lazily");
+        }
+    }
+
+    /**
+     * @return the values of the shared subexpressions of the expression being evaluated, or null if there are none
+     */
+    public Object[] getSubexpressionValues() {
+        return _subexpressionValues;
+    }
+
+    public void setSubexpressionValues(Object[] values) {
+        _subexpressionValues = values;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot >= 0 ? get(slot) : super.get(key);
+    }
+
+    @Override
+    public String getProperty(String key) {
+        Object value = get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot < 0) {
+            return super.put(key, value);
+        }
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        Object old = get(slot);
+        _slots[slot] = value;
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        if (slot < 0) {
+            return super.remove(key);
+        }
+        Object old = get(slot);
+        _slots[slot] = null;
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = key instanceof String ? getSlot((String) key) : -1;
+        return slot >= 0 ? _slots[slot] != null : super.containsKey(key);
+    }
+}
@@ -47,4 +47,13 @@ public interface Evaluable {
      * @return
      */
     public Object evaluate(Properties bindings);
+
+    /**
+     * Whether this expression can be evaluated by several threads at once, each with its own bindings. Expressions
+     * which keep state in their instance, such as those of scripting languages, should return false, which is the
+     * default: scans using them are then run on a single thread.
+     */
+    default public boolean isThreadSafe() {
+        return false;
+    }
 }
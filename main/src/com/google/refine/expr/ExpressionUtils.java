@@ -57,14 +57,12 @@ public class ExpressionUtils {
     }
 
     static public Properties createBindings(Project project) {
-        Properties bindings = new Properties();
+        Properties bindings = new Bindings(project);
 
         bindings.put("true", true);
         bindings.put("false", false);
         bindings.put("PI", Math.PI);
 
-        bindings.put("project", project);
-
         for (Binder binder : s_binders) {
             binder.initializeBindings(bindings, project);
         }
@@ -73,6 +71,20 @@ public class ExpressionUtils {
     }
 
     static public void bind(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
+        if (bindings instanceof Bindings) {
+            ((Bindings) bindings).bind(row, rowIndex, columnName, cell);
+        } else {
+            bindProperties(bindings, row, rowIndex, columnName, cell);
+        }
+
+        if (!s_binders.isEmpty()) {
+            for (Binder binder : s_binders) {
+                binder.bind(bindings, row, rowIndex, columnName, cell);
+            }
+        }
+    }
+
+    static protected void bindProperties(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
         Project project = (Project) bindings.get("project");
 
         bindings.put("rowIndex", rowIndex);
@@ -94,10 +106,6 @@ public class ExpressionUtils {
                 bindings.put("value", cell.value);
             }
         }
-
-        for (Binder binder : s_binders) {
-            binder.bind(bindings, row, rowIndex, columnName, cell);
-        }
     }
 
     static public boolean isError(Object o) {
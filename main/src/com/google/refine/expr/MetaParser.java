@@ -38,13 +38,19 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import clojure.lang.IFn;
 import clojure.lang.RT;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
+import com.google.refine.grel.Optimizer;
 import com.google.refine.grel.Parser;
+import com.google.refine.grel.compiler.GrelCompiler;
 
 abstract public class MetaParser {
 
@@ -66,6 +72,18 @@ abstract public class MetaParser {
 
     static final protected Map<String, LanguageInfo> s_languages = new HashMap<String, LanguageInfo>();
 
+    /**
+     * Parsed expressions, keyed by language prefix and source text. The same expressions get parsed over and over again
+     * (once per facet refresh, preview keystroke or operation), and an Evaluable holds no per-evaluation state, so a
+     * single instance can be shared between callers and threads. Expressions which fail to parse are not cached.
+     */
+    static final protected Cache<String, Evaluable> s_cache = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger("refine.expression_cache.size", 1000))
+            .recordStats()
+            .build();
+
+    static final private Pattern s_nonRowLocalPattern = Pattern.compile("\\b(record|cross|facetCount)\\b");
+
     // TODO: We should switch from using the internal compiler class
 //    final static private Var CLOJURE_READ_STRING = RT.var("clojure.core", "read-string");
 //    final static private Var CLOJURE_EVAL = RT.var("clojure.core", "eval");
@@ -136,6 +154,7 @@ abstract public class MetaParser {
      */
     static public void registerLanguageParser(String languagePrefix, String name, LanguageSpecificParser parser, String defaultExpression) {
         s_languages.put(languagePrefix, new LanguageInfo(name, parser, defaultExpression));
+        clearCache();
     }
 
     static public LanguageInfo getLanguageInfo(String languagePrefix) {
@@ -146,6 +165,33 @@ abstract public class MetaParser {
         return s_languages.keySet();
     }
 
+    /**
+     * Returns the language of an expression which might have a language prefix, as {@link #parse(String)} would
+     * interpret it.
+     */
+    static public String getLanguagePrefix(String s) {
+        int colon = s.indexOf(':');
+        if (colon >= 0) {
+            String language = s.substring(0, colon).toLowerCase();
+            if ("gel".equals(language)) {
+                language = "grel";
+            }
+            if (s_languages.containsKey(language)) {
+                return language;
+            }
+        }
+        return "grel";
+    }
+
+    /**
+     * Returns whether an expression can only read the row it is evaluated on. This is checked conservatively: only
+     * GREL expressions which do not mention records, nor functions looking values up in other rows or projects, are
+     * considered to be row-local.
+     */
+    static public boolean isRowLocal(String s) {
+        return "grel".equals(getLanguagePrefix(s)) && !s_nonRowLocalPattern.matcher(s).find();
+    }
+
     /**
      * Parse an expression that might have a language prefix into an Evaluable. Expressions without valid prefixes or
      * without any prefix are assumed to be GREL expressions.
@@ -166,16 +212,35 @@ abstract public class MetaParser {
         }
 
         LanguageInfo info = s_languages.get(language.toLowerCase());
-        if (info != null) {
-            return info.parser.parse(s.substring(colon + 1));
-        } else {
-            return parseGREL(s);
+        String source = info != null ? s.substring(colon + 1) : s;
+        String key = (info != null ? language : "grel") + ":" + source;
+
+        Evaluable eval = s_cache.getIfPresent(key);
+        if (eval == null) {
+            eval = info != null ? info.parser.parse(source) : parseGREL(source);
+            s_cache.put(key, eval);
         }
+        return eval;
+    }
+
+    /**
+     * @return hit and miss counts of the parsed expression cache
+     */
+    static public CacheStats getCacheStats() {
+        return s_cache.stats();
+    }
+
+    /**
+     * Discards all parsed expressions, for instance because the way expressions are parsed has changed.
+     */
+    static public void clearCache() {
+        s_cache.invalidateAll();
     }
 
     static protected Evaluable parseGREL(String s) throws ParsingException {
         Parser parser = new Parser(s);
 
-        return parser.getExpression();
+        Evaluable expression = Optimizer.optimize(parser.getExpression());
+        return GrelCompiler.isEnabled() ? GrelCompiler.compile(expression) : expression;
     }
 }
@@ -74,6 +74,11 @@ public class Length implements Function {
         return new EvalError(EvalErrorMessage.expects_one_array_or_string(ControlFunctionRegistry.getFunctionName(this)));
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.fun_length();
@@ -197,6 +197,11 @@ public class ToDate implements Function {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.fun_to_date();
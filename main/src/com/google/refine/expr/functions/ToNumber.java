@@ -74,6 +74,11 @@ public class ToNumber implements Function {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.fun_to_number();
@@ -75,6 +75,11 @@ public class ToString implements Function {
         return new EvalError(EvalErrorMessage.fun_to_string(ControlFunctionRegistry.getFunctionName(this)));
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.fun_to_string();
@@ -88,6 +88,11 @@ public class Inc implements Function {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.date_inc();
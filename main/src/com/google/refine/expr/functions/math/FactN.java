@@ -79,6 +79,11 @@ public class FactN implements Function {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.math_factn();
@@ -68,6 +68,11 @@ public class LeastCommonMultiple implements Function {
         return largerValue * smallerValue;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.math_lcm();
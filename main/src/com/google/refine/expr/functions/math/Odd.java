@@ -56,6 +56,11 @@ public class Odd implements Function {
         return ((temp % 2) == 0) ? temp + 1 : temp;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.math_odd();
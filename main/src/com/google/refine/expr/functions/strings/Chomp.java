@@ -54,6 +54,11 @@ public class Chomp implements Function {
         return null;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.str_chomp();
@@ -62,6 +62,11 @@ public class Contains implements Function {
         return null;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.str_contains();
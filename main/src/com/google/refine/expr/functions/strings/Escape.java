@@ -86,6 +86,11 @@ public class Escape implements Function {
         return null;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.str_escape();
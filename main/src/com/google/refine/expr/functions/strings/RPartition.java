@@ -99,6 +99,11 @@ public class RPartition implements Function {
         return null;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.str_rpartition();
@@ -122,6 +122,11 @@ public class UnicodeType implements Function {
         }
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
     @Override
     public String getDescription() {
         return FunctionDescription.str_unicode_type();
@@ -35,6 +35,7 @@ package com.google.refine.grel;
 
 import java.util.Properties;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -47,6 +48,16 @@ public interface Function {
 
     public Object call(Properties bindings, Object[] args);
 
+    /**
+     * A pure function returns the same result whenever it is called with equal arguments, does not read the bindings
+     * and has no side effects. Calls to pure functions can be evaluated once when the expression is parsed if their
+     * arguments are constant, and shared when the same call appears several times in an expression.
+     */
+    @JsonIgnore
+    default public boolean isPure() {
+        return false;
+    }
+
     @JsonProperty("description")
     public String getDescription();
 
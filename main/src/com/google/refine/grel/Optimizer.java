@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.functions.strings.Match;
+import com.google.refine.grel.ast.ConstantExpr;
+import com.google.refine.grel.ast.ControlCallExpr;
+import com.google.refine.grel.ast.FieldAccessorExpr;
+import com.google.refine.grel.ast.FunctionCallExpr;
+import com.google.refine.grel.ast.LiteralExpr;
+import com.google.refine.grel.ast.OperatorCallExpr;
+import com.google.refine.grel.ast.SubexpressionExpr;
+import com.google.refine.grel.ast.SubexpressionScopeExpr;
+import com.google.refine.grel.ast.VariableExpr;
+
+/**
+ * Rewrites a parsed GREL expression so that it is cheaper to evaluate on many rows:
+ * <ul>
+ * <li>calls to pure functions and operators whose arguments are all constant are evaluated once, as long as their
+ * result is immutable;</li>
+ * <li>constant string patterns passed to match() are compiled once;</li>
+ * <li>sub-expressions which appear several times are evaluated at most once per evaluation of the expression.</li>
+ * </ul>
+ * Sub-expressions which read a variable bound by a control (such as the loop variable of forEach) are never shared.
+ */
+public class Optimizer {
+
+    final protected Set<String> _boundNames = new HashSet<>();
+    final protected Map<Evaluable, List<Object>> _keys = new IdentityHashMap<>();
+    final protected Map<List<Object>, Integer> _counts = new HashMap<>();
+    final protected Map<List<Object>, SubexpressionExpr> _shared = new HashMap<>();
+
+    static public Evaluable optimize(Evaluable expression) {
+        return new Optimizer().run(expression);
+    }
+
+    protected Evaluable run(Evaluable expression) {
+        Evaluable folded = fold(expression);
+
+        collectBoundNames(folded);
+        count(folded);
+        Evaluable shared = share(folded);
+
+        return _shared.isEmpty() ? shared : new SubexpressionScopeExpr(shared, _shared.size());
+    }
+
+    protected Evaluable fold(Evaluable expression) {
+        if (expression instanceof FunctionCallExpr) {
+            FunctionCallExpr call = (FunctionCallExpr) expression;
+            Function function = call.getFunction();
+            Evaluable[] args = foldAll(call.getArgs());
+            if (function instanceof Match && args.length == 2) {
+                args[1] = compilePattern(args[1]);
+            }
+
+            FunctionCallExpr folded = new FunctionCallExpr(args, function);
+            return function.isPure() && allConstant(args) ? evaluateConstant(folded) : folded;
+        } else if (expression instanceof OperatorCallExpr) {
+            OperatorCallExpr call = (OperatorCallExpr) expression;
+            Evaluable[] args = foldAll(call.getArgs());
+
+            OperatorCallExpr folded = new OperatorCallExpr(args, call.getOperator());
+            return allConstant(args) ? evaluateConstant(folded) : folded;
+        } else if (expression instanceof FieldAccessorExpr) {
+            FieldAccessorExpr accessor = (FieldAccessorExpr) expression;
+            Evaluable inner = fold(accessor.getInner());
+
+            FieldAccessorExpr folded = new FieldAccessorExpr(inner, accessor.getFieldName());
+            return isConstant(inner) ? evaluateConstant(folded) : folded;
+        } else if (expression instanceof ControlCallExpr) {
+            ControlCallExpr call = (ControlCallExpr) expression;
+            return new ControlCallExpr(foldAll(call.getArgs()), call.getControl());
+        }
+        return expression;
+    }
+
+    protected Evaluable[] foldAll(Evaluable[] expressions) {
+        Evaluable[] folded = new Evaluable[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            folded[i] = fold(expressions[i]);
+        }
+        return folded;
+    }
+
+    protected Evaluable compilePattern(Evaluable expression) {
+        if (isConstant(expression)) {
+            Object value = expression.evaluate(new Properties());
+            if (value instanceof String) {
+                try {
+                    return new ConstantExpr(Pattern.compile((String) value), expression);
+                } catch (PatternSyntaxException e) {
+                    // leave it to the function to report the error
+                }
+            }
+        }
+        return expression;
+    }
+
+    protected Evaluable evaluateConstant(Evaluable expression) {
+        try {
+            Object value = expression.evaluate(new Properties());
+            return isImmutable(value) ? new ConstantExpr(value, expression) : expression;
+        } catch (RuntimeException e) {
+            // the failure will happen again, and be reported, when the expression is evaluated
+            return expression;
+        }
+    }
+
+    static protected boolean isConstant(Evaluable expression) {
+        return expression instanceof LiteralExpr || expression instanceof ConstantExpr;
+    }
+
+    static protected boolean allConstant(Evaluable[] expressions) {
+        for (Evaluable expression : expressions) {
+            if (!isConstant(expression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only values which cannot be modified by the functions they are passed to are folded, since the same value is then
+     * returned for all rows. Errors are not folded either, so that they are reported as before.
+     */
+    static protected boolean isImmutable(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof OffsetDateTime || value instanceof Pattern) {
+            return true;
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (element instanceof Object[] || !isImmutable(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    protected void collectBoundNames(Evaluable expression) {
+        if (expression instanceof ControlCallExpr) {
+            for (Evaluable arg : ((ControlCallExpr) expression).getArgs()) {
+                if (arg instanceof VariableExpr) {
+                    _boundNames.add(((VariableExpr) arg).getName());
+                }
+            }
+        }
+        for (Evaluable child : getChildren(expression)) {
+            collectBoundNames(child);
+        }
+    }
+
+    /**
+     * Computes a structural key for each sub-expression which could be shared, and counts how often each key appears.
+     * 
+     * @return the key of the expression, or null if it cannot be shared
+     */
+    protected List<Object> count(Evaluable expression) {
+        List<Object> key = new ArrayList<>();
+        boolean shareable = true;
+        if (expression instanceof LiteralExpr) {
+            key.add("literal");
+            key.add(((LiteralExpr) expression).getValue());
+        } else if (expression instanceof ConstantExpr) {
+            key.add(expression);
+        } else if (expression instanceof VariableExpr) {
+            String name = ((VariableExpr) expression).getName();
+            key.add("variable");
+            key.add(name);
+            shareable = !_boundNames.contains(name);
+        } else if (expression instanceof FunctionCallExpr) {
+            key.add(((FunctionCallExpr) expression).getFunction());
+            shareable = ((FunctionCallExpr) expression).getFunction().isPure();
+        } else if (expression instanceof OperatorCallExpr) {
+            key.add("operator");
+            key.add(((OperatorCallExpr) expression).getOperator());
+        } else if (expression instanceof FieldAccessorExpr) {
+            key.add("field");
+            key.add(((FieldAccessorExpr) expression).getFieldName());
+        } else {
+            shareable = false;
+        }
+
+        for (Evaluable child : getChildren(expression)) {
+            List<Object> childKey = count(child);
+            shareable = shareable && childKey != null;
+            key.add(childKey);
+        }
+        if (!shareable) {
+            return null;
+        }
+
+        if (isComputed(expression)) {
+            _keys.put(expression, key);
+            _counts.merge(key, 1, Integer::sum);
+        }
+        return key;
+    }
+
+    protected Evaluable share(Evaluable expression) {
+        Evaluable rewritten;
+        if (expression instanceof FunctionCallExpr) {
+            FunctionCallExpr call = (FunctionCallExpr) expression;
+            rewritten = new FunctionCallExpr(shareAll(call.getArgs()), call.getFunction());
+        } else if (expression instanceof OperatorCallExpr) {
+            OperatorCallExpr call = (OperatorCallExpr) expression;
+            rewritten = new OperatorCallExpr(shareAll(call.getArgs()), call.getOperator());
+        } else if (expression instanceof FieldAccessorExpr) {
+            FieldAccessorExpr accessor = (FieldAccessorExpr) expression;
+            rewritten = new FieldAccessorExpr(share(accessor.getInner()), accessor.getFieldName());
+        } else if (expression instanceof ControlCallExpr) {
+            ControlCallExpr call = (ControlCallExpr) expression;
+            rewritten = new ControlCallExpr(shareAll(call.getArgs()), call.getControl());
+        } else {
+            return expression;
+        }
+
+        List<Object> key = _keys.get(expression);
+        if (key == null || _counts.get(key) < 2) {
+            return rewritten;
+        }
+        SubexpressionExpr shared = _shared.get(key);
+        if (shared == null) {
+            shared = new SubexpressionExpr(rewritten, _shared.size());
+            _shared.put(key, shared);
+        }
+        return shared;
+    }
+
+    protected Evaluable[] shareAll(Evaluable[] expressions) {
+        Evaluable[] shared = new Evaluable[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            shared[i] = share(expressions[i]);
+        }
+        return shared;
+    }
+
+    static protected boolean isComputed(Evaluable expression) {
+        return expression instanceof FunctionCallExpr || expression instanceof OperatorCallExpr
+                || expression instanceof FieldAccessorExpr;
+    }
+
+    static protected List<Evaluable> getChildren(Evaluable expression) {
+        if (expression instanceof FunctionCallExpr) {
+            return Arrays.asList(((FunctionCallExpr) expression).getArgs());
+        } else if (expression instanceof OperatorCallExpr) {
+            return Arrays.asList(((OperatorCallExpr) expression).getArgs());
+        } else if (expression instanceof ControlCallExpr) {
+            return Arrays.asList(((ControlCallExpr) expression).getArgs());
+        } else if (expression instanceof FieldAccessorExpr) {
+            return Arrays.asList(((FieldAccessorExpr) expression).getInner());
+        }
+        return Arrays.asList();
+    }
+}
@@ -61,6 +61,11 @@ public class ControlCallExpr implements Evaluable {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer();
@@ -74,4 +79,12 @@ public class ControlCallExpr implements Evaluable {
 
         return _control.getClass().getSimpleName() + "(" + sb.toString() + ")";
     }
+
+    public Evaluable[] getArgs() {
+        return _args;
+    }
+
+    public Control getControl() {
+        return _control;
+    }
 }
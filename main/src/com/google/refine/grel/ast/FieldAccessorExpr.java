@@ -74,8 +74,21 @@ public class FieldAccessorExpr implements Evaluable {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return _inner.toString() + "." + _fieldName;
     }
+
+    public Evaluable getInner() {
+        return _inner;
+    }
+
+    public String getFieldName() {
+        return _fieldName;
+    }
 }
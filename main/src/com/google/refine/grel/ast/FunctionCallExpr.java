@@ -72,6 +72,11 @@ public class FunctionCallExpr implements Evaluable {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer();
@@ -85,4 +90,12 @@ public class FunctionCallExpr implements Evaluable {
 
         return _function.getClass().getSimpleName() + "(" + sb.toString() + ")";
     }
+
+    public Evaluable[] getArgs() {
+        return _args;
+    }
+
+    public Function getFunction() {
+        return _function;
+    }
 }
@@ -55,8 +55,17 @@ public class LiteralExpr implements Evaluable {
         return _value;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return _value instanceof String ? new TextNode((String) _value).toString() : _value.toString();
     }
+
+    public Object getValue() {
+        return _value;
+    }
 }
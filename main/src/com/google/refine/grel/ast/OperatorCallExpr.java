@@ -148,6 +148,11 @@ public class OperatorCallExpr implements Evaluable {
         return null;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer();
@@ -167,4 +172,12 @@ public class OperatorCallExpr implements Evaluable {
     private boolean isIntegral(Object n) {
         return n instanceof Long || n instanceof Integer;
     }
+
+    public Evaluable[] getArgs() {
+        return _args;
+    }
+
+    public String getOperator() {
+        return _op;
+    }
 }
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel.ast;
+
+import java.util.Properties;
+
+import com.google.refine.expr.Bindings;
+import com.google.refine.expr.Evaluable;
+
+/**
+ * An abstract syntax tree node encapsulating a sub-expression which appears several times in an expression. It is
+ * evaluated at most once per evaluation of the enclosing {@link SubexpressionScopeExpr}, which stores its value in the
+ * bindings.
+ */
+public class SubexpressionExpr implements Evaluable {
+
+    static final private Object NULL = new Object();
+
+    /**
+     * Returned by {@link #lookup} when the value of a sub-expression has not been computed yet.
+     */
+    static final public Object MISSING = new Object();
+
+    final protected Evaluable _inner;
+    final protected int _index;
+
+    public SubexpressionExpr(Evaluable inner, int index) {
+        _inner = inner;
+        _index = index;
+    }
+
+    @Override
+    public Object evaluate(Properties bindings) {
+        Object value = lookup(bindings, _index);
+        if (value == MISSING) {
+            value = store(_inner.evaluate(bindings), bindings, _index);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * @return the value of the shared sub-expression with the given index in the current evaluation, or
+     *         {@link #MISSING} if it has not been computed
+     */
+    static public Object lookup(Properties bindings, int index) {
+        Object[] values = bindings instanceof Bindings ? ((Bindings) bindings).getSubexpressionValues() : null;
+        if (values == null || index >= values.length || values[index] == null) {
+            return MISSING;
+        }
+        return values[index] == NULL ? null : values[index];
+    }
+
+    /**
+     * Records the value of the shared sub-expression with the given index in the current evaluation.
+     * 
+     * @return the value
+     */
+    static public Object store(Object value, Properties bindings, int index) {
+        Object[] values = bindings instanceof Bindings ? ((Bindings) bindings).getSubexpressionValues() : null;
+        if (values != null && index < values.length) {
+            values[index] = value == null ? NULL : value;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return _inner.toString();
+    }
+
+    public Evaluable getInner() {
+        return _inner;
+    }
+
+    public int getIndex() {
+        return _index;
+    }
+}
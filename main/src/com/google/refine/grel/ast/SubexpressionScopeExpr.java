@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel.ast;
+
+import java.util.Properties;
+
+import com.google.refine.expr.Bindings;
+import com.google.refine.expr.Evaluable;
+
+/**
+ * The root of an expression containing {@link SubexpressionExpr} nodes. Each evaluation starts with no shared
+ * sub-expression computed.
+ */
+public class SubexpressionScopeExpr implements Evaluable {
+
+    final protected Evaluable _inner;
+    final protected int _subexpressionCount;
+
+    public SubexpressionScopeExpr(Evaluable inner, int subexpressionCount) {
+        _inner = inner;
+        _subexpressionCount = subexpressionCount;
+    }
+
+    @Override
+    public Object evaluate(Properties bindings) {
+        if (!(bindings instanceof Bindings)) {
+            return _inner.evaluate(bindings);
+        }
+
+        Bindings b = (Bindings) bindings;
+        Object[] outer = b.getSubexpressionValues();
+        b.setSubexpressionValues(new Object[_subexpressionCount]);
+        try {
+            return _inner.evaluate(bindings);
+        } finally {
+            b.setSubexpressionValues(outer);
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return _inner.toString();
+    }
+
+    public Evaluable getInner() {
+        return _inner;
+    }
+
+    public int getSubexpressionCount() {
+        return _subexpressionCount;
+    }
+}
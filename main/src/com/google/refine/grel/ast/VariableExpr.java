@@ -35,6 +35,7 @@ package com.google.refine.grel.ast;
 
 import java.util.Properties;
 
+import com.google.refine.expr.Bindings;
 import com.google.refine.expr.Evaluable;
 
 /**
@@ -43,10 +44,12 @@ import com.google.refine.expr.Evaluable;
 public class VariableExpr implements Evaluable {
 
     final protected String _name;
+    final protected int _slot;
 
     public VariableExpr(String name) {
         if (name != null || !name.isEmpty()) {
             _name = name;
+            _slot = Bindings.getSlot(name);
         } else {
             throw new IllegalArgumentException("Illegal variable name ");
         }
@@ -54,9 +57,17 @@ public class VariableExpr implements Evaluable {
 
     @Override
     public Object evaluate(Properties bindings) {
+        if (_slot >= 0 && bindings instanceof Bindings) {
+            return ((Bindings) bindings).get(_slot);
+        }
         return bindings.get(_name);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return _name;
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel.compiler;
+
+import java.util.Properties;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.CharMatcher;
+
+import com.google.refine.expr.Bindings;
+import com.google.refine.expr.EvalError;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.expr.HasFields;
+import com.google.refine.expr.util.JsonValueConverter;
+import com.google.refine.grel.Function;
+
+/**
+ * Static methods called by the classes generated by {@link GrelCompiler}. Each of them behaves exactly as the
+ * corresponding node of the interpreted syntax tree, or as the corresponding function for its most common argument
+ * types, delegating to the function itself otherwise.
+ */
+public class CompiledOperations {
+
+    static public Object variable(Properties bindings, int slot, String name) {
+        if (slot >= 0 && bindings instanceof Bindings) {
+            return ((Bindings) bindings).get(slot);
+        }
+        return bindings.get(name);
+    }
+
+    static public Object field(Object o, String fieldName, Properties bindings) {
+        if (o instanceof HasFields) {
+            return ((HasFields) o).getField(fieldName, bindings);
+        } else if (o instanceof ObjectNode) {
+            JsonNode value = ((ObjectNode) o).get(fieldName);
+            return JsonValueConverter.convert(value);
+        }
+        return null;
+    }
+
+    static public Object call(Function function, Properties bindings, Object[] args) {
+        try {
+            return function.call(bindings, args);
+        } catch (Exception e) {
+            return new EvalError(e);
+        }
+    }
+
+    static public boolean isError(Object o) {
+        return o instanceof EvalError;
+    }
+
+    static public boolean isTrue(Object o) {
+        return ExpressionUtils.isTrue(o);
+    }
+
+    // Operators
+
+    static private boolean isIntegral(Object n) {
+        return n instanceof Long || n instanceof Integer;
+    }
+
+    static private boolean areIntegral(Object a, Object b) {
+        return a != null && b != null && isIntegral(a) && isIntegral(b);
+    }
+
+    static private boolean areNumbers(Object a, Object b) {
+        return a instanceof Number && b instanceof Number;
+    }
+
+    static public Object add(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() + ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() + ((Number) b).doubleValue();
+        } else if (a != null && b != null) {
+            return a.toString() + b.toString();
+        }
+        return null;
+    }
+
+    static public Object subtract(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() - ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() - ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object multiply(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() * ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() * ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object divide(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            long n1 = ((Number) a).longValue();
+            long n2 = ((Number) b).longValue();
+            if (n2 == 0 && n1 == 0) {
+                return Double.NaN;
+            }
+            return n1 / n2;
+        } else if (areNumbers(a, b)) {
+            double n1 = ((Number) a).doubleValue();
+            double n2 = ((Number) b).doubleValue();
+            if (n2 == 0 && n1 == 0) {
+                return Double.NaN;
+            }
+            return n1 / n2;
+        }
+        return null;
+    }
+
+    static public Object modulo(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() % ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() % ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object greaterThan(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() > ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() > ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object greaterOrEqual(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() >= ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() >= ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object lessThan(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() < ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() < ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object lessOrEqual(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() <= ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() <= ((Number) b).doubleValue();
+        }
+        return null;
+    }
+
+    static public Object equal(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() == ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a != null ? a.equals(b) : b == null;
+    }
+
+    static public Object notEqual(Object a, Object b) {
+        if (areIntegral(a, b)) {
+            return ((Number) a).longValue() != ((Number) b).longValue();
+        } else if (areNumbers(a, b)) {
+            return ((Number) a).doubleValue() != ((Number) b).doubleValue();
+        }
+        return a != null ? !a.equals(b) : b != null;
+    }
+
+    // Functions inlined for string arguments
+
+    static public Object trim(Object a, Function function, Properties bindings) {
+        if (a instanceof String) {
+            return CharMatcher.whitespace().trimFrom((String) a);
+        }
+        return call(function, bindings, new Object[] { a });
+    }
+
+    static public Object toLowercase(Object a, Function function, Properties bindings) {
+        if (a instanceof String) {
+            return ((String) a).toLowerCase();
+        }
+        return call(function, bindings, new Object[] { a });
+    }
+
+    static public Object toUppercase(Object a, Function function, Properties bindings) {
+        if (a instanceof String) {
+            return ((String) a).toUpperCase();
+        }
+        return call(function, bindings, new Object[] { a });
+    }
+
+    static public Object length(Object a, Function function, Properties bindings) {
+        if (a instanceof String) {
+            return ((String) a).length();
+        }
+        return call(function, bindings, new Object[] { a });
+    }
+
+    static public Object startsWith(Object a, Object b, Function function, Properties bindings) {
+        if (a instanceof String && b instanceof String) {
+            return ((String) a).startsWith((String) b);
+        }
+        return call(function, bindings, new Object[] { a, b });
+    }
+
+    static public Object endsWith(Object a, Object b, Function function, Properties bindings) {
+        if (a instanceof String && b instanceof String) {
+            return ((String) a).endsWith((String) b);
+        }
+        return call(function, bindings, new Object[] { a, b });
+    }
+
+    static public Object contains(Object a, Object b, Function function, Properties bindings) {
+        if (a instanceof String && b instanceof String) {
+            return ((String) a).indexOf((String) b) > -1;
+        }
+        return call(function, bindings, new Object[] { a, b });
+    }
+
+    static public Object replace(Object a, Object b, Object c, Function function, Properties bindings) {
+        if (a instanceof String && b instanceof String && c instanceof String) {
+            return ((String) a).replace((String) b, (String) c);
+        }
+        return call(function, bindings, new Object[] { a, b, c });
+    }
+}
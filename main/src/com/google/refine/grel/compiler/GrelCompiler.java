@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.expr.Bindings;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.expr.functions.Length;
+import com.google.refine.expr.functions.strings.Contains;
+import com.google.refine.expr.functions.strings.EndsWith;
+import com.google.refine.expr.functions.strings.Replace;
+import com.google.refine.expr.functions.strings.StartsWith;
+import com.google.refine.expr.functions.strings.ToLowercase;
+import com.google.refine.expr.functions.strings.ToUppercase;
+import com.google.refine.expr.functions.strings.Trim;
+import com.google.refine.grel.Function;
+import com.google.refine.grel.ast.ConstantExpr;
+import com.google.refine.grel.ast.ControlCallExpr;
+import com.google.refine.grel.ast.FieldAccessorExpr;
+import com.google.refine.grel.ast.FunctionCallExpr;
+import com.google.refine.grel.ast.LiteralExpr;
+import com.google.refine.grel.ast.OperatorCallExpr;
+import com.google.refine.grel.ast.SubexpressionExpr;
+import com.google.refine.grel.ast.SubexpressionScopeExpr;
+import com.google.refine.grel.ast.VariableExpr;
+import com.google.refine.grel.controls.If;
+
+/**
+ * Compiles a GREL syntax tree into a JVM class implementing {@link Evaluable}. Operators, field accesses, if() and the
+ * most common string functions are compiled into direct calls to {@link CompiledOperations}; other functions are called
+ * directly, without going through the syntax tree. Constructs the compiler does not support (other controls, or nodes
+ * added by extensions) are evaluated by the interpreter.
+ * <p>
+ * Compilation is enabled with the <code>refine.grel.compile</code> system property.
+ */
+public class GrelCompiler implements Opcodes {
+
+    final static Logger logger = LoggerFactory.getLogger("grel-compiler");
+
+    static protected boolean s_enabled = Boolean.getBoolean("refine.grel.compile");
+
+    static final private AtomicInteger s_classCount = new AtomicInteger();
+
+    static final private String EVALUABLE = Type.getInternalName(Evaluable.class);
+    static final private String OPERATIONS = Type.getInternalName(CompiledOperations.class);
+    static final private String EVALUATE_DESCRIPTOR = "(Ljava/util/Properties;)Ljava/lang/Object;";
+
+    static final private Map<String, String> s_operators = new HashMap<>();
+    static final private Map<Class<? extends Function>, String> s_inlinedFunctions = new HashMap<>();
+
+    static {
+        s_operators.put("+", "add");
+        s_operators.put("-", "subtract");
+        s_operators.put("*", "multiply");
+        s_operators.put("/", "divide");
+        s_operators.put("%", "modulo");
+        s_operators.put(">", "greaterThan");
+        s_operators.put(">=", "greaterOrEqual");
+        s_operators.put("<", "lessThan");
+        s_operators.put("<=", "lessOrEqual");
+        s_operators.put("==", "equal");
+        s_operators.put("!=", "notEqual");
+
+        s_inlinedFunctions.put(Trim.class, "trim");
+        s_inlinedFunctions.put(ToLowercase.class, "toLowercase");
+        s_inlinedFunctions.put(ToUppercase.class, "toUppercase");
+        s_inlinedFunctions.put(Length.class, "length");
+        s_inlinedFunctions.put(StartsWith.class, "startsWith");
+        s_inlinedFunctions.put(EndsWith.class, "endsWith");
+        s_inlinedFunctions.put(Contains.class, "contains");
+        s_inlinedFunctions.put(Replace.class, "replace");
+    }
+
+    /**
+     * Instances of the generated classes are created with the constants they refer to.
+     */
+    static abstract public class CompiledEvaluable implements Evaluable {
+
+        final protected Object[] _constants;
+        final protected Evaluable _source;
+
+        protected CompiledEvaluable(Object[] constants, Evaluable source) {
+            _constants = constants;
+            _source = source;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return _source.toString();
+        }
+    }
+
+    static private class Loader extends ClassLoader {
+
+        Loader() {
+            super(GrelCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    final protected String _className;
+    final protected List<Object> _constants = new ArrayList<>();
+    final protected Map<SubexpressionExpr, String> _sharedMethods = new IdentityHashMap<>();
+    final protected List<SubexpressionExpr> _pendingShared = new ArrayList<>();
+    protected ClassWriter _writer;
+    protected int _compiledNodes = 0;
+
+    protected GrelCompiler() {
+        _className = Type.getInternalName(GrelCompiler.class) + "$Expression" + s_classCount.incrementAndGet();
+    }
+
+    static public boolean isEnabled() {
+        return s_enabled;
+    }
+
+    static public void setEnabled(boolean enabled) {
+        if (s_enabled != enabled) {
+            s_enabled = enabled;
+            // expressions parsed under the previous setting are cached by MetaParser
+            MetaParser.clearCache();
+        }
+    }
+
+    /**
+     * @return a compiled version of the expression, or the expression itself if it cannot be compiled
+     */
+    static public Evaluable compile(Evaluable expression) {
+        try {
+            if (expression instanceof SubexpressionScopeExpr) {
+                SubexpressionScopeExpr scope = (SubexpressionScopeExpr) expression;
+                Evaluable inner = new GrelCompiler().generate(scope.getInner());
+                return inner == scope.getInner() ? expression : new SubexpressionScopeExpr(inner, scope.getSubexpressionCount());
+            }
+            return new GrelCompiler().generate(expression);
+        } catch (Exception | LinkageError e) {
+            logger.warn("Could not compile expression " + expression + ", falling back to the interpreter", e);
+            return expression;
+        }
+    }
+
+    protected Evaluable generate(Evaluable expression) throws ReflectiveOperationException {
+        String superName = Type.getInternalName(CompiledEvaluable.class);
+        String constructorDescriptor = "([Ljava/lang/Object;L" + EVALUABLE + ";)V";
+
+        _writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        _writer.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, _className, null, superName, null);
+
+        MethodVisitor init = _writer.visitMethod(ACC_PUBLIC, "<init>", constructorDescriptor, null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitVarInsn(ALOAD, 2);
+        init.visitMethodInsn(INVOKESPECIAL, superName, "<init>", constructorDescriptor, false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        generateMethod("evaluate", ACC_PUBLIC, expression);
+        while (!_pendingShared.isEmpty()) {
+            SubexpressionExpr shared = _pendingShared.remove(_pendingShared.size() - 1);
+            generateMethod(_sharedMethods.get(shared), ACC_PRIVATE, shared.getInner());
+        }
+        _writer.visitEnd();
+
+        if (_compiledNodes == 0) {
+            return expression;
+        }
+
+        Class<?> c = new Loader().define(_className.replace('/', '.'), _writer.toByteArray());
+        return (Evaluable) c.getConstructor(Object[].class, Evaluable.class).newInstance(_constants.toArray(), expression);
+    }
+
+    protected void generateMethod(String name, int access, Evaluable expression) {
+        MethodVisitor mv = _writer.visitMethod(access, name, EVALUATE_DESCRIPTOR, null, null);
+        mv.visitCode();
+        generate(mv, expression);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Emits code leaving the value of the expression on the stack. Errors found in the arguments of a compiled node are
+     * returned directly, which is what the interpreter would do after bubbling them up through the enclosing nodes.
+     */
+    protected void generate(MethodVisitor mv, Evaluable expression) {
+        if (expression instanceof LiteralExpr) {
+            pushConstant(mv, ((LiteralExpr) expression).getValue());
+        } else if (expression instanceof ConstantExpr) {
+            pushConstant(mv, ((ConstantExpr) expression).getValue());
+        } else if (expression instanceof VariableExpr) {
+            String name = ((VariableExpr) expression).getName();
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(mv, Bindings.getSlot(name));
+            mv.visitLdcInsn(name);
+            mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, "variable", "(Ljava/util/Properties;ILjava/lang/String;)Ljava/lang/Object;",
+                    false);
+        } else if (expression instanceof FieldAccessorExpr) {
+            FieldAccessorExpr accessor = (FieldAccessorExpr) expression;
+            generateChecked(mv, accessor.getInner());
+            mv.visitLdcInsn(accessor.getFieldName());
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, "field",
+                    "(Ljava/lang/Object;Ljava/lang/String;Ljava/util/Properties;)Ljava/lang/Object;", false);
+            _compiledNodes++;
+        } else if (expression instanceof OperatorCallExpr && isCompilable((OperatorCallExpr) expression)) {
+            OperatorCallExpr call = (OperatorCallExpr) expression;
+            generateChecked(mv, call.getArgs()[0]);
+            generateChecked(mv, call.getArgs()[1]);
+            mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, s_operators.get(call.getOperator()),
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", false);
+            _compiledNodes++;
+        } else if (expression instanceof FunctionCallExpr) {
+            generateFunctionCall(mv, (FunctionCallExpr) expression);
+            _compiledNodes++;
+        } else if (expression instanceof ControlCallExpr && isCompilable((ControlCallExpr) expression)) {
+            Evaluable[] args = ((ControlCallExpr) expression).getArgs();
+            Label otherwise = new Label();
+            Label end = new Label();
+            generateChecked(mv, args[0]);
+            mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, "isTrue", "(Ljava/lang/Object;)Z", false);
+            mv.visitJumpInsn(IFEQ, otherwise);
+            generate(mv, args[1]);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(otherwise);
+            generate(mv, args[2]);
+            mv.visitLabel(end);
+            _compiledNodes++;
+        } else if (expression instanceof SubexpressionExpr) {
+            SubexpressionExpr shared = (SubexpressionExpr) expression;
+            String method = _sharedMethods.get(shared);
+            if (method == null) {
+                method = "shared" + _sharedMethods.size();
+                _sharedMethods.put(shared, method);
+                _pendingShared.add(shared);
+            }
+            String subexpressions = Type.getInternalName(SubexpressionExpr.class);
+            Label end = new Label();
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(mv, shared.getIndex());
+            mv.visitMethodInsn(INVOKESTATIC, subexpressions, "lookup", "(Ljava/util/Properties;I)Ljava/lang/Object;", false);
+            mv.visitInsn(DUP);
+            mv.visitFieldInsn(GETSTATIC, subexpressions, "MISSING", "Ljava/lang/Object;");
+            mv.visitJumpInsn(IF_ACMPNE, end);
+            mv.visitInsn(POP);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, _className, method, EVALUATE_DESCRIPTOR, false);
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(mv, shared.getIndex());
+            mv.visitMethodInsn(INVOKESTATIC, subexpressions, "store",
+                    "(Ljava/lang/Object;Ljava/util/Properties;I)Ljava/lang/Object;", false);
+            mv.visitLabel(end);
+        } else {
+            // evaluated by the interpreter
+            pushConstant(mv, expression);
+            mv.visitTypeInsn(CHECKCAST, EVALUABLE);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEINTERFACE, EVALUABLE, "evaluate", EVALUATE_DESCRIPTOR, true);
+        }
+    }
+
+    protected void generateFunctionCall(MethodVisitor mv, FunctionCallExpr call) {
+        Function function = call.getFunction();
+        Evaluable[] args = call.getArgs();
+        String inlined = s_inlinedFunctions.get(function.getClass());
+        if (inlined != null && args.length == getInlinedArity(inlined)) {
+            StringBuilder descriptor = new StringBuilder("(");
+            for (Evaluable arg : args) {
+                generateChecked(mv, arg);
+                descriptor.append("Ljava/lang/Object;");
+            }
+            pushConstant(mv, function);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(Function.class));
+            mv.visitVarInsn(ALOAD, 1);
+            descriptor.append("L").append(Type.getInternalName(Function.class)).append(";Ljava/util/Properties;)Ljava/lang/Object;");
+            mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, inlined, descriptor.toString(), false);
+            return;
+        }
+
+        pushConstant(mv, function);
+        mv.visitTypeInsn(CHECKCAST, Type.getInternalName(Function.class));
+        mv.visitVarInsn(ALOAD, 1);
+        pushInt(mv, args.length);
+        mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < args.length; i++) {
+            mv.visitInsn(DUP);
+            pushInt(mv, i);
+            generateChecked(mv, args[i]);
+            mv.visitInsn(AASTORE);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, "call",
+                "(L" + Type.getInternalName(Function.class) + ";Ljava/util/Properties;[Ljava/lang/Object;)Ljava/lang/Object;", false);
+    }
+
+    /**
+     * Emits the code of an argument, returning it if it is an error.
+     */
+    protected void generateChecked(MethodVisitor mv, Evaluable expression) {
+        Label ok = new Label();
+        generate(mv, expression);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESTATIC, OPERATIONS, "isError", "(Ljava/lang/Object;)Z", false);
+        mv.visitJumpInsn(IFEQ, ok);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(ok);
+    }
+
+    protected void pushConstant(MethodVisitor mv, Object value) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, Type.getInternalName(CompiledEvaluable.class), "_constants", "[Ljava/lang/Object;");
+        pushInt(mv, _constants.size());
+        mv.visitInsn(AALOAD);
+        _constants.add(value);
+    }
+
+    static protected void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    static protected boolean isCompilable(OperatorCallExpr call) {
+        return call.getArgs().length == 2 && s_operators.containsKey(call.getOperator());
+    }
+
+    static protected boolean isCompilable(ControlCallExpr call) {
+        return call.getControl() instanceof If && call.getArgs().length == 3;
+    }
+
+    static protected int getInlinedArity(String name) {
+        switch (name) {
+            case "startsWith":
+            case "endsWith":
+            case "contains":
+                return 2;
+            case "replace":
+                return 3;
+            default:
+                return 1;
+        }
+    }
+}
@@ -51,4 +51,26 @@ public interface Change {
     public void revert(Project project);
 
     public void save(Writer writer, Properties options) throws IOException;
+
+    /**
+     * The rows modified by this change, if it does not modify anything else: neither the other rows, nor the columns,
+     * nor the order of the rows. The records these rows belong to can still change. This lets row-based facets update
+     * their results from the modified rows only.
+     * 
+     * @return the indices of the modified rows in increasing order, or null if the change can modify anything else
+     */
+    public default int[] getAffectedRows() {
+        return null;
+    }
+
+    /**
+     * The rows whose cells, flag or star are modified by this change, if it does not add, remove or reorder rows.
+     * Unlike {@link #getAffectedRows()}, the change may also modify the columns, which are always saved along with the
+     * modified rows. This lets storage formats only write these rows again.
+     * 
+     * @return the indices of the modified rows in increasing order, or null if rows can be added, removed or reordered
+     */
+    public default int[] getModifiedRows() {
+        return getAffectedRows();
+    }
 }
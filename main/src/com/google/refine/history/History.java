@@ -45,7 +45,11 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.roaringbitmap.RoaringBitmap;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import com.google.refine.ProjectManager;
@@ -113,11 +117,21 @@ public class History {
         return (Class<? extends Change>) RefineServlet.getClass(className);
     }
 
+    static protected int s_maxDeltaRows = Integer.getInteger("refine.history.max_delta_rows", 10000);
+
     protected long _projectID;
     @JsonProperty("past")
     protected List<HistoryEntry> _pastEntries; // done changes, can be undone
     @JsonProperty("future")
     protected List<HistoryEntry> _futureEntries; // undone changes, can be redone
+    // id of the last done entry, readable without acquiring any lock
+    protected volatile long _currentEntryID = 0;
+    // rows modified by the last change applied or reverted, if known
+    protected volatile RowDelta _lastRowDelta;
+    // incremented before and after each change is applied or reverted, so that it is odd while one is in progress
+    protected final AtomicLong _modificationCount = new AtomicLong();
+    // rows modified since the project was last saved, or null if not known
+    protected RoaringBitmap _unsavedRows = new RoaringBitmap();
 
     public History(Project project) {
         _projectID = project.id;
@@ -136,10 +150,22 @@ public class History {
             // NOTE: project lock must be acquired *first* to prevent deadlocks, so we use a
             // synchronized block instead of synchronizing the entire method.
             synchronized (this) {
-                entry.apply(project);
-                _pastEntries.add(entry);
-
-                setModified();
+                _modificationCount.incrementAndGet();
+                try {
+                    RowDelta rowDelta = RowDelta.capture(project, entry.getChange(), _currentEntryID, entry.id, s_maxDeltaRows);
+                    _lastRowDelta = null;
+                    entry.apply(project);
+                    _lastRowDelta = rowDelta;
+                    markUnsaved(entry.getChange());
+                    _pastEntries.add(entry);
+                    _currentEntryID = entry.id;
+
+                    setModified();
+                } finally {
+                    _modificationCount.incrementAndGet();
+                    // the change may have taken a while: keep the project from being evicted right after it
+                    ProjectManager.singleton.recordProjectAccess(_projectID);
+                }
 
                 // Any new change will clear all future entries.
                 List<HistoryEntry> futureEntries = _futureEntries;
@@ -165,6 +191,64 @@ public class History {
         projectMetadata.updateModified(); // Redundant, but for safety in case setRowCount implementation changes
     }
 
+    /**
+     * Returns the id of the last done entry, or 0 if no change has been applied to the project. This does not require
+     * acquiring the lock on the history, so it is safe to call while holding the lock on the project.
+     */
+    @JsonIgnore
+    public long getCurrentEntryID() {
+        return _currentEntryID;
+    }
+
+    /**
+     * Returns a counter of the changes applied to or reverted from the project since it was loaded. It is odd while a
+     * change is in progress, so a reader which does not hold the project lock can check that the project was not
+     * modified while it was being read by comparing the values before and after, the former being even.
+     */
+    @JsonIgnore
+    public long getModificationCount() {
+        return _modificationCount.get();
+    }
+
+    protected void markUnsaved(Change change) {
+        int[] rowIndices = change == null ? null : change.getModifiedRows();
+        if (rowIndices == null) {
+            _unsavedRows = null;
+        } else if (_unsavedRows != null) {
+            _unsavedRows.add(rowIndices);
+        }
+    }
+
+    /**
+     * Returns the indices of the rows modified by the changes applied or reverted since the project was last saved, so
+     * that storage formats can only write these rows again.
+     * 
+     * @return a copy of the indices, or null if the changes did not declare the rows they modify
+     */
+    @JsonIgnore
+    synchronized public RoaringBitmap getUnsavedRows() {
+        return _unsavedRows == null ? null : _unsavedRows.clone();
+    }
+
+    /**
+     * Records that the project was saved as it is now.
+     */
+    synchronized public void markSaved() {
+        _unsavedRows = new RoaringBitmap();
+    }
+
+    /**
+     * Returns the rows modified by the last change applied or reverted, if it only modified known rows. The change
+     * moved the project from the history entry {@link RowDelta#fromEntryID} to the current one.
+     * 
+     * @return the rows and their previous contents, or null if not known
+     */
+    @JsonIgnore
+    public RowDelta getLastRowDelta() {
+        RowDelta rowDelta = _lastRowDelta;
+        return rowDelta != null && rowDelta.toEntryID == _currentEntryID ? rowDelta : null;
+    }
+
     synchronized public List<HistoryEntry> getLastPastEntries(int count) {
         if (count <= 0) {
             return new LinkedList<HistoryEntry>(_pastEntries);
@@ -239,15 +323,27 @@ public class History {
 
         while (times > 0 && _pastEntries.size() > 0) {
             HistoryEntry entry = _pastEntries.get(_pastEntries.size() - 1);
+            long precedingEntryID = _pastEntries.size() == 1 ? 0 : _pastEntries.get(_pastEntries.size() - 2).id;
 
-            entry.revert(project);
+            _modificationCount.incrementAndGet();
+            try {
+                RowDelta rowDelta = RowDelta.capture(project, entry.getChange(), entry.id, precedingEntryID, s_maxDeltaRows);
+                _lastRowDelta = null;
+                entry.revert(project);
+                _lastRowDelta = rowDelta;
+                markUnsaved(entry.getChange());
 
-            setModified();
-            times--;
+                setModified();
+                times--;
 
-            _pastEntries.remove(_pastEntries.size() - 1);
-            _futureEntries.add(0, entry);
+                _pastEntries.remove(_pastEntries.size() - 1);
+                _futureEntries.add(0, entry);
+                _currentEntryID = _pastEntries.isEmpty() ? 0 : _pastEntries.get(_pastEntries.size() - 1).id;
+            } finally {
+                _modificationCount.incrementAndGet();
+            }
         }
+        ProjectManager.singleton.recordProjectAccess(_projectID);
     }
 
     protected void redo(int times) {
@@ -256,18 +352,29 @@ public class History {
         while (times > 0 && _futureEntries.size() > 0) {
             HistoryEntry entry = _futureEntries.get(0);
 
-            entry.apply(project);
+            _modificationCount.incrementAndGet();
+            try {
+                RowDelta rowDelta = RowDelta.capture(project, entry.getChange(), _currentEntryID, entry.id, s_maxDeltaRows);
+                _lastRowDelta = null;
+                entry.apply(project);
+                _lastRowDelta = rowDelta;
+                markUnsaved(entry.getChange());
 
-            setModified();
-            times--;
+                setModified();
+                times--;
 
-            _pastEntries.add(entry);
-            _futureEntries.remove(0);
+                _pastEntries.add(entry);
+                _futureEntries.remove(0);
+                _currentEntryID = entry.id;
+            } finally {
+                _modificationCount.incrementAndGet();
+            }
         }
+        ProjectManager.singleton.recordProjectAccess(_projectID);
     }
 
     /*
-     * NOTE: This method is called from the autosave thread with the Project lock already held, so no other synchronized
+     * NOTE: This method may be called from the autosave thread with the Project lock already held, so no other synchronized
      * method here can acquire that lock or a deadlock will result. Be careful of thread synchronization to avoid
      * deadlocks.
      */
@@ -304,6 +411,9 @@ public class History {
                 for (int i = 0; i < count; i++) {
                     _pastEntries.add(HistoryEntry.load(project, reader.readLine()));
                 }
+                if (!_pastEntries.isEmpty()) {
+                    _currentEntryID = _pastEntries.get(_pastEntries.size() - 1).id;
+                }
             } else if ("futureEntryCount".equals(field)) {
                 int count = Integer.parseInt(value);
 
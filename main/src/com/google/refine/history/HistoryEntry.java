@@ -35,8 +35,11 @@ package com.google.refine.history;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import com.fasterxml.jackson.annotation.JacksonInject;
@@ -80,19 +83,62 @@ public class HistoryEntry {
     @JsonView(JsonViews.SaveMode.class)
     final public AbstractOperation operation;
 
-    // the actual change, loaded on demand
+    // the actual change, loaded on demand, held until it is saved
     @JsonIgnore
     private transient Change _change;
+    // the change once it was saved, which can be loaded again if it is no longer in memory
+    @JsonIgnore
+    private transient SoftReference<Change> _savedChange;
 
     private final static String OPERATION = "operation";
 
+    /**
+     * Maximum number of saved changes kept in memory across all projects, the least recently used first released.
+     * Released changes can still be reused until they are garbage collected.
+     */
+    static protected int s_maxCachedChanges = Integer.getInteger("refine.history.max_cached_changes", 8);
+
+    static final protected Map<HistoryEntry, Change> s_cachedChanges = new LinkedHashMap<HistoryEntry, Change>(16, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HistoryEntry, Change> eldest) {
+            return size() > s_maxCachedChanges;
+        }
+    };
+
     public void setChange(Change _change) {
         this._change = _change;
+        this._savedChange = null;
     }
 
     @JsonIgnore
     public Change getChange() {
-        return _change;
+        Change change = _change;
+        if (change == null) {
+            SoftReference<Change> savedChange = _savedChange;
+            change = savedChange == null ? null : savedChange.get();
+        }
+        return change;
+    }
+
+    /**
+     * Stops holding the change once it is saved, if the manager can load it again. It is only kept in memory while it
+     * is among the most recently used ones, so that the changes of long histories do not accumulate in memory as they
+     * are undone and redone.
+     */
+    protected void releaseChange() {
+        Change change = _change;
+        if (change == null || !_manager.canReloadChange(this)) {
+            return;
+        }
+        synchronized (s_cachedChanges) {
+            s_cachedChanges.put(this, change);
+        }
+        _savedChange = new SoftReference<>(change);
+        _change = null;
     }
 
     static public long allocateID() {
@@ -146,12 +192,14 @@ public class HistoryEntry {
      *            the project the change should be applied to
      */
     public void apply(Project project) {
-        if (getChange() == null) {
-            ProjectManager.singleton.getHistoryEntryManager().loadChange(this);
+        Change change = getChange();
+        if (change == null) {
+            ProjectManager.singleton.getHistoryEntryManager().loadChange(this, project);
+            change = getChange();
         }
 
         synchronized (project) {
-            getChange().apply(project);
+            change.apply(project);
 
             // When a change is applied, it can hang on to old data (in order to be able
             // to revert later). Hence, we need to save the change out.
@@ -161,18 +209,22 @@ public class HistoryEntry {
             } catch (Exception e) {
                 e.printStackTrace();
 
-                getChange().revert(project);
+                change.revert(project);
 
                 throw new RuntimeException("Failed to apply change", e);
             }
         }
+        releaseChange();
     }
 
     public void revert(Project project) {
-        if (getChange() == null) {
-            _manager.loadChange(this);
+        Change change = getChange();
+        if (change == null) {
+            _manager.loadChange(this, project);
+            change = getChange();
         }
-        getChange().revert(project);
+        change.revert(project);
+        releaseChange();
     }
 
     static public HistoryEntry load(Project project, String s) throws IOException {
@@ -185,6 +237,9 @@ public class HistoryEntry {
     }
 
     public void delete() {
+        synchronized (s_cachedChanges) {
+            s_cachedChanges.remove(this);
+        }
         _manager.delete(this);
     }
 
@@ -36,12 +36,30 @@ package com.google.refine.history;
 import java.io.Writer;
 import java.util.Properties;
 
+import com.google.refine.model.Project;
+
 public interface HistoryEntryManager {
 
     public void loadChange(HistoryEntry historyEntry);
 
+    /**
+     * Loads the change of a history entry of a project which is already in memory, so that the change can share data
+     * with the project.
+     */
+    default public void loadChange(HistoryEntry historyEntry, Project project) {
+        loadChange(historyEntry);
+    }
+
     public void saveChange(HistoryEntry historyEntry) throws Exception;
 
+    /**
+     * @return whether the saved change of the history entry can be loaded again, so that it does not need to be kept in
+     *         memory
+     */
+    default public boolean canReloadChange(HistoryEntry historyEntry) {
+        return false;
+    }
+
     public void save(HistoryEntry historyEntry, Writer writer, Properties options);
 
     public void delete(HistoryEntry historyEntry);
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.history;
+
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+/**
+ * The rows modified by a change applied or reverted on a project, with their contents from before that. Results
+ * computed on the project at the previous history entry can then be updated from these rows instead of being computed
+ * again from scratch.
+ */
+public class RowDelta {
+
+    final public long fromEntryID;
+    final public long toEntryID;
+    final public int rowCount;
+    /**
+     * The indices of the modified rows, in increasing order.
+     */
+    final public int[] rowIndices;
+    /**
+     * Copies of the modified rows, as they were at the previous history entry.
+     */
+    final public Row[] oldRows;
+
+    protected RowDelta(long fromEntryID, long toEntryID, int rowCount, int[] rowIndices, Row[] oldRows) {
+        this.fromEntryID = fromEntryID;
+        this.toEntryID = toEntryID;
+        this.rowCount = rowCount;
+        this.rowIndices = rowIndices;
+        this.oldRows = oldRows;
+    }
+
+    /**
+     * Copies the rows a change is about to modify.
+     * 
+     * @param project
+     *            the project the change is applied to or reverted on
+     * @param change
+     *            the change, or null if it is not loaded
+     * @param fromEntryID
+     *            the id of the last done history entry, before the change
+     * @param toEntryID
+     *            the id of the last done history entry, after the change
+     * @param maxRows
+     *            the maximum number of rows to copy
+     * @return the delta, or null if the rows modified by the change are not known or too many
+     */
+    static public RowDelta capture(Project project, Change change, long fromEntryID, long toEntryID, int maxRows) {
+        int[] rowIndices = change == null ? null : change.getAffectedRows();
+        if (rowIndices == null || rowIndices.length > maxRows) {
+            return null;
+        }
+
+        int rowCount = project.rows.size();
+        Row[] oldRows = new Row[rowIndices.length];
+        for (int i = 0; i < rowIndices.length; i++) {
+            if (rowIndices[i] < 0 || rowIndices[i] >= rowCount) {
+                return null;
+            }
+            oldRows[i] = project.rows.get(rowIndices[i]).dup();
+        }
+        return new RowDelta(fromEntryID, toEntryID, rowCount, rowIndices, oldRows);
+    }
+}
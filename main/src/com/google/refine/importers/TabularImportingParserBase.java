@@ -193,6 +193,9 @@ abstract public class TabularImportingParserBase extends ImportingParserBase {
                                 } else {
                                     storedValue = ExpressionUtils.wrapStorable(value);
                                 }
+                                if (storedValue instanceof String) {
+                                    storedValue = project.getStringDictionary().intern(column.getCellIndex(), (String) storedValue);
+                                }
 
                                 row.setCell(column.getCellIndex(), new Cell(storedValue, null));
                                 rowHasData = true;
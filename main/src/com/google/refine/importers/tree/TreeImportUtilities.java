@@ -161,6 +161,9 @@ public abstract class TreeImportUtilities {
             row.add(null);
         }
 
+        if (value instanceof String) {
+            value = project.getStringDictionary().intern(cellIndex, (String) value);
+        }
         row.set(cellIndex, new Cell(value, null));
 
         column.nextRowIndex = rowIndex + 1;
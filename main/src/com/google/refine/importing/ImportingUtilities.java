@@ -1094,7 +1094,8 @@ public class ImportingUtilities {
 
         job.setState("creating-project");
 
-        final Project project = new Project();
+        final Project project = new Project(
+                JSONUtilities.getBoolean(optionObj, "columnarStorage", Project.isColumnarStorageDefault()));
         if (synchronous) {
             createProjectSynchronously(
                     job, format, optionObj, exceptions, record, project);
@@ -1132,6 +1133,7 @@ public class ImportingUtilities {
         if (!job.canceled) {
             if (exceptions.size() == 0) {
                 project.update(); // update all internal models, indexes, caches, etc.
+                pm.setInternedBytesSavedInternal(project.getStringDictionary().getBytesSaved());
 
                 ProjectManager.singleton.registerProject(project, pm);
 
@@ -0,0 +1,739 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.io.CountingOutputStream;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.util.ParsingUtilities;
+import com.google.refine.util.Pool;
+import com.google.refine.util.StringDictionary;
+
+/**
+ * A binary project file format, which loads much faster than the text format of data.zip: rows are stored in
+ * separately compressed chunks, which are memory-mapped and decoded in parallel.
+ * <p>
+ * A file is made of the following sections, each compressed on its own, followed by a footer indexing them and a
+ * trailer pointing to the footer:
+ * <ul>
+ * <li>the models of the project (column model, history, overlay models), in the text format of data.zip;</li>
+ * <li>the chunks of rows, each holding a contiguous range of rows;</li>
+ * <li>the pool of recons referenced by the cells.</li>
+ * </ul>
+ * Cells holding strings, longs, doubles and booleans are stored in binary form, other cells fall back to their JSON
+ * representation.
+ * <p>
+ * Later saves of a project are appended to its file: they only write its models, the chunks holding the rows modified
+ * since the previous save and their recons, followed by a new footer referencing the chunks of previous saves for the
+ * other rows, along with the pools of recons written by these saves. A save is only complete once its trailer is
+ * written, so the last complete trailer is looked for when loading a file, which skips whatever an interrupted save
+ * left after it. Once too much of the file is no longer
+ * referenced, the project is written to a new file instead.
+ */
+public class BinaryProjectFormat {
+
+    final static Logger logger = LoggerFactory.getLogger("binary_project_format");
+
+    static final public int MAGIC = 0x4f52424e; // "ORBN"
+    static final public int VERSION = 2;
+    // ends each save appended to a file, after the offset and checksum of its footer
+    static final protected int TRAILER_MAGIC = 0x4f52454e; // "OREN"
+    static final protected int HEADER_LENGTH = 8;
+    static final protected int TRAILER_LENGTH = 16;
+
+    static protected int s_chunkSize = Integer.getInteger("refine.storage.chunk_size", 10000);
+    /**
+     * Percentage of a file which can be taken by sections no longer referenced by its last footer, before the next save
+     * writes a new file rather than appending to it.
+     */
+    static protected int s_maxGarbagePercent = Integer.getInteger("refine.storage.max_garbage_percent", 50);
+
+    // the file layout each project was last saved with or loaded from, if it can be appended to
+    static final protected Map<Project, Layout> s_layouts = new WeakHashMap<>();
+
+    // cell tags
+    static final protected byte MISSING = 0;
+    static final protected byte NULL = 1;
+    static final protected byte STRING = 2;
+    static final protected byte LONG = 3;
+    static final protected byte DOUBLE = 4;
+    static final protected byte BOOLEAN = 5;
+    static final protected byte JSON = 6;
+    // set on the tag of a cell which is followed by the id of its recon
+    static final protected byte RECON = (byte) 0x80;
+
+    static final protected byte FLAGGED = 1;
+    static final protected byte STARRED = 2;
+
+    /**
+     * The location of a compressed section in the file.
+     */
+    static protected class Section {
+
+        final long offset;
+        final int length;
+        final int rawLength;
+
+        Section(long offset, int length, int rawLength) {
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(offset);
+            out.writeInt(length);
+            out.writeInt(rawLength);
+        }
+
+        static Section read(ByteBuffer buffer) {
+            return new Section(buffer.getLong(), buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    /**
+     * The sections referenced by the last footer of a file.
+     */
+    static protected class Layout {
+
+        final long footerOffset;
+        final int footerLength;
+        final int footerChecksum;
+        final Section models;
+        final int chunkSize;
+        final int rowCount;
+        // loaded in order, recons of later pools replacing those of earlier ones. Each pool holds the recons of the
+        // models and chunks written along with it, so only those of saves which still have chunks in use are kept.
+        final List<Section> pools;
+        final List<Section> chunks;
+        // the length of the file up to the end of the trailer
+        final long length;
+        // the number of bytes of the file referenced by the footer, the footer itself included
+        final long liveLength;
+
+        Layout(long footerOffset, int footerLength, int footerChecksum, Section models, int chunkSize, int rowCount,
+                List<Section> pools, List<Section> chunks) {
+            this.footerOffset = footerOffset;
+            this.footerLength = footerLength;
+            this.footerChecksum = footerChecksum;
+            this.models = models;
+            this.chunkSize = chunkSize;
+            this.rowCount = rowCount;
+            this.pools = pools;
+            this.chunks = chunks;
+            this.length = footerOffset + footerLength + TRAILER_LENGTH;
+            long live = HEADER_LENGTH + models.length + footerLength + TRAILER_LENGTH;
+            for (Section pool : pools) {
+                live += pool.length;
+            }
+            for (Section chunk : chunks) {
+                live += chunk.length;
+            }
+            this.liveLength = live;
+        }
+    }
+
+    static protected Layout getLayout(Project project) {
+        synchronized (s_layouts) {
+            return s_layouts.get(project);
+        }
+    }
+
+    /**
+     * Records the layout of the file a project was saved to, or forgets it if null.
+     */
+    static protected void setLayout(Project project, Layout layout) {
+        synchronized (s_layouts) {
+            if (layout == null) {
+                s_layouts.remove(project);
+            } else {
+                s_layouts.put(project, layout);
+            }
+        }
+    }
+
+    /**
+     * @return whether projects should be saved in this format rather than in the text format
+     */
+    static public boolean isEnabled() {
+        return Boolean.getBoolean("refine.storage.binary");
+    }
+
+    static public void save(Project project, File file) throws IOException {
+        write(project, file);
+    }
+
+    /**
+     * Writes a whole project to a new file.
+     * 
+     * @return the layout of the file, to which later saves can be appended
+     */
+    static protected Layout write(Project project, File file) throws IOException {
+        Pool pool = new Pool();
+        List<Section> chunks = new ArrayList<>();
+        int rowCount = project.rows.size();
+
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try (DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            Section modelsSection = writeModels(out, counter, 0, project, pool);
+            for (int from = 0; from < rowCount; from += s_chunkSize) {
+                chunks.add(writeChunk(out, counter, 0, project, from, Math.min(rowCount, from + s_chunkSize), pool));
+            }
+            Section poolSection = writePool(out, counter, 0, pool);
+
+            Layout layout = writeFooter(out, counter, 0, modelsSection, s_chunkSize, rowCount,
+                    Collections.singletonList(poolSection), chunks);
+            writeTrailer(out, layout);
+            return layout;
+        }
+    }
+
+    /**
+     * Starts saving a project by appending the chunks of rows modified since it was last saved or loaded to its file.
+     * 
+     * @param unsavedRows
+     *            the rows modified since then, or null if not known
+     * @return the save in progress, or null if the project has to be written to a new file instead
+     */
+    static protected Append startAppend(Project project, File file, RoaringBitmap unsavedRows) {
+        Layout layout = getLayout(project);
+        if (layout == null || unsavedRows == null || layout.rowCount != project.rows.size() || file.length() < layout.length) {
+            return null;
+        }
+        if ((layout.length - layout.liveLength) * 100 > layout.length * s_maxGarbagePercent) {
+            // compact the file by writing it again
+            return null;
+        }
+        return new Append(project, file, layout, unsavedRows);
+    }
+
+    /**
+     * A save appended to the file of a project. Nothing references the appended sections until the trailer is written
+     * by {@link #commit()}, so the file still holds the previous save until then.
+     */
+    static protected class Append {
+
+        final Project project;
+        final File file;
+        final Layout previous;
+        final RoaringBitmap unsavedRows;
+        RandomAccessFile raf;
+        Layout layout;
+
+        Append(Project project, File file, Layout previous, RoaringBitmap unsavedRows) {
+            this.project = project;
+            this.file = file;
+            this.previous = previous;
+            this.unsavedRows = unsavedRows;
+        }
+
+        /**
+         * Appends the models of the project, the chunks holding unsaved rows and the recons of these rows.
+         */
+        void write() throws IOException {
+            raf = new RandomAccessFile(file, "rw");
+            // drops whatever an interrupted save may have left after the last trailer
+            raf.setLength(previous.length);
+            FileChannel channel = raf.getChannel();
+            channel.position(previous.length);
+
+            Pool pool = new Pool();
+            CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataOutputStream out = new DataOutputStream(counter);
+
+            Section modelsSection = writeModels(out, counter, previous.length, project, pool);
+            List<Section> chunks = new ArrayList<>(previous.chunks);
+            int chunkSize = previous.chunkSize;
+            int rowCount = previous.rowCount;
+            int lastChunk = -1;
+            for (int row : unsavedRows) {
+                int chunk = row / chunkSize;
+                if (chunk != lastChunk && chunk < chunks.size()) {
+                    int from = chunk * chunkSize;
+                    chunks.set(chunk, writeChunk(out, counter, previous.length, project, from,
+                            Math.min(rowCount, from + chunkSize), pool));
+                    lastChunk = chunk;
+                }
+            }
+            List<Section> pools = getReferencedPools(previous.pools, chunks);
+            pools.add(writePool(out, counter, previous.length, pool));
+
+            layout = writeFooter(out, counter, previous.length, modelsSection, chunkSize, rowCount, pools, chunks);
+            out.flush();
+            channel.force(false);
+        }
+
+        /**
+         * Writes the trailer which makes the appended sections part of the file.
+         */
+        void commit() throws IOException {
+            try {
+                DataOutputStream out = new DataOutputStream(Channels.newOutputStream(raf.getChannel()));
+                writeTrailer(out, layout);
+                out.flush();
+                raf.getChannel().force(false);
+            } finally {
+                raf.close();
+            }
+            setLayout(project, layout);
+        }
+
+        /**
+         * Removes the appended sections, if any.
+         */
+        void abort() {
+            if (raf == null) {
+                return;
+            }
+            try {
+                raf.setLength(previous.length);
+            } catch (IOException e) {
+                logger.warn("Failed to truncate {}", file.getAbsolutePath(), e);
+            }
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the pools written by the saves whose chunks are still in use. As each save writes its chunks before its
+     * pool, the chunks of a save are those located between its pool and the pool of the save before it.
+     */
+    static protected List<Section> getReferencedPools(List<Section> pools, List<Section> chunks) {
+        List<Section> referenced = new ArrayList<>(pools.size() + 1);
+        long start = 0;
+        for (Section pool : pools) {
+            for (Section chunk : chunks) {
+                if (chunk.offset >= start && chunk.offset < pool.offset) {
+                    referenced.add(pool);
+                    break;
+                }
+            }
+            start = pool.offset + pool.length;
+        }
+        return referenced;
+    }
+
+    static protected Section writeModels(OutputStream out, CountingOutputStream counter, long base, Project project, Pool pool)
+            throws IOException {
+        ByteArrayOutputStream models = new ByteArrayOutputStream();
+        project.saveModelsToOutputStream(models, pool);
+        return writeSection(out, counter, base, models);
+    }
+
+    static protected Section writeChunk(OutputStream out, CountingOutputStream counter, long base, Project project, int from,
+            int to, Pool pool) throws IOException {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        DataOutputStream chunkOut = new DataOutputStream(chunk);
+        chunkOut.writeInt(to - from);
+        for (int r = from; r < to; r++) {
+            writeRow(chunkOut, project.rows.get(r), pool);
+        }
+        chunkOut.flush();
+        return writeSection(out, counter, base, chunk);
+    }
+
+    static protected Section writePool(OutputStream out, CountingOutputStream counter, long base, Pool pool) throws IOException {
+        ByteArrayOutputStream poolOut = new ByteArrayOutputStream();
+        pool.save(poolOut);
+        return writeSection(out, counter, base, poolOut);
+    }
+
+    /**
+     * Writes the footer indexing the sections of a save, without the trailer pointing to it.
+     * 
+     * @param base
+     *            the offset in the file at which the counter started
+     */
+    static protected Layout writeFooter(DataOutputStream out, CountingOutputStream counter, long base, Section modelsSection,
+            int chunkSize, int rowCount, List<Section> pools, List<Section> chunks) throws IOException {
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        DataOutputStream footerOut = new DataOutputStream(footer);
+        modelsSection.write(footerOut);
+        footerOut.writeInt(chunkSize);
+        footerOut.writeInt(rowCount);
+        footerOut.writeInt(pools.size());
+        for (Section pool : pools) {
+            pool.write(footerOut);
+        }
+        footerOut.writeInt(chunks.size());
+        for (Section chunk : chunks) {
+            chunk.write(footerOut);
+        }
+        footerOut.flush();
+
+        long footerOffset = base + counter.getCount();
+        footer.writeTo(out);
+        CRC32 checksum = new CRC32();
+        checksum.update(footer.toByteArray());
+        return new Layout(footerOffset, footer.size(), (int) checksum.getValue(), modelsSection, chunkSize, rowCount, pools,
+                chunks);
+    }
+
+    static protected void writeTrailer(DataOutputStream out, Layout layout) throws IOException {
+        out.writeLong(layout.footerOffset);
+        out.writeInt(layout.footerChecksum);
+        out.writeInt(TRAILER_MAGIC);
+    }
+
+    static protected Section writeSection(OutputStream out, CountingOutputStream counter, long base, ByteArrayOutputStream raw)
+            throws IOException {
+        long offset = base + counter.getCount();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater);
+            raw.writeTo(compressed);
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+        return new Section(offset, (int) (base + counter.getCount() - offset), raw.size());
+    }
+
+    static protected void writeRow(DataOutputStream out, Row row, Pool pool) throws IOException {
+        out.writeByte((row.isFlagged() ? FLAGGED : 0) | (row.isStarred() ? STARRED : 0));
+        out.writeInt(row.cells.size());
+        for (Cell cell : row.cells) {
+            writeCell(out, cell, pool);
+        }
+    }
+
+    static protected void writeCell(DataOutputStream out, Cell cell, Pool pool) throws IOException {
+        if (cell == null) {
+            out.writeByte(MISSING);
+            return;
+        }
+
+        Object value = cell.value;
+        byte tag;
+        if (value == null) {
+            tag = NULL;
+        } else if (value instanceof String) {
+            tag = STRING;
+        } else if (value instanceof Long) {
+            tag = LONG;
+        } else if (value instanceof Double) {
+            tag = DOUBLE;
+        } else if (value instanceof Boolean) {
+            tag = BOOLEAN;
+        } else {
+            // dates, errors and other numbers are stored as they are in the text format, recon included
+            out.writeByte(JSON);
+            writeString(out, ParsingUtilities.saveWriter.writeValueAsString(cell));
+            if (cell.recon != null) {
+                pool.pool(cell.recon);
+            }
+            return;
+        }
+
+        if (cell.recon != null) {
+            pool.pool(cell.recon);
+            out.writeByte(tag | RECON);
+            out.writeLong(cell.recon.id);
+        } else {
+            out.writeByte(tag);
+        }
+        switch (tag) {
+            case STRING:
+                writeString(out, (String) value);
+                break;
+            case LONG:
+                out.writeLong((Long) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    static protected void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static public Project load(File file, long id) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = map(channel, 0, 8);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary project file: " + file.getAbsolutePath());
+            }
+            int version = header.getInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported binary project file version " + version + ": " + file.getAbsolutePath());
+            }
+
+            Layout layout = version == 1 ? readLegacyFooter(channel) : findLastFooter(channel);
+            if (layout == null) {
+                throw new IOException("No complete footer in binary project file: " + file.getAbsolutePath());
+            }
+
+            Pool pool = new Pool();
+            for (Section poolSection : layout.pools) {
+                pool.load(new InputStreamReader(new ByteArrayInputStream(inflate(channel, poolSection)), StandardCharsets.UTF_8));
+            }
+
+            ObjectReader cellReader = ParsingUtilities.mapper.readerFor(Cell.class)
+                    .with(new InjectableValues.Std().addValue("pool", pool));
+            Project project = Project.loadFromInputStream(new ByteArrayInputStream(inflate(channel, layout.models)), id, pool,
+                    p -> loadRows(channel, layout.chunks, cellReader, pool, p.getStringDictionary()));
+            if (version > 1 && project.rows.size() == layout.rowCount) {
+                setLayout(project, layout);
+            }
+            return project;
+        }
+    }
+
+    /**
+     * Reads the footer of a file in the first version of the format, which could not be appended to.
+     */
+    static protected Layout readLegacyFooter(FileChannel channel) throws IOException {
+        ByteBuffer footer = map(channel, channel.size() - 8, 8);
+        long footerOffset = footer.getLong();
+        footer = map(channel, footerOffset, channel.size() - 8 - footerOffset);
+        Section modelsSection = Section.read(footer);
+        Section poolSection = Section.read(footer);
+        List<Section> chunks = new ArrayList<>();
+        for (int i = footer.getInt(); i > 0; i--) {
+            chunks.add(Section.read(footer));
+        }
+        return new Layout(footerOffset, (int) (channel.size() - 8 - footerOffset), 0, modelsSection, s_chunkSize, -1,
+                Collections.singletonList(poolSection), chunks);
+    }
+
+    /**
+     * Finds the last complete footer of a file, skipping any data left after it by an interrupted save.
+     * 
+     * @return the layout of the file, or null if there is no complete footer
+     */
+    static protected Layout findLastFooter(FileChannel channel) throws IOException {
+        long windowStart = -1;
+        ByteBuffer window = null;
+        for (long end = channel.size(); end >= HEADER_LENGTH + TRAILER_LENGTH; end--) {
+            if (window == null || end - 4 < windowStart) {
+                long windowEnd = end;
+                windowStart = Math.max(0, windowEnd - 65536);
+                window = map(channel, windowStart, windowEnd - windowStart);
+            }
+            if (window.getInt((int) (end - 4 - windowStart)) == TRAILER_MAGIC) {
+                Layout layout = readFooter(channel, end);
+                if (layout != null) {
+                    return layout;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the footer whose trailer ends at the given offset.
+     * 
+     * @return the layout of the file, or null if there is no valid trailer and footer there
+     */
+    static protected Layout readFooter(FileChannel channel, long end) throws IOException {
+        ByteBuffer trailer = map(channel, end - TRAILER_LENGTH, TRAILER_LENGTH);
+        long footerOffset = trailer.getLong();
+        int footerChecksum = trailer.getInt();
+        if (footerOffset < HEADER_LENGTH || footerOffset > end - TRAILER_LENGTH) {
+            return null;
+        }
+        ByteBuffer footer = map(channel, footerOffset, end - TRAILER_LENGTH - footerOffset);
+        CRC32 checksum = new CRC32();
+        checksum.update(footer.duplicate());
+        if ((int) checksum.getValue() != footerChecksum) {
+            return null;
+        }
+        try {
+            Section modelsSection = Section.read(footer);
+            int chunkSize = footer.getInt();
+            int rowCount = footer.getInt();
+            List<Section> pools = new ArrayList<>();
+            for (int i = footer.getInt(); i > 0; i--) {
+                pools.add(Section.read(footer));
+            }
+            List<Section> chunks = new ArrayList<>();
+            for (int i = footer.getInt(); i > 0; i--) {
+                chunks.add(Section.read(footer));
+            }
+            return new Layout(footerOffset, (int) (end - TRAILER_LENGTH - footerOffset), footerChecksum, modelsSection,
+                    chunkSize, rowCount, pools, chunks);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    static protected List<Row> loadRows(FileChannel channel, List<Section> chunks, ObjectReader cellReader, Pool pool,
+            StringDictionary dictionary) throws Exception {
+        List<Future<List<Row>>> futures = new ArrayList<>(chunks.size());
+        for (Section chunk : chunks) {
+            futures.add(ForkJoinPool.commonPool().submit(() -> readChunk(inflate(channel, chunk), cellReader, pool, dictionary)));
+        }
+
+        List<Row> rows = new ArrayList<>();
+        try {
+            for (Future<List<Row>> future : futures) {
+                rows.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return rows;
+    }
+
+    static protected List<Row> readChunk(byte[] data, ObjectReader cellReader, Pool pool, StringDictionary dictionary)
+            throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int rowCount = in.readInt();
+        List<Row> rows = new ArrayList<>(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            byte flags = in.readByte();
+            int cellCount = in.readInt();
+            Row row = new Row(cellCount);
+            row.flagged = (flags & FLAGGED) != 0;
+            row.starred = (flags & STARRED) != 0;
+            for (int c = 0; c < cellCount; c++) {
+                row.cells.add(readCell(in, c, cellReader, pool, dictionary));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    static protected Cell readCell(DataInputStream in, int cellIndex, ObjectReader cellReader, Pool pool,
+            StringDictionary dictionary) throws Exception {
+        byte tag = in.readByte();
+        if (tag == MISSING) {
+            return null;
+        } else if (tag == JSON) {
+            Cell cell = cellReader.readValue(readString(in));
+            if (cell != null && cell.value instanceof String) {
+                cell = new Cell(dictionary.intern(cellIndex, (String) cell.value), cell.recon);
+            }
+            return cell;
+        }
+
+        Recon recon = (tag & RECON) != 0 ? pool.getRecon(Long.toString(in.readLong())) : null;
+        switch (tag & ~RECON) {
+            case STRING:
+                return new Cell(dictionary.intern(cellIndex, readString(in)), recon);
+            case LONG:
+                return new Cell(in.readLong(), recon);
+            case DOUBLE:
+                return new Cell(in.readDouble(), recon);
+            case BOOLEAN:
+                return new Cell(in.readBoolean(), recon);
+            default:
+                return new Cell(null, recon);
+        }
+    }
+
+    static protected String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static protected ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    static protected byte[] inflate(FileChannel channel, Section section) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(map(channel, section.offset, section.length));
+            byte[] raw = new byte[section.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new IOException("Truncated section at offset " + section.offset);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted section at offset " + section.offset, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -47,6 +47,7 @@ import com.google.refine.ProjectManager;
 import com.google.refine.history.History;
 import com.google.refine.history.HistoryEntry;
 import com.google.refine.history.HistoryEntryManager;
+import com.google.refine.model.Project;
 import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
 
@@ -75,19 +76,33 @@ public class FileHistoryEntryManager implements HistoryEntryManager {
 
     @Override
     public void loadChange(HistoryEntry historyEntry) {
+        loadChange(historyEntry, new Pool());
+    }
+
+    @Override
+    public void loadChange(HistoryEntry historyEntry, Project project) {
+        Pool pool = new Pool();
+        pool.setStringDictionary(project.getStringDictionary());
+        loadChange(historyEntry, pool);
+    }
+
+    protected void loadChange(HistoryEntry historyEntry, Pool pool) {
         File changeFile = getChangeFile(historyEntry);
 
         try {
-            loadChange(historyEntry, changeFile);
+            loadChange(historyEntry, changeFile, pool);
         } catch (Exception e) {
             throw new RuntimeException("Failed to load change file " + changeFile.getAbsolutePath(), e);
         }
     }
 
     protected void loadChange(HistoryEntry historyEntry, File file) throws Exception {
+        loadChange(historyEntry, file, new Pool());
+    }
+
+    protected void loadChange(HistoryEntry historyEntry, File file, Pool pool) throws Exception {
         ZipFile zipFile = new ZipFile(file);
         try {
-            Pool pool = new Pool();
             ZipEntry poolEntry = zipFile.getEntry("pool.txt");
             if (poolEntry != null) {
                 pool.load(new InputStreamReader(
@@ -109,7 +124,13 @@ public class FileHistoryEntryManager implements HistoryEntryManager {
         }
     }
 
+    @Override
+    public boolean canReloadChange(HistoryEntry historyEntry) {
+        return getChangeFile(historyEntry).exists();
+    }
+
     protected void saveChange(HistoryEntry historyEntry, File file) throws Exception {
+        boolean failed = false;
         ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
         try {
             Pool pool = new Pool();
@@ -119,6 +140,7 @@ public class FileHistoryEntryManager implements HistoryEntryManager {
                 History.writeOneChange(out, historyEntry.getChange(), pool);
             } catch (Exception e) {
                 e.printStackTrace();
+                failed = true;
             } finally {
                 out.closeEntry();
             }
@@ -131,6 +153,10 @@ public class FileHistoryEntryManager implements HistoryEntryManager {
             }
         } finally {
             out.close();
+            if (failed) {
+                // the change cannot be loaded from an incomplete file, so it has to stay in memory
+                file.delete();
+            }
         }
     }
 
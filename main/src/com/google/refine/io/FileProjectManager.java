@@ -232,7 +232,10 @@ public class FileProjectManager extends ProjectManager {
     @Override
     public void saveMetadata(ProjectMetadata metadata, long projectId) throws Exception {
         File projectDir = getProjectDir(projectId);
-        ProjectMetadataUtilities.save(metadata, projectDir);
+        // metadata files are written through a temporary file, which must not be shared by concurrent saves
+        synchronized (metadata) {
+            ProjectMetadataUtilities.save(metadata, projectDir);
+        }
     }
 
     @Override
@@ -312,7 +315,9 @@ public class FileProjectManager extends ProjectManager {
         for (Long id : modified) {
             ProjectMetadata metadata = _projectsMetadata.get(id);
             if (metadata != null) {
-                ProjectMetadataUtilities.save(metadata, getProjectDir(id));
+                synchronized (metadata) {
+                    ProjectMetadataUtilities.save(metadata, getProjectDir(id));
+                }
             }
         }
     }
@@ -465,9 +470,9 @@ public class FileProjectManager extends ProjectManager {
 
             mergeEmptyUserMetadata(metadata);
 
-            _projectsMetadata.put(id, metadata);
-
+            // projects with unreadable metadata are left for recover() to find
             if (metadata != null) {
+                _projectsMetadata.put(id, metadata);
                 addProjectTags(metadata.getTags());
             }
         }
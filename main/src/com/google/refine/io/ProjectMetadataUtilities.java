@@ -142,8 +142,8 @@ public class ProjectMetadataUtilities {
             long ctime = System.currentTimeMillis();
             long mtime = 0;
 
-            File dataFile = new File(projectDir, "data.zip");
-            ctime = mtime = dataFile.lastModified();
+            File dataFile = ProjectUtilities.getDataFile(projectDir);
+            ctime = mtime = dataFile != null ? dataFile.lastModified() : 0;
 
             File historyDir = new File(projectDir, "history");
             File[] files = historyDir.listFiles();
@@ -40,6 +40,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,41 +52,138 @@ public class ProjectUtilities {
 
     final static Logger logger = LoggerFactory.getLogger("project_utilities");
 
+    /**
+     * Number of times a project is written without holding its lock before falling back to a save which holds it
+     * throughout, when the project keeps being modified while it is written.
+     */
+    static protected int s_maxOptimisticAttempts = Integer.getInteger("refine.save.max_optimistic_attempts", 3);
+
+    /**
+     * Saves a project to its directory. The project is first written without holding its lock, so that it can still be
+     * read and modified in the meantime: the snapshot is only kept if no change was applied or reverted while it was
+     * being written, which is checked with the lock briefly held, as changes modify rows in place.
+     * <p>
+     * In the binary format, only the rows modified since the last save are written when possible, by appending them to
+     * the existing file.
+     */
     synchronized public static void save(Project project) throws IOException {
-        synchronized (project) {
-            long id = project.id;
-            File dir = ((FileProjectManager) ProjectManager.singleton).getProjectDir(id);
+        long id = project.id;
+        File dir = ((FileProjectManager) ProjectManager.singleton).getProjectDir(id);
+
+        boolean binary = BinaryProjectFormat.isEnabled();
+        String extension = binary ? ".bin" : ".zip";
+        File tempFile = new File(dir, "data.temp" + extension);
 
-            File tempFile = new File(dir, "data.temp.zip");
+        for (int attempt = 0; attempt < s_maxOptimisticAttempts; attempt++) {
+            long modificationCount;
+            RoaringBitmap unsavedRows;
+            synchronized (project.history) {
+                // changes are applied and reverted with this lock held, so none is in progress
+                modificationCount = project.history.getModificationCount();
+                unsavedRows = project.history.getUnsavedRows();
+            }
+            BinaryProjectFormat.Append append = binary
+                    ? BinaryProjectFormat.startAppend(project, new File(dir, "data.bin"), unsavedRows)
+                    : null;
+            BinaryProjectFormat.Layout layout = null;
             try {
-                saveToFile(project, tempFile);
-            } catch (IOException e) {
-                e.printStackTrace();
-                logger.warn("Failed to save project {}", id);
-                try {
-                    tempFile.delete();
-                } catch (Exception e2) {
-                    // just ignore - file probably was never created.
+                if (append != null) {
+                    append.write();
+                } else {
+                    layout = write(project, tempFile, binary);
                 }
+            } catch (IOException | RuntimeException e) {
+                if (append != null) {
+                    append.abort();
+                }
+                if (project.history.getModificationCount() == modificationCount) {
+                    cleanUpFailedSave(id, tempFile, e);
+                    throw e;
+                }
+                // the project was probably read while being modified
+                continue;
+            }
+            synchronized (project) {
+                synchronized (project.history) {
+                    if (project.history.getModificationCount() == modificationCount) {
+                        if (append != null) {
+                            append.commit();
+                            markSaved(project);
+                        } else {
+                            replaceDataFile(project, dir, tempFile, binary, layout);
+                        }
+                        return;
+                    }
+                }
+            }
+            if (append != null) {
+                append.abort();
+            }
+            logger.info("Project {} was modified while being saved, trying again", id);
+        }
+
+        synchronized (project) {
+            BinaryProjectFormat.Layout layout;
+            try {
+                layout = write(project, tempFile, binary);
+            } catch (IOException e) {
+                cleanUpFailedSave(id, tempFile, e);
                 throw e;
             }
+            replaceDataFile(project, dir, tempFile, binary, layout);
+        }
+    }
 
-            File file = new File(dir, "data.zip");
-            File oldFile = new File(dir, "data.old.zip");
+    /**
+     * Writes a whole project to a new file.
+     * 
+     * @return the layout of the file if it is in the binary format, null otherwise
+     */
+    static protected BinaryProjectFormat.Layout write(Project project, File file, boolean binary) throws IOException {
+        if (binary) {
+            return BinaryProjectFormat.write(project, file);
+        } else {
+            saveToFile(project, file);
+            return null;
+        }
+    }
 
-            if (file.exists()) {
-                file.renameTo(oldFile);
-            }
+    static protected void cleanUpFailedSave(long id, File tempFile, Exception e) {
+        e.printStackTrace();
+        logger.warn("Failed to save project {}", id);
+        try {
+            tempFile.delete();
+        } catch (Exception e2) {
+            // just ignore - file probably was never created.
+        }
+    }
 
-            tempFile.renameTo(file);
-            if (oldFile.exists()) {
-                oldFile.delete();
-            }
+    static protected void replaceDataFile(Project project, File dir, File tempFile, boolean binary,
+            BinaryProjectFormat.Layout layout) {
+        String extension = binary ? ".bin" : ".zip";
+        File file = new File(dir, "data" + extension);
+        File oldFile = new File(dir, "data.old" + extension);
 
-            project.setLastSave();
+        if (file.exists()) {
+            file.renameTo(oldFile);
+        }
 
-            logger.info("Saved project '{}'", id);
+        tempFile.renameTo(file);
+        if (oldFile.exists()) {
+            oldFile.delete();
         }
+        // a copy in the other format is now out of date
+        new File(dir, binary ? "data.zip" : "data.bin").delete();
+        BinaryProjectFormat.setLayout(project, layout);
+
+        markSaved(project);
+    }
+
+    static protected void markSaved(Project project) {
+        project.history.markSaved();
+        project.setLastSave();
+
+        logger.info("Saved project '{}'", project.id);
     }
 
     protected static void saveToFile(Project project, File file) throws IOException {
@@ -111,40 +209,54 @@ public class ProjectUtilities {
         }
     }
 
+    /**
+     * Project data files, in the order in which they are tried. Binary files come first, as only one of data.bin and
+     * data.zip is kept after a successful save.
+     */
+    static final private String[] DATA_FILES = {
+            "data.bin", "data.zip", "data.temp.bin", "data.temp.zip", "data.old.bin", "data.old.zip"
+    };
+
     static public Project load(File dir, long id) {
-        try {
-            File file = new File(dir, "data.zip");
-            if (file.exists()) {
-                return loadFromFile(file, id);
+        for (String name : DATA_FILES) {
+            try {
+                File file = new File(dir, name);
+                if (file.exists()) {
+                    Project project = loadFromFile(file, id);
+                    if (!"data.bin".equals(name)) {
+                        // later saves can only be appended to data.bin
+                        BinaryProjectFormat.setLayout(project, null);
+                    }
+                    return project;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
 
-        try {
-            File file = new File(dir, "data.temp.zip");
-            if (file.exists()) {
-                return loadFromFile(file, id);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        return null;
+    }
 
-        try {
-            File file = new File(dir, "data.old.zip");
+    /**
+     * @return the file holding the data of a project, or null if there is none
+     */
+    static public File getDataFile(File dir) {
+        for (String name : DATA_FILES) {
+            File file = new File(dir, name);
             if (file.exists()) {
-                return loadFromFile(file, id);
+                return file;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-
         return null;
     }
 
     static protected Project loadFromFile(
             File file,
             long id) throws Exception {
+        if (file.getName().endsWith(".bin")) {
+            return BinaryProjectFormat.load(file, id);
+        }
+
         ZipFile zipFile = new ZipFile(file);
         try {
             Pool pool = new Pool();
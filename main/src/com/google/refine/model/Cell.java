@@ -187,6 +187,8 @@ public class Cell implements HasFields {
         }
         if (error != null) {
             value = new EvalError(error);
+        } else if (value instanceof String && pool != null && pool.getStringDictionary() != null) {
+            value = pool.getStringDictionary().lookup((String) value);
         }
         return new Cell((Serializable) value, recon);
     }
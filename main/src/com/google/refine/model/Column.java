@@ -39,6 +39,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -125,20 +126,28 @@ public class Column {
      * {@link com.google.refine.LookupCacheManager#flushLookupsInvolvingProjectColumn(long, String)} e.g.
      * ProjectManager.singleton.getLookupCacheManager().flushLookupsInvolvingProjectColumn(project.id, column.getName())
      */
-    public void clearPrecomputes() {
+    public synchronized void clearPrecomputes() {
         if (_precomputes != null) {
             _precomputes.clear();
         }
     }
 
-    public Object getPrecompute(String key) {
+    public synchronized Object getPrecompute(String key) {
         if (_precomputes != null) {
             return _precomputes.get(key);
         }
         return null;
     }
 
-    public void setPrecompute(String key, Object value) {
+    /**
+     * @return the number of precomputed values currently cached for this column
+     */
+    @JsonIgnore
+    public synchronized int getPrecomputeCount() {
+        return _precomputes == null ? 0 : _precomputes.size();
+    }
+
+    public synchronized void setPrecompute(String key, Object value) {
         if (_precomputes == null) {
             _precomputes = new HashMap<String, Object>();
         }
@@ -0,0 +1,487 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A list of rows which stores its cells column by column rather than as {@link Row} and {@link Cell} objects. Strings
+ * are dictionary-encoded per column, longs and doubles are kept in primitive arrays, and a type tag per cell records
+ * missing cells, null values and the encoding used. Flags and stars are kept in bitmaps.
+ * <p>
+ * Rows returned by this list are lightweight views: changes made through {@link Row#setCell(int, Cell)},
+ * {@link Row#cells}, {@link Row#setFlagged(boolean)} or {@link Row#setStarred(boolean)} are written back to the
+ * underlying storage. A view keeps referring to the same storage slot after it has been removed from the list, so
+ * {@link com.google.refine.history.Change}s can hold on to removed rows and re-insert them later, exactly as they would
+ * with plain rows. Rows which are not views of this list are copied into a new slot when added.
+ * <p>
+ * Once enough slots no longer belong to rows of the list, the rows of the list are compacted into fresh storage. Views
+ * of rows still in the list follow them there, while views of removed rows keep the previous storage alive until they
+ * are released.
+ */
+public class ColumnarRowList extends AbstractList<Row> implements RandomAccess {
+
+    /**
+     * Maximum number of distinct strings dictionary-encoded in a single column. Further strings are stored as they
+     * are, so that high-cardinality columns do not pay for a dictionary.
+     */
+    static protected int s_maxDictionarySize = Integer.getInteger("refine.storage.dictionary_size", 1 << 16);
+    /**
+     * Percentage of the storage slots which may belong to rows no longer in the list before the storage is compacted.
+     */
+    static protected int s_maxDeadSlotPercent = Integer.getInteger("refine.storage.max_dead_slot_percent", 50);
+    static protected int s_minDeadSlots = 4096;
+
+    protected int[] _order = new int[16];
+    protected int _size = 0;
+    protected Slots _slots = new Slots();
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public Row get(int index) {
+        return new ColumnarRow(new Handle(_slots, _order[checkIndex(index, _size)]));
+    }
+
+    @Override
+    public Row set(int index, Row row) {
+        checkIndex(index, _size);
+        Row old = get(index);
+        _order[index] = slotOf(row);
+        compactIfNeeded();
+        return old;
+    }
+
+    @Override
+    public void add(int index, Row row) {
+        checkIndex(index, _size + 1);
+        int slot = slotOf(row);
+        if (_size == _order.length) {
+            _order = Arrays.copyOf(_order, grow(_order.length));
+        }
+        System.arraycopy(_order, index, _order, index + 1, _size - index);
+        _order[index] = slot;
+        _size++;
+        modCount++;
+    }
+
+    @Override
+    public Row remove(int index) {
+        Row old = get(index);
+        System.arraycopy(_order, index + 1, _order, index, _size - index - 1);
+        _size--;
+        modCount++;
+        compactIfNeeded();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        // rows are often put back right after the list is cleared, so compaction waits for the next new slot
+        _size = 0;
+        modCount++;
+    }
+
+    static private int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    static private int grow(int length) {
+        return length + (length >> 1) + 1;
+    }
+
+    /**
+     * Returns the storage slot of a row: its own slot if it is a view of this list, a new slot holding a copy of it
+     * otherwise.
+     */
+    protected int slotOf(Row row) {
+        if (row instanceof ColumnarRow && ((ColumnarRow) row).owner() == this) {
+            Handle handle = ((ColumnarRow) row).handle.resolve();
+            if (handle.slots == _slots) {
+                return handle.slot;
+            }
+        }
+        compactIfNeeded();
+        return _slots.add(row);
+    }
+
+    protected void compactIfNeeded() {
+        int dead = _slots._count - _size;
+        if (dead >= s_minDeadSlots && dead * 100L > (long) _slots._count * s_maxDeadSlotPercent) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the rows of the list into fresh storage, leaving the slots of removed rows behind.
+     */
+    protected void compact() {
+        Slots slots = new Slots();
+        int[] forward = new int[_slots._count];
+        Arrays.fill(forward, -1);
+        for (int i = 0; i < _size; i++) {
+            int slot = _order[i];
+            if (forward[slot] < 0) {
+                forward[slot] = slots.add(new ColumnarRow(new Handle(_slots, slot)));
+            }
+            _order[i] = forward[slot];
+        }
+        _slots._forward = forward;
+        _slots._next = slots;
+        _slots = slots;
+    }
+
+    /**
+     * A generation of storage slots. Once compacted, it records where the rows which were still in the list went.
+     */
+    static protected class Slots {
+
+        protected int _count = 0;
+        protected int[] _cellCounts = new int[16];
+        final protected BitSet _flagged = new BitSet();
+        final protected BitSet _starred = new BitSet();
+        final protected List<CellColumn> _columns = new ArrayList<>();
+
+        protected Slots _next;
+        protected int[] _forward;
+
+        /**
+         * Copies a row into a new slot.
+         */
+        protected int add(Row row) {
+            int slot = _count++;
+            if (slot == _cellCounts.length) {
+                _cellCounts = Arrays.copyOf(_cellCounts, grow(slot));
+            }
+            _flagged.set(slot, row.isFlagged());
+            _starred.set(slot, row.isStarred());
+            List<Cell> cells = row.cells;
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = cells.get(i);
+                if (cell != null) {
+                    column(i).set(slot, cell);
+                }
+            }
+            _cellCounts[slot] = cells.size();
+            return slot;
+        }
+
+        protected CellColumn column(int cellIndex) {
+            while (cellIndex >= _columns.size()) {
+                _columns.add(new CellColumn());
+            }
+            return _columns.get(cellIndex);
+        }
+
+        protected Cell getCell(int slot, int cellIndex) {
+            return cellIndex < _columns.size() ? _columns.get(cellIndex).get(slot) : null;
+        }
+
+        protected void setCell(int slot, int cellIndex, Cell cell) {
+            if (cell != null) {
+                column(cellIndex).set(slot, cell);
+            } else if (cellIndex < _columns.size()) {
+                _columns.get(cellIndex).set(slot, null);
+            }
+        }
+    }
+
+    /**
+     * The location of a row in storage, which moves along with the row when the storage is compacted.
+     */
+    static protected class Handle {
+
+        protected Slots slots;
+        protected int slot;
+
+        protected Handle(Slots slots, int slot) {
+            this.slots = slots;
+            this.slot = slot;
+        }
+
+        protected Handle resolve() {
+            while (slots._next != null && slots._forward[slot] >= 0) {
+                slot = slots._forward[slot];
+                slots = slots._next;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A row whose cells, flag and star live in the enclosing list.
+     */
+    protected class ColumnarRow extends Row {
+
+        final protected Handle handle;
+
+        protected ColumnarRow(Handle handle) {
+            super(new ColumnarCells(handle), handle.slots._flagged.get(handle.slot), handle.slots._starred.get(handle.slot));
+            this.handle = handle;
+        }
+
+        protected ColumnarRowList owner() {
+            return ColumnarRowList.this;
+        }
+
+        @Override
+        public boolean isFlagged() {
+            handle.resolve();
+            return handle.slots._flagged.get(handle.slot);
+        }
+
+        @Override
+        public boolean isStarred() {
+            handle.resolve();
+            return handle.slots._starred.get(handle.slot);
+        }
+
+        @Override
+        public void setFlagged(boolean flagged) {
+            super.setFlagged(flagged);
+            handle.resolve();
+            handle.slots._flagged.set(handle.slot, flagged);
+        }
+
+        @Override
+        public void setStarred(boolean starred) {
+            super.setStarred(starred);
+            handle.resolve();
+            handle.slots._starred.set(handle.slot, starred);
+        }
+    }
+
+    /**
+     * The cells of a {@link ColumnarRow}.
+     */
+    static protected class ColumnarCells extends AbstractList<Cell> implements RandomAccess {
+
+        final protected Handle handle;
+
+        protected ColumnarCells(Handle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public int size() {
+            handle.resolve();
+            return handle.slots._cellCounts[handle.slot];
+        }
+
+        @Override
+        public Cell get(int index) {
+            checkIndex(index, size());
+            return handle.slots.getCell(handle.slot, index);
+        }
+
+        @Override
+        public Cell set(int index, Cell cell) {
+            Cell old = get(index);
+            handle.slots.setCell(handle.slot, index, cell);
+            return old;
+        }
+
+        @Override
+        public void add(int index, Cell cell) {
+            int size = size();
+            checkIndex(index, size + 1);
+            Slots slots = handle.slots;
+            int slot = handle.slot;
+            for (int i = size; i > index; i--) {
+                slots.setCell(slot, i, slots.getCell(slot, i - 1));
+            }
+            slots.setCell(slot, index, cell);
+            slots._cellCounts[slot] = size + 1;
+            modCount++;
+        }
+
+        @Override
+        public Cell remove(int index) {
+            Cell old = get(index);
+            Slots slots = handle.slots;
+            int slot = handle.slot;
+            int size = slots._cellCounts[slot];
+            for (int i = index; i < size - 1; i++) {
+                slots.setCell(slot, i, slots.getCell(slot, i + 1));
+            }
+            slots.setCell(slot, size - 1, null);
+            slots._cellCounts[slot] = size - 1;
+            modCount++;
+            return old;
+        }
+    }
+
+    /**
+     * The cells of all rows at a given cell index, indexed by storage slot.
+     */
+    static protected class CellColumn {
+
+        static final protected byte MISSING = 0;
+        static final protected byte NULL = 1;
+        static final protected byte STRING = 2;
+        static final protected byte LONG = 3;
+        static final protected byte DOUBLE = 4;
+        static final protected byte OBJECT = 5;
+
+        protected byte[] _kinds = new byte[0];
+        // the following arrays are only allocated once a cell needs them
+        protected int[] _codes;
+        protected long[] _numbers;
+        protected Serializable[] _objects;
+        protected Recon[] _recons;
+
+        final protected List<String> _dictionary = new ArrayList<>();
+        final protected Map<String, Integer> _dictionaryCodes = new HashMap<>();
+
+        protected Cell get(int slot) {
+            if (slot >= _kinds.length) {
+                return null;
+            }
+            Recon recon = _recons == null ? null : _recons[slot];
+            switch (_kinds[slot]) {
+                case NULL:
+                    return new Cell(null, recon);
+                case STRING:
+                    return new Cell(_dictionary.get(_codes[slot]), recon);
+                case LONG:
+                    return new Cell(_numbers[slot], recon);
+                case DOUBLE:
+                    return new Cell(Double.longBitsToDouble(_numbers[slot]), recon);
+                case OBJECT:
+                    return new Cell(_objects[slot], recon);
+                default:
+                    return null;
+            }
+        }
+
+        protected void set(int slot, Cell cell) {
+            if (cell == null) {
+                if (slot < _kinds.length) {
+                    _kinds[slot] = MISSING;
+                    clearReferences(slot);
+                }
+                return;
+            }
+
+            ensureCapacity(slot + 1);
+            clearReferences(slot);
+            if (cell.recon != null) {
+                if (_recons == null) {
+                    _recons = new Recon[_kinds.length];
+                }
+                _recons[slot] = cell.recon;
+            }
+
+            Serializable value = cell.value;
+            if (value == null) {
+                _kinds[slot] = NULL;
+            } else if (value instanceof String && encode((String) value, slot)) {
+                _kinds[slot] = STRING;
+            } else if (value instanceof Long) {
+                numbers()[slot] = (Long) value;
+                _kinds[slot] = LONG;
+            } else if (value instanceof Double) {
+                numbers()[slot] = Double.doubleToRawLongBits((Double) value);
+                _kinds[slot] = DOUBLE;
+            } else {
+                if (_objects == null) {
+                    _objects = new Serializable[_kinds.length];
+                }
+                _objects[slot] = value;
+                _kinds[slot] = OBJECT;
+            }
+        }
+
+        protected boolean encode(String s, int slot) {
+            Integer code = _dictionaryCodes.get(s);
+            if (code == null) {
+                if (_dictionary.size() >= s_maxDictionarySize) {
+                    return false;
+                }
+                code = _dictionary.size();
+                _dictionary.add(s);
+                _dictionaryCodes.put(s, code);
+            }
+            if (_codes == null) {
+                _codes = new int[_kinds.length];
+            }
+            _codes[slot] = code;
+            return true;
+        }
+
+        protected long[] numbers() {
+            if (_numbers == null) {
+                _numbers = new long[_kinds.length];
+            }
+            return _numbers;
+        }
+
+        protected void clearReferences(int slot) {
+            if (_objects != null) {
+                _objects[slot] = null;
+            }
+            if (_recons != null) {
+                _recons[slot] = null;
+            }
+        }
+
+        protected void ensureCapacity(int capacity) {
+            if (capacity <= _kinds.length) {
+                return;
+            }
+            int length = Math.max(capacity, grow(_kinds.length));
+            _kinds = Arrays.copyOf(_kinds, length);
+            if (_codes != null) {
+                _codes = Arrays.copyOf(_codes, length);
+            }
+            if (_numbers != null) {
+                _numbers = Arrays.copyOf(_numbers, length);
+            }
+            if (_objects != null) {
+                _objects = Arrays.copyOf(_objects, length);
+            }
+            if (_recons != null) {
+                _recons = Arrays.copyOf(_recons, length);
+            }
+        }
+    }
+}
@@ -59,13 +59,14 @@ import com.google.refine.history.History;
 import com.google.refine.process.ProcessManager;
 import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.Pool;
+import com.google.refine.util.StringDictionary;
 
 public class Project {
 
     final static protected Map<String, Class<? extends OverlayModel>> s_overlayModelClasses = new HashMap<String, Class<? extends OverlayModel>>();
 
     final public long id;
-    final public List<Row> rows = new ArrayList<>();
+    final public List<Row> rows;
     final public ColumnModel columnModel = new ColumnModel();
     final public RecordModel recordModel = new RecordModel();
     final public Map<String, OverlayModel> overlayModels = new HashMap<String, OverlayModel>();
@@ -73,9 +74,19 @@ public class Project {
 
     transient public ProcessManager processManager = new ProcessManager();
     transient private Instant _lastSave = Instant.now();
+    transient final private StringDictionary _stringDictionary = new StringDictionary();
 
     final static Logger logger = LoggerFactory.getLogger(Project.class);
 
+    /**
+     * Whether new projects store their rows column by column unless told otherwise.
+     */
+    static protected boolean s_columnarStorageDefault = Boolean.getBoolean("refine.storage.columnar");
+
+    static public boolean isColumnarStorageDefault() {
+        return s_columnarStorageDefault;
+    }
+
     static public long generateID() {
         return System.currentTimeMillis() + Math.round(Math.random() * 1000000000000L);
     }
@@ -84,7 +95,18 @@ public class Project {
      * Create a new project with a generated unique ID
      */
     public Project() {
-        this(generateID());
+        this(generateID(), s_columnarStorageDefault);
+    }
+
+    /**
+     * Create a new project with a generated unique ID
+     *
+     * @param columnarStorage
+     *            whether to store rows column by column (see {@link ColumnarRowList}), which takes much less memory
+     *            for large projects at the cost of slower access to individual rows
+     */
+    public Project(boolean columnarStorage) {
+        this(generateID(), columnarStorage);
     }
 
     /**
@@ -94,10 +116,19 @@ public class Project {
      *            long ID to be assigned the new project
      */
     protected Project(long id) {
+        this(id, false);
+    }
+
+    protected Project(long id, boolean columnarStorage) {
         this.id = id;
+        this.rows = columnarStorage ? new ColumnarRowList() : new ArrayList<>();
         this.history = new History(this);
     }
 
+    public boolean hasColumnarStorage() {
+        return rows instanceof ColumnarRowList;
+    }
+
     static public void registerOverlayModel(String modelName, Class<? extends OverlayModel> klass) {
         s_overlayModelClasses.put(modelName, klass);
     }
@@ -128,11 +159,30 @@ public class Project {
         this._lastSave = Instant.now();
     }
 
+    /**
+     * @return the dictionary used to share the strings of cells imported or loaded into this project
+     */
+    public StringDictionary getStringDictionary() {
+        return _stringDictionary;
+    }
+
     public ProjectMetadata getMetadata() {
         return ProjectManager.singleton.getProjectMetadata(id);
     }
 
     public void saveToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, true);
+    }
+
+    /**
+     * Saves everything but the rows, in the same format as {@link #saveToOutputStream(OutputStream, Pool)}. This is
+     * used by storage formats which save rows on their own.
+     */
+    public void saveModelsToOutputStream(OutputStream out, Pool pool) throws IOException {
+        saveToOutputStream(out, pool, false);
+    }
+
+    protected void saveToOutputStream(OutputStream out, Pool pool, boolean includeRows) throws IOException {
         for (OverlayModel overlayModel : overlayModels.values()) {
             try {
                 overlayModel.onBeforeSave(this);
@@ -147,7 +197,10 @@ public class Project {
             options.setProperty("mode", "save");
             options.put("pool", pool);
 
-            saveToWriter(writer, options);
+            saveModelsToWriter(writer, options);
+            if (includeRows) {
+                saveRowsToWriter(writer, options);
+            }
         } finally {
             writer.flush();
         }
@@ -162,8 +215,17 @@ public class Project {
     }
 
     protected void saveToWriter(Writer writer, Properties options) throws IOException {
+        saveModelsToWriter(writer, options);
+        saveRowsToWriter(writer, options);
+    }
+
+    protected void saveModelsToWriter(Writer writer, Properties options) throws IOException {
         writer.write(RefineServlet.VERSION);
         writer.write('\n');
+        if (hasColumnarStorage()) {
+            // must come first, as the project is created before the rest is read
+            writer.write("storage=columnar\n");
+        }
 
         writer.write("columnModel=\n");
         columnModel.save(writer, options);
@@ -178,7 +240,9 @@ public class Project {
             ParsingUtilities.saveWriter.writeValue(writer, overlayModels.get(modelName));
             writer.write('\n');
         }
+    }
 
+    protected void saveRowsToWriter(Writer writer, Properties options) throws IOException {
         writer.write("rowCount=");
         writer.write(Integer.toString(rows.size()));
         writer.write('\n');
@@ -188,20 +252,44 @@ public class Project {
         }
     }
 
+    /**
+     * Reads the rows of a project saved with {@link Project#saveModelsToOutputStream(OutputStream, Pool)}.
+     */
+    @FunctionalInterface
+    public interface RowLoader {
+
+        public List<Row> loadRows(Project project) throws Exception;
+    }
+
     static public Project loadFromInputStream(InputStream is, long id, Pool pool) throws Exception {
-        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool);
+        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool, null);
+    }
+
+    /**
+     * Loads a project saved with {@link Project#saveModelsToOutputStream(OutputStream, Pool)}, whose rows are read by
+     * the given loader.
+     */
+    static public Project loadFromInputStream(InputStream is, long id, Pool pool, RowLoader rowLoader) throws Exception {
+        return loadFromReader(new LineNumberReader(new InputStreamReader(is, "UTF-8")), id, pool, rowLoader);
     }
 
     static private Project loadFromReader(
             LineNumberReader reader,
             long id,
-            Pool pool) throws Exception {
+            Pool pool,
+            RowLoader rowLoader) throws Exception {
         long start = System.currentTimeMillis();
 
         // version of Refine which wrote the file
         /* String version = */ reader.readLine();
 
-        Project project = new Project(id);
+        reader.mark(1024);
+        boolean columnarStorage = "storage=columnar".equals(reader.readLine());
+        if (!columnarStorage) {
+            reader.reset();
+        }
+
+        Project project = new Project(id, columnarStorage);
         int maxCellCount = 0;
 
         ObjectMapper mapper = ParsingUtilities.mapper.copy();
@@ -230,6 +318,7 @@ public class Project {
                     line = reader.readLine();
                     if (line != null) {
                         Row row = Row.load(line, pool);
+                        project._stringDictionary.intern(row);
                         project.rows.add(row);
                         maxCellCount = Math.max(maxCellCount, row.cells.size());
                     }
@@ -250,6 +339,13 @@ public class Project {
             }
         }
 
+        if (rowLoader != null) {
+            for (Row row : rowLoader.loadRows(project)) {
+                project.rows.add(row);
+                maxCellCount = Math.max(maxCellCount, row.cells.size());
+            }
+        }
+
         project.columnModel.setMaxCellIndex(maxCellCount - 1);
 
         logger.info(
@@ -266,6 +362,7 @@ public class Project {
         // Old projects may have a row count of 0, but we don't want the act of filling this in to change modified time.
         if (getMetadata() != null) {
             getMetadata().setRowCountInternal(rows.size());
+            getMetadata().setInternedBytesSavedInternal(_stringDictionary.getBytesSaved());
         }
     }
 
@@ -78,37 +78,75 @@ public class RecordModel {
         }
     }
 
-    protected List<RowDependency> _rowDependencies;
-    protected List<Record> _records;
+    /*
+     * The dependencies are kept in primitive arrays, indexed by row: the record index of each row (or -1 for rows
+     * depending on other rows), and for dependent rows the flattened (cellIndex, contextRowIndex, contextCellIndex)
+     * triples of their cell dependencies. RowDependency objects are only materialized on request.
+     */
+    protected int[] _recordIndices;
+    protected int[][] _cellDependencies;
+    protected int[] _recordStarts;
+    protected int _cellCount;
 
     public RowDependency getRowDependency(int rowIndex) {
-        return _rowDependencies != null && rowIndex >= 0 && rowIndex < _rowDependencies.size() ? _rowDependencies.get(rowIndex) : null;
+        int[] recordIndices = _recordIndices;
+        int[][] cellDependencies = _cellDependencies;
+        if (recordIndices == null || rowIndex < 0 || rowIndex >= recordIndices.length) {
+            return null;
+        }
+
+        RowDependency rowDependency = new RowDependency();
+        rowDependency.recordIndex = recordIndices[rowIndex];
+        int[] triples = cellDependencies[rowIndex];
+        if (triples != null) {
+            rowDependency.cellDependencies = new CellDependency[_cellCount];
+            rowDependency.contextRows = new ArrayList<Integer>(triples.length / 3);
+            for (int i = 0; i < triples.length; i += 3) {
+                rowDependency.cellDependencies[triples[i]] = new CellDependency(triples[i + 1], triples[i + 2]);
+                rowDependency.contextRows.add(triples[i + 1]);
+            }
+            Collections.sort(rowDependency.contextRows);
+        }
+        return rowDependency;
     }
 
     @JsonIgnore
     public int getRecordCount() {
-        return _records.size();
+        return _recordStarts.length;
     }
 
     public Record getRecord(int recordIndex) {
-        return _records != null && recordIndex >= 0 && recordIndex < _records.size() ? _records.get(recordIndex) : null;
+        int[] recordStarts = _recordStarts;
+        int[] recordIndices = _recordIndices;
+        if (recordStarts == null || recordIndex < 0 || recordIndex >= recordStarts.length) {
+            return null;
+        }
+        int toRowIndex = recordIndex + 1 < recordStarts.length ? recordStarts[recordIndex + 1] : recordIndices.length;
+        return new Record(recordStarts[recordIndex], toRowIndex, recordIndex);
     }
 
     public Record getRecordOfRow(int rowIndex) {
-        RowDependency rd = getRowDependency(rowIndex);
-        if (rd != null) {
-            if (rd.recordIndex < 0) {
-                rd = getRowDependency(rd.contextRows.get(0));
+        int[] recordIndices = _recordIndices;
+        if (recordIndices == null || rowIndex < 0 || rowIndex >= recordIndices.length) {
+            return null;
+        }
+        int recordIndex = recordIndices[rowIndex];
+        if (recordIndex < 0) {
+            // the record of the first row this one depends on
+            int[] triples = _cellDependencies[rowIndex];
+            int contextRowIndex = Integer.MAX_VALUE;
+            for (int i = 1; i < triples.length; i += 3) {
+                contextRowIndex = Math.min(contextRowIndex, triples[i]);
             }
-            return getRecord(rd.recordIndex);
+            recordIndex = recordIndices[contextRowIndex];
         }
-        return null;
+        return getRecord(recordIndex);
     }
 
     @JsonProperty("hasRecords")
     public boolean hasRecords() {
-        return _records != null && _rowDependencies != null &&
-                _records.size() < _rowDependencies.size();
+        return _recordStarts != null && _recordIndices != null &&
+                _recordStarts.length < _recordIndices.length;
     }
 
     static protected class KeyedGroup {
@@ -131,79 +169,164 @@ public class RecordModel {
             List<Row> rows = project.rows;
             int rowCount = rows.size();
 
-            ColumnModel columnModel = project.columnModel;
-            List<KeyedGroup> keyedGroups = computeKeyedGroups(columnModel);
-            int groupCount = keyedGroups.size();
+            List<KeyedGroup> keyedGroups = computeKeyedGroups(project.columnModel);
+
+            int cellCount = project.columnModel.getMaxCellIndex() + 1;
+            int[] recordIndices = new int[rowCount];
+            int[][] cellDependencies = new int[rowCount][];
+            computeRowDependencies(rows, keyedGroups, cellCount, recordIndices, cellDependencies, 0, rowCount);
+            int[] recordStarts = numberRecords(recordIndices);
+
+            _cellCount = cellCount;
+            _cellDependencies = cellDependencies;
+            _recordIndices = recordIndices;
+            _recordStarts = recordStarts;
+        }
+    }
 
-            int[] lastNonBlankRowsByGroup = new int[keyedGroups.size()];
-            for (int i = 0; i < lastNonBlankRowsByGroup.length; i++) {
-                lastNonBlankRowsByGroup[i] = -1;
+    /**
+     * Updates the row dependencies and records after cells of the given rows have changed, only rescanning the
+     * records around those rows. The rows and columns of the project must not have changed since the last update:
+     * if they did, this falls back to a full {@link #update(Project)}.
+     *
+     * @param project
+     *            the project this record model belongs to
+     * @param rowIndices
+     *            the indices of the rows whose cells changed, in increasing order
+     */
+    synchronized public void update(Project project, int[] rowIndices) {
+        synchronized (project) {
+            List<Row> rows = project.rows;
+            int rowCount = rows.size();
+            List<KeyedGroup> keyedGroups = computeKeyedGroups(project.columnModel);
+            if (_recordIndices == null || _recordIndices.length != rowCount || keyedGroups.isEmpty() ||
+                    _cellCount != project.columnModel.getMaxCellIndex() + 1) {
+                update(project);
+                return;
             }
 
-            _rowDependencies = new ArrayList<RowDependency>(rowCount);
-
-            int recordIndex = 0;
-            for (int r = 0; r < rowCount; r++) {
-                Row row = rows.get(r);
-                RowDependency rowDependency = new RowDependency();
-
-                for (int g = 0; g < groupCount; g++) {
-                    KeyedGroup group = keyedGroups.get(g);
-
-                    if (!ExpressionUtils.isNonBlankData(row.getCellValue(keyedGroups.get(0).keyCellIndex)) &&
-                            !ExpressionUtils.isNonBlankData(row.getCellValue(group.keyCellIndex))) {
-                        int contextRowIndex = lastNonBlankRowsByGroup[g];
-                        if (contextRowIndex >= 0) {
-                            for (int dependentCellIndex : group.cellIndices) {
-                                if (ExpressionUtils.isNonBlankData(row.getCellValue(dependentCellIndex))) {
-                                    setRowDependency(
-                                            project,
-                                            rowDependency,
-                                            dependentCellIndex,
-                                            contextRowIndex,
-                                            group.keyCellIndex);
-                                }
-                            }
-                        }
-                    } else {
-                        lastNonBlankRowsByGroup[g] = r;
-                    }
+            int keyCellIndex = keyedGroups.get(0).keyCellIndex;
+            boolean recordsChanged = false;
+            int rescannedRows = 0;
+            int end = 0;
+            for (int rowIndex : rowIndices) {
+                if (rowIndex < end || rowIndex >= rowCount) {
+                    continue;
+                }
+                // a non-blank record key resets the context of all groups, so it bounds the rows to rescan
+                int start = rowIndex;
+                while (start > 0 && !ExpressionUtils.isNonBlankData(rows.get(start).getCellValue(keyCellIndex))) {
+                    start--;
                 }
+                end = rowIndex + 1;
+                while (end < rowCount && !ExpressionUtils.isNonBlankData(rows.get(end).getCellValue(keyCellIndex))) {
+                    end++;
+                }
+                recordsChanged |= computeRowDependencies(rows, keyedGroups, _cellCount, _recordIndices, _cellDependencies,
+                        start, end);
+                rescannedRows += end - start;
+            }
 
-                if (rowDependency.cellDependencies != null && rowDependency.cellDependencies.length > 0) {
-                    rowDependency.recordIndex = -1;
-                    rowDependency.contextRows = new ArrayList<Integer>();
-                    for (CellDependency cd : rowDependency.cellDependencies) {
-                        if (cd != null) {
-                            rowDependency.contextRows.add(cd.rowIndex);
+            if (recordsChanged) {
+                _recordStarts = numberRecords(_recordIndices);
+            }
+            logger.trace("Rescanned " + rescannedRows + " of " + rowCount + " rows");
+        }
+    }
+
+    /**
+     * Computes the cell dependencies of the rows in the given range, starting from an empty context. The first row of
+     * the range must therefore either be the first row of the project or have a non-blank record key. Independent
+     * rows keep their record index if they already were independent, and are otherwise marked with a non-negative
+     * index: {@link #numberRecords(int[])} must then assign the actual numbers.
+     *
+     * @return whether any row became dependent or independent
+     */
+    protected boolean computeRowDependencies(List<Row> rows, List<KeyedGroup> keyedGroups, int cellCount,
+            int[] recordIndices, int[][] cellDependencies, int fromRowIndex, int toRowIndex) {
+        int groupCount = keyedGroups.size();
+
+        int[] lastNonBlankRowsByGroup = new int[groupCount];
+        Arrays.fill(lastNonBlankRowsByGroup, -1);
+
+        // context of each cell of the current row, reset after each row
+        int[] contextRows = new int[cellCount];
+        int[] contextCells = new int[cellCount];
+        Arrays.fill(contextRows, -1);
+
+        boolean recordsChanged = false;
+        for (int r = fromRowIndex; r < toRowIndex; r++) {
+            Row row = rows.get(r);
+            int dependencyCount = 0;
+
+            for (int g = 0; g < groupCount; g++) {
+                KeyedGroup group = keyedGroups.get(g);
+
+                if (!ExpressionUtils.isNonBlankData(row.getCellValue(keyedGroups.get(0).keyCellIndex)) &&
+                        !ExpressionUtils.isNonBlankData(row.getCellValue(group.keyCellIndex))) {
+                    int contextRowIndex = lastNonBlankRowsByGroup[g];
+                    if (contextRowIndex >= 0) {
+                        for (int dependentCellIndex : group.cellIndices) {
+                            if (ExpressionUtils.isNonBlankData(row.getCellValue(dependentCellIndex))) {
+                                if (contextRows[dependentCellIndex] < 0) {
+                                    dependencyCount++;
+                                }
+                                contextRows[dependentCellIndex] = contextRowIndex;
+                                contextCells[dependentCellIndex] = group.keyCellIndex;
+                            }
                         }
                     }
-                    Collections.sort(rowDependency.contextRows);
                 } else {
-                    rowDependency.recordIndex = recordIndex++;
+                    lastNonBlankRowsByGroup[g] = r;
                 }
-
-                _rowDependencies.add(rowDependency);
             }
 
-            _records = new ArrayList<Record>(recordIndex);
-            if (recordIndex > 0) {
-                recordIndex = 0;
-
-                int recordRowIndex = 0;
-                for (int r = 1; r < rowCount; r++) {
-                    RowDependency rd = _rowDependencies.get(r);
-                    if (rd.recordIndex >= 0) {
-                        _records.add(new Record(recordRowIndex, r, recordIndex++));
-
-                        recordIndex = rd.recordIndex;
-                        recordRowIndex = r;
+            if (dependencyCount > 0) {
+                int[] triples = new int[dependencyCount * 3];
+                int t = 0;
+                for (int c = 0; c < cellCount && t < triples.length; c++) {
+                    if (contextRows[c] >= 0) {
+                        triples[t++] = c;
+                        triples[t++] = contextRows[c];
+                        triples[t++] = contextCells[c];
+                        contextRows[c] = -1;
                     }
                 }
+                recordsChanged |= cellDependencies[r] == null;
+                recordIndices[r] = -1;
+                cellDependencies[r] = triples;
+            } else {
+                recordsChanged |= cellDependencies[r] != null;
+                recordIndices[r] = Math.max(recordIndices[r], 0);
+                cellDependencies[r] = null;
+            }
+        }
+        return recordsChanged;
+    }
+
+    /**
+     * Numbers the independent rows in order.
+     *
+     * @return the index of the first row of each record
+     */
+    protected int[] numberRecords(int[] recordIndices) {
+        int rowCount = recordIndices.length;
+        int recordCount = 0;
+        for (int r = 0; r < rowCount; r++) {
+            if (recordIndices[r] >= 0) {
+                recordCount++;
+            }
+        }
 
-                _records.add(new Record(recordRowIndex, rowCount, recordIndex++));
+        int[] recordStarts = new int[recordCount];
+        int recordIndex = 0;
+        for (int r = 0; r < rowCount; r++) {
+            if (recordIndices[r] >= 0) {
+                recordStarts[recordIndex] = r;
+                recordIndices[r] = recordIndex++;
             }
         }
+        return recordStarts;
     }
 
     protected List<KeyedGroup> computeKeyedGroups(ColumnModel columnModel) {
@@ -278,19 +401,4 @@ public class RecordModel {
         }
     }
 
-    protected void setRowDependency(
-            Project project,
-            RowDependency rowDependency,
-            int cellIndex,
-            int contextRowIndex,
-            int contextCellIndex) {
-        if (rowDependency.cellDependencies == null) {
-            int count = project.columnModel.getMaxCellIndex() + 1;
-
-            rowDependency.cellDependencies = new CellDependency[count];
-        }
-
-        rowDependency.cellDependencies[cellIndex] = new CellDependency(contextRowIndex, contextCellIndex);
-    }
-
 }
@@ -87,8 +87,8 @@ public class Row implements HasFields {
      */
     public Row dup() {
         Row row = new Row(cells.size());
-        row.flagged = flagged;
-        row.starred = starred;
+        row.flagged = isFlagged();
+        row.starred = isStarred();
         row.cells.addAll(cells);
         return row;
     }
@@ -96,9 +96,9 @@ public class Row implements HasFields {
     @Override
     public Object getField(String name, Properties bindings) {
         if (FLAGGED.equals(name)) {
-            return flagged;
+            return isFlagged();
         } else if (STARRED.equals(name)) {
-            return starred;
+            return isStarred();
         }
         return null;
     }
@@ -174,6 +174,14 @@ public class Row implements HasFields {
         return starred;
     }
 
+    public void setFlagged(boolean flagged) {
+        this.flagged = flagged;
+    }
+
+    public void setStarred(boolean starred) {
+        this.starred = starred;
+    }
+
     @JsonProperty("cells")
     public List<Cell> getCells() {
         return cells;
@@ -77,6 +77,11 @@ public class CellChange implements Change {
         ProjectManager.singleton.getLookupCacheManager().flushLookupsInvolvingProjectColumn(project.id, column.getName());
     }
 
+    @Override
+    public int[] getAffectedRows() {
+        return new int[] { row };
+    }
+
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         writer.write("row=");
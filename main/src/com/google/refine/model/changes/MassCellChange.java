@@ -36,11 +36,14 @@ package com.google.refine.model.changes;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
 import com.google.refine.ProjectManager;
+import com.google.refine.expr.ExpressionUtils;
 import com.google.refine.history.Change;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Column;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
@@ -99,7 +102,7 @@ public class MassCellChange implements Change {
             }
 
             if (_updateRowContextDependencies) {
-                project.update();
+                updateRecordModel(project);
             }
         }
     }
@@ -120,11 +123,35 @@ public class MassCellChange implements Change {
             }
 
             if (_updateRowContextDependencies) {
-                project.update();
+                updateRecordModel(project);
             }
         }
     }
 
+    /**
+     * Only the blankness of cells matters to the record model, so only the records around rows where a cell became
+     * blank or non-blank are recomputed.
+     */
+    protected void updateRecordModel(Project project) {
+        int[] rowIndices = Arrays.stream(_cellChanges)
+                .filter(c -> isNonBlank(c.oldCell) != isNonBlank(c.newCell))
+                .mapToInt(c -> c.row)
+                .sorted()
+                .toArray();
+        if (rowIndices.length > 0) {
+            project.recordModel.update(project, rowIndices);
+        }
+    }
+
+    static private boolean isNonBlank(Cell cell) {
+        return cell != null && ExpressionUtils.isNonBlankData(cell.value);
+    }
+
+    @Override
+    public int[] getAffectedRows() {
+        return Arrays.stream(_cellChanges).mapToInt(c -> c.row).sorted().distinct().toArray();
+    }
+
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         if (_commonColumnName != null) {
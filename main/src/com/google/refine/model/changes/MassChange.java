@@ -37,8 +37,10 @@ import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.function.Function;
 
 import com.google.common.collect.Lists;
 
@@ -83,6 +85,28 @@ public class MassChange implements Change {
         }
     }
 
+    @Override
+    public int[] getAffectedRows() {
+        return mergeRows(Change::getAffectedRows);
+    }
+
+    @Override
+    public int[] getModifiedRows() {
+        return mergeRows(Change::getModifiedRows);
+    }
+
+    protected int[] mergeRows(Function<Change, int[]> rowsOfChange) {
+        List<int[]> affectedRows = new ArrayList<>(_changes.size());
+        for (Change change : _changes) {
+            int[] rows = rowsOfChange.apply(change);
+            if (rows == null) {
+                return null;
+            }
+            affectedRows.add(rows);
+        }
+        return affectedRows.stream().flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+    }
+
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         writer.write("updateRowContextDependencies=");
@@ -82,6 +82,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_newRows);
 
+            project.columnModel.clearPrecomputes();
             ProjectManager.singleton.getLookupCacheManager().flushLookupsInvolvingProject(project.id);
 
             project.update();
@@ -100,6 +101,7 @@ public class MassRowColumnChange implements Change {
             project.rows.clear();
             project.rows.addAll(_oldRows);
 
+            project.columnModel.clearPrecomputes();
             ProjectManager.singleton.getLookupCacheManager().flushLookupsInvolvingProject(project.id);
 
             project.update();
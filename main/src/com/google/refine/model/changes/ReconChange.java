@@ -129,6 +129,20 @@ public class ReconChange extends MassCellChange {
         }
     }
 
+    /**
+     * Besides the cells, this change replaces the reconciliation config and statistics of the column, which facets can
+     * depend on.
+     */
+    @Override
+    public int[] getAffectedRows() {
+        return null;
+    }
+
+    @Override
+    public int[] getModifiedRows() {
+        return super.getAffectedRows();
+    }
+
     @Override
     public void save(Writer writer, Properties options) throws IOException {
         writer.write("newReconConfig=");
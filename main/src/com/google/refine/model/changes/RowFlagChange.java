@@ -58,16 +58,21 @@ public class RowFlagChange implements Change {
     public void apply(Project project) {
         Row row = project.rows.get(rowIndex);
         if (oldFlagged == null) {
-            oldFlagged = row.flagged;
+            oldFlagged = row.isFlagged();
         }
-        row.flagged = newFlagged;
+        row.setFlagged(newFlagged);
     }
 
     @Override
     public void revert(Project project) {
         Row row = project.rows.get(rowIndex);
 
-        row.flagged = oldFlagged;
+        row.setFlagged(oldFlagged);
+    }
+
+    @Override
+    public int[] getAffectedRows() {
+        return new int[] { rowIndex };
     }
 
     @Override
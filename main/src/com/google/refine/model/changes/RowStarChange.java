@@ -58,16 +58,21 @@ public class RowStarChange implements Change {
     public void apply(Project project) {
         Row row = project.rows.get(rowIndex);
         if (oldStarred == null) {
-            oldStarred = row.starred;
+            oldStarred = row.isStarred();
         }
-        row.starred = newStarred;
+        row.setStarred(newStarred);
     }
 
     @Override
     public void revert(Project project) {
         Row row = project.rows.get(rowIndex);
 
-        row.starred = oldStarred;
+        row.setStarred(oldStarred);
+    }
+
+    @Override
+    public int[] getAffectedRows() {
+        return new int[] { rowIndex };
     }
 
     @Override
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.model.recon;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.model.Recon;
+import com.google.refine.util.ParsingUtilities;
+
+/**
+ * A cache of reconciliation results shared by all projects of a workspace, so that reconciling the same values against
+ * the same service again (after an undo, in a sibling project or on a new import of the same data) does not send the
+ * same queries again. Entries are keyed by {@link ReconConfig#getCacheKey(ReconJob)}, expire after a configurable time
+ * and the least recently used ones are evicted when the cache is full.
+ * <p>
+ * The cache is stored in the workspace directory as one JSON line per result. Only the keys and the positions of the
+ * results in the file are kept in memory, along with the results added since the last {@link #flush()}, which appends
+ * them to the file. Lines superseded by newer results, evicted or expired are left in place until they make up a
+ * configurable share of the file, at which point it is rewritten.
+ */
+public class ReconCache {
+
+    final static Logger logger = LoggerFactory.getLogger("recon-cache");
+
+    static final public String FILE_NAME = "recon-cache.jsonl";
+
+    static protected int s_maxEntries = Integer.getInteger("refine.recon.cache.size", 100000);
+    static protected long s_ttl = Long.getLong("refine.recon.cache.ttl_hours", 7 * 24) * 3600 * 1000;
+    static protected int s_maxGarbagePercent = Integer.getInteger("refine.recon.cache.max_garbage_percent", 50);
+
+    static private ReconCache s_instance;
+
+    /**
+     * Returns the cache of the current workspace, or null if caching is disabled or the workspace is not stored on disk.
+     */
+    static public synchronized ReconCache getInstance() {
+        if (s_maxEntries <= 0 || !(ProjectManager.singleton instanceof FileProjectManager)) {
+            return null;
+        }
+        File file = new File(((FileProjectManager) ProjectManager.singleton).getWorkspaceDir(), FILE_NAME);
+        if (s_instance == null || !s_instance._file.equals(file)) {
+            if (s_instance != null) {
+                s_instance.close();
+            }
+            s_instance = new ReconCache(file, s_maxEntries, s_ttl);
+        }
+        return s_instance;
+    }
+
+    static protected class CachedResponse {
+
+        final long timestamp;
+        /**
+         * The result, until it is written to the file. Always set if the cache is not stored in a file.
+         */
+        Recon recon;
+        /**
+         * The position and length (including the line break) of the result in the file, once it is written.
+         */
+        long offset = -1;
+        int length;
+
+        CachedResponse(long timestamp, Recon recon) {
+            this.timestamp = timestamp;
+            this.recon = recon;
+        }
+    }
+
+    static public class Stats {
+
+        @JsonProperty("size")
+        final public int size;
+        @JsonProperty("hits")
+        final public long hits;
+        @JsonProperty("misses")
+        final public long misses;
+        @JsonProperty("evictions")
+        final public long evictions;
+
+        protected Stats(int size, long hits, long misses, long evictions) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        @JsonProperty("hitRate")
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    final protected File _file;
+    final protected int _maxEntries;
+    final protected long _ttl;
+    final protected LinkedHashMap<String, CachedResponse> _entries;
+
+    protected boolean _loaded;
+    protected long _fileLength;
+    protected long _liveLength;
+    protected RandomAccessFile _reader;
+    protected long _hits;
+    protected long _misses;
+    protected long _evictions;
+
+    /**
+     * @param file
+     *            where the cache is stored, or null to keep it in memory only
+     * @param maxEntries
+     *            the maximum number of results to keep
+     * @param ttl
+     *            how long results are kept, in milliseconds
+     */
+    public ReconCache(File file, int maxEntries, long ttl) {
+        _file = file;
+        _maxEntries = maxEntries;
+        _ttl = ttl;
+        _entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() > _maxEntries) {
+                    _evictions++;
+                    discard(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        _loaded = file == null;
+    }
+
+    /**
+     * Looks up the result of a reconciliation query.
+     *
+     * @return a copy of the cached recon, attached to the given history entry, or null if none is cached
+     */
+    public synchronized Recon get(String key, long historyEntryID) {
+        load();
+        CachedResponse entry = _entries.get(key);
+        Recon recon = null;
+        if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+            _entries.remove(key);
+            discard(entry);
+        } else if (entry != null) {
+            try {
+                recon = entry.recon != null ? entry.recon : read(entry);
+            } catch (IOException e) {
+                logger.warn("Failed to read from the reconciliation cache", e);
+                _entries.remove(key);
+                discard(entry);
+            }
+        }
+        if (recon == null) {
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return recon.dup(historyEntryID);
+    }
+
+    /**
+     * Stores the result of a reconciliation query. Recons with errors are not cached, as they are often transient.
+     */
+    public synchronized void put(String key, Recon recon) {
+        if (recon == null || recon.error != null) {
+            return;
+        }
+        load();
+        CachedResponse previous = _entries.put(key,
+                new CachedResponse(System.currentTimeMillis(), recon.dup(recon.judgmentHistoryEntry)));
+        if (previous != null) {
+            discard(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        _entries.clear();
+        close();
+        if (_file != null && _file.exists() && !_file.delete()) {
+            logger.warn("Failed to delete the reconciliation cache");
+        }
+        _fileLength = _liveLength = 0;
+        _loaded = true;
+        _hits = _misses = _evictions = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(_entries.size(), _hits, _misses, _evictions);
+    }
+
+    /**
+     * Appends the results added since the last flush to the file, rewriting it instead if too much of it is taken by
+     * lines which are no longer used.
+     */
+    public synchronized void flush() {
+        if (_file == null || !_loaded) {
+            return;
+        }
+        long garbage = _fileLength - _liveLength;
+        if (garbage > 0 && garbage * 100 > _fileLength * s_maxGarbagePercent) {
+            compact();
+        } else {
+            append();
+        }
+    }
+
+    protected void append() {
+        List<CachedResponse> written = new ArrayList<>();
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            for (Map.Entry<String, CachedResponse> e : _entries.entrySet()) {
+                CachedResponse entry = e.getValue();
+                if (entry.recon != null) {
+                    byte[] line = serialize(e.getKey(), entry);
+                    entry.length = line.length;
+                    lines.write(line);
+                    written.add(entry);
+                }
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+            try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+                // this also overwrites any line left incomplete by an interrupted write
+                out.seek(_fileLength);
+                out.write(lines.toByteArray());
+                out.setLength(_fileLength + lines.size());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to save the reconciliation cache", e);
+            return;
+        }
+        long offset = _fileLength;
+        for (CachedResponse entry : written) {
+            entry.offset = offset;
+            entry.recon = null;
+            offset += entry.length;
+        }
+        _fileLength = offset;
+        _liveLength += lines.size();
+    }
+
+    protected void compact() {
+        File temp = new File(_file.getParentFile(), _file.getName() + ".temp");
+        long now = System.currentTimeMillis();
+        List<CachedResponse> written = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        long offset = 0;
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            // least recently used first, so that reloading preserves the eviction order
+            for (Iterator<Map.Entry<String, CachedResponse>> it = _entries.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, CachedResponse> e = it.next();
+                CachedResponse entry = e.getValue();
+                if (isExpired(entry, now)) {
+                    it.remove();
+                    discard(entry);
+                    continue;
+                }
+                byte[] line = entry.recon != null ? serialize(e.getKey(), entry) : readLine(entry);
+                out.write(line);
+                written.add(entry);
+                offsets.add(offset);
+                offset += line.length;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to save the reconciliation cache", e);
+            temp.delete();
+            return;
+        }
+        try {
+            close();
+            Files.move(temp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to save the reconciliation cache", e);
+            return;
+        }
+        for (int i = 0; i < written.size(); i++) {
+            CachedResponse entry = written.get(i);
+            entry.offset = offsets.get(i);
+            entry.length = (int) ((i + 1 < written.size() ? offsets.get(i + 1) : offset) - entry.offset);
+            entry.recon = null;
+        }
+        _fileLength = _liveLength = offset;
+    }
+
+    protected byte[] serialize(String key, CachedResponse entry) throws IOException {
+        ObjectNode node = ParsingUtilities.mapper.createObjectNode();
+        node.put("k", key);
+        node.put("t", entry.timestamp);
+        node.set("r", ParsingUtilities.mapper.readTree(ParsingUtilities.saveWriter.writeValueAsString(entry.recon)));
+        return (ParsingUtilities.mapper.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected byte[] readLine(CachedResponse entry) throws IOException {
+        if (_reader == null) {
+            _reader = new RandomAccessFile(_file, "r");
+        }
+        byte[] line = new byte[entry.length];
+        _reader.seek(entry.offset);
+        _reader.readFully(line);
+        return line;
+    }
+
+    protected Recon read(CachedResponse entry) throws IOException {
+        JsonNode node = ParsingUtilities.mapper.readTree(readLine(entry));
+        return ParsingUtilities.mapper.treeToValue(node.get("r"), Recon.class);
+    }
+
+    /**
+     * Accounts for an entry which is no longer in the cache.
+     */
+    protected void discard(CachedResponse entry) {
+        if (entry.offset >= 0) {
+            _liveLength -= entry.length;
+        }
+    }
+
+    protected boolean isExpired(CachedResponse entry, long now) {
+        return now - entry.timestamp > _ttl;
+    }
+
+    protected void close() {
+        if (_reader != null) {
+            try {
+                _reader.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the reconciliation cache", e);
+            }
+            _reader = null;
+        }
+    }
+
+    protected void load() {
+        if (_loaded) {
+            return;
+        }
+        _loaded = true;
+        if (!_file.exists()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long offset = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(_file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) >= 0) {
+                line.write(b);
+                if (b == '\n') {
+                    index(line.toByteArray(), offset, now);
+                    offset += line.size();
+                    line.reset();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to load the reconciliation cache", e);
+        }
+        // an incomplete last line is overwritten by the next flush
+        _fileLength = offset;
+        // loading does not count as eviction
+        _evictions = 0;
+    }
+
+    protected void index(byte[] line, long offset, long now) {
+        try {
+            JsonNode node = ParsingUtilities.mapper.readTree(line);
+            CachedResponse entry = new CachedResponse(node.get("t").asLong(), null);
+            entry.offset = offset;
+            entry.length = line.length;
+            if (!isExpired(entry, now)) {
+                CachedResponse previous = _entries.put(node.get("k").asText(), entry);
+                if (previous != null) {
+                    discard(previous);
+                }
+                _liveLength += entry.length;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Skipping invalid entry in the reconciliation cache", e);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
@@ -114,6 +115,23 @@ abstract public class ReconConfig {
 
     abstract public Recon createNewRecon(long historyEntryID);
 
+    /**
+     * Returns the names of the columns read to reconcile a column, besides that column itself, or null if unknown.
+     */
+    @JsonIgnore
+    public Set<String> getColumnDependencies() {
+        return null;
+    }
+
+    /**
+     * Returns a key identifying the query sent for this job, including everything in this configuration which affects
+     * its result, so that the result can be reused from the {@link ReconCache}. Returns null by default, meaning that
+     * the results of this configuration are not cached.
+     */
+    public String getCacheKey(ReconJob job) {
+        return null;
+    }
+
     public void save(Writer writer) {
         try {
             ParsingUtilities.defaultWriter.writeValue(writer, this);
@@ -42,9 +42,11 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -52,9 +54,14 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import com.google.refine.expr.functions.ToDate;
 import com.google.refine.model.ReconCandidate;
@@ -147,6 +154,20 @@ public class ReconciledDataExtensionJob {
         }
     }
 
+    /**
+     * Property values fetched from the services, by service, entity and property (with its settings), so that repeated
+     * extensions do not fetch them again.
+     */
+    static final protected Cache<String, JsonNode> s_valueCache = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong("refine.extend.cache_size", 100000))
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+    // the column metadata returned with those values, by service and properties
+    static final protected Cache<String, List<ColumnInfo>> s_columnCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
     final public DataExtensionConfig extension;
     final public String endpoint;
     final public List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
@@ -169,47 +190,125 @@ public class ReconciledDataExtensionJob {
     public Map<String, ReconciledDataExtensionJob.DataExtension> extend(
             Set<String> ids,
             Map<String, ReconCandidate> reconCandidateMap) throws Exception {
-        StringWriter writer = new StringWriter();
-        formulateQuery(ids, extension, writer);
+        // use the cached values of the entities when all of them are known
+        Map<String, ObjectNode> records = new HashMap<>();
+        List<ColumnInfo> cachedColumns = s_columnCache.getIfPresent(getColumnsCacheKey());
+        if (cachedColumns != null) {
+            for (String id : ids) {
+                ObjectNode record = getCachedRecord(id, cachedColumns);
+                if (record != null) {
+                    records.put(id, record);
+                }
+            }
+        }
+        Set<String> missingIds = ids;
+        if (!records.isEmpty()) {
+            missingIds = new HashSet<>(ids);
+            missingIds.removeAll(records.keySet());
+        }
+
+        List<ColumnInfo> newColumns = cachedColumns;
+        if (!missingIds.isEmpty()) {
+            StringWriter writer = new StringWriter();
+            formulateQuery(missingIds, extension, writer);
 
-        String query = writer.toString();
-        String response = postExtendQuery(this.endpoint, query);
+            String query = writer.toString();
+            String response = postExtendQuery(this.endpoint, query);
 
-        ObjectNode o = ParsingUtilities.mapper.readValue(response, ObjectNode.class);
+            ObjectNode o = ParsingUtilities.mapper.readValue(response, ObjectNode.class);
 
-        if (columns.size() == 0) {
             // Extract the column metadata
-            List<ColumnInfo> newColumns = ParsingUtilities.mapper.convertValue(o.get("meta"), new TypeReference<List<ColumnInfo>>() {
+            newColumns = ParsingUtilities.mapper.convertValue(o.get("meta"), new TypeReference<List<ColumnInfo>>() {
             });
-            columns.addAll(newColumns);
+            if (newColumns != null) {
+                s_columnCache.put(getColumnsCacheKey(), newColumns);
+            }
+
+            if (o.has("rows") && o.get("rows") instanceof ObjectNode) {
+                ObjectNode fetchedRecords = (ObjectNode) o.get("rows");
+                for (String id : missingIds) {
+                    if (fetchedRecords.has(id) && fetchedRecords.get(id) instanceof ObjectNode) {
+                        ObjectNode record = (ObjectNode) fetchedRecords.get(id);
+                        records.put(id, record);
+                        cacheRecord(id, record, newColumns);
+                    }
+                }
+            }
+        }
+
+        synchronized (columns) {
+            if (columns.size() == 0 && newColumns != null) {
+                columns.addAll(newColumns);
+            }
         }
 
         Map<String, ReconciledDataExtensionJob.DataExtension> map = new HashMap<String, ReconciledDataExtensionJob.DataExtension>();
-        if (o.has("rows") && o.get("rows") instanceof ObjectNode) {
-            ObjectNode records = (ObjectNode) o.get("rows");
+        // for each identifier
+        for (String id : ids) {
+            ObjectNode record = records.get(id);
+            if (record != null) {
+                ReconciledDataExtensionJob.DataExtension ext = collectResult(record, reconCandidateMap);
+
+                if (ext != null) {
+                    map.put(id, ext);
+                }
+            }
+        }
 
-            // for each identifier
-            for (String id : ids) {
-                if (records.has(id) && records.get(id) instanceof ObjectNode) {
-                    ObjectNode record = (ObjectNode) records.get(id);
+        return map;
+    }
 
-                    ReconciledDataExtensionJob.DataExtension ext = collectResult(record, reconCandidateMap);
+    protected String getColumnsCacheKey() {
+        try {
+            return endpoint + "\n" + ParsingUtilities.saveWriter.writeValueAsString(extension.properties);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                    if (ext != null) {
-                        map.put(id, ext);
-                    }
-                }
+    protected String getValueCacheKey(String id, String pid) {
+        Map<String, Object> settings = null;
+        for (DataExtensionProperty property : extension.properties) {
+            if (property.id.equals(pid)) {
+                settings = property.settings;
+                break;
             }
         }
+        return endpoint + "\n" + id + "\n" + pid + "\n" + settings;
+    }
 
-        return map;
+    /**
+     * Rebuilds the record of an entity from the cached values of its properties, or returns null if any is missing.
+     */
+    protected ObjectNode getCachedRecord(String id, List<ColumnInfo> columns) {
+        ObjectNode record = ParsingUtilities.mapper.createObjectNode();
+        for (ColumnInfo column : columns) {
+            JsonNode values = s_valueCache.getIfPresent(getValueCacheKey(id, column.id));
+            if (values == null) {
+                return null;
+            } else if (!values.isNull()) {
+                record.set(column.id, values);
+            }
+        }
+        return record;
+    }
+
+    protected void cacheRecord(String id, ObjectNode record, List<ColumnInfo> columns) {
+        if (columns == null) {
+            return;
+        }
+        for (ColumnInfo column : columns) {
+            JsonNode values = record.get(column.id);
+            // properties without values are cached too, as null
+            s_valueCache.put(getValueCacheKey(id, column.id), values == null ? NullNode.getInstance() : values);
+        }
     }
 
     static protected String postExtendQuery(String endpoint, String query) throws IOException {
         return getHttpClient().postNameValue(endpoint, "extend", query);
     }
 
-    private static HttpClient getHttpClient() {
+    private static synchronized HttpClient getHttpClient() {
         if (httpClient == null) {
             httpClient = new HttpClient();
         }
@@ -287,18 +386,11 @@ public class ReconciledDataExtensionJob {
             ObjectNode obj,
             Map<String, ReconCandidate> reconCandidateMap) {
         String id = obj.get("id").asText();
-        ReconCandidate rc;
-        if (reconCandidateMap.containsKey(id)) {
-            rc = reconCandidateMap.get(id);
-        } else {
-            rc = new ReconCandidate(
-                    obj.get("id").asText(),
-                    obj.get("name").asText(),
-                    JSONUtilities.getStringArray(obj, "type"),
-                    100);
-
-            reconCandidateMap.put(id, rc);
-        }
+        ReconCandidate rc = reconCandidateMap.computeIfAbsent(id, k -> new ReconCandidate(
+                obj.get("id").asText(),
+                obj.get("name").asText(),
+                JSONUtilities.getStringArray(obj, "type"),
+                100));
 
         storeCell(rows, row, col, rc);
     }
@@ -230,6 +230,23 @@ public class StandardReconConfig extends ReconConfig {
         return Math.min(Math.max(rowCount / 10, 10), batchSize);
     }
 
+    @Override
+    @JsonIgnore
+    public Set<String> getColumnDependencies() {
+        // the values of other columns can come from other rows of the record, which depends on the key column
+        return columnDetails == null || columnDetails.isEmpty() ? Collections.emptySet() : null;
+    }
+
+    @Override
+    public String getCacheKey(ReconJob job) {
+        if (!(job instanceof StandardReconJob)) {
+            return null;
+        }
+        // the query code already holds the query text, type and column details
+        return String.join("\n", service, identifierSpace, schemaSpace,
+                Boolean.toString(autoMatch), Integer.toString(limit), ((StandardReconJob) job).code);
+    }
+
     @Override
     public String getBriefDescription(Project project, String columnName) {
         return "Reconcile cells in column " + columnName + " to type " + typeID;
@@ -426,7 +443,7 @@ public class StandardReconConfig extends ReconConfig {
         return job;
     }
 
-    private HttpClient getHttpClient() {
+    private synchronized HttpClient getHttpClient() {
         if (httpClient == null) {
             httpClient = new HttpClient();
         }
@@ -37,18 +37,38 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.EngineConfig;
@@ -91,6 +111,12 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
         }
     }
 
+    final static Logger logger = LoggerFactory.getLogger("column-addition-by-fetching-urls");
+
+    static protected int s_maxConcurrentFetches = Math.max(1, Integer.getInteger("refine.fetch.concurrency", 8));
+    static final private Pattern s_otherColumnsPattern = Pattern.compile("\\b(cells|row)\\b");
+    static protected int s_maxFetchesPerHost = Math.max(1, Integer.getInteger("refine.fetch.max_per_host", 1));
+
     final protected String _baseColumnName;
     final protected String _urlExpression;
     final protected OnError _onError;
@@ -206,6 +232,19 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
                 _cacheResponses);
     }
 
+    static protected class FetchedUrl {
+
+        final String url;
+        final String host;
+        final Serializable response;
+
+        FetchedUrl(String url, String host, Serializable response) {
+            this.url = url;
+            this.host = host;
+            this.response = response;
+        }
+    }
+
     public class ColumnAdditionByFetchingURLsProcess extends LongRunningProcess implements Runnable {
 
         final protected Project _project;
@@ -251,6 +290,25 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             return this;
         }
 
+        @Override
+        public Set<String> getColumnsRead() {
+            Set<String> engineColumns = _engineConfig.getColumnDependencies();
+            // row-local expressions which do not mention other cells only read the base column
+            if (engineColumns == null || !MetaParser.isRowLocal(_urlExpression)
+                    || s_otherColumnsPattern.matcher(_urlExpression).find()) {
+                return null;
+            }
+            Set<String> columns = new HashSet<>(engineColumns);
+            columns.add(_baseColumnName);
+            return columns;
+        }
+
+        @Override
+        public Set<String> getColumnsWritten() {
+            // processes working on records do not declare the columns they read, so a new first column cannot affect them
+            return Collections.singleton(_newColumnName);
+        }
+
         @Override
         public void run() {
             Column column = _project.columnModel.getColumnByName(_baseColumnName);
@@ -268,35 +326,11 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             FilteredRows filteredRows = _engine.getAllFilteredRows();
             filteredRows.accept(_project, createRowVisitor(urls));
 
-            int count = urls.size();
-            List<CellAtRow> responseBodies = new ArrayList<CellAtRow>(count);
-            int i = 0;
-            for (CellAtRow urlData : urls) {
-                String urlString = urlData.cell.value.toString();
-
-                Serializable response = null;
-                if (_urlCache != null) {
-                    response = cachedFetch(urlString);
-                } else {
-                    response = fetch(urlString, httpHeaders);
-                }
-
-                if (response != null) {
-                    CellAtRow cellAtRow = new CellAtRow(
-                            urlData.row,
-                            new Cell(response, null));
-
-                    responseBodies.add(cellAtRow);
-                }
-
-                _progress = i++ * 100 / count;
+            List<CellAtRow> responseBodies = fetchAll(urls);
 
-                if (_canceled) {
-                    break;
-                }
-            }
-
-            if (!_canceled) {
+            // cancellation keeps the responses fetched so far
+            if (!_canceled || !responseBodies.isEmpty()) {
+                responseBodies.sort(Comparator.comparingInt(cellAtRow -> cellAtRow.row));
                 HistoryEntry historyEntry = new HistoryEntry(
                         _historyEntryID,
                         _project,
@@ -312,6 +346,93 @@ public class ColumnAdditionByFetchingURLsOperation extends EngineDependentOperat
             }
         }
 
+        /**
+         * Fetches each distinct URL once, with up to {@link ColumnAdditionByFetchingURLsOperation#s_maxConcurrentFetches}
+         * requests in flight overall but only {@link ColumnAdditionByFetchingURLsOperation#s_maxFetchesPerHost} per host,
+         * so that a slow host does not hold the others back. Hosts take turns, and the URLs of each host are fetched in
+         * row order. Fetching stops when the process is canceled.
+         *
+         * @return the responses fetched, one cell per row
+         */
+        protected List<CellAtRow> fetchAll(List<CellAtRow> urls) {
+            Map<String, List<Integer>> urlToRows = new LinkedHashMap<>();
+            for (CellAtRow urlData : urls) {
+                urlToRows.computeIfAbsent(urlData.cell.value.toString(), url -> new ArrayList<>()).add(urlData.row);
+            }
+            Map<String, Deque<String>> hostToUrls = new HashMap<>();
+            // hosts with URLs left to fetch and fewer requests in flight than allowed, in turn order
+            Deque<String> readyHosts = new ArrayDeque<>();
+            for (String url : urlToRows.keySet()) {
+                String host = getHost(url);
+                Deque<String> hostUrls = hostToUrls.get(host);
+                if (hostUrls == null) {
+                    hostUrls = new ArrayDeque<>();
+                    hostToUrls.put(host, hostUrls);
+                    readyHosts.add(host);
+                }
+                hostUrls.add(url);
+            }
+
+            List<CellAtRow> responseBodies = new ArrayList<CellAtRow>(urls.size());
+            Map<String, Integer> hostToFetches = new HashMap<>();
+            ExecutorService executor = Executors.newFixedThreadPool(s_maxConcurrentFetches,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("url-fetch-%d").build());
+            CompletionService<FetchedUrl> completion = new ExecutorCompletionService<>(executor);
+            int count = urlToRows.size();
+            int inFlight = 0;
+            int done = 0;
+            try {
+                while (!_canceled && done < count) {
+                    while (inFlight < s_maxConcurrentFetches && !readyHosts.isEmpty()) {
+                        String host = readyHosts.poll();
+                        Deque<String> hostUrls = hostToUrls.get(host);
+                        String url = hostUrls.poll();
+                        completion.submit(() -> new FetchedUrl(url, host,
+                                _urlCache != null ? cachedFetch(url) : fetch(url, httpHeaders)));
+                        inFlight++;
+                        if (hostToFetches.merge(host, 1, Integer::sum) < s_maxFetchesPerHost && !hostUrls.isEmpty()) {
+                            readyHosts.add(host);
+                        }
+                    }
+
+                    FetchedUrl fetched = completion.take().get();
+                    inFlight--;
+                    done++;
+                    if (hostToFetches.merge(fetched.host, -1, Integer::sum) == s_maxFetchesPerHost - 1
+                            && !hostToUrls.get(fetched.host).isEmpty()) {
+                        readyHosts.add(fetched.host);
+                    }
+
+                    if (fetched.response != null) {
+                        for (int row : urlToRows.get(fetched.url)) {
+                            responseBodies.add(new CellAtRow(row, new Cell(fetched.response, null)));
+                        }
+                    }
+                    _progress = done * 100 / count;
+                }
+            } catch (InterruptedException e) {
+                // canceled
+            } catch (ExecutionException e) {
+                // fetch does not throw
+                logger.error("Unexpected failure while fetching URLs", e);
+            } finally {
+                executor.shutdownNow();
+            }
+            return responseBodies;
+        }
+
+        protected String getHost(String urlString) {
+            try {
+                URI uri = new URI(urlString);
+                if (uri.getHost() == null) {
+                    return "";
+                }
+                return uri.getPort() == -1 ? uri.getHost().toLowerCase() : uri.getHost().toLowerCase() + ":" + uri.getPort();
+            } catch (URISyntaxException e) {
+                return "";
+            }
+        }
+
         Serializable cachedFetch(String urlString) {
             try {
                 return _urlCache.get(urlString);
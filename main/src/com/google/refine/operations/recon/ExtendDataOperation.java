@@ -34,15 +34,25 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.operations.recon;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.refine.browsing.Engine;
 import com.google.refine.browsing.EngineConfig;
@@ -68,6 +78,11 @@ import com.google.refine.process.Process;
 
 public class ExtendDataOperation extends EngineDependentOperation {
 
+    final static Logger logger = LoggerFactory.getLogger("extend-data-operation");
+
+    static protected int s_batchSize = Math.max(1, Integer.getInteger("refine.extend.batch_size", 10));
+    static protected int s_maxConcurrentBatches = Math.max(1, Integer.getInteger("refine.extend.concurrent_batches", 4));
+
     @JsonProperty("baseColumnName")
     final protected String _baseColumnName;
     @JsonProperty("endpoint")
@@ -185,46 +200,6 @@ public class ExtendDataOperation extends EngineDependentOperation {
             }.init(rowIndices));
         }
 
-        protected int extendRows(
-                List<Integer> rowIndices,
-                List<DataExtension> dataExtensions,
-                int from,
-                int limit,
-                Map<String, ReconCandidate> reconCandidateMap) {
-            Set<String> ids = new HashSet<String>();
-
-            int end;
-            for (end = from; end < limit && ids.size() < 10; end++) {
-                int index = rowIndices.get(end);
-                Row row = _project.rows.get(index);
-                Cell cell = row.getCell(_cellIndex);
-
-                ids.add(cell.recon.match.id);
-            }
-
-            Map<String, DataExtension> map = null;
-            try {
-                map = _job.extend(ids, reconCandidateMap);
-            } catch (Exception e) {
-                map = new HashMap<String, DataExtension>();
-            }
-
-            for (int i = from; i < end; i++) {
-                int index = rowIndices.get(i);
-                Row row = _project.rows.get(index);
-                Cell cell = row.getCell(_cellIndex);
-                String guid = cell.recon.match.id;
-
-                if (map.containsKey(guid)) {
-                    dataExtensions.add(map.get(guid));
-                } else {
-                    dataExtensions.add(null);
-                }
-            }
-
-            return end;
-        }
-
         @Override
         public void run() {
             List<Integer> rowIndices = new ArrayList<Integer>();
@@ -237,23 +212,28 @@ public class ExtendDataOperation extends EngineDependentOperation {
                 e2.printStackTrace();
             }
 
-            int start = 0;
-            Map<String, ReconCandidate> reconCandidateMap = new HashMap<String, ReconCandidate>();
-
-            while (start < rowIndices.size()) {
-                int end = extendRows(rowIndices, dataExtensions, start, rowIndices.size(), reconCandidateMap);
-                start = end;
-
-                _progress = end * 100 / rowIndices.size();
-                try {
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    if (_canceled) {
-                        break;
+            // each matched entity is only fetched once, however many rows it is matched in
+            List<Set<String>> batches = new ArrayList<>();
+            Set<String> seen = new HashSet<String>();
+            Set<String> batch = null;
+            for (int index : rowIndices) {
+                String id = _project.rows.get(index).getCell(_cellIndex).recon.match.id;
+                if (seen.add(id)) {
+                    if (batch == null || batch.size() >= s_batchSize) {
+                        batch = new HashSet<String>();
+                        batches.add(batch);
                     }
+                    batch.add(id);
                 }
             }
 
+            Map<String, DataExtension> extensions = extendBatches(batches);
+
+            for (int index : rowIndices) {
+                String id = _project.rows.get(index).getCell(_cellIndex).recon.match.id;
+                dataExtensions.add(extensions.get(id));
+            }
+
             if (!_canceled) {
                 List<String> columnNames = new ArrayList<String>();
                 for (ColumnInfo info : _job.columns) {
@@ -286,5 +266,46 @@ public class ExtendDataOperation extends EngineDependentOperation {
                 _project.processManager.onDoneProcess(this);
             }
         }
+
+        /**
+         * Fetches the batches of entities with up to {@link ExtendDataOperation#s_maxConcurrentBatches} of them in
+         * flight. Recon candidates for the values fetched are shared by all batches.
+         *
+         * @return the extension of each entity found by the service
+         */
+        protected Map<String, DataExtension> extendBatches(List<Set<String>> batches) {
+            Map<String, DataExtension> extensions = new HashMap<String, DataExtension>();
+            if (batches.isEmpty()) {
+                return extensions;
+            }
+
+            Map<String, ReconCandidate> reconCandidateMap = new ConcurrentHashMap<String, ReconCandidate>();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(s_maxConcurrentBatches, batches.size()),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("extend-data-%d").build());
+            CompletionService<Map<String, DataExtension>> completion = new ExecutorCompletionService<>(executor);
+            try {
+                for (Set<String> ids : batches) {
+                    completion.submit(() -> {
+                        try {
+                            return _job.extend(ids, reconCandidateMap);
+                        } catch (Exception e) {
+                            logger.warn("Failed to fetch data extension", e);
+                            return Collections.emptyMap();
+                        }
+                    });
+                }
+                for (int done = 1; done <= batches.size() && !_canceled; done++) {
+                    extensions.putAll(completion.take().get());
+                    _progress = done * 100 / batches.size();
+                }
+            } catch (InterruptedException e) {
+                // canceled
+            } catch (ExecutionException e) {
+                logger.error("Unexpected data extension failure", e);
+            } finally {
+                executor.shutdownNow();
+            }
+            return extensions;
+        }
     }
 }
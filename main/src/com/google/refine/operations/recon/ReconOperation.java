@@ -34,15 +34,29 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.google.refine.operations.recon;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +75,7 @@ import com.google.refine.model.Recon;
 import com.google.refine.model.Row;
 import com.google.refine.model.changes.CellChange;
 import com.google.refine.model.changes.ReconChange;
+import com.google.refine.model.recon.ReconCache;
 import com.google.refine.model.recon.ReconConfig;
 import com.google.refine.model.recon.ReconJob;
 import com.google.refine.model.recon.StandardReconConfig;
@@ -73,17 +88,38 @@ public class ReconOperation extends EngineDependentOperation {
 
     final static Logger logger = LoggerFactory.getLogger("recon-operation");
 
+    static protected int s_maxConcurrentBatches = Math.max(1, Integer.getInteger("refine.recon.concurrent_batches", 4));
+    static protected int s_maxAttempts = Integer.getInteger("refine.recon.max_attempts", 3);
+    static protected long s_initialBackoff = 1000;
+    static protected long s_maxBackoff = 30000;
+    // errors reported by HttpClient when the service is overloaded or temporarily unavailable
+    static final private Pattern s_retryableError = Pattern.compile("^HTTP error (429|5\\d\\d) ");
+
     final protected String _columnName;
     final protected ReconConfig _reconConfig;
+    final protected boolean _bypassCache;
+
+    public ReconOperation(
+            EngineConfig engineConfig,
+            String columnName,
+            ReconConfig reconConfig) {
+        this(engineConfig, columnName, reconConfig, false);
+    }
 
+    /**
+     * @param bypassCache
+     *            whether to send all queries to the service, rather than reusing results from the {@link ReconCache}
+     */
     @JsonCreator
     public ReconOperation(
             @JsonProperty("engineConfig") EngineConfig engineConfig,
             @JsonProperty("columnName") String columnName,
-            @JsonProperty("config") ReconConfig reconConfig) {
+            @JsonProperty("config") ReconConfig reconConfig,
+            @JsonProperty("bypassCache") boolean bypassCache) {
         super(engineConfig);
         _columnName = columnName;
         _reconConfig = reconConfig;
+        _bypassCache = bypassCache;
     }
 
     @Override
@@ -109,6 +145,19 @@ public class ReconOperation extends EngineDependentOperation {
         return _columnName;
     }
 
+    @JsonProperty("bypassCache")
+    @JsonInclude(Include.NON_DEFAULT)
+    public boolean getBypassCache() {
+        return _bypassCache;
+    }
+
+    /**
+     * Returns the cache to look reconciliation results up in, or null if they should not be cached.
+     */
+    protected ReconCache getReconCache() {
+        return _bypassCache ? null : ReconCache.getInstance();
+    }
+
     static protected class ReconEntry {
 
         final public int rowIndex;
@@ -120,6 +169,20 @@ public class ReconOperation extends EngineDependentOperation {
         }
     }
 
+    static protected class BatchResult {
+
+        final public int batch;
+        final public List<Recon> recons;
+        // whether the whole batch was turned down by an overloaded service and is worth sending again
+        final public boolean failed;
+
+        public BatchResult(int batch, List<Recon> recons, boolean failed) {
+            this.batch = batch;
+            this.recons = recons;
+            this.failed = failed;
+        }
+    }
+
     static protected class JobGroup {
 
         final public ReconJob job;
@@ -195,6 +258,24 @@ public class ReconOperation extends EngineDependentOperation {
             return this;
         }
 
+        @Override
+        public Set<String> getColumnsRead() {
+            Set<String> engineColumns = _engineConfig.getColumnDependencies();
+            Set<String> reconColumns = _reconConfig.getColumnDependencies();
+            if (engineColumns == null || reconColumns == null) {
+                return null;
+            }
+            Set<String> columns = new HashSet<>(engineColumns);
+            columns.addAll(reconColumns);
+            columns.add(_columnName);
+            return columns;
+        }
+
+        @Override
+        public Set<String> getColumnsWritten() {
+            return Collections.singleton(_columnName);
+        }
+
         protected void populateEntries() throws Exception {
             Engine engine = new Engine(_project);
             engine.initializeFromConfig(_engineConfig);
@@ -261,67 +342,47 @@ public class ReconOperation extends EngineDependentOperation {
                 group.entries.add(entry);
             }
 
-            int batchSize = _reconConfig.getBatchSize(_project.rows.size());
-            int done = 0;
-
+            // look results up in the cache before batching the remaining jobs
+            ReconCache cache = getReconCache();
             List<CellChange> cellChanges = new ArrayList<CellChange>(_entries.size());
-            List<JobGroup> groups = new ArrayList<JobGroup>(jobKeyToGroup.values());
-
-            List<ReconJob> jobs = new ArrayList<ReconJob>(batchSize);
-            Map<ReconJob, JobGroup> jobToGroup = new HashMap<ReconJob, ReconOperation.JobGroup>();
-
-            for (int i = 0; i < groups.size(); /* don't increment here */) {
-                while (jobs.size() < batchSize && i < groups.size()) {
-                    JobGroup group = groups.get(i++);
-
-                    jobs.add(group.job);
-                    jobToGroup.put(group.job, group);
+            List<JobGroup> groups = new ArrayList<JobGroup>(jobKeyToGroup.size());
+            for (JobGroup group : jobKeyToGroup.values()) {
+                String cacheKey = cache == null ? null : _reconConfig.getCacheKey(group.job);
+                Recon recon = cacheKey == null ? null : cache.get(cacheKey, _historyEntryID);
+                if (recon != null) {
+                    addCellChanges(cellChanges, group, recon);
+                } else {
+                    groups.add(group);
                 }
+            }
 
-                List<Recon> recons = _reconConfig.batchRecon(jobs, _historyEntryID);
-                for (int j = jobs.size() - 1; j >= 0; j--) {
-                    ReconJob job = jobs.get(j);
-                    Recon recon = j < recons.size() ? recons.get(j) : null;
-                    JobGroup group = jobToGroup.get(job);
-                    List<ReconEntry> entries = group.entries;
+            int batchSize = Math.max(1, _reconConfig.getBatchSize(_project.rows.size()));
+            List<List<JobGroup>> batches = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i += batchSize) {
+                batches.add(groups.subList(i, Math.min(groups.size(), i + batchSize)));
+            }
 
-                    jobToGroup.remove(job);
-                    jobs.remove(j);
-                    done++;
+            List<List<Recon>> batchRecons = reconcileBatches(batches, groups.size());
 
-                    if (recon != null) {
-                        recon.judgmentBatchSize = entries.size();
-                    }
+            for (int b = 0; b < batches.size(); b++) {
+                List<JobGroup> batch = batches.get(b);
+                List<Recon> recons = batchRecons.get(b);
+                // last job first, as batches used to be consumed this way
+                for (int j = batch.size() - 1; j >= 0; j--) {
+                    Recon recon = j < recons.size() ? recons.get(j) : null;
+                    addCellChanges(cellChanges, batch.get(j), recon);
 
-                    for (ReconEntry entry : entries) {
-                        if (recon == null) {
-                            // TODO add EvalError instead? That is not so convenient
-                            // for users because they would lose the cell contents.
-                            // Better leave the cell unreconciled so they can be reconciled again later.
-                            Cell oldCell = entry.cell;
-                            logger.warn("We have a null recon here" + " " + oldCell + " " + entry.rowIndex);
-                            continue;
-                        }
-                        Cell oldCell = entry.cell;
-                        Cell newCell = new Cell(oldCell.value, recon);
-
-                        CellChange cellChange = new CellChange(
-                                entry.rowIndex,
-                                _cellIndex,
-                                oldCell,
-                                newCell);
-                        cellChanges.add(cellChange);
+                    String cacheKey = cache == null || recon == null ? null : _reconConfig.getCacheKey(batch.get(j).job);
+                    if (cacheKey != null) {
+                        cache.put(cacheKey, recon);
                     }
                 }
+            }
 
-                _progress = done * 100 / groups.size();
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException e) {
-                    if (_canceled) {
-                        break;
-                    }
-                }
+            if (cache != null) {
+                cache.flush();
+                logger.info("Reconciled {} distinct values, {} of them from the cache",
+                        jobKeyToGroup.size(), jobKeyToGroup.size() - groups.size());
             }
 
             // TODO: Option to keep partial results after cancellation?
@@ -343,5 +404,114 @@ public class ReconOperation extends EngineDependentOperation {
                 _project.processManager.onDoneProcess(this);
             }
         }
+
+        protected void addCellChanges(List<CellChange> cellChanges, JobGroup group, Recon recon) {
+            if (recon != null) {
+                recon.judgmentBatchSize = group.entries.size();
+            }
+
+            for (ReconEntry entry : group.entries) {
+                if (recon == null) {
+                    // TODO add EvalError instead? That is not so convenient
+                    // for users because they would lose the cell contents.
+                    // Better leave the cell unreconciled so they can be reconciled again later.
+                    Cell oldCell = entry.cell;
+                    logger.warn("We have a null recon here" + " " + oldCell + " " + entry.rowIndex);
+                    continue;
+                }
+                Cell oldCell = entry.cell;
+                Cell newCell = new Cell(oldCell.value, recon);
+
+                CellChange cellChange = new CellChange(
+                        entry.rowIndex,
+                        _cellIndex,
+                        oldCell,
+                        newCell);
+                cellChanges.add(cellChange);
+            }
+        }
+
+        /**
+         * Sends batches to the reconciliation service, with up to {@link ReconOperation#s_maxConcurrentBatches} of them
+         * in flight. When the service turns a whole batch down because it is overloaded (HTTP 429 or 5xx), the number
+         * of batches in flight is halved and the batch is sent again after an exponentially growing delay. Each
+         * successful batch lets one more batch in flight, up to the maximum.
+         *
+         * @return the recons of each batch, in the order of the batches
+         */
+        protected List<List<Recon>> reconcileBatches(List<List<JobGroup>> batches, int jobCount) {
+            List<List<Recon>> results = new ArrayList<>(Collections.nCopies(batches.size(), Collections.emptyList()));
+            if (batches.isEmpty()) {
+                return results;
+            }
+
+            int[] attempts = new int[batches.size()];
+            Deque<Integer> pending = new ArrayDeque<>();
+            for (int b = 0; b < batches.size(); b++) {
+                pending.add(b);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(s_maxConcurrentBatches,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("recon-batch-%d").build());
+            CompletionService<BatchResult> completion = new ExecutorCompletionService<>(executor);
+            int limit = s_maxConcurrentBatches;
+            int inFlight = 0;
+            int done = 0;
+            long backoff = s_initialBackoff;
+            try {
+                while (!_canceled && (inFlight > 0 || !pending.isEmpty())) {
+                    while (inFlight < limit && !pending.isEmpty()) {
+                        int batch = pending.poll();
+                        List<ReconJob> jobs = new ArrayList<>(batches.get(batch).size());
+                        for (JobGroup group : batches.get(batch)) {
+                            jobs.add(group.job);
+                        }
+                        completion.submit(() -> reconcileBatch(batch, jobs));
+                        inFlight++;
+                    }
+
+                    BatchResult result = completion.take().get();
+                    inFlight--;
+                    if (result.failed && ++attempts[result.batch] < s_maxAttempts) {
+                        limit = Math.max(1, limit / 2);
+                        pending.addFirst(result.batch);
+                        logger.warn("Reconciliation batch failed, retrying in {} ms with at most {} batches in flight",
+                                backoff, limit);
+                        Thread.sleep(backoff);
+                        backoff = Math.min(backoff * 2, s_maxBackoff);
+                        continue;
+                    } else if (!result.failed) {
+                        limit = Math.min(s_maxConcurrentBatches, limit + 1);
+                        backoff = s_initialBackoff;
+                    }
+
+                    results.set(result.batch, result.recons);
+                    done += batches.get(result.batch).size();
+                    _progress = done * 100 / jobCount;
+                }
+            } catch (InterruptedException e) {
+                // canceled
+            } catch (ExecutionException e) {
+                // reconcileBatch does not throw
+                logger.error("Unexpected reconciliation failure", e);
+            } finally {
+                executor.shutdownNow();
+            }
+            return results;
+        }
+
+        protected BatchResult reconcileBatch(int batch, List<ReconJob> jobs) {
+            try {
+                List<Recon> recons = _reconConfig.batchRecon(jobs, _historyEntryID);
+                boolean failed = !recons.isEmpty();
+                for (Recon recon : recons) {
+                    failed &= recon != null && recon.error != null && s_retryableError.matcher(recon.error).find();
+                }
+                return new BatchResult(batch, recons, failed);
+            } catch (RuntimeException e) {
+                logger.warn("Reconciliation batch failed", e);
+                return new BatchResult(batch, Collections.emptyList(), true);
+            }
+        }
     }
 }
@@ -33,19 +33,28 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.process;
 
+import java.util.concurrent.Future;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.refine.history.HistoryEntry;
 
 abstract public class LongRunningProcess extends Process {
 
+    final static Logger logger = LoggerFactory.getLogger("long-running-process");
+
     @JsonProperty("description")
     final protected String _description;
     @JsonIgnore
     protected ProcessManager _manager;
+    // the worker thread, while the process runs
     @JsonIgnore
     protected Thread _thread;
+    @JsonIgnore
+    protected Future<?> _future;
     @JsonProperty("progress")
     protected int _progress; // out of 100
     @JsonIgnore
@@ -56,16 +65,19 @@ abstract public class LongRunningProcess extends Process {
     }
 
     @Override
-    public void cancel() {
+    public synchronized void cancel() {
         _canceled = true;
-        if (_thread != null && _thread.isAlive()) {
+        if (_thread != null) {
             _thread.interrupt();
         }
     }
 
     @JsonProperty("status")
     public String getStatus() {
-        return _thread == null ? "pending" : (_thread.isAlive() ? "running" : "done");
+        if (_future != null && _future.isDone()) {
+            return "done";
+        }
+        return _thread == null ? "pending" : "running";
     }
 
     @Override
@@ -73,14 +85,17 @@ abstract public class LongRunningProcess extends Process {
         return false;
     }
 
+    /**
+     * Whether the process has been started, including when it still waits for a thread of the {@link WorkerPool}.
+     */
     @Override
     public boolean isRunning() {
-        return _thread != null && _thread.isAlive();
+        return _future != null && !_future.isDone();
     }
 
     @Override
     public boolean isDone() {
-        return _thread != null && !_thread.isAlive();
+        return _future != null && _future.isDone();
     }
 
     @Override
@@ -89,12 +104,38 @@ abstract public class LongRunningProcess extends Process {
     }
 
     @Override
-    public void startPerforming(ProcessManager manager) {
-        if (_thread == null) {
+    public synchronized void startPerforming(ProcessManager manager) {
+        if (_future == null) {
             _manager = manager;
 
-            _thread = new Thread(getRunnable());
-            _thread.start();
+            _future = WorkerPool.submit(this::perform);
+        }
+    }
+
+    protected void perform() {
+        synchronized (this) {
+            if (_canceled) {
+                return;
+            }
+            _thread = Thread.currentThread();
+        }
+        try {
+            if (_manager != null) {
+                _manager.onStartedProcess(this);
+            }
+            Runnable runnable = getRunnable();
+            if (runnable != null) {
+                runnable.run();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Process " + _description + " failed", e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                _thread = null;
+                // do not leave the worker thread interrupted by a late cancellation
+                Thread.interrupted();
+            }
         }
     }
 
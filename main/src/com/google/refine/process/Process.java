@@ -33,6 +33,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.process;
 
+import java.util.Set;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -56,6 +58,54 @@ public abstract class Process {
 
     abstract public void cancel();
 
+    /**
+     * The names of the columns this process reads, including those of the facets selecting the rows it works on. A
+     * process which declares both the columns it reads and those it writes can run at the same time as the other
+     * processes which do, as long as neither writes a column the other one reads or writes.
+     *
+     * @return the column names, or null if unknown, in which case the process runs on its own
+     */
+    @JsonIgnore
+    public Set<String> getColumnsRead() {
+        return null;
+    }
+
+    /**
+     * The names of the columns this process writes, including the columns it creates.
+     *
+     * @return the column names, or null if unknown, in which case the process runs on its own
+     * @see #getColumnsRead()
+     */
+    @JsonIgnore
+    public Set<String> getColumnsWritten() {
+        return null;
+    }
+
+    /**
+     * Whether this process and the given one may not run at the same time, as one of them could see changes made by
+     * the other.
+     */
+    public boolean conflictsWith(Process other) {
+        Set<String> read = getColumnsRead();
+        Set<String> written = getColumnsWritten();
+        Set<String> otherRead = other.getColumnsRead();
+        Set<String> otherWritten = other.getColumnsWritten();
+        if (read == null || written == null || otherRead == null || otherWritten == null) {
+            return true;
+        }
+        for (String column : written) {
+            if (otherRead.contains(column) || otherWritten.contains(column)) {
+                return true;
+            }
+        }
+        for (String column : otherWritten) {
+            if (read.contains(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @JsonProperty("id")
     public long getId() {
         return hashCode();
@@ -33,9 +33,12 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.process;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -48,10 +51,21 @@ import com.google.refine.history.HistoryProcess;
 
 public class ProcessManager {
 
+    // whether processes which do not conflict with each other can run at the same time
+    static protected boolean s_concurrent = !Boolean.getBoolean("refine.processes.sequential");
+
     @JsonProperty("processes")
     protected List<Process> _processes = Collections.synchronizedList(new LinkedList<Process>());
     @JsonIgnore
     protected List<Exception> _latestExceptions = null;
+    @JsonIgnore
+    protected final Map<Process, Long> _queueTimes = Collections.synchronizedMap(new IdentityHashMap<>());
+    @JsonIgnore
+    protected long _startedCount;
+    @JsonIgnore
+    protected long _totalWaitTime;
+    @JsonIgnore
+    protected long _maxWaitTime;
 
     public static class ExceptionMessage {
 
@@ -63,6 +77,40 @@ public class ProcessManager {
         }
     }
 
+    /**
+     * Statistics about the processes of a project, and the workspace-wide {@link WorkerPool} running them.
+     */
+    public static class Metrics {
+
+        @JsonProperty("queued")
+        public final int queued;
+        @JsonProperty("running")
+        public final int running;
+        @JsonProperty("started")
+        public final long started;
+        @JsonProperty("averageWaitTime")
+        public final long averageWaitTime;
+        @JsonProperty("maxWaitTime")
+        public final long maxWaitTime;
+        @JsonProperty("workerThreads")
+        public final int workerThreads;
+        @JsonProperty("activeWorkers")
+        public final int activeWorkers;
+        @JsonProperty("queuedWorkers")
+        public final int queuedWorkers;
+
+        protected Metrics(int queued, int running, long started, long averageWaitTime, long maxWaitTime) {
+            this.queued = queued;
+            this.running = running;
+            this.started = started;
+            this.averageWaitTime = averageWaitTime;
+            this.maxWaitTime = maxWaitTime;
+            this.workerThreads = WorkerPool.getMaxThreads();
+            this.activeWorkers = WorkerPool.getActiveCount();
+            this.queuedWorkers = WorkerPool.getQueuedCount();
+        }
+    }
+
     public ProcessManager() {
 
     }
@@ -83,6 +131,7 @@ public class ProcessManager {
             _latestExceptions = null;
             return process.performImmediate();
         } else {
+            _queueTimes.put(process, System.currentTimeMillis());
             _processes.add(process);
 
             update();
@@ -95,6 +144,7 @@ public class ProcessManager {
             _latestExceptions = null;
             return process.performImmediate() != null;
         } else {
+            _queueTimes.put(process, System.currentTimeMillis());
             _processes.add(process);
 
             update();
@@ -106,11 +156,43 @@ public class ProcessManager {
         return _processes.size() > 0;
     }
 
+    /**
+     * Called by processes once a worker thread picks them up.
+     */
+    public void onStartedProcess(Process p) {
+        Long queueTime = _queueTimes.remove(p);
+        if (queueTime != null) {
+            long waitTime = System.currentTimeMillis() - queueTime;
+            synchronized (this) {
+                _startedCount++;
+                _totalWaitTime += waitTime;
+                _maxWaitTime = Math.max(_maxWaitTime, waitTime);
+            }
+        }
+    }
+
     public void onDoneProcess(Process p) {
         _processes.remove(p);
         update();
     }
 
+    @JsonIgnore
+    public synchronized Metrics getMetrics() {
+        int queued = 0;
+        int running = 0;
+        synchronized (_processes) {
+            for (Process p : _processes) {
+                if (p.isRunning()) {
+                    running++;
+                } else if (!p.isDone()) {
+                    queued++;
+                }
+            }
+        }
+        return new Metrics(queued, running, _startedCount,
+                _startedCount == 0 ? 0 : _totalWaitTime / _startedCount, _maxWaitTime);
+    }
+
     public void onFailedProcess(Process p, Exception exception) {
         List<Exception> exceptions = new LinkedList<Exception>();
         exceptions.add(exception);
@@ -124,36 +206,65 @@ public class ProcessManager {
     }
 
     public void cancelAll() {
-        for (Process p : _processes) {
-            if (!p.isImmediate() && p.isRunning()) {
-                p.cancel();
+        synchronized (_processes) {
+            for (Process p : _processes) {
+                if (!p.isImmediate() && p.isRunning()) {
+                    p.cancel();
+                }
             }
+            _processes.clear();
         }
-        _processes.clear();
+        _queueTimes.clear();
         _latestExceptions = null;
     }
 
-    protected void update() {
-        while (_processes.size() > 0) {
-            Process p = _processes.get(0);
+    /**
+     * Starts the queued processes which can run. Immediate processes are performed once all processes queued before
+     * them are done. Other processes start once those queued before them are done, or earlier if they do not conflict
+     * with any of them.
+     */
+    protected synchronized void update() {
+        List<Process> snapshot;
+        synchronized (_processes) {
+            snapshot = new ArrayList<>(_processes);
+        }
+        // processes queued before the current one and not done yet
+        List<Process> earlier = new ArrayList<>();
+        for (Process p : snapshot) {
             if (p.isImmediate()) {
+                if (!earlier.isEmpty()) {
+                    break;
+                }
                 _latestExceptions = null;
+                _queueTimes.remove(p);
                 try {
                     p.performImmediate();
                 } catch (Exception e) {
                     // TODO: Not sure what to do yet
                     e.printStackTrace();
                 }
-                _processes.remove(0);
+                _processes.remove(p);
             } else if (p.isDone()) {
-                _processes.remove(0);
+                _processes.remove(p);
             } else {
-                if (!p.isRunning()) {
+                if (!p.isRunning() && (earlier.isEmpty() || (s_concurrent && !conflictsWithAny(p, earlier)))) {
                     _latestExceptions = null;
                     p.startPerforming(this);
                 }
-                break;
+                earlier.add(p);
+                if (!s_concurrent) {
+                    break;
+                }
             }
         }
     }
+
+    protected boolean conflictsWithAny(Process process, List<Process> others) {
+        for (Process other : others) {
+            if (process.conflictsWith(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.process;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The threads running the long-running processes of all projects of the workspace. The number of threads is bounded by
+ * the refine.processes.threads system property, and processes beyond that wait in the order they were submitted. With
+ * refine.processes.virtual_threads set, the threads are virtual ones when the JVM supports them.
+ */
+public class WorkerPool {
+
+    final static Logger logger = LoggerFactory.getLogger("worker-pool");
+
+    static final private int s_maxThreads = Math.max(1,
+            Integer.getInteger("refine.processes.threads", Math.max(4, Runtime.getRuntime().availableProcessors())));
+
+    static final private ThreadPoolExecutor s_executor = createExecutor();
+
+    private WorkerPool() {
+    }
+
+    static private ThreadPoolExecutor createExecutor() {
+        ThreadFactory threadFactory = null;
+        if (Boolean.getBoolean("refine.processes.virtual_threads")) {
+            try {
+                // Thread.ofVirtual() is only available from Java 21
+                Method ofVirtual = Thread.class.getMethod("ofVirtual");
+                Object builder = ofVirtual.invoke(null);
+                threadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not supported by this JVM, using platform threads for processes");
+            }
+        }
+        if (threadFactory == null) {
+            threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("refine-process-%d").build();
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(s_maxThreads, s_maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static public Future<?> submit(Runnable runnable) {
+        return s_executor.submit(runnable);
+    }
+
+    static public int getMaxThreads() {
+        return s_maxThreads;
+    }
+
+    /**
+     * @return the number of processes running, across all projects
+     */
+    static public int getActiveCount() {
+        return s_executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of processes waiting for a thread, across all projects
+     */
+    static public int getQueuedCount() {
+        return s_executor.getQueue().size();
+    }
+}
@@ -33,107 +33,211 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntBinaryOperator;
 
-import com.google.refine.expr.EvalError;
+import com.google.refine.browsing.util.ParallelScan;
 import com.google.refine.model.Project;
 import com.google.refine.sorting.Criterion.KeyMaker;
 
+/**
+ * Sorts rows or records by the keys of a list of criteria. The keys of each row or record are computed once, when it
+ * is added, and stored in a numbered slot of the {@link SortKeys} of each criterion. Sorting then only shuffles slot
+ * numbers, in parallel for large projects. Rows or records with equal keys stay in index order.
+ */
 abstract public class BaseSorter {
 
     protected Criterion[] _criteria;
     protected KeyMaker[] _keyMakers;
-    protected ComparatorWrapper[] _comparatorWrappers;
-    protected List<Object[]> _keys;
+    protected SortKeys[] _sortKeys;
+
+    /**
+     * The number of rows or records to keep, first in sort order, or -1 to keep all of them.
+     */
+    protected int _limit = -1;
+    protected int _count;
+    /**
+     * The index of the row or record whose keys are in each slot.
+     */
+    protected int[] _indices = new int[0];
+    /**
+     * When limited, the slots of the first rows or records in sort order, the last one at the head. The keys of any
+     * other row or record are written to the spare slot, then dropped or swapped with the head.
+     */
+    protected PriorityQueue<Integer> _topSlots;
+    protected int _spareSlot;
 
-    public class ComparatorWrapper {
-
-        final public int criterionIndex;
-        final protected int multiplier;
+    public void initializeFromConfig(Project project, SortingConfig config) {
+        _criteria = config.getCriteria();
+        int count = _criteria.length;
+        _keyMakers = new KeyMaker[count];
+        _sortKeys = new SortKeys[count];
 
-        public ComparatorWrapper(int criterionIndex) {
-            this.criterionIndex = criterionIndex;
-            this.multiplier = _criteria[criterionIndex].reverse ? -1 : 1;
+        for (int i = 0; i < count; i++) {
+            _keyMakers[i] = _criteria[i].createKeyMaker();
+            _sortKeys[i] = _keyMakers[i].createSortKeys();
         }
+    }
 
-        public Object getKey(Project project, Object o, int index) {
-            while (index >= _keys.size()) {
-                _keys.add(null);
-            }
+    public boolean hasCriteria() {
+        return _criteria != null && _criteria.length > 0;
+    }
+
+    abstract protected Object makeKey(
+            Project project, KeyMaker keyMaker, Criterion c, Object o, int index);
 
-            Object[] keys = _keys.get(index);
-            if (keys == null) {
-                keys = makeKeys(project, o, index);
-                _keys.set(index, keys);
+    /**
+     * Discards any row or record added so far.
+     * 
+     * @param count
+     *            the number of rows or records expected
+     */
+    protected void startSorting(int count) {
+        int capacity = _limit >= 0 ? Math.min(count, _limit) + 1 : count;
+        _indices = new int[capacity];
+        for (SortKeys sortKeys : _sortKeys) {
+            sortKeys.allocate(capacity);
+        }
+        _topSlots = _limit >= 0 ? new PriorityQueue<Integer>(Math.max(1, capacity), (s1, s2) -> compare(s2, s1)) : null;
+        _spareSlot = _limit;
+        _count = 0;
+    }
+
+    /**
+     * Computes the keys of a row or record and adds it to the sorted ones.
+     */
+    protected void add(Project project, Object o, int index) {
+        if (_topSlots == null) {
+            setKeys(_count, project, o, index);
+        } else if (_topSlots.size() < _limit) {
+            int slot = _topSlots.size();
+            setKeys(slot, project, o, index);
+            _topSlots.add(slot);
+        } else if (_limit > 0) {
+            setKeys(_spareSlot, project, o, index);
+            if (compare(_spareSlot, _topSlots.peek()) < 0) {
+                int dropped = _topSlots.poll();
+                _topSlots.add(_spareSlot);
+                _spareSlot = dropped;
             }
-            return keys[criterionIndex];
         }
+        _count++;
+    }
 
-        public int compare(Project project, Object o1, int i1, Object o2, int i2) {
-            Criterion c = _criteria[criterionIndex];
-            Object key1 = getKey(project, o1, i1);
-            Object key2 = getKey(project, o2, i2);
+    protected void setKeys(int slot, Project project, Object o, int index) {
+        if (slot >= _indices.length) {
+            _indices = Arrays.copyOf(_indices, Math.max(16, Math.max(slot + 1, _indices.length * 2)));
+        }
+        _indices[slot] = index;
+        for (int i = 0; i < _sortKeys.length; i++) {
+            _sortKeys[i].set(slot, makeKey(project, _keyMakers[i], _criteria[i], o, index));
+        }
+    }
 
-            if (key1 == null) {
-                if (key2 == null) {
-                    return 0;
-                } else if (key2 instanceof EvalError) {
-                    return c.blankPosition - c.errorPosition;
-                } else {
-                    return c.blankPosition;
-                }
-            } else if (key1 instanceof EvalError) {
-                if (key2 == null) {
-                    return c.errorPosition - c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return 0;
-                } else {
-                    return c.errorPosition;
-                }
-            } else {
-                if (key2 == null) {
-                    return -c.blankPosition;
-                } else if (key2 instanceof EvalError) {
-                    return -c.errorPosition;
-                } else {
-                    return _keyMakers[criterionIndex].compareKeys(key1, key2) * multiplier;
-                }
+    /**
+     * Compares the rows or records in two slots by their keys, then by their index.
+     */
+    protected int compare(int slot1, int slot2) {
+        for (SortKeys sortKeys : _sortKeys) {
+            int c = sortKeys.compare(slot1, slot2);
+            if (c != 0) {
+                return c;
             }
         }
+        return Integer.compare(_indices[slot1], _indices[slot2]);
     }
 
-    public void initializeFromConfig(Project project, SortingConfig config) {
-        _criteria = config.getCriteria();
-        int count = _criteria.length;
-        _keyMakers = new KeyMaker[count];
-        _comparatorWrappers = new ComparatorWrapper[count];
+    /**
+     * @return the number of rows or records added, including those not kept because of the limit
+     */
+    public int getCount() {
+        return _count;
+    }
 
-        for (int i = 0; i < count; i++) {
-            _keyMakers[i] = _criteria[i].createKeyMaker();
-            _comparatorWrappers[i] = new ComparatorWrapper(i);
+    /**
+     * @return the indices of the rows or records added, in sort order and up to the limit
+     */
+    protected int[] getSortedIndices() {
+        int[] slots;
+        if (_topSlots != null) {
+            slots = _topSlots.stream().mapToInt(Integer::intValue).toArray();
+        } else {
+            slots = new int[_count];
+            for (int i = 0; i < _count; i++) {
+                slots[i] = i;
+            }
         }
-    }
+        sort(slots, this::compare);
 
-    public boolean hasCriteria() {
-        return _criteria != null && _criteria.length > 0;
+        int[] indices = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            indices[i] = _indices[slots[i]];
+        }
+        return indices;
     }
 
-    abstract protected Object makeKey(
-            Project project, KeyMaker keyMaker, Criterion c, Object o, int index);
+    /**
+     * Sorts an array of ints with a comparator, sorting ranges of large arrays in parallel before merging them.
+     */
+    static protected void sort(int[] a, IntBinaryOperator comparator) {
+        int[] buffer = new int[a.length];
+        List<int[]> runs = ParallelScan.map(a.length, (from, to) -> {
+            mergeSort(a, buffer, from, to, comparator);
+            return new int[] { from, to };
+        });
+        while (runs.size() > 1) {
+            List<int[]> merged = new ArrayList<>((runs.size() + 1) / 2);
+            for (int r = 0; r < runs.size(); r += 2) {
+                if (r + 1 < runs.size()) {
+                    int from = runs.get(r)[0];
+                    int to = runs.get(r + 1)[1];
+                    merge(a, buffer, from, runs.get(r)[1], to, comparator);
+                    merged.add(new int[] { from, to });
+                } else {
+                    merged.add(runs.get(r));
+                }
+            }
+            runs = merged;
+        }
+    }
 
-    protected Object[] makeKeys(Project project, Object o, int index) {
-        Object[] keys = new Object[_keyMakers.length];
-        for (int i = 0; i < keys.length; i++) {
-            keys[i] = makeKey(project, _keyMakers[i], _criteria[i], o, index);
+    static protected void mergeSort(int[] a, int[] buffer, int from, int to, IntBinaryOperator comparator) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                for (; j >= from && comparator.applyAsInt(a[j], v) > 0; j--) {
+                    a[j + 1] = a[j];
+                }
+                a[j + 1] = v;
+            }
+            return;
         }
-        return keys;
+        int mid = (from + to) >>> 1;
+        mergeSort(a, buffer, from, mid, comparator);
+        mergeSort(a, buffer, mid, to, comparator);
+        merge(a, buffer, from, mid, to, comparator);
     }
 
-    protected int compare(Project project, Object o1, int i1, Object o2, int i2) {
-        int c = 0;
-        for (int i = 0; c == 0 && i < _comparatorWrappers.length; i++) {
-            c = _comparatorWrappers[i].compare(project, o1, i1, o2, i2);
+    /**
+     * Merges the sorted ranges [from, mid) and [mid, to) of an array, using the same range of the buffer.
+     */
+    static protected void merge(int[] a, int[] buffer, int from, int mid, int to, IntBinaryOperator comparator) {
+        if (mid == from || mid == to || comparator.applyAsInt(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, buffer, from, mid - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            a[k++] = comparator.applyAsInt(buffer[i], a[j]) <= 0 ? buffer[i++] : a[j++];
+        }
+        while (i < mid) {
+            a[k++] = buffer[i++];
         }
-        return c;
     }
 }
@@ -62,6 +62,11 @@ public class BooleanCriterion extends Criterion {
             public int compareKeys(Object key1, Object key2) {
                 return ((Boolean) key1).compareTo((Boolean) key2);
             }
+
+            @Override
+            public SortKeys createSortKeys() {
+                return new SortKeys.BooleanKeys(BooleanCriterion.this);
+            }
         };
     }
 
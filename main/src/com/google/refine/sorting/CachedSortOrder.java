@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.sorting;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.google.refine.browsing.FilteredRecords;
+import com.google.refine.browsing.FilteredRows;
+import com.google.refine.browsing.RecordVisitor;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.model.Project;
+import com.google.refine.model.Record;
+import com.google.refine.model.Row;
+
+/**
+ * The indices of the filtered rows (or records) of a project, in sort order. They are kept for a few views of each
+ * project, so that paging through a sorted grid does not sort it again for each page. A cached order is tied to the
+ * history entry it was computed at, and is never reused after any change to the project.
+ */
+public class CachedSortOrder {
+
+    static protected int s_maxEntriesPerProject = Integer.getInteger("refine.sorting.max_cached_orders", 4);
+
+    static final protected Map<Project, Map<String, CachedSortOrder>> s_cache = new WeakHashMap<>();
+
+    final protected long _historyEntryID;
+    final protected int[] _order;
+
+    protected CachedSortOrder(long historyEntryID, int[] order) {
+        _historyEntryID = historyEntryID;
+        _order = order;
+    }
+
+    /**
+     * Retrieves a cached sort order.
+     * 
+     * @param project
+     *            the sorted project
+     * @param key
+     *            identifies the filters and sorting criteria of the view
+     * @param historyEntryID
+     *            the id of the last done history entry of the project
+     * @return the indices of the filtered rows or records in sort order, or null if not cached
+     */
+    static public int[] get(Project project, String key, long historyEntryID) {
+        synchronized (s_cache) {
+            Map<String, CachedSortOrder> orders = s_cache.get(project);
+            CachedSortOrder cached = orders == null ? null : orders.get(key);
+            return cached == null || cached._historyEntryID != historyEntryID ? null : cached._order;
+        }
+    }
+
+    /**
+     * Keeps the sort order of a view, unless the project was changed while it was computed.
+     */
+    static public void put(Project project, String key, long historyEntryID, int[] order) {
+        if (historyEntryID != project.history.getCurrentEntryID()) {
+            return;
+        }
+        synchronized (s_cache) {
+            s_cache.computeIfAbsent(project, p -> new LinkedHashMap<String, CachedSortOrder>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSortOrder> eldest) {
+                    return size() > s_maxEntriesPerProject;
+                }
+            }).put(key, new CachedSortOrder(historyEntryID, order));
+        }
+    }
+
+    /**
+     * @return an estimate of the memory taken by the sort orders cached for a project, in bytes
+     */
+    static public long getCachedBytes(Project project) {
+        long bytes = 0;
+        synchronized (s_cache) {
+            Map<String, CachedSortOrder> orders = s_cache.get(project);
+            if (orders != null) {
+                for (CachedSortOrder cached : orders.values()) {
+                    bytes += 16 + 4L * cached._order.length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Sorts the filtered rows of a project.
+     * 
+     * @return the indices of the filtered rows, in sort order
+     */
+    static public int[] sortRows(Project project, FilteredRows filteredRows, SortingConfig config) {
+        IndexCollector collector = new IndexCollector(project.rows.size());
+        SortingRowVisitor visitor = new SortingRowVisitor(collector);
+        visitor.initializeFromConfig(project, config);
+        filteredRows.accept(project, visitor);
+        return collector.getIndices();
+    }
+
+    /**
+     * Sorts the filtered records of a project.
+     * 
+     * @return the indices of the filtered records, in sort order
+     */
+    static public int[] sortRecords(Project project, FilteredRecords filteredRecords, SortingConfig config) {
+        IndexCollector collector = new IndexCollector(project.recordModel.getRecordCount());
+        SortingRecordVisitor visitor = new SortingRecordVisitor(collector);
+        visitor.initializeFromConfig(project, config);
+        filteredRecords.accept(project, visitor);
+        return collector.getIndices();
+    }
+
+    static protected class IndexCollector implements RowVisitor, RecordVisitor {
+
+        protected int[] _indices;
+        protected int _size;
+
+        protected IndexCollector(int capacity) {
+            _indices = new int[capacity];
+        }
+
+        @Override
+        public void start(Project project) {
+            // nothing to do
+        }
+
+        @Override
+        public void end(Project project) {
+            // nothing to do
+        }
+
+        @Override
+        public boolean visit(Project project, int rowIndex, Row row) {
+            add(rowIndex);
+            return false;
+        }
+
+        @Override
+        public boolean visit(Project project, Record record) {
+            add(record.recordIndex);
+            return false;
+        }
+
+        protected void add(int index) {
+            if (_size == _indices.length) {
+                _indices = Arrays.copyOf(_indices, Math.max(16, _size * 2));
+            }
+            _indices[_size++] = index;
+        }
+
+        protected int[] getIndices() {
+            return _size == _indices.length ? _indices : Arrays.copyOf(_indices, _size);
+        }
+    }
+}
@@ -138,6 +138,13 @@ abstract public class Criterion {
 
         abstract public int compareKeys(Object key1, Object key2);
 
+        /**
+         * @return an empty store for the keys made by this key maker, compared as {@link #compareKeys} does
+         */
+        public SortKeys createSortKeys() {
+            return new SortKeys.ObjectKeys(Criterion.this, this);
+        }
+
         abstract protected Object makeKey(Object value);
     }
 
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.sorting;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.sorting.Criterion.KeyMaker;
+
+/**
+ * The sort keys of one criterion for a series of rows or records, each stored in a numbered slot. Keys are extracted
+ * once into arrays, primitive ones where possible, with blanks and errors encoded separately, so that comparing two
+ * slots does not go through boxed objects.
+ */
+abstract public class SortKeys {
+
+    static final protected byte VALUE = 0;
+    static final protected byte BLANK = 1;
+    static final protected byte ERROR = 2;
+
+    final protected int _blankPosition;
+    final protected int _errorPosition;
+    final protected int _multiplier;
+    protected byte[] _kinds = new byte[0];
+
+    protected SortKeys(Criterion criterion) {
+        _blankPosition = criterion.blankPosition;
+        _errorPosition = criterion.errorPosition;
+        _multiplier = criterion.reverse ? -1 : 1;
+    }
+
+    /**
+     * Discards all keys and prepares room for the given number of slots.
+     */
+    public void allocate(int capacity) {
+        _kinds = new byte[capacity];
+        allocateValues(capacity);
+    }
+
+    /**
+     * Stores a key, as returned by a {@link KeyMaker}, in a slot.
+     */
+    public void set(int slot, Object key) {
+        if (slot >= _kinds.length) {
+            int capacity = Math.max(16, Math.max(slot + 1, _kinds.length * 2));
+            _kinds = Arrays.copyOf(_kinds, capacity);
+            growValues(capacity);
+        }
+        if (key == null) {
+            _kinds[slot] = BLANK;
+        } else if (ExpressionUtils.isError(key)) {
+            _kinds[slot] = ERROR;
+        } else {
+            _kinds[slot] = VALUE;
+            setValue(slot, key);
+        }
+    }
+
+    /**
+     * Compares the keys in two slots. Blanks and errors are placed relative to values, and to one another, according
+     * to their positions, and are not affected by the reverse flag.
+     */
+    public int compare(int slot1, int slot2) {
+        byte kind1 = _kinds[slot1];
+        byte kind2 = _kinds[slot2];
+        if (kind1 == VALUE && kind2 == VALUE) {
+            return compareValues(slot1, slot2) * _multiplier;
+        }
+        return getPosition(kind1) - getPosition(kind2);
+    }
+
+    protected int getPosition(byte kind) {
+        return kind == BLANK ? _blankPosition : (kind == ERROR ? _errorPosition : 0);
+    }
+
+    abstract protected void allocateValues(int capacity);
+
+    abstract protected void growValues(int capacity);
+
+    abstract protected void setValue(int slot, Object key);
+
+    abstract protected int compareValues(int slot1, int slot2);
+
+    /**
+     * Numeric keys, compared as doubles.
+     */
+    static public class DoubleKeys extends SortKeys {
+
+        protected double[] _values = new double[0];
+
+        public DoubleKeys(Criterion criterion) {
+            super(criterion);
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            _values = new double[capacity];
+        }
+
+        @Override
+        protected void growValues(int capacity) {
+            _values = Arrays.copyOf(_values, capacity);
+        }
+
+        @Override
+        protected void setValue(int slot, Object key) {
+            // adding zero turns -0.0 into 0.0, which compare as equal numbers
+            _values[slot] = ((Number) key).doubleValue() + 0.0;
+        }
+
+        @Override
+        protected int compareValues(int slot1, int slot2) {
+            return Double.compare(_values[slot1], _values[slot2]);
+        }
+    }
+
+    /**
+     * Boolean keys, false first.
+     */
+    static public class BooleanKeys extends SortKeys {
+
+        protected boolean[] _values = new boolean[0];
+
+        public BooleanKeys(Criterion criterion) {
+            super(criterion);
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            _values = new boolean[capacity];
+        }
+
+        @Override
+        protected void growValues(int capacity) {
+            _values = Arrays.copyOf(_values, capacity);
+        }
+
+        @Override
+        protected void setValue(int slot, Object key) {
+            _values[slot] = (Boolean) key;
+        }
+
+        @Override
+        protected int compareValues(int slot1, int slot2) {
+            return Boolean.compare(_values[slot1], _values[slot2]);
+        }
+    }
+
+    /**
+     * {@link Instant} keys, stored as seconds and nanoseconds since the epoch.
+     */
+    static public class InstantKeys extends SortKeys {
+
+        protected long[] _seconds = new long[0];
+        protected int[] _nanos = new int[0];
+
+        public InstantKeys(Criterion criterion) {
+            super(criterion);
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            _seconds = new long[capacity];
+            _nanos = new int[capacity];
+        }
+
+        @Override
+        protected void growValues(int capacity) {
+            _seconds = Arrays.copyOf(_seconds, capacity);
+            _nanos = Arrays.copyOf(_nanos, capacity);
+        }
+
+        @Override
+        protected void setValue(int slot, Object key) {
+            Instant instant = (Instant) key;
+            _seconds[slot] = instant.getEpochSecond();
+            _nanos[slot] = instant.getNano();
+        }
+
+        @Override
+        protected int compareValues(int slot1, int slot2) {
+            int c = Long.compare(_seconds[slot1], _seconds[slot2]);
+            return c != 0 ? c : Integer.compare(_nanos[slot1], _nanos[slot2]);
+        }
+    }
+
+    /**
+     * Any other keys, such as collation keys, compared by their key maker.
+     */
+    static public class ObjectKeys extends SortKeys {
+
+        final protected KeyMaker _keyMaker;
+        protected Object[] _values = new Object[0];
+
+        public ObjectKeys(Criterion criterion, KeyMaker keyMaker) {
+            super(criterion);
+            _keyMaker = keyMaker;
+        }
+
+        @Override
+        protected void allocateValues(int capacity) {
+            _values = new Object[capacity];
+        }
+
+        @Override
+        protected void growValues(int capacity) {
+            _values = Arrays.copyOf(_values, capacity);
+        }
+
+        @Override
+        protected void setValue(int slot, Object key) {
+            _values[slot] = key;
+        }
+
+        @Override
+        protected int compareValues(int slot1, int slot2) {
+            return _keyMaker.compareKeys(_values[slot1], _values[slot2]);
+        }
+    }
+}
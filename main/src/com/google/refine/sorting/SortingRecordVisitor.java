@@ -33,11 +33,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
 import com.google.refine.browsing.RecordVisitor;
 import com.google.refine.model.Project;
 import com.google.refine.model.Record;
@@ -46,40 +41,32 @@ import com.google.refine.sorting.Criterion.KeyMaker;
 public class SortingRecordVisitor extends BaseSorter implements RecordVisitor {
 
     final protected RecordVisitor _visitor;
-    protected List<Record> _records;
 
     public SortingRecordVisitor(RecordVisitor visitor) {
+        this(visitor, -1);
+    }
+
+    /**
+     * @param limit
+     *            the number of records to pass on to the visitor, first in sort order, or -1 for all records. Only the
+     *            keys of that many records are kept in memory while visiting.
+     */
+    public SortingRecordVisitor(RecordVisitor visitor, int limit) {
         _visitor = visitor;
+        _limit = limit;
     }
 
     @Override
     public void start(Project project) {
-        int count = project.recordModel.getRecordCount();
-        _records = new ArrayList<Record>(count);
-        _keys = new ArrayList<Object[]>(count);
+        startSorting(project.recordModel.getRecordCount());
     }
 
     @Override
     public void end(Project project) {
         _visitor.start(project);
 
-        Collections.sort(_records, new Comparator<Record>() {
-
-            Project project;
-
-            Comparator<Record> init(Project project) {
-                this.project = project;
-                return this;
-            }
-
-            @Override
-            public int compare(Record o1, Record o2) {
-                return SortingRecordVisitor.this.compare(project, o1, o1.recordIndex, o2, o2.recordIndex);
-            }
-        }.init(project));
-
-        for (Record record : _records) {
-            _visitor.visit(project, record);
+        for (int recordIndex : getSortedIndices()) {
+            _visitor.visit(project, project.recordModel.getRecord(recordIndex));
         }
 
         _visitor.end(project);
@@ -87,7 +74,7 @@ public class SortingRecordVisitor extends BaseSorter implements RecordVisitor {
 
     @Override
     public boolean visit(Project project, Record record) {
-        _records.add(record);
+        add(project, record, record.recordIndex);
         return false;
     }
 
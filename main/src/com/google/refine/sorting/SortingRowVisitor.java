@@ -33,11 +33,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.google.refine.sorting;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-
 import com.google.refine.browsing.RowVisitor;
 import com.google.refine.model.Project;
 import com.google.refine.model.Row;
@@ -46,51 +41,32 @@ import com.google.refine.sorting.Criterion.KeyMaker;
 public class SortingRowVisitor extends BaseSorter implements RowVisitor {
 
     final protected RowVisitor _visitor;
-    protected List<IndexedRow> _indexedRows;
-
-    static protected class IndexedRow {
-
-        final int index;
-        final Row row;
 
-        IndexedRow(int index, Row row) {
-            this.index = index;
-            this.row = row;
-        }
+    public SortingRowVisitor(RowVisitor visitor) {
+        this(visitor, -1);
     }
 
-    public SortingRowVisitor(RowVisitor visitor) {
+    /**
+     * @param limit
+     *            the number of rows to pass on to the visitor, first in sort order, or -1 for all rows. Only the keys
+     *            of that many rows are kept in memory while visiting.
+     */
+    public SortingRowVisitor(RowVisitor visitor, int limit) {
         _visitor = visitor;
+        _limit = limit;
     }
 
     @Override
     public void start(Project project) {
-        int count = project.rows.size();
-        _indexedRows = new ArrayList<IndexedRow>(count);
-        _keys = new ArrayList<Object[]>(count);
+        startSorting(project.rows.size());
     }
 
     @Override
     public void end(Project project) {
         _visitor.start(project);
 
-        Collections.sort(_indexedRows, new Comparator<IndexedRow>() {
-
-            Project project;
-
-            Comparator<IndexedRow> init(Project project) {
-                this.project = project;
-                return this;
-            }
-
-            @Override
-            public int compare(IndexedRow o1, IndexedRow o2) {
-                return SortingRowVisitor.this.compare(project, o1.row, o1.index, o2.row, o2.index);
-            }
-        }.init(project));
-
-        for (IndexedRow indexedRow : _indexedRows) {
-            _visitor.visit(project, indexedRow.index, indexedRow.row);
+        for (int rowIndex : getSortedIndices()) {
+            _visitor.visit(project, rowIndex, project.rows.get(rowIndex));
         }
 
         _visitor.end(project);
@@ -98,7 +74,7 @@ public class SortingRowVisitor extends BaseSorter implements RowVisitor {
 
     @Override
     public boolean visit(Project project, int rowIndex, Row row) {
-        _indexedRows.add(new IndexedRow(rowIndex, row));
+        add(project, row, rowIndex);
         return false;
     }
 
@@ -30,7 +30,9 @@ package com.google.refine.util;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -117,7 +119,8 @@ public class HttpClient {
 //               .setConnectionBackoffStrategy(ConnectionBackoffStrategy)
                 .addRequestInterceptorFirst(new HttpRequestInterceptor() {
 
-                    private long nextRequestTime = System.currentTimeMillis();
+                    // the delay applies to each host separately, so that requests to different hosts can run concurrently
+                    private final Map<String, Long> nextRequestTimes = new HashMap<>();
 
                     @Override
                     public void process(
@@ -125,15 +128,22 @@ public class HttpClient {
                             final EntityDetails entity,
                             final HttpContext context) throws HttpException, IOException {
 
-                        long delay = nextRequestTime - System.currentTimeMillis();
-                        if (delay > 0) {
+                        String host = request.getAuthority() == null ? "" : request.getAuthority().toString();
+                        long now = System.currentTimeMillis();
+                        long requestTime;
+                        synchronized (nextRequestTimes) {
+                            // hosts which can already be queried again need no entry, which keeps the map small
+                            nextRequestTimes.values().removeIf(time -> time <= now);
+                            requestTime = Math.max(now, nextRequestTimes.getOrDefault(host, now));
+                            nextRequestTimes.put(host, requestTime + _delay);
+                        }
+                        if (requestTime > now) {
                             try {
-                                Thread.sleep(delay);
+                                Thread.sleep(requestTime - now);
                             } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
                             }
                         }
-                        nextRequestTime = System.currentTimeMillis() + _delay;
-
                     }
                 });
 
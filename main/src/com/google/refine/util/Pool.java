@@ -45,6 +45,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import com.google.refine.RefineServlet;
@@ -63,6 +64,8 @@ public class Pool {
     // This is only for backward compatibility while loading old project files
     final protected Map<String, ReconCandidate> candidates = new HashMap<String, ReconCandidate>();
 
+    protected StringDictionary stringDictionary;
+
     private void pool(ReconCandidate candidate) {
         candidates.put(candidate.id, candidate);
     }
@@ -83,6 +86,18 @@ public class Pool {
         }
     }
 
+    /**
+     * Sets the dictionary used to share the strings of the cells read with this pool.
+     */
+    public void setStringDictionary(StringDictionary stringDictionary) {
+        this.stringDictionary = stringDictionary;
+    }
+
+    @JsonIgnore
+    public StringDictionary getStringDictionary() {
+        return stringDictionary;
+    }
+
     public Recon getRecon(String id) {
         return recons.get(id);
     }
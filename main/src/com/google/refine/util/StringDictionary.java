@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.refine.model.Cell;
+import com.google.refine.model.Row;
+
+/**
+ * A per-project dictionary of cell strings, used to share a single String instance between all the cells holding the
+ * same value when a project is imported or loaded. Low-cardinality columns (country codes, statuses, categories...)
+ * can hold the same handful of values millions of times.
+ * <p>
+ * The dictionary is bounded: each column may add at most a fixed number of strings to it, and columns which keep
+ * missing the dictionary once they have reached that limit are considered high-cardinality and are no longer
+ * interned at all.
+ */
+public class StringDictionary {
+
+    static protected int s_maxSize = Integer.getInteger("refine.interning.max_size", 1 << 20);
+    static protected int s_maxColumnSize = Integer.getInteger("refine.interning.max_column_size", 1 << 16);
+
+    // approximate footprint of a String and its backing array, beyond the characters themselves
+    static final protected int STRING_OVERHEAD = 40;
+    // approximate footprint of a hash map entry, including its slot in the table
+    static final protected int ENTRY_OVERHEAD = 48;
+
+    static protected class ColumnStats {
+
+        int added;
+        int hits;
+        int misses;
+        boolean disabled;
+    }
+
+    final protected Map<String, String> _strings = new HashMap<>();
+    final protected List<ColumnStats> _columns = new ArrayList<>();
+    protected long _bytesShared = 0;
+
+    /**
+     * Returns the shared instance of a string found in the given column, adding it to the dictionary if there is room
+     * left for that column.
+     */
+    public synchronized String intern(int cellIndex, String s) {
+        ColumnStats column = column(cellIndex);
+        if (column.disabled) {
+            return s;
+        }
+
+        String shared = _strings.get(s);
+        if (shared != null) {
+            column.hits++;
+            if (shared != s) {
+                _bytesShared += STRING_OVERHEAD + s.length();
+            }
+            return shared;
+        } else if (column.added < s_maxColumnSize && _strings.size() < s_maxSize) {
+            column.added++;
+            _strings.put(s, s);
+            return s;
+        } else {
+            column.misses++;
+            if (column.misses > column.hits) {
+                column.disabled = true;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Returns the shared instance of a string if it is already in the dictionary, the string itself otherwise.
+     */
+    public synchronized String lookup(String s) {
+        String shared = _strings.get(s);
+        if (shared == null) {
+            return s;
+        } else if (shared != s) {
+            _bytesShared += STRING_OVERHEAD + s.length();
+        }
+        return shared;
+    }
+
+    /**
+     * Replaces the string cells of a row by cells holding the shared instances of their values.
+     */
+    public void intern(Row row) {
+        List<Cell> cells = row.cells;
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
+            if (cell != null && cell.value instanceof String) {
+                String s = (String) cell.value;
+                String shared = intern(i, s);
+                if (shared != s) {
+                    cells.set(i, new Cell(shared, cell.recon));
+                }
+            }
+        }
+    }
+
+    protected ColumnStats column(int cellIndex) {
+        while (cellIndex >= _columns.size()) {
+            _columns.add(new ColumnStats());
+        }
+        return _columns.get(cellIndex);
+    }
+
+    public synchronized int size() {
+        return _strings.size();
+    }
+
+    /**
+     * @return an estimate of the memory taken by the dictionary itself, not counting the strings it holds as they are
+     *         shared with cells
+     */
+    public synchronized long getBytes() {
+        return (long) _strings.size() * ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return an estimate of the memory saved by sharing strings, net of the size of the dictionary itself
+     */
+    public synchronized long getBytesSaved() {
+        return _bytesShared - (long) _strings.size() * ENTRY_OVERHEAD;
+    }
+}
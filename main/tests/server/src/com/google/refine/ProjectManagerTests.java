@@ -47,6 +47,12 @@ import java.lang.reflect.Field;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mockito.Mockito;
 import org.slf4j.LoggerFactory;
@@ -231,6 +237,53 @@ public class ProjectManagerTests extends RefineTest {
     }
     // TODO test canSaveAllModifiedWithRaceCondition
 
+    @Test
+    public void canGetProjectsWhileAnotherOneLoads() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch finishLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ProjectManagerStub manager = new ProjectManagerStub() {
+
+            @Override
+            protected Project loadProject(long id) {
+                loads.incrementAndGet();
+                if (id == 1) {
+                    loadStarted.countDown();
+                    try {
+                        finishLoad.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new ProjectStub(id);
+            }
+        };
+        manager.registerProject(project, metadata);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Project> slowLoad = executor.submit(() -> manager.getProject(1));
+            Assert.assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            Future<Project> sameLoad = executor.submit(() -> manager.getProject(1));
+
+            // other projects and metadata are available while project 1 loads
+            Assert.assertEquals(executor.submit(() -> manager.getProject(2)).get(5, TimeUnit.SECONDS).id, 2L);
+            Assert.assertSame(executor.submit(() -> manager.getProject(project.id)).get(5, TimeUnit.SECONDS), project);
+            Assert.assertSame(manager.getProjectMetadata(project.id), metadata);
+            Assert.assertFalse(slowLoad.isDone());
+
+            finishLoad.countDown();
+            Project loaded = slowLoad.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(loaded.id, 1L);
+            Assert.assertSame(sameLoad.get(5, TimeUnit.SECONDS), loaded);
+            Assert.assertSame(manager.getProject(1), loaded);
+            // one load for each of projects 1 and 2
+            Assert.assertEquals(loads.get(), 2);
+        } finally {
+            finishLoad.countDown();
+            executor.shutdownNow();
+        }
+    }
+
     // -------------helpers-------------
 
     protected void registerProject() {
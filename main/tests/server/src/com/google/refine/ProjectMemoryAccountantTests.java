@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.history.Change;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Row;
+import com.google.refine.process.ProcessManager;
+import com.google.refine.sorting.CachedSortOrder;
+
+public class ProjectMemoryAccountantTests extends RefineTest {
+
+    long budgetMB;
+    int minIdleSeconds;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        budgetMB = ProjectMemoryAccountant.s_budgetMB;
+        minIdleSeconds = ProjectMemoryAccountant.s_minIdleSeconds;
+        ProjectMemoryAccountant.s_minIdleSeconds = 0;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ProjectMemoryAccountant.s_budgetMB = budgetMB;
+        ProjectMemoryAccountant.s_minIdleSeconds = minIdleSeconds;
+    }
+
+    protected Project createLargeProject(int rowCount) {
+        StringBuilder csv = new StringBuilder("a\n");
+        for (int i = 0; i < rowCount; i++) {
+            csv.append("value-").append(i).append('\n');
+        }
+        return createCSVProject(csv.toString());
+    }
+
+    @Test
+    public void testEstimate() {
+        Project project = createCSVProject("a,b\nfoo,1\nbar,2\nbaz,3\n");
+        Recon recon = new Recon(0, "http://www.wikidata.org/entity/", "http://www.wikidata.org/prop/direct/");
+        project.rows.get(0).setCell(0, new Cell("foo", recon));
+        project.rows.get(1).setCell(0, new Cell("bar", recon));
+        ProjectMemoryAccountant accountant = new ProjectMemoryAccountant();
+        LookupCacheManager lookups = new LookupCacheManager();
+
+        ProjectMemoryAccountant.Estimate estimate = accountant.estimate(project, lookups);
+        Assert.assertEquals(estimate.rowCount, 3);
+        Assert.assertEquals(estimate.cellCount, 6);
+        Assert.assertEquals(estimate.reconCount, 1);
+        Assert.assertTrue(estimate.rowBytes > 0);
+        Assert.assertEquals(estimate.reconBytes, ProjectMemoryAccountant.RECON_BYTES);
+        Assert.assertEquals(estimate.precomputeBytes, 0);
+
+        project.columnModel.columns.get(0).setPrecompute("key", new Object());
+        estimate = accountant.estimate(project, lookups);
+        Assert.assertEquals(estimate.precomputeBytes, 3 * ProjectMemoryAccountant.PRECOMPUTE_BYTES_PER_ROW);
+        Assert.assertEquals(estimate.getTotalBytes(),
+                estimate.rowBytes + estimate.reconBytes + estimate.precomputeBytes + estimate.cacheBytes);
+
+        long cacheBytes = estimate.cacheBytes;
+        CachedSortOrder.put(project, "sorted", project.history.getCurrentEntryID(), new int[] { 2, 0, 1 });
+        estimate = accountant.estimate(project, lookups);
+        Assert.assertEquals(estimate.cacheBytes, cacheBytes + CachedSortOrder.getCachedBytes(project));
+        Assert.assertTrue(CachedSortOrder.getCachedBytes(project) >= 3 * 4);
+    }
+
+    @Test
+    public void testEstimateSamplesRows() {
+        Project project = createLargeProject(1000);
+        ProjectMemoryAccountant accountant = new ProjectMemoryAccountant();
+        long fullEstimate = accountant.estimate(project, new LookupCacheManager()).rowBytes;
+
+        int sampleRows = ProjectMemoryAccountant.s_sampleRows;
+        ProjectMemoryAccountant.s_sampleRows = 100;
+        try {
+            ProjectMemoryAccountant sampling = new ProjectMemoryAccountant();
+            ProjectMemoryAccountant.Estimate estimate = sampling.estimate(project, new LookupCacheManager());
+            Assert.assertEquals(estimate.cellCount, 1000);
+            Assert.assertTrue(Math.abs(estimate.rowBytes - fullEstimate) < fullEstimate / 100);
+        } finally {
+            ProjectMemoryAccountant.s_sampleRows = sampleRows;
+        }
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedIdleProjects() throws Exception {
+        ProjectManager manager = ProjectManager.singleton;
+        Project first = createLargeProject(20000);
+        Project second = createLargeProject(20000);
+        Project unsaved = createLargeProject(20000);
+        Thread.sleep(5);
+        first.setLastSave();
+        second.setLastSave();
+        Thread.sleep(5);
+        manager.getProject(second.id);
+        manager.getProject(unsaved.id);
+        Thread.sleep(5);
+
+        long projectBytes = manager._memoryAccountant.estimate(first, manager.getLookupCacheManager()).getTotalBytes();
+        // room for a little more than two projects
+        ProjectMemoryAccountant.s_budgetMB = (2 * projectBytes + projectBytes / 2) / (1024 * 1024) + 1;
+        Assert.assertTrue(ProjectMemoryAccountant.s_budgetMB * 1024 * 1024 < 3 * projectBytes);
+        manager.enforceMemoryBudget(false);
+
+        ProjectMemoryAccountant.Report report = manager.getMemoryReport();
+        Assert.assertEquals(report.projects.stream().map(e -> e.projectID).collect(Collectors.toSet()),
+                Set.of(second.id, unsaved.id));
+        Assert.assertEquals(report.evictions.size(), 1);
+        Assert.assertEquals(report.evictions.get(0).projectID, first.id);
+        Assert.assertFalse(report.evictions.get(0).saved);
+        Assert.assertTrue(report.getTotalBytes() <= report.budgetBytes);
+
+        // projects with unsaved changes are kept unless they can be saved
+        ProjectMemoryAccountant.s_budgetMB = 1;
+        manager.enforceMemoryBudget(false);
+        Assert.assertEquals(manager.getMemoryReport().projects.size(), 1);
+        Assert.assertEquals(manager.getMemoryReport().projects.get(0).projectID, unsaved.id);
+    }
+
+    @Test
+    public void testProjectsBeingSavedOrProcessedAreNotEvicted() throws Exception {
+        ProjectManager manager = ProjectManager.singleton;
+        Project saving = createLargeProject(20000);
+        Project processing = createLargeProject(20000);
+        Thread.sleep(5);
+        saving.setLastSave();
+        processing.setLastSave();
+        ProcessManager processManager = mock(ProcessManager.class);
+        when(processManager.hasPending()).thenReturn(true);
+        processing.processManager = processManager;
+        synchronized (manager._savingProjects) {
+            manager._savingProjects.put(saving.id, 1);
+        }
+
+        ProjectMemoryAccountant.s_budgetMB = 1;
+        try {
+            manager.enforceMemoryBudget(false);
+            Set<Long> loaded = manager.getMemoryReport().projects.stream().map(e -> e.projectID).collect(Collectors.toSet());
+            Assert.assertTrue(loaded.contains(saving.id));
+            Assert.assertTrue(loaded.contains(processing.id));
+        } finally {
+            synchronized (manager._savingProjects) {
+                manager._savingProjects.remove(saving.id);
+            }
+        }
+
+        manager.enforceMemoryBudget(false);
+        Set<Long> loaded = manager.getMemoryReport().projects.stream().map(e -> e.projectID).collect(Collectors.toSet());
+        Assert.assertFalse(loaded.contains(saving.id));
+        Assert.assertTrue(loaded.contains(processing.id));
+    }
+
+    @Test
+    public void testProjectsAreNotIdleRightAfterAChange() throws Exception {
+        ProjectManager manager = ProjectManager.singleton;
+        Project project = createCSVProject("a\nfoo\n");
+        ProjectMemoryAccountant.s_minIdleSeconds = 60;
+        Change slowChange = new Change() {
+
+            @Override
+            public void apply(Project project) {
+                // as if the change took longer than the idle time
+                manager._memoryAccountant._lastAccess.put(project.id, 0L);
+            }
+
+            @Override
+            public void revert(Project project) {
+                manager._memoryAccountant._lastAccess.put(project.id, 0L);
+            }
+
+            @Override
+            public void save(Writer writer, Properties options) throws IOException {
+            }
+        };
+
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "slow change", null, slowChange));
+        Assert.assertFalse(manager._memoryAccountant.isIdle(project.id));
+        project.history.undoRedo(0);
+        Assert.assertFalse(manager._memoryAccountant.isIdle(project.id));
+    }
+
+    @Test
+    public void testProjectsWhichCannotBeEstimatedAreSkipped() {
+        ProjectManager manager = ProjectManager.singleton;
+        Project project = createCSVProject("a\nfoo\n");
+        Project broken = createCSVProject("a\nbar\n");
+        // as if the rows were modified while being sampled
+        broken.rows.add(mock(Row.class));
+
+        Set<Long> estimated = manager.getMemoryReport().projects.stream().map(e -> e.projectID).collect(Collectors.toSet());
+        Assert.assertTrue(estimated.contains(project.id));
+        Assert.assertFalse(estimated.contains(broken.id));
+    }
+}
@@ -378,7 +378,8 @@ public class RefineTest {
 
     protected void runAndWait(ProcessManager processManager, Process process, int timeout) {
         process.startPerforming(processManager);
-        Assert.assertTrue(process.isRunning());
+        // worker threads are pooled, so short processes can be done already
+        Assert.assertTrue(process.isRunning() || process.isDone());
         int time = 0;
         try {
             while (process.isRunning() && time < timeout) {
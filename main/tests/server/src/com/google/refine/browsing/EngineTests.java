@@ -29,12 +29,44 @@ package com.google.refine.browsing;
 
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.refine.RefineTest;
+import com.google.refine.browsing.facets.Facet;
+import com.google.refine.browsing.facets.FacetConfig;
+import com.google.refine.browsing.util.CachedFacetSelection;
+import com.google.refine.browsing.util.ConjunctiveFilteredRecords;
+import com.google.refine.browsing.util.ConjunctiveFilteredRows;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.RowStarChange;
+import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.TestUtils;
 
-public class EngineTests {
+public class EngineTests extends RefineTest {
+
+    private static String engineConfigJson(String mode) {
+        return "{\"mode\":\"" + mode + "\",\"facets\":["
+                + "{\"type\":\"list\",\"name\":\"a\",\"columnName\":\"a\",\"expression\":\"value\","
+                + "\"omitBlank\":false,\"omitError\":false,\"selection\":[{\"v\":{\"v\":\"x\",\"l\":\"x\"}}],"
+                + "\"selectBlank\":false,\"selectError\":false,\"invert\":false},"
+                + "{\"type\":\"list\",\"name\":\"b\",\"columnName\":\"b\",\"expression\":\"value\","
+                + "\"omitBlank\":false,\"omitError\":false,\"selection\":[{\"v\":{\"v\":\"1\",\"l\":\"1\"}}],"
+                + "\"selectBlank\":false,\"selectError\":false,\"invert\":false},"
+                + "{\"type\":\"text\",\"name\":\"c\",\"columnName\":\"c\",\"mode\":\"text\","
+                + "\"caseSensitive\":false,\"invert\":false,\"query\":\"o\"}"
+                + "]}";
+    }
 
     @Test
     public void serializeEngine() {
@@ -42,4 +74,179 @@ public class EngineTests {
         Engine engine = new Engine(project);
         TestUtils.isSerializedTo(engine, "{\"engine-mode\":\"row-based\",\"facets\":[]}");
     }
+
+    @Test
+    public void testComputeFacetsMatchesSeparateScans() {
+        Project project = createCSVProject("a,b,c\n"
+                + "x,1,foo\n"
+                + ",2,bar\n"
+                + "y,1,boo\n"
+                + "x,2,zoo\n"
+                + ",1,far\n"
+                + "y,2,\n"
+                + "x,1,bar\n");
+
+        for (String mode : new String[] { "row-based", "record-based" }) {
+            Engine engine = new Engine(project);
+            engine.initializeFromConfig(EngineConfig.reconstruct(engineConfigJson(mode)));
+
+            engine.computeFacets();
+
+            String fused = ParsingUtilities.mapper.valueToTree(engine).toString();
+
+            Assert.assertEquals(fused, computeSeparately(project, engineConfigJson(mode)).toString());
+        }
+    }
+
+    /**
+     * Computes each facet with its own scan, as a reference.
+     */
+    private static JsonNode computeSeparately(Project project, String configJson) {
+        Engine reference = new Engine(project);
+        reference.initializeFromConfig(EngineConfig.reconstruct(configJson));
+        for (Facet facet : reference._facets) {
+            if (reference.getMode() == Engine.Mode.RowBased) {
+                ConjunctiveFilteredRows filteredRows = new ConjunctiveFilteredRows();
+                for (Facet other : reference._facets) {
+                    if (other != facet && other.getRowFilter(project) != null) {
+                        filteredRows.add(other.getRowFilter(project));
+                    }
+                }
+                facet.computeChoices(project, filteredRows);
+            } else {
+                ConjunctiveFilteredRecords filteredRecords = new ConjunctiveFilteredRecords();
+                for (Facet other : reference._facets) {
+                    if (other != facet && other.getRecordFilter(project) != null) {
+                        filteredRecords.add(other.getRecordFilter(project));
+                    }
+                }
+                facet.computeChoices(project, filteredRecords);
+            }
+        }
+        return ParsingUtilities.mapper.valueToTree(reference);
+    }
+
+    private static String computeFacets(Project project, String configJson) {
+        Engine engine = new Engine(project);
+        engine.initializeFromConfig(EngineConfig.reconstruct(configJson));
+        engine.computeFacets();
+        return sortChoices(ParsingUtilities.mapper.valueToTree(engine));
+    }
+
+    /**
+     * Serializes facets with their choices in a fixed order, as they are listed in no particular order.
+     */
+    private static String sortChoices(JsonNode engine) {
+        for (JsonNode facet : engine.get("facets")) {
+            if (facet.has("choices")) {
+                List<JsonNode> choices = new ArrayList<>();
+                facet.get("choices").forEach(choices::add);
+                choices.sort(Comparator.comparing(c -> c.get("v").get("l").asText()));
+                ((ObjectNode) facet).set("choices", ParsingUtilities.mapper.valueToTree(choices));
+            }
+        }
+        return engine.toString();
+    }
+
+    @Test
+    public void testFacetSelectionsAreCached() {
+        Project project = createCSVProject("a,b,c\n"
+                + "x,1,foo\n"
+                + "y,2,bar\n"
+                + "x,2,boo\n");
+        EngineConfig config = EngineConfig.reconstruct(engineConfigJson("row-based"));
+        FacetConfig facetConfig = config.getFacetConfigs().get(0);
+
+        Engine engine = new Engine(project);
+        engine.initializeFromConfig(config);
+        engine.computeFacets();
+
+        long entryID = project.history.getCurrentEntryID();
+        Assert.assertEquals(CachedFacetSelection.get(project, facetConfig, false, entryID).toArray(), new int[] { 0, 2 });
+        Assert.assertNull(CachedFacetSelection.get(project, facetConfig, true, entryID));
+
+        // editing the column of the facet clears the cache
+        CellChange change = new CellChange(0, 0, project.rows.get(0).getCell(0), new Cell("y", null));
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "edit", null, change));
+        Assert.assertNull(CachedFacetSelection.get(project, facetConfig, false, project.history.getCurrentEntryID()));
+
+        engine = new Engine(project);
+        engine.initializeFromConfig(config);
+        engine.computeFacets();
+        Assert.assertEquals(CachedFacetSelection.get(project, facetConfig, false, project.history.getCurrentEntryID()).toArray(),
+                new int[] { 2 });
+    }
+
+    @Test
+    public void testCachedFacetSelectionsAreBounded() {
+        Project project = createCSVProject("a,b,c\n"
+                + "x,1,foo\n"
+                + "y,2,bar\n");
+        FacetConfig first = EngineConfig.reconstruct(engineConfigJson("row-based")).getFacetConfigs().get(0);
+        long entryID = project.history.getCurrentEntryID();
+        CachedFacetSelection.put(project, first, false, entryID, RoaringBitmap.bitmapOf(0));
+        for (int i = 0; i < 100; i++) {
+            FacetConfig config = EngineConfig.reconstruct(engineConfigJson("row-based").replace("\"x\"", "\"x" + i + "\""))
+                    .getFacetConfigs().get(0);
+            CachedFacetSelection.put(project, config, false, entryID, RoaringBitmap.bitmapOf(i));
+        }
+        // the least recently used selections are evicted
+        Assert.assertNull(CachedFacetSelection.get(project, first, false, entryID));
+        Assert.assertEquals(project.columnModel.getColumnByName("a").getPrecomputeCount(), 1);
+
+        // selections computed at a previous history entry are dropped
+        CachedFacetSelection.put(project, first, false, entryID + 1, RoaringBitmap.bitmapOf(1));
+        Assert.assertEquals(CachedFacetSelection.get(project, first, false, entryID + 1).toArray(), new int[] { 1 });
+        FacetConfig other = EngineConfig.reconstruct(engineConfigJson("row-based").replace("\"x\"", "\"x99\""))
+                .getFacetConfigs().get(0);
+        Assert.assertNull(CachedFacetSelection.get(project, other, false, entryID));
+    }
+
+    @Test
+    public void testFacetResultsAreUpdatedFromChangedRows() {
+        Project project = createCSVProject("a,b,c,n\n"
+                + "x,1,foo,3\n"
+                + "y,2,bar,5\n"
+                + "x,2,boo,7\n"
+                + "z,1,far,\n"
+                + "x,1,zoo,12\n");
+        String config = "{\"mode\":\"row-based\",\"facets\":["
+                + engineConfigJson("row-based").replaceFirst("^.*\"facets\":\\[", "").replaceFirst("\\]}$", "") + ","
+                + "{\"type\":\"list\",\"name\":\"starred\",\"columnName\":\"\",\"expression\":\"row.starred\","
+                + "\"omitBlank\":false,\"omitError\":false,\"selection\":[],\"selectBlank\":false,\"selectError\":false,"
+                + "\"invert\":false},"
+                + "{\"type\":\"range\",\"name\":\"n\",\"columnName\":\"n\",\"expression\":\"value.toNumber()\","
+                + "\"selectNumeric\":true,\"selectNonNumeric\":true,\"selectBlank\":true,\"selectError\":true}"
+                + "]}";
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+        long firstEntryID = project.history.getCurrentEntryID();
+
+        CellChange edit = new CellChange(2, 0, project.rows.get(2).getCell(0), new Cell("y", null));
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "edit", null, edit));
+        Assert.assertNotNull(project.history.getLastRowDelta());
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+
+        RowStarChange star = new RowStarChange(4, true);
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "star", null, star));
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+
+        CellChange number = new CellChange(1, 3, project.rows.get(1).getCell(3), new Cell(4, null));
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "number", null, number));
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+
+        project.history.undoRedo(project.history.getPrecedingEntryID(project.history.getCurrentEntryID()));
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+
+        // a row modified outside of the history is only noticed by a full computation
+        project.rows.get(4).setCell(0, new Cell("w", null));
+        CellChange other = new CellChange(0, 2, project.rows.get(0).getCell(2), new Cell("fox", null));
+        project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "other", null, other));
+        String incremental = computeFacets(project, config);
+        Assert.assertNotEquals(incremental, sortChoices(computeSeparately(project, config)));
+        project.rows.get(4).setCell(0, new Cell("x", null));
+        Assert.assertEquals(incremental, sortChoices(computeSeparately(project, config)));
+
+        project.history.undoRedo(firstEntryID);
+        Assert.assertEquals(computeFacets(project, config), sortChoices(computeSeparately(project, config)));
+    }
 }
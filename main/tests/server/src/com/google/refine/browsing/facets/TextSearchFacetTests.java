@@ -192,6 +192,17 @@ public class TextSearchFacetTests extends RefineTest {
         Assert.assertEquals(rowfilter.filterRow(project, 3, project.rows.get(3)), true);
     }
 
+    @Test
+    public void testRegexLiteralPrefix() {
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("abc"), "abc");
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("^abc\\d+"), "abc");
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("abcd?e"), "abc");
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("abcd{2}"), "abc");
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("abc+d"), "abc");
+        Assert.assertEquals(TextSearchFacet.getLiteralPrefix("[ab]c"), "");
+        Assert.assertNull(TextSearchFacet.getLiteralPrefix("abc|def"));
+    }
+
     @Test
     public void serializeTextSearchFacetConfig() throws JsonParseException, JsonMappingException, IOException {
         TextSearchFacetConfig config = ParsingUtilities.mapper.readValue(sensitiveConfigJson, TextSearchFacetConfig.class);
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.browsing.Engine;
+import com.google.refine.browsing.filters.ExpressionEqualRowFilter;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.MetaParser;
+import com.google.refine.model.Project;
+
+public class ParallelScanTests extends RefineTest {
+
+    private Project project;
+    private int parallelism;
+    private int minPartitionSize;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        parallelism = ParallelScan.s_parallelism;
+        minPartitionSize = ParallelScan.s_minPartitionSize;
+
+        StringBuilder csv = new StringBuilder("key,number\n");
+        for (int i = 0; i < 1000; i++) {
+            csv.append(i % 7 == 0 ? "" : "k" + (i % 13)).append(',').append(i % 5 == 0 ? "x" : i * 3).append('\n');
+        }
+        project = createCSVProject(csv.toString());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ParallelScan.configure(parallelism, minPartitionSize);
+    }
+
+    @Test
+    public void testMapPreservesRangeOrder() {
+        ParallelScan.configure(4, 10);
+
+        List<int[]> ranges = ParallelScan.map(95, (from, to) -> new int[] { from, to });
+
+        Assert.assertEquals(ranges.size(), 4);
+        int expectedFrom = 0;
+        for (int[] range : ranges) {
+            Assert.assertEquals(range[0], expectedFrom);
+            expectedFrom = range[1];
+        }
+        Assert.assertEquals(expectedFrom, 95);
+    }
+
+    @Test
+    public void testNominalGroupingMatchesSequentialScan() throws Exception {
+        ExpressionNominalValueGrouper sequential = group();
+        ParallelScan.configure(4, 10);
+        ExpressionNominalValueGrouper parallel = group();
+
+        Assert.assertEquals(parallel.choices.keySet(), sequential.choices.keySet());
+        for (Object key : sequential.choices.keySet()) {
+            Assert.assertEquals(parallel.choices.get(key).count, sequential.choices.get(key).count);
+        }
+        Assert.assertEquals(parallel.blankCount, sequential.blankCount);
+        Assert.assertEquals(parallel.errorCount, sequential.errorCount);
+    }
+
+    @Test
+    public void testNumericBinningMatchesSequentialScan() throws Exception {
+        RowEvaluable evaluable = new ExpressionBasedRowEvaluable("number", 1, MetaParser.parse("value"));
+
+        NumericBinIndex sequential = new NumericBinRowIndex(project, evaluable);
+        ParallelScan.configure(4, 10);
+        NumericBinIndex parallel = new NumericBinRowIndex(project, evaluable);
+
+        Assert.assertEquals(parallel.getMin(), sequential.getMin());
+        Assert.assertEquals(parallel.getMax(), sequential.getMax());
+        Assert.assertEquals(parallel.getBins(), sequential.getBins());
+        Assert.assertEquals(parallel.getNumericRowCount(), sequential.getNumericRowCount());
+        Assert.assertEquals(parallel.getNonNumericRowCount(), sequential.getNonNumericRowCount());
+
+        ExpressionNumericValueBinner binner = new ExpressionNumericValueBinner(evaluable, parallel);
+        new Engine(project).getAllRows().accept(project, binner);
+        Assert.assertEquals(Arrays.stream(binner.bins).sum(), sequential.getNumericRowCount());
+        Assert.assertEquals(binner.nonNumericCount, sequential.getNonNumericRowCount());
+    }
+
+    @Test
+    public void testExpressionsWhichAreNotThreadSafeAreEvaluatedSerially() throws Exception {
+        ParallelScan.configure(4, 10);
+        Evaluable value = MetaParser.parse("value");
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Evaluable evaluable = new Evaluable() {
+
+            @Override
+            public Object evaluate(Properties bindings) {
+                threads.add(Thread.currentThread());
+                return value.evaluate(bindings);
+            }
+        };
+        Assert.assertTrue(value.isThreadSafe());
+        Assert.assertFalse(evaluable.isThreadSafe());
+
+        ExpressionNominalValueGrouper grouper = new ExpressionNominalValueGrouper(evaluable, "key", 0);
+        Assert.assertNull(grouper.fork());
+        new Engine(project).getAllRows().accept(project, grouper);
+        Assert.assertEquals(grouper.choices.keySet(), group().choices.keySet());
+
+        new NumericBinRowIndex(project, new ExpressionBasedRowEvaluable("number", 1, evaluable));
+
+        ConjunctiveFilteredRows filteredRows = new ConjunctiveFilteredRows();
+        filteredRows.add(new ExpressionEqualRowFilter(evaluable, "key", 0, new Object[] { "k1" }, false, false, false));
+        filteredRows.accept(project, group().fork());
+
+        Assert.assertEquals(threads, Collections.singleton(Thread.currentThread()));
+    }
+
+    @Test
+    public void testPartitionsIterateOverTheirRange() throws Exception {
+        RowEvaluable evaluable = new ExpressionBasedRowEvaluable("number", 1, MetaParser.parse("value.toNumber()"));
+
+        NumericBinIndex.Partition rows = new NumericBinIndex.Partition(10, 20, false);
+        rows.iterate(project, evaluable, rows.values);
+        Assert.assertEquals(rows.values.size(), 8);
+        Assert.assertEquals(rows.getNumericRowCount(), 8);
+        Assert.assertEquals(rows.getErrorRowCount(), 2);
+        Assert.assertEquals(rows.values.get(0), 33.0);
+
+        TimeBinIndex index = new TimeBinRecordIndex(project, evaluable);
+        TimeBinIndex.Partition records = new TimeBinIndex.Partition(0, project.recordModel.getRecordCount(), true);
+        records.iterate(project, evaluable, records.values);
+        Assert.assertEquals(records.getNonTimeRowCount(), index.getNonTimeRowCount());
+        Assert.assertEquals(records.getErrorRowCount(), index.getErrorRowCount());
+        Assert.assertEquals(records.getBlankRowCount(), index.getBlankRowCount());
+    }
+
+    private ExpressionNominalValueGrouper group() throws Exception {
+        ExpressionNominalValueGrouper grouper = new ExpressionNominalValueGrouper(MetaParser.parse("value"), "key", 0);
+        new Engine(project).getAllRows().accept(project, grouper);
+        return grouper;
+    }
+}
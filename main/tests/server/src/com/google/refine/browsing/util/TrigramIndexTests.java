@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.browsing.util;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.browsing.RowFilter;
+import com.google.refine.browsing.facets.TextSearchFacet.TextSearchFacetConfig;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Column;
+import com.google.refine.model.Project;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.util.ParsingUtilities;
+
+public class TrigramIndexTests extends RefineTest {
+
+    private Project project;
+    private int minRowCount;
+    private int parallelism;
+    private int minPartitionSize;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        minRowCount = TrigramIndex.s_minRowCount;
+        parallelism = ParallelScan.s_parallelism;
+        minPartitionSize = ParallelScan.s_minPartitionSize;
+        ParallelScan.configure(4, 10);
+
+        Random random = new Random(42);
+        String alphabet = "aAbBcCé 1";
+        StringBuilder csv = new StringBuilder("text\n");
+        for (int i = 0; i < 500; i++) {
+            int length = random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                csv.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            csv.append('\n');
+        }
+        project = createCSVProject(csv.toString());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        TrigramIndex.s_minRowCount = minRowCount;
+        ParallelScan.configure(parallelism, minPartitionSize);
+    }
+
+    @Test
+    public void testCandidateRows() {
+        project = createCSVProject("text\nABCD\nxbcd\nabc\n\nab\n");
+        TrigramIndex.s_minRowCount = 0;
+        Column column = project.columnModel.getColumnByName("text");
+        TrigramIndex index = TrigramIndex.get(project, column);
+
+        Assert.assertEquals(index.getCandidateRows("abc"), RoaringBitmap.bitmapOf(0, 2));
+        Assert.assertEquals(index.getCandidateRows("bcd"), RoaringBitmap.bitmapOf(0, 1));
+        Assert.assertEquals(index.getCandidateRows("abcd"), RoaringBitmap.bitmapOf(0));
+        Assert.assertTrue(index.getCandidateRows("abx").isEmpty());
+        Assert.assertNull(index.getCandidateRows("ab"));
+        Assert.assertSame(TrigramIndex.get(project, column), index);
+    }
+
+    @Test
+    public void testSmallProjectsAreNotIndexed() {
+        TrigramIndex.s_minRowCount = 1000;
+        Assert.assertNull(TrigramIndex.get(project, project.columnModel.getColumnByName("text")));
+    }
+
+    @Test
+    public void testIndexedSearchMatchesScan() throws Exception {
+        String[] queries = { "abc", "ABc", "bé1", "éa", "b c", "1aB" };
+        String[] regexes = { "abc", "^aBc", "ab?c", "ab*", "a|bcc", "b c+", "[ab]cb", "cé1" };
+        for (boolean caseSensitive : new boolean[] { false, true }) {
+            for (boolean invert : new boolean[] { false, true }) {
+                for (String query : queries) {
+                    assertIndexedSearchMatchesScan(query, "text", caseSensitive, invert);
+                }
+                for (String regex : regexes) {
+                    assertIndexedSearchMatchesScan(regex, "regex", caseSensitive, invert);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexIsClearedByCellChanges() throws Exception {
+        TrigramIndex.s_minRowCount = 0;
+        Column column = project.columnModel.getColumnByName("text");
+        TrigramIndex index = TrigramIndex.get(project, column);
+        Assert.assertTrue(index.getCandidateRows("xyz").isEmpty());
+
+        new CellChange(3, column.getCellIndex(), project.rows.get(3).getCell(column.getCellIndex()), new Cell("wxyz", null))
+                .apply(project);
+
+        Assert.assertNotSame(TrigramIndex.get(project, column), index);
+        Assert.assertEquals(getSelection("xyz", "text", false, false), RoaringBitmap.bitmapOf(3));
+    }
+
+    private void assertIndexedSearchMatchesScan(String query, String mode, boolean caseSensitive, boolean invert)
+            throws Exception {
+        TrigramIndex.s_minRowCount = Integer.MAX_VALUE;
+        RoaringBitmap scanned = getSelection(query, mode, caseSensitive, invert);
+        TrigramIndex.s_minRowCount = 0;
+        RoaringBitmap indexed = getSelection(query, mode, caseSensitive, invert);
+
+        Assert.assertEquals(indexed, scanned,
+                String.format("query %s, mode %s, case sensitive %s, invert %s", query, mode, caseSensitive, invert));
+    }
+
+    private RoaringBitmap getSelection(String query, String mode, boolean caseSensitive, boolean invert) throws Exception {
+        String json = "{\"type\":\"text\",\"name\":\"text\",\"columnName\":\"text\","
+                + "\"mode\":\"" + mode + "\","
+                + "\"caseSensitive\":" + caseSensitive + ","
+                + "\"invert\":" + invert + ","
+                + "\"query\":" + ParsingUtilities.mapper.writeValueAsString(query) + "}";
+        TextSearchFacetConfig config = ParsingUtilities.mapper.readValue(json, TextSearchFacetConfig.class);
+        RowFilter filter = config.apply(project).getRowFilter(project);
+        return FacetFilterMask.computeForRows(project, Collections.singletonList(filter)).getSelection(0);
+    }
+}
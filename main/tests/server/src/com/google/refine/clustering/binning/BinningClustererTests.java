@@ -28,6 +28,8 @@
 package com.google.refine.clustering.binning;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 import java.io.IOException;
 
@@ -97,4 +99,21 @@ public class BinningClustererTests extends RefineTest {
         clusterer.computeClusters(new Engine(project));
         assertEquals(clusterer.getJsonRepresentation().size(), 1);
     }
+
+    @Test
+    public void testOnlyThreadSafeKeyersAreForked() throws IOException {
+        Project project = createCSVProject("column\na\n");
+        BinningClustererConfig config = ParsingUtilities.mapper.readValue(configJson, BinningClustererConfig.class);
+        BinningClusterer clusterer = config.apply(project);
+        Keyer statefulKeyer = new Keyer() {
+
+            @Override
+            public String key(String string, Object... params) {
+                return string;
+            }
+        };
+
+        assertNotNull(clusterer.new BinningRowVisitor(new FingerprintKeyer(), null).fork());
+        assertNull(clusterer.new BinningRowVisitor(statefulKeyer, null).fork());
+    }
 }
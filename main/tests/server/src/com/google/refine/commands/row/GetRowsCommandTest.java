@@ -33,17 +33,24 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.refine.RefineTest;
 import com.google.refine.commands.Command;
 import com.google.refine.model.Project;
+import com.google.refine.util.ParsingUtilities;
 import com.google.refine.util.TestUtils;
 
 public class GetRowsCommandTest extends RefineTest {
@@ -139,4 +146,66 @@ public class GetRowsCommandTest extends RefineTest {
         command.doPost(request, response);
         TestUtils.assertEqualsAsJson(writer.toString(), recordJson);
     }
+
+    @Test
+    public void testSortedPages() throws Exception {
+        StringBuilder csv = new StringBuilder("key,n,x\n");
+        for (int i = 0; i < 30; i++) {
+            csv.append(i % 3 == 0 ? "k" + i : "").append(',').append(i % 5 == 0 ? "" : (i * 7) % 10).append(",x\n");
+        }
+        project = createCSVProject(csv.toString());
+        when(request.getParameter("project")).thenReturn(String.valueOf(project.id));
+        String sorting = "{\"criteria\":[{\"valueType\":\"number\",\"column\":\"n\",\"reverse\":true,"
+                + "\"blankPosition\":2,\"errorPosition\":1}]}";
+
+        // blanks last, then by decreasing number, ties in row order
+        List<Integer> expected = new ArrayList<>();
+        for (int n = 9; n >= -1; n--) {
+            for (int i = 0; i < 30; i++) {
+                if ((i % 5 == 0 ? -1 : (i * 7) % 10) == n) {
+                    expected.add(i);
+                }
+            }
+        }
+
+        String engine = "{\"mode\":\"row-based\",\"facets\":[]}";
+        Assert.assertEquals(getSortedIndices(engine, sorting, 0, 12, 30), expected.subList(0, 12));
+        Assert.assertEquals(getSortedIndices(engine, sorting, 12, 12, 30), expected.subList(12, 24));
+        Assert.assertEquals(getSortedIndices(engine, sorting, 24, 12, 30), expected.subList(24, 30));
+        Assert.assertEquals(getSortedIndices(engine, sorting, 0, 12, 30), expected.subList(0, 12));
+
+        // records start every three rows: the first page, found without sorting all records, must agree with the
+        // full sort order cached for the next page
+        engine = "{\"mode\":\"record-based\",\"facets\":[]}";
+        List<Integer> firstPage = getSortedIndices(engine, sorting, 0, 4, 10);
+        List<Integer> secondPage = getSortedIndices(engine, sorting, 4, 4, 10);
+        List<Integer> all = getSortedIndices(engine, sorting, 0, 30, 10);
+        Assert.assertEquals(all.subList(0, 4), firstPage);
+        Assert.assertEquals(all.subList(4, 8), secondPage);
+        Assert.assertEquals(all.stream().sorted().collect(Collectors.toList()),
+                IntStream.range(0, 10).map(i -> i * 3).boxed().collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the indices of the returned rows, or of the first rows of the returned records
+     */
+    private List<Integer> getSortedIndices(String engine, String sorting, int start, int limit, int filtered) throws Exception {
+        writer = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(writer));
+        when(request.getParameter("engine")).thenReturn(engine);
+        when(request.getParameter("sorting")).thenReturn(sorting);
+        when(request.getParameter("start")).thenReturn(String.valueOf(start));
+        when(request.getParameter("limit")).thenReturn(String.valueOf(limit));
+        command.doPost(request, response);
+
+        JsonNode result = ParsingUtilities.mapper.readTree(writer.toString());
+        Assert.assertEquals(result.get("filtered").asInt(), filtered);
+        List<Integer> indices = new ArrayList<>();
+        for (JsonNode row : result.get("rows")) {
+            if (engine.contains("row-based") || row.has("j")) {
+                indices.add(row.get("i").asInt());
+            }
+        }
+        return indices;
+    }
 }
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.expr;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+public class BindingsTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testBindRow() throws Exception {
+        Project project = createCSVProject("a,b\n c ,d\n");
+        Properties bindings = ExpressionUtils.createBindings(project);
+        Assert.assertTrue(bindings instanceof Bindings);
+
+        Row row = project.rows.get(0);
+        ExpressionUtils.bind(bindings, row, 0, "a", row.getCell(0));
+
+        Assert.assertSame(bindings.get("project"), project);
+        Assert.assertEquals(bindings.get("rowIndex"), 0);
+        Assert.assertEquals(bindings.get("value"), " c ");
+        Assert.assertEquals(bindings.get("columnName"), "a");
+        Assert.assertEquals(((WrappedCell) bindings.get("cell")).cell, row.getCell(0));
+        Assert.assertSame(((WrappedRow) bindings.get("row")).row, row);
+        Assert.assertSame(bindings.get("cell"), bindings.get("cell"));
+        Assert.assertEquals(MetaParser.parse("value.trim() + cells['b'].value").evaluate(bindings), "cd");
+
+        ExpressionUtils.bind(bindings, row, 0, "a", null);
+        Assert.assertNull(bindings.get("value"));
+        Assert.assertFalse(bindings.containsKey("cell"));
+        Assert.assertEquals(bindings.get("columnName"), "a");
+    }
+
+    @Test
+    public void testSlotsBehaveAsProperties() throws Exception {
+        Properties bindings = ExpressionUtils.createBindings(createCSVProject("a\n1\n"));
+
+        Assert.assertNull(bindings.put("value", "x"));
+        Assert.assertEquals(bindings.getProperty("value"), "x");
+        Assert.assertEquals(MetaParser.parse("value").evaluate(bindings), "x");
+        Assert.assertEquals(bindings.remove("value"), "x");
+        Assert.assertFalse(bindings.containsKey("value"));
+        Assert.assertThrows(NullPointerException.class, () -> bindings.put("value", null));
+
+        bindings.put("v", 3);
+        Assert.assertEquals(MetaParser.parse("v + 1").evaluate(bindings), 4L);
+        Assert.assertEquals(MetaParser.parse("forEach([1, 2], value, value * 2)[1]").evaluate(bindings), 4L);
+        Assert.assertFalse(bindings.containsKey("value"));
+    }
+
+    @Test
+    public void testBindersStillApply() throws Exception {
+        Binder binder = new Binder() {
+
+            @Override
+            public void initializeBindings(Properties bindings, Project project) {
+                bindings.put("answer", 42);
+            }
+
+            @Override
+            public void bind(Properties bindings, Row row, int rowIndex, String columnName, Cell cell) {
+                bindings.put("value", "bound by binder");
+            }
+        };
+        ExpressionUtils.registerBinder(binder);
+        try {
+            Project project = createCSVProject("a\n1\n");
+            Properties bindings = ExpressionUtils.createBindings(project);
+            ExpressionUtils.bind(bindings, project.rows.get(0), 0, "a", project.rows.get(0).getCell(0));
+
+            Assert.assertEquals(MetaParser.parse("answer").evaluate(bindings), 42);
+            Assert.assertEquals(MetaParser.parse("value").evaluate(bindings), "bound by binder");
+        } finally {
+            ExpressionUtils.s_binders.remove(binder);
+        }
+    }
+}
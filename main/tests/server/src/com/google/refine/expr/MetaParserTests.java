@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.expr;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.grel.compiler.GrelCompiler;
+
+public class MetaParserTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @Test
+    public void testParsedExpressionsAreCached() throws ParsingException {
+        long hits = MetaParser.getCacheStats().hitCount();
+        long misses = MetaParser.getCacheStats().missCount();
+
+        Evaluable first = MetaParser.parse("grel:value + 'cached'");
+        Evaluable second = MetaParser.parse("grel:value + 'cached'");
+
+        Assert.assertSame(second, first);
+        Assert.assertEquals(MetaParser.getCacheStats().hitCount(), hits + 1);
+        Assert.assertEquals(MetaParser.getCacheStats().missCount(), misses + 1);
+    }
+
+    @Test
+    public void testLanguagePrefixIsNormalized() throws ParsingException {
+        Evaluable eval = MetaParser.parse("value + 'normalized'");
+
+        Assert.assertSame(MetaParser.parse("grel:value + 'normalized'"), eval);
+        Assert.assertSame(MetaParser.parse("GEL:value + 'normalized'"), eval);
+        Assert.assertNotSame(MetaParser.parse("clojure:(str value \"normalized\")"), eval);
+    }
+
+    @Test
+    public void testUnknownPrefixIsPartOfSource() throws ParsingException {
+        // not a language prefix, so the whole string is GREL
+        Evaluable eval = MetaParser.parse("value.split(':')");
+
+        Assert.assertSame(MetaParser.parse("value.split(':')"), eval);
+        Assert.assertNotSame(MetaParser.parse("grel:split(':')"), eval);
+    }
+
+    @Test
+    public void testParsingErrorsAreNotCached() {
+        long misses = MetaParser.getCacheStats().missCount();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                MetaParser.parse("grel:value +");
+                Assert.fail("expected a parsing exception");
+            } catch (ParsingException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(MetaParser.getCacheStats().missCount(), misses + 2);
+    }
+
+    @Test
+    public void testCompilerToggleClearsCache() throws ParsingException {
+        boolean enabled = GrelCompiler.isEnabled();
+        try {
+            Evaluable eval = MetaParser.parse("value.length() + 1");
+            GrelCompiler.setEnabled(!enabled);
+            Evaluable toggled = MetaParser.parse("value.length() + 1");
+
+            Assert.assertNotSame(toggled, eval);
+            Assert.assertEquals(toggled instanceof GrelCompiler.CompiledEvaluable, !enabled);
+        } finally {
+            GrelCompiler.setEnabled(enabled);
+        }
+    }
+}
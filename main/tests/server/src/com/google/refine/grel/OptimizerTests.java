@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.expr.EvalError;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.grel.ast.ConstantExpr;
+import com.google.refine.grel.ast.ControlCallExpr;
+import com.google.refine.grel.ast.FunctionCallExpr;
+import com.google.refine.grel.ast.LiteralExpr;
+import com.google.refine.grel.ast.OperatorCallExpr;
+import com.google.refine.grel.ast.SubexpressionScopeExpr;
+import com.google.refine.grel.ast.VariableExpr;
+import com.google.refine.model.Project;
+
+public class OptimizerTests extends RefineTest {
+
+    static int countedCalls = 0;
+
+    static final Function counted = new Function() {
+
+        @Override
+        public Object call(Properties bindings, Object[] args) {
+            countedCalls++;
+            return args[0];
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Returns its argument, counting calls";
+        }
+
+        @Override
+        public String getReturns() {
+            return "anything";
+        }
+    };
+
+    Properties bindings;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        bindings = ExpressionUtils.createBindings(new Project());
+        bindings.put("value", "abcd");
+        countedCalls = 0;
+    }
+
+    private Evaluable optimize(String source) throws Exception {
+        return Optimizer.optimize(new Parser(source).getExpression());
+    }
+
+    @Test
+    public void testFoldConstantCalls() throws Exception {
+        Evaluable eval = optimize("\"a,b,c\".split(\",\")");
+
+        Assert.assertTrue(eval instanceof ConstantExpr);
+        Assert.assertEquals((Object[]) eval.evaluate(bindings), new String[] { "a", "b", "c" });
+        Assert.assertEquals(eval.toString(), new Parser("\"a,b,c\".split(\",\")").getExpression().toString());
+
+        Assert.assertTrue(optimize("1 + 2 * 3") instanceof ConstantExpr);
+        Assert.assertEquals(optimize("1 + 2 * 3").evaluate(bindings), 7L);
+    }
+
+    @Test
+    public void testDoNotFoldImpureOrMutable() throws Exception {
+        Assert.assertTrue(optimize("now()") instanceof FunctionCallExpr);
+        Assert.assertTrue(optimize("parseJson('{\"a\":1}')") instanceof FunctionCallExpr);
+        Assert.assertTrue(optimize("value.trim()") instanceof FunctionCallExpr);
+    }
+
+    @Test
+    public void testCompileMatchPattern() throws Exception {
+        FunctionCallExpr eval = (FunctionCallExpr) optimize("value.match(\"(a)b.*\")");
+
+        Assert.assertTrue(((ConstantExpr) eval.getArgs()[1]).getValue() instanceof Pattern);
+        Assert.assertEquals((Object[]) eval.evaluate(bindings), new String[] { "a" });
+        Assert.assertTrue(optimize("value.match(\"(a\")").evaluate(bindings) instanceof EvalError);
+    }
+
+    private Evaluable countedValue() {
+        return new FunctionCallExpr(new Evaluable[] { new VariableExpr("value") }, counted);
+    }
+
+    @Test
+    public void testShareRepeatedSubexpressions() throws Exception {
+        Function length = ControlFunctionRegistry.getFunction("length");
+        Evaluable eval = Optimizer.optimize(new OperatorCallExpr(new Evaluable[] {
+                new FunctionCallExpr(new Evaluable[] { countedValue() }, length),
+                new FunctionCallExpr(new Evaluable[] { countedValue() }, length) }, "+"));
+
+        Assert.assertTrue(eval instanceof SubexpressionScopeExpr);
+        Assert.assertEquals(eval.evaluate(bindings), 8L);
+        Assert.assertEquals(countedCalls, 1);
+
+        bindings.put("value", "ab");
+        Assert.assertEquals(eval.evaluate(bindings), 4L);
+        Assert.assertEquals(countedCalls, 2);
+    }
+
+    @Test
+    public void testDoNotShareControlVariables() throws Exception {
+        Evaluable with = new ControlCallExpr(new Evaluable[] {
+                new LiteralExpr("x"), new VariableExpr("value"), countedValue() }, ControlFunctionRegistry.getControl("with"));
+        Evaluable eval = Optimizer.optimize(new OperatorCallExpr(new Evaluable[] { with, countedValue() }, "+"));
+
+        Assert.assertFalse(eval instanceof SubexpressionScopeExpr);
+        Assert.assertEquals(eval.evaluate(bindings), "xabcd");
+        Assert.assertEquals(countedCalls, 2);
+    }
+}
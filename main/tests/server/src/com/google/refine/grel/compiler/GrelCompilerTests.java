@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.grel.compiler;
+
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.expr.Evaluable;
+import com.google.refine.expr.ExpressionUtils;
+import com.google.refine.grel.Optimizer;
+import com.google.refine.grel.Parser;
+import com.google.refine.grel.ast.LiteralExpr;
+import com.google.refine.grel.ast.OperatorCallExpr;
+import com.google.refine.grel.ast.SubexpressionScopeExpr;
+import com.google.refine.model.Project;
+
+public class GrelCompilerTests extends RefineTest {
+
+    Project project;
+    Properties bindings;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        project = createCSVProject("name,count\n  Alice  ,3\nBob,x\n");
+        bindings = ExpressionUtils.createBindings(project);
+    }
+
+    private void assertSameResults(String source) throws Exception {
+        Evaluable interpreted = new Parser(source).getExpression();
+        Evaluable compiled = GrelCompiler.compile(Optimizer.optimize(new Parser(source).getExpression()));
+
+        for (int i = 0; i < project.rows.size(); i++) {
+            ExpressionUtils.bind(bindings, project.rows.get(i), i, "name", project.rows.get(i).getCell(0));
+            Object expected = interpreted.evaluate(bindings);
+            Object actual = compiled.evaluate(bindings);
+            if (expected instanceof Object[]) {
+                Assert.assertEquals((Object[]) actual, (Object[]) expected, source);
+            } else {
+                Assert.assertEquals(String.valueOf(actual), String.valueOf(expected), source);
+            }
+        }
+    }
+
+    @Test
+    public void testCompileExpressions() throws Exception {
+        Evaluable compiled = GrelCompiler.compile(new Parser("value.trim().toUppercase() + rowIndex").getExpression());
+        Assert.assertTrue(compiled instanceof GrelCompiler.CompiledEvaluable);
+        Assert.assertEquals(compiled.toString(), new Parser("value.trim().toUppercase() + rowIndex").getExpression().toString());
+
+        String[] expressions = {
+                "value.trim().toUppercase() + rowIndex",
+                "value.trim().length() * 2 - 1",
+                "cells['count'].value.toNumber() / 2",
+                "if(value.trim().startsWith('A'), 'a', value.replace('o', '0'))",
+                "value.trim().split('i')",
+                "value.datePart('year')",
+                "if(value.datePart('year'), 1, 2)",
+                "forEach(value.trim().split(''), c, c.toLowercase()).join('-')",
+                "value.trim().length() + value.trim().length()",
+                "row.index == rowIndex",
+                "and(value.contains('li'), true)",
+                "cells.count.value > 2",
+                "coalesce(cells['missing'].value, 'none')",
+        };
+        for (String expression : expressions) {
+            assertSameResults(expression);
+        }
+    }
+
+    @Test
+    public void testSharedSubexpressions() throws Exception {
+        Evaluable compiled = GrelCompiler.compile(Optimizer.optimize(new Parser("value.trim() + value.trim()").getExpression()));
+
+        Assert.assertTrue(compiled instanceof SubexpressionScopeExpr);
+        ExpressionUtils.bind(bindings, project.rows.get(0), 0, "name", project.rows.get(0).getCell(0));
+        Assert.assertEquals(compiled.evaluate(bindings), "AliceAlice");
+    }
+
+    @Test
+    public void testOperatorsMatchInterpreter() throws Exception {
+        Object[] values = { null, 0L, 3L, -2L, 4, 2.5, 0.0, "a", "3", true };
+        String[] operators = { "+", "-", "*", "/", "%", ">", ">=", "<", "<=", "==", "!=" };
+        for (String operator : operators) {
+            for (Object a : values) {
+                for (Object b : values) {
+                    Evaluable interpreted = new OperatorCallExpr(new Evaluable[] { new LiteralExpr(a), new LiteralExpr(b) }, operator);
+                    Evaluable compiled = GrelCompiler.compile(interpreted);
+                    Assert.assertTrue(compiled instanceof GrelCompiler.CompiledEvaluable);
+                    Assert.assertEquals(evaluate(compiled), evaluate(interpreted), a + " " + operator + " " + b);
+                }
+            }
+        }
+    }
+
+    private Object evaluate(Evaluable evaluable) {
+        try {
+            return evaluable.evaluate(bindings);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+}
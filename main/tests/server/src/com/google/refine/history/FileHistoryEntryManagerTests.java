@@ -7,12 +7,17 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Properties;
 
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.refine.RefineTest;
 import com.google.refine.io.FileHistoryEntryManager;
+import com.google.refine.io.FileProjectManager;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
+import com.google.refine.model.changes.CellChange;
 import com.google.refine.operations.OperationRegistry;
 import com.google.refine.operations.column.ColumnAdditionOperation;
 import com.google.refine.util.TestUtils;
@@ -21,11 +26,18 @@ public class FileHistoryEntryManagerTests extends RefineTest {
 
     Project project;
     FileHistoryEntryManager sut = new FileHistoryEntryManager();
+    int maxCachedChanges;
 
     @BeforeMethod
     public void setUp() {
         project = mock(Project.class);
         OperationRegistry.registerOperation(getCoreModule(), "column-addition", ColumnAdditionOperation.class);
+        maxCachedChanges = HistoryEntry.s_maxCachedChanges;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        HistoryEntry.s_maxCachedChanges = maxCachedChanges;
     }
 
     @Test
@@ -37,4 +49,34 @@ public class FileHistoryEntryManagerTests extends RefineTest {
         sut.save(historyEntry, writer, options);
         TestUtils.equalAsJson(HistoryEntryTests.fullJson, writer.toString());
     }
+
+    @Test
+    public void testSavedChangesAreReleased() throws IOException {
+        FileProjectManager.initialize(TestUtils.createTempDirectory("openrefine-history-test"));
+        HistoryEntry.s_maxCachedChanges = 1;
+        Project project = createCSVProject("a\nfoo\nbar\n");
+        HistoryEntry first = new HistoryEntry(HistoryEntry.allocateID(), project, "first", null,
+                new CellChange(0, 0, project.rows.get(0).getCell(0), new Cell("first", null)));
+        HistoryEntry second = new HistoryEntry(HistoryEntry.allocateID(), project, "second", null,
+                new CellChange(1, 0, project.rows.get(1).getCell(0), new Cell("second", null)));
+        project.history.addEntry(first);
+        project.history.addEntry(second);
+
+        synchronized (HistoryEntry.s_cachedChanges) {
+            Assert.assertFalse(HistoryEntry.s_cachedChanges.containsKey(first));
+            Assert.assertTrue(HistoryEntry.s_cachedChanges.containsKey(second));
+        }
+        // as if the change had been garbage collected
+        first.setChange(null);
+
+        project.history.undoRedo(0);
+        Assert.assertEquals(project.rows.get(0).getCellValue(0), "foo");
+        Assert.assertEquals(project.rows.get(1).getCellValue(0), "bar");
+
+        first.setChange(null);
+        second.setChange(null);
+        project.history.undoRedo(second.id);
+        Assert.assertEquals(project.rows.get(0).getCellValue(0), "first");
+        Assert.assertEquals(project.rows.get(1).getCellValue(0), "second");
+    }
 }
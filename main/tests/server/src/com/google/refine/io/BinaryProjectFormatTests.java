@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.OffsetDateTime;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.expr.EvalError;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
+import com.google.refine.model.ReconCandidate;
+import com.google.refine.model.Row;
+import com.google.refine.util.TestUtils;
+
+public class BinaryProjectFormatTests extends RefineTest {
+
+    File dir;
+    int chunkSize;
+    int maxGarbagePercent;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        dir = TestUtils.createTempDirectory("openrefine-binary-project-test");
+        chunkSize = BinaryProjectFormat.s_chunkSize;
+        BinaryProjectFormat.s_chunkSize = 2;
+        maxGarbagePercent = BinaryProjectFormat.s_maxGarbagePercent;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        BinaryProjectFormat.s_chunkSize = chunkSize;
+        BinaryProjectFormat.s_maxGarbagePercent = maxGarbagePercent;
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Project project = createCSVProject("a,b\nfoo,1\nbar,2\nfoo,3\n,4\nbaz,5\n");
+        Recon recon = new Recon(0, "http://www.wikidata.org/entity/", "http://www.wikidata.org/prop/direct/");
+        OffsetDateTime date = OffsetDateTime.parse("2018-01-02T03:04:05Z");
+        project.rows.get(0).setCell(0, new Cell("foo", recon));
+        project.rows.get(0).setCell(1, new Cell(1L, null));
+        project.rows.get(1).setCell(1, new Cell(2.5, null));
+        project.rows.get(2).setCell(1, new Cell(date, null));
+        project.rows.get(3).setCell(1, new Cell(new EvalError("oops"), null));
+        project.rows.get(4).setCell(1, new Cell(true, recon));
+        project.rows.get(4).setStarred(true);
+        project.rows.get(1).setFlagged(true);
+
+        File file = new File(dir, "data.bin");
+        BinaryProjectFormat.save(project, file);
+        Project loaded = BinaryProjectFormat.load(file, project.id);
+
+        Assert.assertEquals(loaded.columnModel.getColumnNames(), project.columnModel.getColumnNames());
+        Assert.assertEquals(loaded.rows.size(), 5);
+        for (int i = 0; i < 5; i++) {
+            Row expected = project.rows.get(i);
+            Row row = loaded.rows.get(i);
+            Assert.assertEquals(row.cells.size(), expected.cells.size());
+            Assert.assertEquals(row.isFlagged(), expected.isFlagged());
+            Assert.assertEquals(row.isStarred(), expected.isStarred());
+            Assert.assertEquals(row.getCellValue(0), expected.getCellValue(0));
+        }
+        Assert.assertEquals(loaded.rows.get(0).getCell(0).recon.id, recon.id);
+        Assert.assertSame(loaded.rows.get(4).getCell(1).recon, loaded.rows.get(0).getCell(0).recon);
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(1), 2.5);
+        Assert.assertEquals(loaded.rows.get(2).getCellValue(1), date);
+        Assert.assertEquals(loaded.rows.get(3).getCellValue(1).toString(), "oops");
+        Assert.assertEquals(loaded.rows.get(4).getCellValue(1), true);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(1), 1L);
+        // strings are shared across chunks
+        Assert.assertSame(loaded.rows.get(2).getCellValue(0), loaded.rows.get(0).getCellValue(0));
+    }
+
+    @Test
+    public void testLoadPrefersBinaryFormat() throws Exception {
+        Project project = createCSVProject("a\nbinary\n");
+        BinaryProjectFormat.save(project, new File(dir, "data.bin"));
+        project.rows.get(0).setCell(0, new Cell("text", null));
+        ProjectUtilities.saveToFile(project, new File(dir, "data.zip"));
+
+        Assert.assertEquals(ProjectUtilities.load(dir, project.id).rows.get(0).getCellValue(0), "binary");
+    }
+
+    @Test
+    public void testCorruptedBinaryFileFallsBackToText() throws Exception {
+        Project project = createCSVProject("a\ntext\n");
+        ProjectUtilities.saveToFile(project, new File(dir, "data.old.zip"));
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "data.bin"))) {
+            out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+        }
+
+        Assert.assertEquals(ProjectUtilities.load(dir, project.id).rows.get(0).getCellValue(0), "text");
+    }
+
+    @Test
+    public void testAppendModifiedChunks() throws Exception {
+        Project project = createCSVProject("a\nr0\nr1\nr2\nr3\nr4\n");
+        File file = new File(dir, "data.bin");
+        BinaryProjectFormat.Layout first = BinaryProjectFormat.write(project, file);
+        BinaryProjectFormat.setLayout(project, first);
+
+        project.rows.get(3).setCell(0, new Cell("changed", null));
+        BinaryProjectFormat.Append append = BinaryProjectFormat.startAppend(project, file, RoaringBitmap.bitmapOf(3));
+        append.write();
+        append.commit();
+
+        Assert.assertTrue(file.length() > first.length);
+        Project loaded = BinaryProjectFormat.load(file, project.id);
+        Assert.assertEquals(loaded.rows.size(), 5);
+        Assert.assertEquals(loaded.rows.get(3).getCellValue(0), "changed");
+        Assert.assertEquals(loaded.rows.get(4).getCellValue(0), "r4");
+        BinaryProjectFormat.Layout second = BinaryProjectFormat.getLayout(loaded);
+        Assert.assertEquals(second.length, file.length());
+        // only the chunk holding the modified row was written again
+        Assert.assertEquals(second.chunks.get(0).offset, first.chunks.get(0).offset);
+        Assert.assertTrue(second.chunks.get(1).offset > first.length);
+        Assert.assertEquals(second.chunks.get(2).offset, first.chunks.get(2).offset);
+        Assert.assertEquals(second.pools.size(), 2);
+
+        // once too much of the file is unused, it is written again
+        BinaryProjectFormat.s_maxGarbagePercent = 0;
+        Assert.assertNull(BinaryProjectFormat.startAppend(loaded, file, RoaringBitmap.bitmapOf(0)));
+    }
+
+    @Test
+    public void testRepeatedReconciliationLeadsToRewrite() throws Exception {
+        Project project = createCSVProject("a\nr0\nr1\nr2\nr3\nr4\n");
+        File file = new File(dir, "data.bin");
+        BinaryProjectFormat.setLayout(project, BinaryProjectFormat.write(project, file));
+
+        boolean rewritten = false;
+        for (int i = 0; i < 20 && !rewritten; i++) {
+            // reconciling the first row again replaces its recon, which is much larger than the row itself
+            Recon recon = new Recon(i, "http://www.wikidata.org/entity/", "http://www.wikidata.org/prop/direct/");
+            for (int c = 0; c < 20; c++) {
+                recon.addCandidate(new ReconCandidate("Q" + c, "candidate " + c, new String[] { "Q5" }, c));
+            }
+            project.rows.get(0).setCell(0, new Cell("r0", recon));
+
+            BinaryProjectFormat.Append append = BinaryProjectFormat.startAppend(project, file, RoaringBitmap.bitmapOf(0));
+            if (append == null) {
+                rewritten = true;
+            } else {
+                append.write();
+                append.commit();
+                // the pools of earlier saves of the first chunk are no longer needed
+                Assert.assertEquals(BinaryProjectFormat.getLayout(project).pools.size(), 2);
+            }
+        }
+        Assert.assertTrue(rewritten);
+
+        Project loaded = BinaryProjectFormat.load(file, project.id);
+        Assert.assertEquals(loaded.rows.get(0).getCell(0).recon.candidates.size(), 20);
+        Assert.assertEquals(loaded.rows.get(4).getCellValue(0), "r4");
+    }
+
+    @Test
+    public void testInterruptedAppendIsSkipped() throws Exception {
+        Project project = createCSVProject("a\nr0\nr1\nr2\n");
+        File file = new File(dir, "data.bin");
+        BinaryProjectFormat.Layout first = BinaryProjectFormat.write(project, file);
+        BinaryProjectFormat.setLayout(project, first);
+
+        project.rows.get(0).setCell(0, new Cell("lost", null));
+        BinaryProjectFormat.Append append = BinaryProjectFormat.startAppend(project, file, RoaringBitmap.bitmapOf(0));
+        append.write();
+        // the trailer is never written
+        append.raf.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[] { 1, 2, 3 });
+        }
+
+        Project loaded = BinaryProjectFormat.load(file, project.id);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "r0");
+        Assert.assertEquals(BinaryProjectFormat.getLayout(loaded).length, first.length);
+
+        // the next save replaces the incomplete one
+        loaded.rows.get(2).setCell(0, new Cell("saved", null));
+        append = BinaryProjectFormat.startAppend(loaded, file, RoaringBitmap.bitmapOf(2));
+        append.write();
+        append.commit();
+        loaded = BinaryProjectFormat.load(file, project.id);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "r0");
+        Assert.assertEquals(loaded.rows.get(2).getCellValue(0), "saved");
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.io;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.ProjectManager;
+import com.google.refine.RefineTest;
+import com.google.refine.history.HistoryEntry;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.changes.CellChange;
+
+public class ProjectUtilitiesTests extends RefineTest {
+
+    FileProjectManager manager;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        super.init();
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUpManager() {
+        manager = new FileProjectManager(workspaceDir);
+        ProjectManager.singleton = manager;
+    }
+
+    /**
+     * A cell value which runs some code when it is written, the first time only.
+     */
+    static class SaveHook implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        transient Runnable hook;
+
+        SaveHook(Runnable hook) {
+            this.hook = hook;
+        }
+
+        @Override
+        public String toString() {
+            Runnable runnable = hook;
+            hook = null;
+            if (runnable != null) {
+                runnable.run();
+            }
+            return "hook";
+        }
+    }
+
+    @Test
+    public void testChangesAreNotBlockedBySave() throws Exception {
+        Project project = createCSVProject("a,b\nfoo,1\nbar,2\n");
+        Cell oldCell = project.rows.get(0).getCell(0);
+        CellChange change = new CellChange(0, 0, oldCell, new Cell("changed", null));
+        boolean[] applied = new boolean[1];
+        project.rows.get(1).setCell(1, new Cell(new SaveHook(() -> {
+            Thread thread = new Thread(() -> project.history.addEntry(
+                    new HistoryEntry(HistoryEntry.allocateID(), project, "edit", null, change)));
+            thread.start();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied[0] = !thread.isAlive();
+        }), null));
+
+        ProjectUtilities.save(project);
+
+        Assert.assertTrue(applied[0]);
+        // the snapshot written while the change was applied was discarded
+        Project loaded = ProjectUtilities.load(manager.getProjectDir(project.id), project.id);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "changed");
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(1), "hook");
+        Assert.assertFalse(new File(manager.getProjectDir(project.id), "data.temp.zip").exists());
+    }
+
+    @Test
+    public void testBinarySavesOnlyAppendModifiedRows() throws Exception {
+        System.setProperty("refine.storage.binary", "true");
+        try {
+            Project project = createCSVProject("a,b\nfoo,1\nbar,2\n");
+            ProjectUtilities.save(project);
+            File file = new File(manager.getProjectDir(project.id), "data.bin");
+            long length = file.length();
+
+            Cell oldCell = project.rows.get(1).getCell(0);
+            project.history.addEntry(new HistoryEntry(HistoryEntry.allocateID(), project, "edit", null,
+                    new CellChange(1, 0, oldCell, new Cell("changed", null))));
+            Assert.assertEquals(project.history.getUnsavedRows().toArray(), new int[] { 1 });
+            ProjectUtilities.save(project);
+
+            Assert.assertTrue(project.history.getUnsavedRows().isEmpty());
+            Assert.assertTrue(BinaryProjectFormat.getLayout(project).footerOffset >= length);
+            Project loaded = ProjectUtilities.load(manager.getProjectDir(project.id), project.id);
+            Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "foo");
+            Assert.assertEquals(loaded.rows.get(1).getCellValue(0), "changed");
+        } finally {
+            System.clearProperty("refine.storage.binary");
+        }
+    }
+}
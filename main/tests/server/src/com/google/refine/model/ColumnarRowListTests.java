@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.expr.EvalError;
+import com.google.refine.model.changes.RowStarChange;
+import com.google.refine.util.Pool;
+
+public class ColumnarRowListTests extends RefineTest {
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    private Row row(Serializable... values) {
+        Row row = new Row(values.length);
+        for (int i = 0; i < values.length; i++) {
+            row.setCell(i, values[i] == null ? null : new Cell(values[i], null));
+        }
+        return row;
+    }
+
+    @Test
+    public void testValuesRoundTrip() {
+        OffsetDateTime date = OffsetDateTime.parse("2018-01-02T03:04:05Z");
+        EvalError error = new EvalError("oops");
+        Recon recon = new Recon(1L, null, null);
+        Row original = row("a", 12L, 1.5, Double.NaN, -0.0, true, date, error, 7);
+        original.setCell(10, new Cell(null, recon));
+        original.flagged = true;
+
+        ColumnarRowList rows = new ColumnarRowList();
+        rows.add(original);
+        Row row = rows.get(0);
+
+        Assert.assertEquals(row.cells.size(), 11);
+        for (int i = 0; i < 9; i++) {
+            Assert.assertEquals(row.getCellValue(i), original.getCellValue(i));
+        }
+        Assert.assertEquals(row.getCellValue(3).getClass(), Double.class);
+        Assert.assertEquals(row.getCellValue(8).getClass(), Integer.class);
+        Assert.assertNull(row.getCell(9));
+        Assert.assertNull(row.getCellValue(10));
+        Assert.assertSame(row.getCell(10).recon, recon);
+        Assert.assertTrue(row.flagged);
+        Assert.assertFalse(row.starred);
+    }
+
+    @Test
+    public void testViewsWriteThrough() {
+        ColumnarRowList rows = new ColumnarRowList();
+        rows.add(row("a", "b"));
+        rows.add(row("c"));
+
+        rows.get(1).setCell(3, new Cell("d", null));
+        rows.get(0).setCell(0, null);
+        rows.get(0).setStarred(true);
+
+        Assert.assertEquals(rows.get(1).cells.size(), 4);
+        Assert.assertEquals(rows.get(1).getCellValue(3), "d");
+        Assert.assertNull(rows.get(1).getCell(2));
+        Assert.assertNull(rows.get(0).getCell(0));
+        Assert.assertEquals(rows.get(0).getCellValue(1), "b");
+        Assert.assertTrue(rows.get(0).isStarred());
+        Assert.assertFalse(rows.get(1).isStarred());
+    }
+
+    @Test
+    public void testRemovedRowsCanBeReinserted() {
+        ColumnarRowList rows = new ColumnarRowList();
+        rows.addAll(Arrays.asList(row("a"), row("b"), row("c")));
+
+        Row removed = rows.remove(1);
+        List<Row> old = new ArrayList<>(rows);
+        rows.clear();
+        rows.add(row("x"));
+
+        Assert.assertEquals(removed.getCellValue(0), "b");
+        rows.clear();
+        rows.addAll(old);
+        rows.add(1, removed);
+
+        Assert.assertEquals(rows.size(), 3);
+        Assert.assertEquals(rows.get(0).getCellValue(0), "a");
+        Assert.assertEquals(rows.get(1).getCellValue(0), "b");
+        Assert.assertEquals(rows.get(2).getCellValue(0), "c");
+    }
+
+    @Test
+    public void testDeadSlotsAreCompacted() {
+        int minDeadSlots = ColumnarRowList.s_minDeadSlots;
+        ColumnarRowList.s_minDeadSlots = 1;
+        try {
+            ColumnarRowList rows = new ColumnarRowList();
+            for (int i = 0; i < 10; i++) {
+                rows.add(row("r" + i));
+            }
+            Row kept = rows.get(9);
+            List<Row> removed = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                removed.add(rows.remove(0));
+            }
+
+            // the four remaining rows were moved to fresh storage
+            Assert.assertEquals(rows._slots._count, 4);
+            kept.setCell(0, new Cell("last", null));
+            kept.setStarred(true);
+            Assert.assertEquals(rows.get(3).getCellValue(0), "last");
+            Assert.assertTrue(rows.get(3).isStarred());
+
+            // removed rows keep their values and can be put back
+            Assert.assertEquals(removed.get(5).getCellValue(0), "r5");
+            rows.add(0, removed.get(5));
+            Assert.assertEquals(rows.size(), 5);
+            Assert.assertEquals(rows.get(0).getCellValue(0), "r5");
+            Assert.assertEquals(rows.get(1).getCellValue(0), "r6");
+        } finally {
+            ColumnarRowList.s_minDeadSlots = minDeadSlots;
+        }
+    }
+
+    @Test
+    public void testDictionaryOverflow() {
+        int maxDictionarySize = ColumnarRowList.s_maxDictionarySize;
+        ColumnarRowList.s_maxDictionarySize = 2;
+        try {
+            ColumnarRowList rows = new ColumnarRowList();
+            for (String s : new String[] { "a", "b", "c", "a", "d" }) {
+                rows.add(row(s));
+            }
+
+            Assert.assertEquals(rows._slots._columns.get(0)._dictionary, Arrays.asList("a", "b"));
+            StringBuilder sb = new StringBuilder();
+            for (Row row : rows) {
+                sb.append(row.getCellValue(0));
+            }
+            Assert.assertEquals(sb.toString(), "abcad");
+        } finally {
+            ColumnarRowList.s_maxDictionarySize = maxDictionarySize;
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Project project = new Project(true);
+        project.rows.add(row("a", 1L));
+        project.rows.add(row(null, 2.5));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        project.saveToOutputStream(out, new Pool());
+        Project loaded = Project.loadFromInputStream(new ByteArrayInputStream(out.toByteArray()), project.id, new Pool());
+
+        Assert.assertTrue(loaded.hasColumnarStorage());
+        Assert.assertEquals(loaded.rows.size(), 2);
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "a");
+        Assert.assertEquals(((Number) loaded.rows.get(0).getCellValue(1)).longValue(), 1L);
+        Assert.assertNull(loaded.rows.get(1).getCell(0));
+        Assert.assertEquals(loaded.rows.get(1).getCellValue(1), 2.5);
+    }
+
+    @Test
+    public void testChangesApplyToViews() {
+        Project project = new Project(true);
+        project.rows.add(row("a"));
+
+        RowStarChange change = new RowStarChange(0, true);
+        change.apply(project);
+        Assert.assertTrue(project.rows.get(0).starred);
+        change.revert(project);
+        Assert.assertFalse(project.rows.get(0).starred);
+    }
+}
@@ -27,9 +27,14 @@
 
 package com.google.refine.model;
 
+import java.util.Random;
+
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.refine.RefineTest;
+import com.google.refine.model.changes.CellChange;
+import com.google.refine.model.changes.MassCellChange;
 import com.google.refine.util.TestUtils;
 
 public class RecordModelTests extends RefineTest {
@@ -41,4 +46,61 @@ public class RecordModelTests extends RefineTest {
                 + ",second");
         TestUtils.isSerializedTo(proj.recordModel, "{\"hasRecords\":true}");
     }
+
+    @Test
+    public void testIncrementalUpdate() {
+        Project proj = createCSVProject("key,val\n"
+                + "a,1\n"
+                + ",2\n"
+                + "b,3\n"
+                + ",4");
+        Assert.assertEquals(proj.recordModel.getRecordCount(), 2);
+
+        // blank the second key, merging both records
+        Cell oldCell = proj.rows.get(2).getCell(0);
+        new MassCellChange(new CellChange(2, 0, oldCell, null), null, true).apply(proj);
+        Assert.assertEquals(proj.recordModel.getRecordCount(), 1);
+        Assert.assertEquals(proj.recordModel.getRecordOfRow(3).toRowIndex, 4);
+        Assert.assertEquals(proj.recordModel.getRowDependency(3).cellDependencies[1].rowIndex, 0);
+
+        new MassCellChange(new CellChange(2, 0, null, oldCell), null, true).revert(proj);
+        Assert.assertEquals(proj.recordModel.getRecordCount(), 1);
+        new MassCellChange(new CellChange(2, 0, oldCell, null), null, true).revert(proj);
+        Assert.assertEquals(proj.recordModel.getRecordCount(), 2);
+        Assert.assertEquals(proj.recordModel.getRecordOfRow(3).recordIndex, 1);
+    }
+
+    @Test
+    public void testIncrementalUpdateMatchesFullUpdate() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("key,val,other\n");
+        for (int r = 0; r < 200; r++) {
+            csv.append(random.nextInt(4) == 0 ? "k" + r : "").append(',')
+                    .append(random.nextBoolean() ? "v" + r : "").append(',')
+                    .append(random.nextBoolean() ? "o" + r : "").append('\n');
+        }
+        Project proj = createCSVProject(csv.toString());
+
+        for (int i = 0; i < 50; i++) {
+            int[] rowIndices = new int[] { random.nextInt(100), 100 + random.nextInt(100) };
+            for (int rowIndex : rowIndices) {
+                int cellIndex = random.nextInt(3);
+                Row row = proj.rows.get(rowIndex);
+                row.setCell(cellIndex, row.isCellBlank(cellIndex) ? new Cell("x" + i, null) : null);
+            }
+            proj.recordModel.update(proj, rowIndices);
+
+            RecordModel expected = new RecordModel();
+            expected.update(proj);
+            Assert.assertEquals(proj.recordModel.getRecordCount(), expected.getRecordCount());
+            for (int r = 0; r < proj.rows.size(); r++) {
+                Assert.assertEquals(proj.recordModel.getRowDependency(r).toString(), expected.getRowDependency(r).toString());
+                Record record = proj.recordModel.getRecordOfRow(r);
+                Record expectedRecord = expected.getRecordOfRow(r);
+                Assert.assertEquals(record.recordIndex, expectedRecord.recordIndex);
+                Assert.assertEquals(record.fromRowIndex, expectedRecord.fromRowIndex);
+                Assert.assertEquals(record.toRowIndex, expectedRecord.toRowIndex);
+            }
+        }
+    }
 }
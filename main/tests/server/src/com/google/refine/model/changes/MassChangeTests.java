@@ -27,6 +27,8 @@
 
 package com.google.refine.model.changes;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
@@ -40,8 +42,10 @@ import org.testng.annotations.Test;
 
 import com.google.refine.RefineTest;
 import com.google.refine.history.Change;
+import com.google.refine.model.Cell;
 import com.google.refine.model.ModelException;
 import com.google.refine.model.Project;
+import com.google.refine.model.Recon;
 
 public class MassChangeTests extends RefineTest {
 
@@ -75,4 +79,21 @@ public class MassChangeTests extends RefineTest {
         massChange.revert(project);
         assertTrue(project.columnModel.columns.isEmpty());
     }
+
+    @Test
+    public void testReconChangeAffectsWholeColumn() {
+        CellChange cellChange = new CellChange(1, 0, null, new Cell("x", new Recon(0L, null, null)));
+        ReconChange reconChange = new ReconChange(cellChange, "a", null, null);
+
+        // facets can depend on the recon config and stats of the column, which the change replaces
+        assertNull(reconChange.getAffectedRows());
+        assertEquals(reconChange.getModifiedRows(), new int[] { 1 });
+
+        List<Change> changes = new ArrayList<Change>();
+        changes.add(reconChange);
+        changes.add(new CellChange(3, 0, null, new Cell("y", null)));
+        MassChange massChange = new MassChange(changes, false);
+        assertNull(massChange.getAffectedRows());
+        assertEquals(massChange.getModifiedRows(), new int[] { 1, 3 });
+    }
 }
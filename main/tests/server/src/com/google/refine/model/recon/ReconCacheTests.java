@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.model.recon;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.model.Recon;
+import com.google.refine.model.Recon.Judgment;
+import com.google.refine.model.ReconCandidate;
+import com.google.refine.util.TestUtils;
+
+public class ReconCacheTests extends RefineTest {
+
+    File dir;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        dir = TestUtils.createTempDirectory("openrefine-recon-cache-test");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private Recon matched(String id) {
+        Recon recon = new Recon(1234L, "http://www.wikidata.org/entity/", "http://www.wikidata.org/prop/direct/");
+        ReconCandidate candidate = new ReconCandidate(id, id + " name", new String[] { "Q5" }, 100);
+        recon.addCandidate(candidate);
+        recon.match = candidate;
+        recon.judgment = Judgment.Matched;
+        recon.service = "http://example.com/api";
+        return recon;
+    }
+
+    @Test
+    public void testGetReturnsCopy() {
+        ReconCache cache = new ReconCache(null, 10, 60000);
+        Recon recon = matched("Q1");
+        cache.put("a", recon);
+
+        Recon cached = cache.get("a", 5678L);
+        Assert.assertNotSame(cached, recon);
+        Assert.assertNotEquals(cached.id, recon.id);
+        Assert.assertEquals(cached.judgmentHistoryEntry, 5678L);
+        Assert.assertEquals(cached.judgment, Judgment.Matched);
+        Assert.assertEquals(cached.match.id, "Q1");
+        Assert.assertNull(cache.get("b", 5678L));
+
+        ReconCache.Stats stats = cache.getStats();
+        Assert.assertEquals(stats.size, 1);
+        Assert.assertEquals(stats.hits, 1);
+        Assert.assertEquals(stats.misses, 1);
+        Assert.assertEquals(stats.getHitRate(), 0.5);
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        ReconCache cache = new ReconCache(null, 10, 60000);
+        Recon recon = new Recon(1234L, null, null);
+        recon.error = "HTTP error 503 : Service Unavailable for URL http://example.com/api";
+        cache.put("a", recon);
+        Assert.assertEquals(cache.getStats().size, 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        ReconCache cache = new ReconCache(null, 2, 60000);
+        cache.put("a", matched("Q1"));
+        cache.put("b", matched("Q2"));
+        Assert.assertNotNull(cache.get("a", 0L));
+        cache.put("c", matched("Q3"));
+
+        Assert.assertNull(cache.get("b", 0L));
+        Assert.assertNotNull(cache.get("a", 0L));
+        Assert.assertNotNull(cache.get("c", 0L));
+        Assert.assertEquals(cache.getStats().evictions, 1);
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        ReconCache cache = new ReconCache(null, 10, 10);
+        cache.put("a", matched("Q1"));
+        Thread.sleep(50);
+        Assert.assertNull(cache.get("a", 0L));
+        Assert.assertEquals(cache.getStats().size, 0);
+    }
+
+    @Test
+    public void testPersistence() {
+        File file = new File(dir, ReconCache.FILE_NAME);
+        ReconCache cache = new ReconCache(file, 10, 60000);
+        cache.put("a", matched("Q1"));
+        cache.put("b", matched("Q2"));
+        cache.flush();
+        Assert.assertTrue(file.exists());
+
+        ReconCache reloaded = new ReconCache(file, 10, 60000);
+        Recon cached = reloaded.get("b", 0L);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(cached.match.id, "Q2");
+        Assert.assertEquals(cached.getBestCandidate().types[0], "Q5");
+        Assert.assertEquals(cached.service, "http://example.com/api");
+        Assert.assertEquals(reloaded.getStats().size, 2);
+
+        // entries past their time to live are not reloaded
+        ReconCache expired = new ReconCache(file, 10, -1);
+        Assert.assertNull(expired.get("a", 0L));
+    }
+
+    @Test
+    public void testFlushAppendsNewEntries() throws IOException {
+        File file = new File(dir, ReconCache.FILE_NAME);
+        ReconCache cache = new ReconCache(file, 10, 60000);
+        cache.put("a", matched("Q1"));
+        cache.flush();
+        long length = file.length();
+        String firstLine = FileUtils.readFileToString(file, "UTF-8");
+
+        cache.put("b", matched("Q2"));
+        cache.flush();
+        Assert.assertTrue(FileUtils.readFileToString(file, "UTF-8").startsWith(firstLine));
+        Assert.assertTrue(file.length() > length);
+
+        // flushed results are read back from the file
+        Assert.assertNull(cache._entries.get("a").recon);
+        Assert.assertEquals(cache.get("a", 0L).match.id, "Q1");
+        Assert.assertEquals(cache.get("b", 0L).match.id, "Q2");
+    }
+
+    @Test
+    public void testSupersededEntriesAreCompacted() throws IOException {
+        int maxGarbagePercent = ReconCache.s_maxGarbagePercent;
+        ReconCache.s_maxGarbagePercent = 30;
+        try {
+            File file = new File(dir, ReconCache.FILE_NAME);
+            ReconCache cache = new ReconCache(file, 10, 60000);
+            for (String key : new String[] { "a", "b", "c", "d" }) {
+                cache.put(key, matched("Q1"));
+            }
+            cache.flush();
+
+            cache.put("a", matched("Q2"));
+            cache.flush();
+            Assert.assertEquals(FileUtils.readLines(file, "UTF-8").size(), 5);
+            cache.put("a", matched("Q3"));
+            cache.flush();
+            // two of the five lines were superseded, so the file was rewritten
+            Assert.assertEquals(FileUtils.readLines(file, "UTF-8").size(), 4);
+            Assert.assertEquals(cache._fileLength, cache._liveLength);
+
+            ReconCache reloaded = new ReconCache(file, 10, 60000);
+            Assert.assertEquals(reloaded.get("a", 0L).match.id, "Q3");
+            Assert.assertEquals(reloaded.get("d", 0L).match.id, "Q1");
+        } finally {
+            ReconCache.s_maxGarbagePercent = maxGarbagePercent;
+        }
+    }
+
+    @Test
+    public void testIncompleteLineIsOverwritten() throws IOException {
+        File file = new File(dir, ReconCache.FILE_NAME);
+        ReconCache cache = new ReconCache(file, 10, 60000);
+        cache.put("a", matched("Q1"));
+        cache.flush();
+        FileUtils.writeStringToFile(file, "{\"k\":\"b\",\"t\":", "UTF-8", true);
+
+        ReconCache reloaded = new ReconCache(file, 10, 60000);
+        reloaded.put("c", matched("Q3"));
+        reloaded.flush();
+
+        ReconCache again = new ReconCache(file, 10, 60000);
+        Assert.assertEquals(again.get("a", 0L).match.id, "Q1");
+        Assert.assertEquals(again.get("c", 0L).match.id, "Q3");
+        Assert.assertEquals(again.getStats().size, 2);
+    }
+}
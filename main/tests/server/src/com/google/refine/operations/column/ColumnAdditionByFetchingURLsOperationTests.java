@@ -38,12 +38,17 @@ import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
@@ -131,6 +136,22 @@ public class ColumnAdditionByFetchingURLsOperationTests extends RefineTest {
         TestUtils.isSerializedTo(ParsingUtilities.mapper.readValue(json, ColumnAdditionByFetchingURLsOperation.class), json);
     }
 
+    @Test
+    public void testColumnsReadAndWritten() throws Exception {
+        Process process = new ColumnAdditionByFetchingURLsOperation(engine_config, "fruits", "\"http://example.com/\" + value",
+                OnError.StoreError, "data", 0, 0, false, null).createProcess(project, options);
+        Assert.assertEquals(process.getColumnsRead(), Collections.singleton("fruits"));
+        Assert.assertEquals(process.getColumnsWritten(), Collections.singleton("data"));
+
+        for (String expression : new String[] { "\"http://example.com/\" + cells.other.value",
+                "\"http://example.com/\" + facetCount(value, \"value\", \"fruits\")",
+                "\"http://example.com/\" + cross(value, \"other\", \"key\").length()" }) {
+            process = new ColumnAdditionByFetchingURLsOperation(engine_config, "fruits", expression,
+                    OnError.StoreError, "data", 1, 0, false, null).createProcess(project, options);
+            Assert.assertNull(process.getColumnsRead(), expression);
+        }
+    }
+
     @Test
     public void serializeUrlFetchingProcess() throws Exception {
         AbstractOperation op = ParsingUtilities.mapper.readValue(json, ColumnAdditionByFetchingURLsOperation.class);
@@ -362,4 +383,139 @@ public class ColumnAdditionByFetchingURLsOperationTests extends RefineTest {
         }
     }
 
+    @Test
+    public void testConcurrentHosts() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        try (MockWebServer first = new MockWebServer(); MockWebServer second = new MockWebServer()) {
+            List<AtomicInteger> hostPeaks = new ArrayList<>();
+            for (MockWebServer server : Arrays.asList(first, second)) {
+                AtomicInteger hostRunning = new AtomicInteger();
+                AtomicInteger hostPeak = new AtomicInteger();
+                hostPeaks.add(hostPeak);
+                server.setDispatcher(new Dispatcher() {
+
+                    @Override
+                    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                        peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        hostPeak.accumulateAndGet(hostRunning.incrementAndGet(), Math::max);
+                        Thread.sleep(200);
+                        hostRunning.decrementAndGet();
+                        running.decrementAndGet();
+                        return new MockResponse().setBody(request.getPath());
+                    }
+                });
+                server.start();
+            }
+
+            for (int i = 0; i < 8; i++) {
+                Row row = new Row(2);
+                row.setCell(0, new Cell((i % 2 == 0 ? first : second).url("/page" + i).toString(), null));
+                project.rows.add(row);
+            }
+
+            EngineDependentOperation op = new ColumnAdditionByFetchingURLsOperation(engine_config,
+                    "fruits",
+                    "value",
+                    OnError.StoreError,
+                    "page",
+                    1,
+                    0,
+                    false,
+                    null);
+            runAndWait(op, 3000);
+
+            Assert.assertEquals(peak.get(), 2);
+            // each host is still fetched one URL at a time
+            Assert.assertEquals(hostPeaks.get(0).get(), 1);
+            Assert.assertEquals(hostPeaks.get(1).get(), 1);
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(project.rows.get(i).getCellValue(1), "/page" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateUrlsAreFetchedOnce() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.start();
+            HttpUrl url = server.url("/duplicates");
+
+            for (int i = 0; i < 10; i++) {
+                Row row = new Row(2);
+                row.setCell(0, new Cell(i % 2 == 0 ? "apple" : "orange", null));
+                project.rows.add(row);
+            }
+            server.enqueue(new MockResponse().setBody("first"));
+            server.enqueue(new MockResponse().setBody("second"));
+
+            EngineDependentOperation op = new ColumnAdditionByFetchingURLsOperation(engine_config,
+                    "fruits",
+                    "\"" + url + "?city=\"+value",
+                    OnError.StoreError,
+                    "fetched",
+                    1,
+                    0,
+                    false,
+                    null);
+            runAndWait(op, 2000);
+
+            Assert.assertEquals(server.getRequestCount(), 2);
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(project.rows.get(i).getCellValue(1), i % 2 == 0 ? "first" : "second");
+            }
+        }
+    }
+
+    @Test
+    public void testCancelKeepsPartialResults() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    if (!request.getPath().endsWith("0")) {
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    return new MockResponse().setBody(request.getPath());
+                }
+            });
+            server.start();
+
+            for (int i = 0; i < 2; i++) {
+                Row row = new Row(2);
+                row.setCell(0, new Cell(server.url("/page" + i).toString(), null));
+                project.rows.add(row);
+            }
+
+            EngineDependentOperation op = new ColumnAdditionByFetchingURLsOperation(engine_config,
+                    "fruits",
+                    "value",
+                    OnError.StoreError,
+                    "page",
+                    1,
+                    0,
+                    false,
+                    null);
+            Process process = op.createProcess(project, options);
+            process.startPerforming(project.getProcessManager());
+            try {
+                // wait for the second request, which only starts once the first one is done
+                Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+                Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+                process.cancel();
+                for (int i = 0; i < 50 && process.isRunning(); i++) {
+                    Thread.sleep(100);
+                }
+            } finally {
+                release.countDown();
+            }
+            Assert.assertFalse(process.isRunning());
+
+            Assert.assertEquals(project.columnModel.columns.get(1).getName(), "page");
+            Assert.assertEquals(project.rows.get(0).getCellValue(1), "/page0");
+            Assert.assertNull(project.rows.get(1).getCellValue(1));
+        }
+    }
 }
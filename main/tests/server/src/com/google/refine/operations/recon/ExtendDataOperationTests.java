@@ -40,12 +40,15 @@ import java.io.StringWriter;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import okhttp3.mockwebserver.Dispatcher;
@@ -435,6 +438,76 @@ public class ExtendDataOperationTests extends RefineTest {
         }
     }
 
+    @Test
+    public void testDeduplicatedBatchesAndCache() throws Exception {
+        DataExtensionConfig extension = DataExtensionConfig
+                .reconstruct("{\"properties\":[{\"id\":\"P297\",\"name\":\"ISO 3166-1 alpha-2 code\"}]}");
+        // the same countries again, which should not be fetched twice
+        for (int i = 0; i < 4; i++) {
+            Row row = new Row(2);
+            row.setCell(0, project.rows.get(i).getCell(0));
+            project.rows.add(row);
+        }
+
+        Set<String> requestedIds = Collections.synchronizedSet(new HashSet<>());
+        AtomicInteger duplicates = new AtomicInteger();
+        int batchSize = ExtendDataOperation.s_batchSize;
+        ExtendDataOperation.s_batchSize = 1;
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    String json = URLDecoder.decode(request.getBody().readUtf8().split("=")[1], StandardCharsets.UTF_8);
+                    StringBuilder rows = new StringBuilder();
+                    try {
+                        for (JsonNode id : ParsingUtilities.mapper.readTree(json).get("ids")) {
+                            if (!requestedIds.add(id.asText())) {
+                                duplicates.incrementAndGet();
+                            }
+                            rows.append(rows.length() == 0 ? "" : ",")
+                                    .append("\"").append(id.asText()).append("\": {\"P297\": [{\"str\": \"")
+                                    .append(id.asText()).append("\"}]}");
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e);
+                    }
+                    return new MockResponse().setBody("{\"rows\": {" + rows + "},"
+                            + "\"meta\": [{\"name\": \"ISO 3166-1 alpha-2 code\", \"id\": \"P297\"}]}");
+                }
+            });
+            server.start();
+            String endpoint = server.url("/reconcile").url().toString();
+
+            EngineDependentOperation op = new ExtendDataOperation(engine_config,
+                    "country",
+                    endpoint,
+                    RECON_IDENTIFIER_SPACE,
+                    RECON_SCHEMA_SPACE,
+                    extension,
+                    1);
+            LongRunningProcessStub process = new LongRunningProcessStub(op.createProcess(project, options));
+            process.run();
+
+            Assert.assertEquals(server.getRequestCount(), 4);
+            Assert.assertEquals(duplicates.get(), 0);
+            Assert.assertEquals(project.rows.get(0).getCellValue(1), "Q794");
+            Assert.assertEquals(project.rows.get(3).getCellValue(1), "Q30");
+            Assert.assertEquals(project.rows.get(4).getCellValue(1), "Q794");
+            Assert.assertEquals(project.rows.get(7).getCellValue(1), "Q30");
+
+            // extending the same entities again is answered from the cache
+            ReconciledDataExtensionJob job = new ReconciledDataExtensionJob(extension, endpoint);
+            Map<String, ReconciledDataExtensionJob.DataExtension> extensions = job.extend(
+                    new HashSet<>(Arrays.asList("Q17", "Q863")), new HashMap<>());
+            Assert.assertEquals(server.getRequestCount(), 4);
+            Assert.assertEquals(extensions.get("Q17").data[0][0], "Q17");
+            Assert.assertEquals(job.columns.get(0).name, "ISO 3166-1 alpha-2 code");
+        } finally {
+            ExtendDataOperation.s_batchSize = batchSize;
+        }
+    }
+
     private void mockHttpCall(String query, String response) throws IOException {
         mockedResponses.put(ParsingUtilities.mapper.readTree(query), response);
     }
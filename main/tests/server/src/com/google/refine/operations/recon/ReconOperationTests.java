@@ -30,10 +30,21 @@ package com.google.refine.operations.recon;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.apache.commons.text.StringEscapeUtils;
 import org.mockito.Mockito;
 import org.testng.Assert;
@@ -44,8 +55,10 @@ import com.google.refine.RefineTest;
 import com.google.refine.browsing.EngineConfig;
 import com.google.refine.messages.OpenRefineMessage;
 import com.google.refine.model.Column;
+import com.google.refine.model.Cell;
 import com.google.refine.model.Project;
 import com.google.refine.model.Recon;
+import com.google.refine.model.recon.ReconCache;
 import com.google.refine.model.recon.ReconConfig;
 import com.google.refine.model.recon.ReconJob;
 import com.google.refine.model.recon.StandardReconConfig;
@@ -153,4 +166,173 @@ public class ReconOperationTests extends RefineTest {
         Assert.assertNull(project.rows.get(1).getCell(0).recon);
         Assert.assertNull(project.rows.get(2).getCell(0).recon);
     }
+
+    @Test
+    public void testConcurrentBatches() throws Exception {
+        StringBuilder csv = new StringBuilder("column\n");
+        for (int i = 0; i < 20; i++) {
+            csv.append("value").append(i).append("\n");
+        }
+        Project project = createCSVProject("concurrent recon test project", csv.toString());
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        int maxConcurrentBatches = ReconOperation.s_maxConcurrentBatches;
+        ReconOperation.s_maxConcurrentBatches = 4;
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(100);
+                        return new MockResponse().setBody(echoCandidates(request));
+                    } catch (Exception e) {
+                        return new MockResponse().setResponseCode(500);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+            server.start();
+
+            String configJson = "{"
+                    + "\"mode\":\"standard-service\","
+                    + "\"service\":\"" + server.url("/api") + "\","
+                    + "\"identifierSpace\":\"http://www.wikidata.org/entity/\","
+                    + "\"schemaSpace\":\"http://www.wikidata.org/prop/direct/\","
+                    + "\"type\":{\"id\":\"Q5\",\"name\":\"human\"},"
+                    + "\"autoMatch\":true,"
+                    + "\"batchSize\":2,"
+                    + "\"columnDetails\":[]}";
+            ReconOperation op = new ReconOperation(EngineConfig.reconstruct("{}"), "column",
+                    StandardReconConfig.reconstruct(configJson));
+            Process process = op.createProcess(project, new Properties());
+            runAndWait(project.getProcessManager(), process, 10000);
+        } finally {
+            ReconOperation.s_maxConcurrentBatches = maxConcurrentBatches;
+        }
+
+        Assert.assertTrue(peak.get() > 1, "batches were not sent concurrently");
+        Assert.assertTrue(peak.get() <= 4);
+        for (int i = 0; i < 20; i++) {
+            Cell cell = project.rows.get(i).getCell(0);
+            Assert.assertNotNull(cell.recon, "row " + i);
+            Assert.assertEquals(cell.recon.getBestCandidate().id, "value" + i);
+        }
+    }
+
+    @Test
+    public void testRetryFailedBatch() throws Exception {
+        Project project = createCSVProject("retrying recon test project",
+                "column\n"
+                        + "valueA\n"
+                        + "valueB");
+        StandardReconConfig reconConfig = mock(StandardReconConfig.class);
+        Recon error = new Recon(0, null, null);
+        error.error = "HTTP error 429 : Too Many Requests for URL http://example.com/api";
+        Recon success = new Recon(0, null, null);
+        when(reconConfig.batchRecon(Mockito.any(), Mockito.anyLong()))
+                .thenReturn(Arrays.asList(error, error))
+                .thenReturn(Arrays.asList(success, success));
+        when(reconConfig.getBatchSize(project.rows.size())).thenReturn(10);
+        when(reconConfig.createJob(Mockito.eq(project), Mockito.anyInt(), Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(mock(ReconJob.class), mock(ReconJob.class));
+
+        long initialBackoff = ReconOperation.s_initialBackoff;
+        ReconOperation.s_initialBackoff = 10;
+        try {
+            ReconOperation op = new ReconOperation(EngineConfig.reconstruct("{}"), "column", reconConfig);
+            Process process = op.createProcess(project, new Properties());
+            runAndWait(project.getProcessManager(), process, 1000);
+        } finally {
+            ReconOperation.s_initialBackoff = initialBackoff;
+        }
+
+        Mockito.verify(reconConfig, Mockito.times(2)).batchRecon(Mockito.any(), Mockito.anyLong());
+        Assert.assertSame(project.rows.get(0).getCell(0).recon, success);
+        Assert.assertSame(project.rows.get(1).getCell(0).recon, success);
+    }
+
+    @Test
+    public void testCachedResults() throws Exception {
+        ReconCache cache = new ReconCache(null, 100, 60000);
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    try {
+                        return new MockResponse().setBody(echoCandidates(request));
+                    } catch (Exception e) {
+                        return new MockResponse().setResponseCode(500);
+                    }
+                }
+            });
+            server.start();
+            String configJson = "{"
+                    + "\"mode\":\"standard-service\","
+                    + "\"service\":\"" + server.url("/api") + "\","
+                    + "\"identifierSpace\":\"http://www.wikidata.org/entity/\","
+                    + "\"schemaSpace\":\"http://www.wikidata.org/prop/direct/\","
+                    + "\"type\":{\"id\":\"Q5\",\"name\":\"human\"},"
+                    + "\"autoMatch\":true,"
+                    + "\"batchSize\":10,"
+                    + "\"columnDetails\":[]}";
+            StandardReconConfig reconConfig = StandardReconConfig.reconstruct(configJson);
+
+            Project first = createCSVProject("first cached recon project", "column\nvalueA\nvalueB\nvalueA");
+            runAndWait(first.getProcessManager(), cachedReconProcess(first, reconConfig, cache, false), 10000);
+            Assert.assertEquals(server.getRequestCount(), 1);
+
+            Project second = createCSVProject("second cached recon project", "column\nvalueB\nvalueA");
+            runAndWait(second.getProcessManager(), cachedReconProcess(second, reconConfig, cache, false), 10000);
+            Assert.assertEquals(server.getRequestCount(), 1);
+            Recon recon = second.rows.get(0).getCell(0).recon;
+            Assert.assertEquals(recon.getBestCandidate().id, "valueB");
+            Assert.assertEquals(recon.judgmentBatchSize, 1);
+            Assert.assertNotEquals(recon.id, first.rows.get(1).getCell(0).recon.id);
+            Assert.assertEquals(cache.getStats().hits, 2);
+            Assert.assertEquals(cache.getStats().misses, 2);
+
+            Project third = createCSVProject("third cached recon project", "column\nvalueA");
+            runAndWait(third.getProcessManager(), cachedReconProcess(third, reconConfig, cache, true), 10000);
+            Assert.assertEquals(server.getRequestCount(), 2);
+        }
+    }
+
+    private Process cachedReconProcess(Project project, ReconConfig reconConfig, ReconCache cache, boolean bypassCache)
+            throws Exception {
+        ReconOperation op = new ReconOperation(EngineConfig.reconstruct("{}"), "column", reconConfig, bypassCache) {
+
+            @Override
+            protected ReconCache getReconCache() {
+                return bypassCache ? null : cache;
+            }
+        };
+        return op.createProcess(project, new Properties());
+    }
+
+    /**
+     * Answers a reconciliation query batch with a single candidate per query, whose id and name are the query text.
+     */
+    private static String echoCandidates(RecordedRequest request) throws Exception {
+        String body = request.getBody().readUtf8();
+        String queries = URLDecoder.decode(body.substring(body.indexOf('=') + 1), StandardCharsets.UTF_8.name());
+        ObjectNode response = ParsingUtilities.mapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> it = ParsingUtilities.mapper.readTree(queries).fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> query = it.next();
+            String text = query.getValue().get("query").asText();
+            ObjectNode candidate = ParsingUtilities.mapper.createObjectNode();
+            candidate.put("id", text);
+            candidate.put("name", text);
+            candidate.put("score", 100);
+            candidate.put("match", true);
+            candidate.putArray("type").add("Q5");
+            response.putObject(query.getKey()).putArray("result").add(candidate);
+        }
+        return ParsingUtilities.mapper.writeValueAsString(response);
+    }
 }
@@ -27,6 +27,12 @@
 
 package com.google.refine.process;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -38,6 +44,47 @@ public class ProcessManagerTests {
     ProcessManager processManager;
     Process process1, process2;
 
+    /**
+     * A process which reads and writes a single column, and runs until it is released.
+     */
+    static class ColumnProcessStub extends LongRunningProcess implements Runnable {
+
+        final Set<String> columns;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ColumnProcessStub(String column) {
+            super("process on " + column);
+            columns = column == null ? null : Collections.singleton(column);
+        }
+
+        @Override
+        protected Runnable getRunnable() {
+            return this;
+        }
+
+        @Override
+        public Set<String> getColumnsRead() {
+            return columns;
+        }
+
+        @Override
+        public Set<String> getColumnsWritten() {
+            return columns;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // canceled
+            }
+            _manager.onDoneProcess(this);
+        }
+    }
+
     @BeforeMethod
     public void setUp() {
         processManager = new ProcessManager();
@@ -63,4 +110,58 @@ public class ProcessManagerTests {
                 + "\"exceptions\":[{\"message\":\"unexpected error\"}]"
                 + "}");
     }
+
+    @Test
+    public void testIndependentProcessesRunConcurrently() throws Exception {
+        ColumnProcessStub first = new ColumnProcessStub("a");
+        ColumnProcessStub second = new ColumnProcessStub("b");
+        ColumnProcessStub conflicting = new ColumnProcessStub("a");
+        try {
+            processManager.queueProcess(first);
+            processManager.queueProcess(second);
+            processManager.queueProcess(conflicting);
+
+            Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(second.started.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(conflicting.isRunning());
+            ProcessManager.Metrics metrics = processManager.getMetrics();
+            Assert.assertEquals(metrics.running, 2);
+            Assert.assertEquals(metrics.queued, 1);
+
+            first.release.countDown();
+            Assert.assertTrue(conflicting.started.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(processManager.getMetrics().started, 3);
+        } finally {
+            first.release.countDown();
+            second.release.countDown();
+            conflicting.release.countDown();
+        }
+    }
+
+    @Test
+    public void testUndeclaredColumnsRunAlone() throws Exception {
+        ColumnProcessStub first = new ColumnProcessStub("a");
+        ColumnProcessStub undeclared = new ColumnProcessStub(null);
+        ColumnProcessStub last = new ColumnProcessStub("b");
+        try {
+            processManager.queueProcess(first);
+            processManager.queueProcess(undeclared);
+            processManager.queueProcess(last);
+
+            Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(undeclared.isRunning());
+            Assert.assertFalse(last.isRunning());
+
+            first.release.countDown();
+            Assert.assertTrue(undeclared.started.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(last.isRunning());
+
+            undeclared.release.countDown();
+            Assert.assertTrue(last.started.await(5, TimeUnit.SECONDS));
+        } finally {
+            first.release.countDown();
+            undeclared.release.countDown();
+            last.release.countDown();
+        }
+    }
 }
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.sorting;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.browsing.RowVisitor;
+import com.google.refine.browsing.util.ParallelScan;
+import com.google.refine.expr.EvalError;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+import com.google.refine.sorting.Criterion.KeyMaker;
+import com.google.refine.util.ParsingUtilities;
+
+public class SortingRowVisitorTests extends RefineTest {
+
+    private Project project;
+    private int parallelism;
+    private int minPartitionSize;
+
+    @Override
+    @BeforeTest
+    public void init() {
+        logger = LoggerFactory.getLogger(this.getClass());
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        parallelism = ParallelScan.getParallelism();
+        minPartitionSize = ParallelScan.getMinPartitionSize();
+
+        StringBuilder csv = new StringBuilder("n,s,d,b\n");
+        for (int i = 0; i < 2000; i++) {
+            csv.append("x,x,x,x\n");
+        }
+        project = createCSVProject(csv.toString());
+
+        Random random = new Random(7);
+        String[] strings = { "apple", "Apple", "banana", "", "épée", "epee", "10" };
+        for (Row row : project.rows) {
+            row.setCell(0, randomCell(random, random.nextBoolean() ? (double) random.nextInt(20) - 10 : (long) random.nextInt(20),
+                    "abc", -0.0));
+            // string keys cannot be made of errors
+            Cell string = randomCell(random, strings[random.nextInt(strings.length)], 12, "zzz");
+            row.setCell(1, string != null && string.value instanceof EvalError ? new Cell("error", null) : string);
+            row.setCell(2, randomCell(random, OffsetDateTime.of(2000 + random.nextInt(5), 1, 1, 0, 0, 0, random.nextInt(3),
+                    ZoneOffset.UTC), "not a date", OffsetDateTime.of(1, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+            row.setCell(3, randomCell(random, random.nextBoolean(), "true", 3));
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ParallelScan.configure(parallelism, minPartitionSize);
+    }
+
+    /**
+     * @return a cell holding the given value most of the time, and sometimes a blank, an error or another value
+     */
+    private Cell randomCell(Random random, Serializable value, Serializable other, Serializable rare) {
+        switch (random.nextInt(10)) {
+            case 0:
+                return null;
+            case 1:
+                return new Cell(new EvalError("error"), null);
+            case 2:
+                return new Cell(other, null);
+            case 3:
+                return new Cell(rare, null);
+            default:
+                return new Cell(value, null);
+        }
+    }
+
+    @Test
+    public void testSortMatchesObjectComparison() throws Exception {
+        String[] criteria = {
+                "{\"valueType\":\"number\",\"column\":\"n\",\"reverse\":true,\"blankPosition\":-1,\"errorPosition\":2}",
+                "{\"valueType\":\"string\",\"column\":\"s\",\"caseSensitive\":false,\"blankPosition\":1,\"errorPosition\":-2}",
+                "{\"valueType\":\"string\",\"column\":\"s\",\"caseSensitive\":true,\"reverse\":true}",
+                "{\"valueType\":\"date\",\"column\":\"d\",\"blankPosition\":1,\"errorPosition\":1}",
+                "{\"valueType\":\"boolean\",\"column\":\"b\",\"reverse\":true,\"blankPosition\":2,\"errorPosition\":1}" };
+        for (int parallelism : new int[] { 1, 4 }) {
+            ParallelScan.configure(parallelism, 100);
+            for (int i = 0; i < criteria.length; i++) {
+                for (int j = 0; j < criteria.length; j++) {
+                    SortingConfig config = ParsingUtilities.mapper.readValue(
+                            "{\"criteria\":[" + criteria[i] + "," + criteria[j] + "]}", SortingConfig.class);
+                    List<Integer> expected = sortWithObjectKeys(config);
+                    Assert.assertEquals(sort(config, -1), expected, config.toString());
+                    Assert.assertEquals(sort(config, 25), expected.subList(0, 25));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        SortingConfig config = ParsingUtilities.mapper.readValue(
+                "{\"criteria\":[{\"valueType\":\"number\",\"column\":\"n\"}]}", SortingConfig.class);
+        List<Integer> expected = sortWithObjectKeys(config);
+
+        Assert.assertEquals(sort(config, 0), Collections.emptyList());
+        Assert.assertEquals(sort(config, 1), expected.subList(0, 1));
+        Assert.assertEquals(sort(config, 5000), expected);
+    }
+
+    @Test
+    public void testIntSort() {
+        Random random = new Random(3);
+        ParallelScan.configure(3, 10);
+        for (int length : new int[] { 0, 1, 17, 100, 1001 }) {
+            int[] values = random.ints(length, 0, 50).toArray();
+            int[] expected = values.clone();
+            Arrays.sort(expected);
+
+            BaseSorter.sort(values, Integer::compare);
+            Assert.assertEquals(values, expected);
+        }
+    }
+
+    private List<Integer> sort(SortingConfig config, int limit) {
+        List<Integer> indices = new ArrayList<>();
+        SortingRowVisitor visitor = new SortingRowVisitor(new RowVisitor() {
+
+            @Override
+            public void start(Project project) {
+            }
+
+            @Override
+            public void end(Project project) {
+            }
+
+            @Override
+            public boolean visit(Project project, int rowIndex, Row row) {
+                indices.add(rowIndex);
+                return false;
+            }
+        }, limit);
+        visitor.initializeFromConfig(project, config);
+        visitor.start(project);
+        for (int i = 0; i < project.rows.size(); i++) {
+            visitor.visit(project, i, project.rows.get(i));
+        }
+        visitor.end(project);
+        Assert.assertEquals(visitor.getCount(), project.rows.size());
+        return indices;
+    }
+
+    /**
+     * Sorts the rows by comparing their keys as objects, as sorting was originally done.
+     */
+    private List<Integer> sortWithObjectKeys(SortingConfig config) {
+        Criterion[] criteria = config.getCriteria();
+        List<Object[]> keys = new ArrayList<>();
+        for (int i = 0; i < project.rows.size(); i++) {
+            Object[] rowKeys = new Object[criteria.length];
+            for (int c = 0; c < criteria.length; c++) {
+                rowKeys[c] = criteria[c].createKeyMaker().makeKey(project, project.rows.get(i), i);
+            }
+            keys.add(rowKeys);
+        }
+        KeyMaker[] keyMakers = new KeyMaker[criteria.length];
+        for (int c = 0; c < criteria.length; c++) {
+            keyMakers[c] = criteria[c].createKeyMaker();
+        }
+
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < project.rows.size(); i++) {
+            indices.add(i);
+        }
+        Collections.sort(indices, (i1, i2) -> {
+            for (int c = 0; c < criteria.length; c++) {
+                int r = compareKeys(criteria[c], keyMakers[c], keys.get(i1)[c], keys.get(i2)[c]);
+                if (r != 0) {
+                    return r;
+                }
+            }
+            return 0;
+        });
+        return indices;
+    }
+
+    private int compareKeys(Criterion c, KeyMaker keyMaker, Object key1, Object key2) {
+        int position1 = key1 == null ? c.blankPosition : (key1 instanceof EvalError ? c.errorPosition : 0);
+        int position2 = key2 == null ? c.blankPosition : (key2 instanceof EvalError ? c.errorPosition : 0);
+        if (key1 == null || key2 == null || key1 instanceof EvalError || key2 instanceof EvalError) {
+            return position1 - position2;
+        }
+        return keyMaker.compareKeys(key1, key2) * (c.reverse ? -1 : 1);
+    }
+}
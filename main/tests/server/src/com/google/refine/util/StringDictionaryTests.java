@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (C) 2018, OpenRefine contributors
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package com.google.refine.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.refine.RefineTest;
+import com.google.refine.model.Cell;
+import com.google.refine.model.Project;
+import com.google.refine.model.Row;
+
+public class StringDictionaryTests extends RefineTest {
+
+    // distinct instances with the same contents
+    private String copy(String s) {
+        return new String(s.toCharArray());
+    }
+
+    @Test
+    public void testInternSharesInstances() {
+        StringDictionary dictionary = new StringDictionary();
+        String first = dictionary.intern(0, copy("FR"));
+
+        Assert.assertSame(dictionary.intern(0, copy("FR")), first);
+        Assert.assertSame(dictionary.intern(1, copy("FR")), first);
+        Assert.assertEquals(dictionary.size(), 1);
+        Assert.assertTrue(dictionary.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testLookupDoesNotAdd() {
+        StringDictionary dictionary = new StringDictionary();
+        String s = copy("active");
+
+        Assert.assertSame(dictionary.lookup(s), s);
+        Assert.assertEquals(dictionary.size(), 0);
+        String shared = dictionary.intern(0, s);
+        Assert.assertSame(dictionary.lookup(copy("active")), shared);
+    }
+
+    @Test
+    public void testHighCardinalityColumnsAreNotInterned() {
+        int maxColumnSize = StringDictionary.s_maxColumnSize;
+        StringDictionary.s_maxColumnSize = 2;
+        try {
+            StringDictionary dictionary = new StringDictionary();
+            dictionary.intern(0, "a");
+            dictionary.intern(0, "b");
+            dictionary.intern(0, "c");
+            dictionary.intern(0, "d");
+
+            // the column is full and keeps missing, so it is not interned anymore
+            Assert.assertEquals(dictionary.size(), 2);
+            String a = copy("a");
+            Assert.assertSame(dictionary.intern(0, a), a);
+            // other columns are not affected
+            Assert.assertSame(dictionary.intern(1, copy("a")), dictionary.lookup("a"));
+            Assert.assertNotSame(dictionary.lookup("a"), a);
+        } finally {
+            StringDictionary.s_maxColumnSize = maxColumnSize;
+        }
+    }
+
+    @Test
+    public void testInternRow() {
+        StringDictionary dictionary = new StringDictionary();
+        Row row1 = new Row(2);
+        row1.setCell(0, new Cell(copy("open"), null));
+        row1.setCell(1, new Cell(12L, null));
+        Row row2 = new Row(1);
+        row2.setCell(0, new Cell(copy("open"), null));
+
+        dictionary.intern(row1);
+        dictionary.intern(row2);
+
+        Assert.assertSame(row2.getCellValue(0), row1.getCellValue(0));
+        Assert.assertEquals(row1.getCellValue(1), 12L);
+    }
+
+    @Test
+    public void testProjectLoadInternsCells() throws Exception {
+        Project project = new Project();
+        for (int i = 0; i < 2; i++) {
+            Row row = new Row(1);
+            row.setCell(0, new Cell("closed", null));
+            project.rows.add(row);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        project.saveToOutputStream(out, new Pool());
+        Project loaded = Project.loadFromInputStream(new ByteArrayInputStream(out.toByteArray()), project.id, new Pool());
+
+        Assert.assertEquals(loaded.rows.get(0).getCellValue(0), "closed");
+        Assert.assertSame(loaded.rows.get(1).getCellValue(0), loaded.rows.get(0).getCellValue(0));
+        Assert.assertEquals(loaded.getStringDictionary().size(), 1);
+    }
+}